@@ -0,0 +1,53 @@
+package com.github.iraticasi.testability.benchmarks;
+
+import com.github.iraticasi.testability.analyzer.Analyzer;
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmark of the analysis of a whole project (scan, JDT parsing and propagation), dominated by the parsing
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+    @Param({"500", "2000"})
+    public int numClasses;
+
+    @Param({"bindings", "syntactic"})
+    public String resolution;
+
+    @Param({"1", "4"})
+    public int shards;
+
+    private Path project;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        project = SyntheticCorpus.generate(Files.createTempDirectory("analyzer-bench"), numClasses, 50, 8, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        SyntheticCorpus.delete(project);
+    }
+
+    @Benchmark
+    public List<ClassInfo> analyze() {
+        Analyzer analyzer = new Analyzer(project.toFile());
+        analyzer.setSyntactic(resolution.equals("syntactic"));
+        analyzer.setShards(shards);
+        return analyzer.analyze();
+    }
+}
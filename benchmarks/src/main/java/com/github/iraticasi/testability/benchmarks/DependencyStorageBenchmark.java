@@ -0,0 +1,133 @@
+package com.github.iraticasi.testability.benchmarks;
+
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import com.github.iraticasi.testability.analyzer.PolicySet;
+import com.github.iraticasi.testability.analyzer.SymbolTable;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * Benchmark of the storage of the dependencies of the classes: ClassInfo (ids interned in a SymbolTable,
+ * deduplicated with a count) against the original list with a string per object creation (LegacyClassInfo)
+ * <p>
+ * NOTES:
+ * The compilation units are parsed once, with bindings, so each invocation only visits them and the difference
+ * is the storage of the dependencies. It is meant to be run with the GC profiler, whose gc.alloc.rate.norm is the
+ * bytes allocated to analyze the whole project:
+ *     java -jar benchmarks/target/benchmarks.jar DependencyStorageBenchmark -prof gc
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DependencyStorageBenchmark {
+
+    @Param({"500", "2000"})
+    public int numClasses;
+
+    private Path project;
+    private List<CompilationUnit> units;
+
+    /**
+     * The original ClassInfo: every object creation appends the full name of its class to a list
+     */
+    static class LegacyClassInfo extends ASTVisitor {
+        private String name, pkg, project;
+        private List<String> dependencies = new ArrayList<>();
+        private boolean externalDependencies = false;
+
+        LegacyClassInfo(String name, String pkg, String project) {
+            this.name = name;
+            this.pkg = pkg;
+            this.project = project;
+        }
+
+        @Override
+        public boolean visit(ClassInstanceCreation creation) {
+            String dependencyName = creation.getType().toString();
+            IMethodBinding constructorBinding = creation.resolveConstructorBinding();
+            String dependencyPkg = "<not resolve>";
+            if (constructorBinding != null) dependencyPkg = constructorBinding.getDeclaringClass().getPackage().getName();
+            if (dependencyPkg.equals("")) dependencyPkg = "<no package>";
+            String dependencyFullName = dependencyPkg + "." + dependencyName;
+            if (!dependencyFullName.contains("org.apache." + project) && !dependencyFullName.startsWith("java.util")) {
+                externalDependencies = true;
+            }
+            dependencies.add(dependencyFullName);
+            return true;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void parse() throws IOException {
+        project = SyntheticCorpus.generate(Files.createTempDirectory("storage-bench"), numClasses, 50, 8, 42);
+        Path sources = project.resolve("src/main/java");
+        List<String> paths;
+        try (Stream<Path> files = Files.walk(sources)) {
+            paths = files.filter(p -> p.toString().endsWith(".java")).map(Path::toString).collect(Collectors.toList());
+        }
+        ASTParser parser = ASTParser.newParser(AST.JLS10);
+        parser.setResolveBindings(true);
+        parser.setBindingsRecovery(true);
+        Map<String, String> options = JavaCore.getOptions();
+        JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+        parser.setCompilerOptions(options);
+        parser.setEnvironment(null, new String[]{sources.toString()}, null, true);
+        units = new ArrayList<>();
+        parser.createASTs(paths.toArray(new String[0]), null, new String[0], new FileASTRequestor() {
+            @Override
+            public void acceptAST(String sourceFilePath, CompilationUnit cu) {
+                units.add(cu);
+            }
+        }, null);
+        if (units.size() != numClasses) throw new IllegalStateException("Parsed " + units.size() + " of " + numClasses + " classes");
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        SyntheticCorpus.delete(project);
+    }
+
+    private static String getName(CompilationUnit cu) {
+        return ((AbstractTypeDeclaration) cu.types().get(0)).getName().toString();
+    }
+
+    @Benchmark
+    public List<LegacyClassInfo> listStorage() {
+        List<LegacyClassInfo> classes = new ArrayList<>(units.size());
+        for (CompilationUnit cu : units) {
+            LegacyClassInfo classInfo = new LegacyClassInfo(getName(cu), cu.getPackage().getName().toString(), project.toString());
+            cu.accept(classInfo);
+            classes.add(classInfo);
+        }
+        return classes;
+    }
+
+    @Benchmark
+    public List<ClassInfo> symbolStorage() {
+        SymbolTable symbols = new SymbolTable(); //one per analysis, as Analyzer
+        PolicySet policies = PolicySet.legacy(project.toString());
+        List<ClassInfo> classes = new ArrayList<>(units.size());
+        for (CompilationUnit cu : units) {
+            ClassInfo classInfo = new ClassInfo(getName(cu), cu.getPackage().getName().toString(), project.toString(), symbols);
+            classInfo.setPolicies(policies);
+            cu.accept(classInfo);
+            classes.add(classInfo);
+        }
+        return classes;
+    }
+}
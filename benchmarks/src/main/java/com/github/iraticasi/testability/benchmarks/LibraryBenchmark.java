@@ -0,0 +1,85 @@
+package com.github.iraticasi.testability.benchmarks;
+
+import com.github.iraticasi.testability.analyzer.Analyzer;
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import com.github.iraticasi.testability.analyzer.SymbolTable;
+import com.github.iraticasi.testability.report.LibraryMatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmark of the classification of the classes of a project by the libraries they depend on:
+ * one ClassInfo.hasDependency call per class and library against a LibraryMatcher session
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LibraryBenchmark {
+
+    @Param({"4", "200"})
+    public int numLibraries;
+
+    private List<ClassInfo> classes;
+    private SymbolTable symbols;
+    private String[] libraries;
+    private LibraryMatcher substringMatcher, prefixMatcher;
+
+    @Setup(Level.Trial)
+    public void analyze() throws IOException {
+        Path project = SyntheticCorpus.generate(Files.createTempDirectory("library-bench"), 5000, 50, 8, 42);
+        try {
+            Analyzer analyzer = new Analyzer(project.toFile());
+            analyzer.setSyntactic(true);
+            classes = analyzer.analyze();
+            symbols = analyzer.getSymbols();
+        } finally {
+            SyntheticCorpus.delete(project);
+        }
+        String[] base = {"java.io", "java.sql.", "java.net.", "javax"};
+        libraries = new String[numLibraries];
+        for (int i = 0; i < numLibraries; i++) {
+            libraries[i] = i < base.length ? base[i] : "org.example.group" + i + ".";
+        }
+        substringMatcher = new LibraryMatcher(libraries, LibraryMatcher.Mode.SUBSTRING);
+        prefixMatcher = new LibraryMatcher(libraries, LibraryMatcher.Mode.PACKAGE_PREFIX);
+    }
+
+    @Benchmark
+    public int hasDependency() {
+        int matches = 0;
+        for (ClassInfo classInfo : classes) {
+            for (String library : libraries) {
+                if (classInfo.hasDependency(library)) matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int substringMatcher() {
+        return classify(substringMatcher);
+    }
+
+    @Benchmark
+    public int prefixMatcher() {
+        return classify(prefixMatcher);
+    }
+
+    private int classify(LibraryMatcher matcher) {
+        LibraryMatcher.Session session = matcher.newSession(symbols);
+        int matches = 0;
+        for (ClassInfo classInfo : classes) {
+            matches += session.classify(classInfo).cardinality();
+        }
+        return matches;
+    }
+}
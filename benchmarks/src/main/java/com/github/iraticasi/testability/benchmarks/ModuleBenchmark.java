@@ -0,0 +1,57 @@
+package com.github.iraticasi.testability.benchmarks;
+
+import com.github.iraticasi.testability.analyzer.Analyzer;
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmark of the analysis of a multi-module project, parsed as a whole ("flat") or module by module
+ * in dependency order ("modules"), with bindings
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModuleBenchmark {
+
+    @Param({"8"})
+    public int numModules;
+
+    @Param({"250"})
+    public int classesPerModule;
+
+    @Param({"flat", "modules"})
+    public String layout;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Path project;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        project = SyntheticCorpus.generateMultiModule(Files.createTempDirectory("module-bench"), numModules, classesPerModule, 10, 8, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        SyntheticCorpus.delete(project);
+    }
+
+    @Benchmark
+    public List<ClassInfo> analyze() {
+        Analyzer analyzer = new Analyzer(project.toFile());
+        analyzer.setModules(layout.equals("modules"));
+        analyzer.setShards(threads);
+        return analyzer.analyze();
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.iraticasi.testability.benchmarks;
+
+import com.github.iraticasi.testability.analyzer.Analyzer;
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import com.github.iraticasi.testability.analyzer.DependencyGraph;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmark of the construction of the dependency graph and the propagation of the "external" dependencies.
+ * The classes are extracted once from a synthetic project.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PropagationBenchmark {
+
+    @Param({"2000", "20000"})
+    public int numClasses;
+
+    private List<ClassInfo> classes;
+
+    @Setup(Level.Trial)
+    public void analyze() throws IOException {
+        Path project = SyntheticCorpus.generate(Files.createTempDirectory("propagation-bench"), numClasses, 50, 8, 42);
+        try {
+            Analyzer analyzer = new Analyzer(project.toFile());
+            analyzer.setSyntactic(true);
+            classes = analyzer.analyze();
+        } finally {
+            SyntheticCorpus.delete(project);
+        }
+    }
+
+    @Benchmark
+    public int buildAndPropagate() {
+        return new DependencyGraph(classes).propagate();
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.iraticasi.testability.benchmarks;
+
+import com.github.iraticasi.testability.analyzer.SourceScanner;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmark of the walk of the directories of a project to find its source files and tests
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Param({"20000"})
+    public int numClasses;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private Path project;
+    private SourceScanner scanner;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        project = SyntheticCorpus.generate(Files.createTempDirectory("scan-bench"), numClasses, 20, 1, 42);
+        scanner = new SourceScanner();
+        scanner.setParallelism(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        SyntheticCorpus.delete(project);
+    }
+
+    @Benchmark
+    public SourceScanner.Scan scan() {
+        return scanner.scan(project);
+    }
+}
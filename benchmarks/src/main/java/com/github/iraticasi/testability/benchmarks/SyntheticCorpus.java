@@ -0,0 +1,174 @@
+package com.github.iraticasi.testability.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+
+/**
+ * Generates a synthetic java project, so the benchmarks run offline and on the same input every time
+ * <p>
+ * NOTES:
+ * The project has a Maven like layout (src/main/java, src/test/java) with the given number of classes spread
+ * over packages. Each class creates objects of other classes of the project (mostly of its own package),
+ * of java.util and of other JDK packages, so all the ways of resolving a dependency are exercised,
+ * and a fraction of the classes have a dedicated test.
+ * The same size and seed always generate the same project.
+ * */
+
+public class SyntheticCorpus {
+
+    private static final String[] JDK_TYPES = {
+            "java.util.ArrayList", "java.util.HashMap", "java.lang.StringBuilder",
+            "java.io.ByteArrayOutputStream", "java.net.CookieManager", "java.sql.SQLException", "java.util.concurrent.ConcurrentHashMap"};
+
+    /**
+     * Generates a project
+     * @param root folder of the project (created if it does not exist)
+     * @param numClasses number of classes
+     * @param classesPerPackage number of classes of each package
+     * @param dependenciesPerClass number of object creations of each class
+     * @param seed seed of the random choices
+     * @return the folder of the project
+     */
+    public static Path generate(Path root, int numClasses, int classesPerPackage, int dependenciesPerClass, long seed) {
+        Random random = new Random(seed);
+        int numPackages = (numClasses + classesPerPackage - 1) / classesPerPackage;
+        try {
+            for (int i = 0; i < numClasses; i++) {
+                int pkg = i / classesPerPackage;
+                StringBuilder source = new StringBuilder();
+                source.append("package org.apache.synthetic.p").append(pkg).append(";\n\n");
+                source.append("import java.util.*;\n");
+                int importedPkg = random.nextInt(numPackages);
+                source.append("import org.apache.synthetic.p").append(importedPkg).append(".*;\n\n");
+                source.append("public class C").append(i).append(" {\n");
+                source.append("    public void run() {\n");
+                for (int d = 0; d < dependenciesPerClass; d++) {
+                    int kind = random.nextInt(10);
+                    source.append("        Object o").append(d).append(" = new ");
+                    if (kind < 5) { //same package
+                        source.append('C').append(pkg * classesPerPackage + random.nextInt(Math.min(classesPerPackage, numClasses - pkg * classesPerPackage)));
+                    } else if (kind < 7) { //other package, fully qualified
+                        int other = random.nextInt(numClasses);
+                        source.append("org.apache.synthetic.p").append(other / classesPerPackage).append(".C").append(other);
+                    } else { //JDK
+                        String type = JDK_TYPES[random.nextInt(JDK_TYPES.length)];
+                        source.append(type.startsWith("java.util.") && type.indexOf('.', 10) < 0 ? type.substring(10) : type);
+                    }
+                    source.append("();\n");
+                }
+                source.append("    }\n}\n");
+                write(root.resolve("src/main/java/org/apache/synthetic/p" + pkg + "/C" + i + ".java"), source.toString());
+                if (random.nextInt(3) == 0) {
+                    write(root.resolve("src/test/java/org/apache/synthetic/p" + pkg + "/C" + i + "Test.java"),
+                            "package org.apache.synthetic.p" + pkg + ";\n\npublic class C" + i + "Test {\n}\n");
+                }
+            }
+            write(root.resolve("pom.xml"), "<project/>\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return root;
+    }
+
+    /**
+     * Generates a multi-module Maven project: a parent pom and modules m0..mN, each with a pom and a project
+     * generated as by generate. Module mI depends on m((I-1)/2) (a binary tree, so the modules of each level are independent),
+     * and its classes also create objects of classes of that module
+     * @param root folder of the project (created if it does not exist)
+     * @param numModules number of modules
+     * @param classesPerModule number of classes of each module
+     * @param classesPerPackage number of classes of each package
+     * @param dependenciesPerClass number of object creations of each class
+     * @param seed seed of the random choices
+     * @return the folder of the project
+     */
+    public static Path generateMultiModule(Path root, int numModules, int classesPerModule, int classesPerPackage,
+                                           int dependenciesPerClass, long seed) {
+        Random random = new Random(seed);
+        try {
+            StringBuilder parent = new StringBuilder("<project>\n    <artifactId>synthetic-parent</artifactId>\n    <modules>\n");
+            for (int m = 0; m < numModules; m++) {
+                parent.append("        <module>m").append(m).append("</module>\n");
+                Path module = root.resolve("m" + m);
+                generate(module, classesPerModule, classesPerPackage, dependenciesPerClass, seed + m);
+                StringBuilder pom = new StringBuilder("<project>\n    <parent>\n        <artifactId>synthetic-parent</artifactId>\n    </parent>\n");
+                pom.append("    <artifactId>synthetic-m").append(m).append("</artifactId>\n");
+                if (m > 0) {
+                    pom.append("    <dependencies>\n        <dependency>\n            <artifactId>synthetic-m").append((m - 1) / 2)
+                            .append("</artifactId>\n        </dependency>\n    </dependencies>\n");
+                }
+                write(module.resolve("pom.xml"), pom.append("</project>\n").toString());
+                //move the packages of the module under its own name, so the modules do not share packages
+                Path sources = module.resolve("src/main/java/org/apache/synthetic");
+                Path moved = module.resolve("src/main/java/org/apache/synthetic/m" + m);
+                Files.createDirectories(moved);
+                try (DirectoryStream<Path> packages = Files.newDirectoryStream(sources, "p*")) {
+                    for (Path pkg : packages) Files.move(pkg, moved.resolve(pkg.getFileName()));
+                }
+                Path tests = module.resolve("src/test/java/org/apache/synthetic");
+                if (Files.isDirectory(tests)) {
+                    Path movedTests = tests.resolve("m" + m);
+                    Files.createDirectories(movedTests);
+                    try (DirectoryStream<Path> packages = Files.newDirectoryStream(tests, "p*")) {
+                        for (Path pkg : packages) Files.move(pkg, movedTests.resolve(pkg.getFileName()));
+                    }
+                }
+                int index = m;
+                Files.walkFileTree(module.resolve("src"), new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        String source = new String(Files.readAllBytes(file), StandardCharsets.UTF_8)
+                                .replace("org.apache.synthetic.p", "org.apache.synthetic.m" + index + ".p");
+                        if (index > 0 && !file.getFileName().toString().endsWith("Test.java")) {
+                            //creations of classes of the module it depends on
+                            int other = random.nextInt(classesPerModule);
+                            source = source.replace("    public void run() {\n", "    public void run() {\n        Object upstream = new org.apache.synthetic.m"
+                                    + ((index - 1) / 2) + ".p" + (other / classesPerPackage) + ".C" + other + "();\n");
+                        }
+                        Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+            write(root.resolve("pom.xml"), parent.append("    </modules>\n</project>\n").toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return root;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deletes a generated project
+     * @param root folder of the project
+     */
+    public static void delete(Path root) {
+        if (root == null || !Files.exists(root)) return;
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
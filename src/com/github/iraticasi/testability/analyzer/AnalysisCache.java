@@ -0,0 +1,332 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Persistent cache of the info extracted from each java source file, so only the changed files are parsed again
+ * <p>
+ * NOTES:
+ * An entry is keyed by the path of the file and the SHA-1 hash of its content, and the whole cache is discarded
+ * if it was written by another version of the analyzer or for other source roots (the ones the bindings are
+ * resolved with, so adding a package does not discard it).
+ * When the set of java files (i.e. of declared top level types) changes, a dependency may resolve to another type:
+ * the ones not resolved in a file ("<not resolve>" package) may be resolved, and a type added or removed may shadow
+ * or uncover another type with the same simple name (e.g. of the same package and of an on demand import).
+ * So the entries with dependencies not resolved, or with a dependency whose name has the simple name of a type
+ * added or removed (the cached paths against the current ones), are discarded.
+ * It stores the info before spreading the "external" dependencies, which is always recomputed.
+ * File format (big endian):
+ * - header: magic, format version, analyzer version, hash of the source roots, hash of the java files paths
+ * - string table: number of strings, and each one as length + UTF-8 bytes
+ * - entries: number of entries, and each one as path (string id), content hash, whether it has a class and,
+ *   if so, name, package (string ids), whether it is directly external, number of distinct dependencies and,
+ *   for each one, its name, its package (string ids) and its number of violations
+ * */
+
+public class AnalysisCache {
+
+    public static final int ANALYZER_VERSION = 2; //increase when the extracted info changes
+    private static final int MAGIC = 0x54535443; //"TSTC"
+    private static final int FORMAT_VERSION = 3;
+    private static final int HASH_LENGTH = 20;
+
+    private File file; //file of the cache
+    private long rootsHash; //hash of the source roots of the cached entries
+    private long typesHash; //hash of the java files paths of the cached entries
+    private Map<String, Entry> entries = new ConcurrentHashMap<>(); //path of the java file -> entry
+    private int hits = 0, misses = 0; //lookups statistics
+
+    /**
+     * Creates a cache stored in a file
+     * @param file file of the cache (it does not need to exist)
+     */
+    public AnalysisCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the cache from its file, discarding it if it is not valid for these source roots, and the entries whose
+     * dependencies may resolve to other types if the java files are not the same
+     * @param sourceRoots source roots of the project
+     * @param sourceFilePaths paths of the java source files of the project
+     * @throws IOException if the file can not be read
+     */
+    public void load(String[] sourceRoots, List<String> sourceFilePaths) throws IOException {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+        rootsHash = hashPaths(Arrays.asList(sourceRoots));
+        typesHash = hashPaths(sourceFilePaths);
+        if (!file.exists()) return;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 28 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+                    || buffer.getInt() != ANALYZER_VERSION || buffer.getLong() != rootsHash) {
+                return; //invalid or stale cache
+            }
+            boolean sameTypes = buffer.getLong() == typesHash;
+            //string table
+            String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            //entries
+            Map<String, Entry> loaded = new HashMap<>();
+            int numEntries = buffer.getInt();
+            for (int i = 0; i < numEntries; i++) {
+                String path = strings[buffer.getInt()];
+                byte[] hash = new byte[HASH_LENGTH];
+                buffer.get(hash);
+                Entry entry = new Entry(hash);
+                if (buffer.get() != 0) {
+                    entry.name = strings[buffer.getInt()];
+                    entry.pkg = strings[buffer.getInt()];
+                    entry.directExternal = buffer.get() != 0;
+                    int numDependencies = buffer.getInt();
+                    entry.dependencies = new String[numDependencies];
+                    entry.dependencyPkgs = new String[numDependencies];
+                    entry.counts = new int[numDependencies];
+                    for (int j = 0; j < numDependencies; j++) {
+                        entry.dependencies[j] = strings[buffer.getInt()];
+                        entry.dependencyPkgs[j] = strings[buffer.getInt()];
+                        entry.counts[j] = buffer.getInt();
+                    }
+                }
+                loaded.put(path, entry);
+            }
+            if (!sameTypes) {
+                Set<String> changedTypes = getChangedTypes(loaded.keySet(), sourceFilePaths);
+                loaded.values().removeIf(entry -> entry.name != null && mayResolveAgain(entry, changedTypes)); //parse them again
+            }
+            entries.putAll(loaded);
+        } catch (RuntimeException e) { //truncated or corrupted file
+            entries.clear();
+        }
+    }
+
+    /**
+     * Get the simple names of the top level types added or removed, from the names of the java files
+     * @param cachedPaths paths of the cached java files
+     * @param sourceFilePaths paths of the current java files
+     * @return names of the types whose files are only in one of them
+     */
+    static Set<String> getChangedTypes(Collection<String> cachedPaths, Collection<String> sourceFilePaths) {
+        Set<String> cached = new HashSet<>(cachedPaths), current = new HashSet<>(sourceFilePaths);
+        Set<String> changedTypes = new HashSet<>();
+        for (String path : cached) if (!current.contains(path)) changedTypes.add(typeOf(path));
+        for (String path : current) if (!cached.contains(path)) changedTypes.add(typeOf(path));
+        return changedTypes;
+    }
+
+    private static String typeOf(String path) {
+        String name = new File(path).getName();
+        return name.endsWith(".java") ? name.substring(0, name.length() - ".java".length()) : name;
+    }
+
+    /**
+     * Check if the dependencies of a cached entry may be resolved to other types once some types are added or removed
+     * @param entry the entry
+     * @param changedTypes simple names of the types added or removed
+     * @return whether some dependency is not resolved or has a segment with one of those names
+     */
+    private static boolean mayResolveAgain(Entry entry, Set<String> changedTypes) {
+        for (int i = 0; i < entry.dependencies.length; i++) {
+            if (entry.dependencyPkgs[i].equals("<not resolve>")) return true;
+            String dependency = entry.dependencies[i];
+            int typeArguments = dependency.indexOf('<');
+            if (typeArguments >= 0) dependency = dependency.substring(0, typeArguments);
+            for (String segment : dependency.split("\\.")) {
+                if (changedTypes.contains(segment)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the cache to its file, keeping only the entries of the given files
+     * @param sourceFilePaths paths of the current java source files
+     * @throws IOException if the file can not be written
+     */
+    public void save(List<String> sourceFilePaths) throws IOException {
+        //string table
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        List<String> paths = new ArrayList<>();
+        for (String path : sourceFilePaths) {
+            Entry entry = entries.get(path);
+            if (entry == null) continue;
+            paths.add(path);
+            ids.putIfAbsent(path, ids.size());
+            if (entry.name != null) {
+                ids.putIfAbsent(entry.name, ids.size());
+                ids.putIfAbsent(entry.pkg, ids.size());
+                for (String dependency : entry.dependencies) ids.putIfAbsent(dependency, ids.size());
+                for (String dependencyPkg : entry.dependencyPkgs) ids.putIfAbsent(dependencyPkg, ids.size());
+            }
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(ANALYZER_VERSION);
+            out.writeLong(rootsHash);
+            out.writeLong(typesHash);
+            out.writeInt(ids.size());
+            for (String string : ids.keySet()) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(paths.size());
+            for (String path : paths) {
+                Entry entry = entries.get(path);
+                out.writeInt(ids.get(path));
+                out.write(entry.hash);
+                out.writeBoolean(entry.name != null);
+                if (entry.name != null) {
+                    out.writeInt(ids.get(entry.name));
+                    out.writeInt(ids.get(entry.pkg));
+                    out.writeBoolean(entry.directExternal);
+                    out.writeInt(entry.dependencies.length);
+                    for (int j = 0; j < entry.dependencies.length; j++) {
+                        out.writeInt(ids.get(entry.dependencies[j]));
+                        out.writeInt(ids.get(entry.dependencyPkgs[j]));
+                        out.writeInt(entry.counts[j]);
+                    }
+                }
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Look up the cached info of a java file
+     * @param path path of the java file
+     * @param hash hash of its current content
+     * @return the entry, or null if the file is not cached or it has changed
+     */
+    public synchronized Entry lookup(String path, byte[] hash) {
+        Entry entry = entries.get(path);
+        if (entry != null && Arrays.equals(entry.hash, hash)) {
+            hits++;
+            return entry;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Store the info extracted from a java file
+     * @param path path of the java file
+     * @param hash hash of its content
+     * @param classInfo info of its class (null if it has no class to analyze)
+     */
+    public void put(String path, byte[] hash, ClassInfo classInfo) {
+        Entry entry = new Entry(hash);
+        if (classInfo != null) {
+            entry.name = classInfo.getName();
+            entry.pkg = classInfo.getPkg();
+            entry.directExternal = classInfo.hasDirectExternalDependencies();
+            SymbolTable symbols = classInfo.getSymbols();
+            int[] dependencyIds = classInfo.getDependencyIds();
+            entry.dependencies = new String[dependencyIds.length];
+            entry.dependencyPkgs = new String[dependencyIds.length];
+            for (int i = 0; i < dependencyIds.length; i++) {
+                entry.dependencies[i] = symbols.getName(dependencyIds[i]);
+                int pkgId = symbols.getPackage(dependencyIds[i]);
+                entry.dependencyPkgs[i] = pkgId < 0 ? "" : symbols.getName(pkgId);
+            }
+            entry.counts = classInfo.getDependencyCounts().clone();
+        }
+        entries.put(path, entry);
+    }
+
+    /**
+     *
+     * @return number of lookups that found the file unchanged
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     *
+     * @return number of lookups of new or changed files
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     *
+     * @return ratio of lookups that found the file unchanged
+     */
+    public double getHitRatio() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * Hash the content of a file
+     * @param path path of the file
+     * @return SHA-1 hash of the file
+     * @throws IOException if the file can not be read
+     */
+    public static byte[] hash(String path) throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(Files.readAllBytes(Paths.get(path)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long hashPaths(List<String> paths) {
+        List<String> sorted = new ArrayList<>(paths);
+        Collections.sort(sorted);
+        long hash = 1125899906842597L;
+        for (String path : sorted) {
+            for (int i = 0; i < path.length(); i++) hash = 31 * hash + path.charAt(i);
+            hash = 31 * hash + '\n';
+        }
+        return hash;
+    }
+
+    /**
+     * Cached info of a java file
+     */
+    public static class Entry {
+
+        private byte[] hash; //hash of the content of the file
+        private String name, pkg; //class of the file (null if it has no class to analyze)
+        private boolean directExternal;
+        private String[] dependencies, dependencyPkgs; //distinct dependencies names and packages
+        private int[] counts; //number of violations of each dependency
+
+        private Entry(byte[] hash) {
+            this.hash = hash;
+        }
+
+        /**
+         * Recreates the info of the class of the file
+         * @param project name of its project
+         * @param symbols interned names of the project
+         * @return info of the class (null if the file has no class to analyze)
+         */
+        public ClassInfo toClassInfo(String project, SymbolTable symbols) {
+            if (name == null) return null;
+            return new ClassInfo(name, pkg, project, symbols, dependencies, dependencyPkgs, counts, directExternal);
+        }
+    }
+}
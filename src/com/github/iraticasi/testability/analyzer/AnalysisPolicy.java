@@ -0,0 +1,234 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.Function;
+
+
+/**
+ * Rules that decide which dependencies are directly "external"
+ * <p>
+ * NOTES:
+ * A rules file has a rule per line (# starts a comment):
+ * - name NAME: name of the policy (the file name without extension by default)
+ * - allow PREFIX: dependencies in that package (or its subpackages) are not external
+ * - deny PREFIX: dependencies in that package (or its subpackages) are external
+ * - value PREFIX: value types (e.g. java.time or java.lang.String), whose creation is not external
+ * - allow-infix TEXT: dependencies whose full name contains the text are not external
+ * - root auto|PACKAGE: the root package of the project is not external; auto takes the dominant package of
+ *   the source files (see detectRootPackage)
+ * - same-package internal|external: whether dependencies of the same package as the class are not external
+ * - default internal|external: what the rest of the dependencies are (external by default)
+ * A prefix ending with * matches any name that starts with it, not only at package boundaries.
+ * ${project} in a prefix or text is replaced by the project (as given to ClassInfo).
+ * The longest matching prefix decides (the last rule if several are equal); the infix rules and the default
+ * only decide when no prefix matches.
+ * The legacy policy is the original rule of the tool: a dependency is external unless its name starts with
+ * java.util or contains org.apache.PROJECT.
+ * */
+
+public class AnalysisPolicy {
+
+    public static final String LEGACY_RULES = "name legacy\nallow java.util*\nallow-infix org.apache.${project}\n";
+
+    enum Kind {ALLOW, DENY, VALUE}
+
+    /**
+     * A prefix rule
+     */
+    static class Rule {
+        final Kind kind;
+        final String prefix;
+        final boolean raw;
+
+        Rule(Kind kind, String prefix, boolean raw) {
+            this.kind = kind;
+            this.prefix = prefix;
+            this.raw = raw;
+        }
+    }
+
+    private String name;
+    private List<Rule> rules = new ArrayList<>();
+    private List<String> allowedInfixes = new ArrayList<>();
+    private String root; //root package of the project ("auto" to detect it, null if not internal)
+    private boolean samePackageInternal = false;
+    private boolean defaultExternal = true;
+
+    private AnalysisPolicy(String name) {
+        this.name = name;
+    }
+
+    /**
+     *
+     * @return the original rule of the tool
+     */
+    public static AnalysisPolicy legacy() {
+        try {
+            return read("legacy", new StringReader(LEGACY_RULES));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read a rules file
+     * @param file the file
+     * @return the policy
+     * @throws IOException if the file can not be read
+     * @throws IllegalArgumentException if a rule is not valid
+     */
+    public static AnalysisPolicy read(File file) throws IOException {
+        String name = file.getName().replaceFirst("\\.[^.]*$", "");
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return read(name, reader);
+        }
+    }
+
+    /**
+     * Read rules
+     * @param name name of the policy (unless the rules give one)
+     * @param reader reader of the rules
+     * @return the policy
+     * @throws IOException if the rules can not be read
+     * @throws IllegalArgumentException if a rule is not valid
+     */
+    public static AnalysisPolicy read(String name, Reader reader) throws IOException {
+        AnalysisPolicy policy = new AnalysisPolicy(name);
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            String[] parts = line.split("\\s+");
+            if (parts.length != 2) throw new IllegalArgumentException("Rule " + number + " of " + name + " is not 'keyword argument': " + line);
+            String argument = parts[1];
+            switch (parts[0]) {
+                case "name":
+                    policy.name = argument;
+                    break;
+                case "allow":
+                    policy.addRule(Kind.ALLOW, argument);
+                    break;
+                case "deny":
+                    policy.addRule(Kind.DENY, argument);
+                    break;
+                case "value":
+                    policy.addRule(Kind.VALUE, argument);
+                    break;
+                case "allow-infix":
+                    policy.allowedInfixes.add(argument);
+                    break;
+                case "root":
+                    policy.root = argument;
+                    break;
+                case "same-package":
+                    policy.samePackageInternal = parseInternal(argument, number, name);
+                    break;
+                case "default":
+                    policy.defaultExternal = !parseInternal(argument, number, name);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown rule " + parts[0] + " in line " + number + " of " + name);
+            }
+        }
+        return policy;
+    }
+
+    private static boolean parseInternal(String argument, int number, String name) {
+        if (argument.equals("internal")) return true;
+        if (argument.equals("external")) return false;
+        throw new IllegalArgumentException("Expected internal or external in line " + number + " of " + name);
+    }
+
+    private void addRule(Kind kind, String prefix) {
+        boolean raw = prefix.endsWith("*");
+        rules.add(new Rule(kind, raw ? prefix.substring(0, prefix.length() - 1) : prefix, raw));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    List<Rule> getRules() {
+        return rules;
+    }
+
+    List<String> getAllowedInfixes() {
+        return allowedInfixes;
+    }
+
+    /**
+     *
+     * @return root package of the project that is not external ("auto" to detect it, null if none)
+     */
+    String getRoot() {
+        return root;
+    }
+
+    /**
+     *
+     * @return whether dependencies of the same package as the class are not external
+     */
+    public boolean isSamePackageInternal() {
+        return samePackageInternal;
+    }
+
+    /**
+     *
+     * @return whether the dependencies no rule matches are external
+     */
+    public boolean isDefaultExternal() {
+        return defaultExternal;
+    }
+
+    /**
+     * Detect the root package of a project: the deepest package (of at least two segments) that contains
+     * more than half of the source files
+     * @param sourceFilePaths paths of the source files of the project
+     * @return the root package (null if there is no dominant package)
+     */
+    public static String detectRootPackage(List<String> sourceFilePaths) {
+        return detectRootPackage(sourceFilePaths, Analyzer::readPackage);
+    }
+
+    /**
+     * Detect the root package of a project, reading the packages of its files from elsewhere (e.g. git objects)
+     * @param sourceFilePaths paths of the source files of the project
+     * @param packageReader package of a source file (null if it has no package declaration)
+     * @return the root package (null if there is no dominant package)
+     */
+    public static String detectRootPackage(List<String> sourceFilePaths, Function<String, String> packageReader) {
+        //files of each package and its ancestors (the package is read once per directory)
+        Map<String, String> dirPackages = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        int total = 0;
+        for (String path : sourceFilePaths) {
+            String dir = new File(path).getParent();
+            String pkg = dirPackages.computeIfAbsent(dir == null ? "" : dir, k -> {
+                String read = packageReader.apply(path);
+                return read == null ? "" : read;
+            });
+            if (pkg.isEmpty()) continue;
+            total++;
+            for (int end = pkg.indexOf('.'); ; end = pkg.indexOf('.', end + 1)) {
+                counts.merge(end < 0 ? pkg : pkg.substring(0, end), 1, Integer::sum);
+                if (end < 0) break;
+            }
+        }
+        String root = null;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            String pkg = entry.getKey();
+            if (2 * entry.getValue() > total && pkg.indexOf('.') > 0 && (root == null || pkg.length() > root.length())) {
+                root = pkg; //prefixes with a majority are nested, so the longest is the deepest
+            }
+        }
+        return root;
+    }
+}
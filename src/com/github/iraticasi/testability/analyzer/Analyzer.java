@@ -1,14 +1,21 @@
 package com.github.iraticasi.testability.analyzer;
 
+import com.github.iraticasi.testability.metrics.Metrics;
+import com.github.iraticasi.testability.metrics.ProjectMetrics;
 import com.opencsv.CSVWriter;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.dom.*;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.*;
 
 
 /**
@@ -23,10 +30,42 @@ import java.util.*;
 
 public class Analyzer {
 
+    /**
+     * How the facts of the classes are extracted
+     */
+    public enum Engine {
+        SOURCE, //parsing the java files with JDT
+        BYTECODE //reading the compiled classes (see BytecodeEngine)
+    }
+
     private File project; //Base folder of the project
+    private SourceScanner scanner = new SourceScanner(); //finds the java files of the project
+    private SourceScanner.Scan scan; //java files of the project
     private List<String> sourceFilePaths; //Source files paths
     private List<String> sourceDirPaths; //Directories paths that contain source file
     private List<ClassInfo> classes; //project classes
+    private SymbolTable symbols; //interned names of the classes and dependencies of the project
+    private DependencyGraph graph; //dependencies between project classes
+    private CompactGraph compactGraph; //ids of the classes handed over to the handler (null if they are listed)
+    private int shards = 1; //number of batches the source files are parsed in
+    private boolean syntactic = false; //whether dependencies are resolved without bindings when possible
+    private TypeIndex typeIndex; //types of the project, to resolve dependencies without bindings
+    private AnalysisCache cache; //info extracted from each java file in previous analysis (null if not cached)
+    private Map<String, byte[]> fileHashes; //hashes of the java files being analyzed with cache
+    private ClassInfoHandler handler; //receives the classes as they are parsed (null if they are only listed)
+    private ProjectMetrics metrics; //metrics of the analysis (null if metrics are disabled)
+    private EdgeSink edgeSink; //receives the object creations of each class (null if they are not recorded)
+    private boolean modules = false; //whether the files are parsed per module, in dependency order
+    private ModuleLayout layout; //modules of the project (null if they are not detected)
+    private String[] sourceRoots; //source roots of the project, inferred from the package declarations
+    private List<AnalysisPolicy> policies = Collections.singletonList(AnalysisPolicy.legacy()); //rules of the "external" dependencies
+    private PolicySet policySet; //policies compiled for the project
+    private Engine engine = Engine.SOURCE; //how the facts of the classes are extracted
+    private List<File> classInputs; //class directories and jars of the bytecode engine (null to find them in the project)
+    private double sampleFraction = 1; //fraction of the source files analyzed in each package
+    private long sampleBudget = 0; //time to grow the sample in, in milliseconds (0 if the sample is a fixed fraction)
+    private long sampleSeed = 0;
+    private SourceSample sample; //source files analyzed, if they are a sample (null if all of them are analyzed)
 
     /**
      * Creates a analyzer for a project
@@ -42,30 +81,492 @@ public class Analyzer {
      * @return list of all java source files info
      */
     public List<ClassInfo> analyze() {
-        sourceFilePaths = new ArrayList<>();
-        sourceDirPaths = new ArrayList<>();
-        findAllClasses(project,sourceFilePaths, sourceDirPaths);
-        this.parseClasses();;
-        this.spreadExternalDependencies();
+        this.run();
         return classes;
     }
 
     /**
-     * Parse all the java source files in the project
+     * Analyze all java source files in the project, handing over each class to a handler instead of keeping it.
+     * Only a compact graph of ids is kept (see CompactGraph), and the "external" dependencies are spread over it
+     * once all the classes are parsed, so the classes and their dependency graph are not available afterwards
+     * (getDependencyGraph is null). The bytecode engine still reads all the class files before handing them over
+     * @param handler receiver of the classes, called as each one is parsed and once with the compact graph
+     */
+    public void analyze(ClassInfoHandler handler) {
+        this.handler = handler;
+        try {
+            this.run();
+        } finally {
+            this.handler = null;
+        }
+        handler.analyzed(compactGraph);
+    }
+
+    private void run() {
+        metrics = Metrics.forProject(project.toString());
+        long time = System.nanoTime(), start = time;
+        symbols = new SymbolTable();
+        graph = null;
+        compactGraph = handler == null ? null : new CompactGraph(symbols);
+        scan = scanner.scan(project.toPath());
+        sourceFilePaths = scan.getSourceFilePaths();
+        sourceDirPaths = scan.getSourceDirPaths();
+        sourceRoots = null;
+        layout = modules ? ModuleLayout.detect(project, scan.getBuildFilePaths(), sourceFilePaths) : null;
+        policySet = PolicySet.compile(policies, project.toString(), sourceFilePaths);
+        if (metrics != null) {
+            time = metrics.time(ProjectMetrics.Phase.SCAN, time);
+            metrics.add(ProjectMetrics.Counter.FILES_SCANNED, sourceFilePaths.size());
+        }
+        sample = null;
+        if (engine == Engine.BYTECODE) {
+            this.readClassFiles();
+        } else if (sampleFraction < 1 || sampleBudget > 0) {
+            this.parseSample(start + sampleBudget * 1000000);
+        } else if (cache == null || edgeSink != null) {
+            this.parseClasses(sourceFilePaths);
+        } else {
+            this.parseChangedClasses();
+        }
+        if (metrics != null) time = metrics.time(ProjectMetrics.Phase.PARSE, time);
+        this.spreadExternalDependencies();
+        if (metrics != null) {
+            metrics.time(ProjectMetrics.Phase.PROPAGATION, time);
+            this.addCounters();
+        }
+    }
+
+    /**
+     * Add the counters of the analysis to its metrics
+     */
+    private void addCounters() {
+        long bindingNanos = 0;
+        if (compactGraph != null) bindingNanos = compactGraph.getBindingNanos();
+        else for (ClassInfo classInfo : classes) bindingNanos += classInfo.getBindingNanos();
+        metrics.addNanos(ProjectMetrics.Phase.BINDINGS, bindingNanos); //part of the parse time
+        metrics.add(ProjectMetrics.Counter.SYNTACTIC_RESOLVED, getSyntacticResolved());
+        metrics.add(ProjectMetrics.Counter.BINDING_RESOLVED, getBindingResolved());
+        metrics.add(ProjectMetrics.Counter.UNRESOLVED, getUnresolved());
+        metrics.add(ProjectMetrics.Counter.CLASSES, compactGraph != null ? compactGraph.size() : graph.size());
+        metrics.add(ProjectMetrics.Counter.EDGES, compactGraph != null ? compactGraph.numEdges() : graph.numEdges());
+        if (cache != null) {
+            metrics.add(ProjectMetrics.Counter.CACHE_HITS, cache.getHits());
+            metrics.add(ProjectMetrics.Counter.CACHE_MISSES, cache.getMisses());
+        }
+    }
+
+    /**
+     * Set the scanner used to find the java files of the project
+     * @param scanner the scanner
+     */
+    public void setScanner(SourceScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    /**
+     *
+     * @return java files found in the project (null if the project has not been analyzed)
+     */
+    public SourceScanner.Scan getScan() {
+        return scan;
+    }
+
+    /**
+     * Set a cache of the info extracted from each java file, so only new and changed files are parsed
+     * @param cacheFile file of the cache (it does not need to exist)
+     */
+    public void setCache(File cacheFile) {
+        this.cache = new AnalysisCache(cacheFile);
+    }
+
+    /**
+     *
+     * @return cache of the info extracted from each java file (null if there is no cache)
+     */
+    public AnalysisCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Set a receiver of the object creations (edges) of each class, with their location.
+     * The cache is not used while it is set, since edges are only recorded for the parsed files
+     * @param edgeSink the receiver (null to not record edges)
+     */
+    public void setEdgeSink(EdgeSink edgeSink) {
+        this.edgeSink = edgeSink;
+    }
+
+    /**
+     * Take from the cache the info of the unchanged java source files and parse the rest of them
+     */
+    private void parseChangedClasses() {
+        List<ClassInfo> cachedClasses = new ArrayList<>();
+        List<String> changedPaths = new ArrayList<>();
+        try {
+            cache.load(getEnvironment(), sourceFilePaths);
+            fileHashes = new HashMap<>();
+            for (String path : sourceFilePaths) {
+                byte[] hash = AnalysisCache.hash(path);
+                fileHashes.put(path, hash);
+                AnalysisCache.Entry entry = cache.lookup(path, hash);
+                if (entry == null) {
+                    changedPaths.add(path);
+                } else {
+                    ClassInfo classInfo = entry.toClassInfo(project.toString(), symbols);
+                    if (classInfo != null) {
+                        setModule(classInfo, path);
+                        classInfo.applyPolicies(policySet); //the policies may have changed since it was cached
+                        if (!handOver(classInfo, path)) cachedClasses.add(classInfo);
+                    }
+                }
+            }
+            this.parseClasses(changedPaths);
+            classes.addAll(cachedClasses);
+            cache.save(sourceFilePaths);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error using the analysis cache of " + project, e);
+        } finally {
+            fileHashes = null;
+        }
+    }
+
+    /**
+     * Set the number of batches the source files are split into to be parsed in parallel
+     * @param shards number of batches (1 parses all the files in a single batch)
+     */
+    public void setShards(int shards) {
+        this.shards = Math.max(1, shards);
+    }
+
+    /**
+     * Set whether the source files are parsed per module (see ModuleLayout), in dependency order:
+     * each module is parsed with its own source roots, and the modules it depends on are found through
+     * their compiled classes if they have been built (through their source roots otherwise).
+     * Independent modules are parsed in parallel, in as many threads as shards.
+     * The classes get the name of their module, and the report a module column
+     * @param modules whether to parse per module
+     */
+    public void setModules(boolean modules) {
+        this.modules = modules;
+    }
+
+    /**
+     *
+     * @return modules of the project (null if they are not detected or the project has not been analyzed)
+     */
+    public ModuleLayout getModuleLayout() {
+        return layout;
+    }
+
+    /**
+     * Set how the facts of the classes are extracted: parsing the sources (by default) or reading the compiled
+     * classes, which is much faster but needs the project to be built (see BytecodeEngine).
+     * The bytecode engine does not use the cache nor record edges
+     * @param engine the engine
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Set the class directories and jars read by the bytecode engine
+     * @param classInputs class directories and jars (null to find the build outputs of the project,
+     *                    see BytecodeEngine.findClassInputs)
+     */
+    public void setClassInputs(List<File> classInputs) {
+        this.classInputs = classInputs;
+    }
+
+    /**
+     * Read the classes of the project from its compiled classes
+     */
+    private void readClassFiles() {
+        if (edgeSink != null) throw new IllegalStateException("Edges are not recorded by the bytecode engine");
+        List<File> inputs = classInputs != null ? classInputs : BytecodeEngine.findClassInputs(project, scan.getBuildFilePaths());
+        BytecodeEngine bytecodeEngine = new BytecodeEngine();
+        bytecodeEngine.setParallelism(Math.max(shards, Runtime.getRuntime().availableProcessors()));
+        List<ClassInfo> read = bytecodeEngine.analyze(inputs, project.toString(), symbols, policySet, (classInfo, classFilePath) -> {
+            setModule(classInfo, classFilePath);
+            handOver(classInfo, classFilePath);
+        });
+        this.classes = handler == null ? read : new ArrayList<>();
+        if (metrics != null) {
+            metrics.add(ProjectMetrics.Counter.FILES_PARSED, bytecodeEngine.getNumFiles());
+            metrics.add(ProjectMetrics.Counter.BYTES_PARSED, bytecodeEngine.getNumBytes());
+        }
+    }
+
+    /**
+     * Analyze a random sample of the source files instead of all of them, stratified by package (see SourceSample).
+     * Classes that depend on classes of the project out of the sample are assumed to be "external" (so the external
+     * classes are over-estimated, never missed), and the rest of the analysis only covers the sample.
+     * The cache is not used while sampling
+     * @param fraction fraction of the files of each package (1 analyzes all the files)
+     * @param seed seed of the sample
+     */
+    public void setSampling(double fraction, long seed) {
+        this.sampleFraction = Math.max(0, Math.min(1, fraction));
+        this.sampleSeed = seed;
+    }
+
+    /**
+     * Set a time budget to analyze a sample in: a pilot sample (the fraction of setSampling, or 5%) is parsed
+     * first, and then the sample is grown with as many files as the rest of the budget allows at the pilot rate
+     * @param millis the budget, in milliseconds (0 to analyze only the fraction of setSampling)
+     */
+    public void setSampleBudget(long millis) {
+        this.sampleBudget = Math.max(0, millis);
+    }
+
+    /**
+     *
+     * @return the sample of the last analysis (null if all the source files were analyzed)
+     */
+    public SourceSample getSample() {
+        return sample;
+    }
+
+    /**
+     * Parse a sample of the source files of the project
+     * @param deadline time to stop growing the sample at (System.nanoTime; only used with a time budget)
+     */
+    private void parseSample(long deadline) {
+        sample = SourceSample.stratify(sourceFilePaths, sampleSeed);
+        double pilot = sampleBudget > 0 && sampleFraction >= 1 ? 0.05 : sampleFraction;
+        List<String> files = sample.grow(pilot);
+        long start = System.nanoTime();
+        this.parseClasses(files);
+        if (sampleBudget > 0 && !sample.isComplete()) {
+            List<ClassInfo> parsed = classes;
+            long now = System.nanoTime();
+            double nanosPerFile = (now - start) / (double) Math.max(1, files.size());
+            long remaining = deadline - now;
+            List<String> more = sample.growBy((int) Math.min(Integer.MAX_VALUE, remaining / nanosPerFile));
+            if (!more.isEmpty()) {
+                this.parseClasses(more);
+                parsed.addAll(classes);
+            }
+            this.classes = parsed;
+        }
+    }
+
+    /**
+     * Find the classes that depend on classes of the project out of the sample
+     * @return their ids in the dependency graph (or in the compact graph, if the classes are handed over)
+     */
+    private BitSet findOutOfSampleDependents() {
+        Set<String> unsampled = sample.getUnsampledClassNames();
+        int size = compactGraph != null ? compactGraph.size() : graph.size();
+        BitSet dependents = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            int[] ids = compactGraph != null ? compactGraph.getDependencyIds(i) : graph.getClassInfo(i).getDependencyIds();
+            for (int id : ids) {
+                String dependency = symbols.getName(id);
+                int typeArguments = dependency.indexOf('<');
+                if (unsampled.contains(typeArguments < 0 ? dependency : dependency.substring(0, typeArguments))) {
+                    dependents.set(i);
+                    break;
+                }
+            }
+        }
+        return dependents;
+    }
+
+    /**
+     * Set the policies that decide which dependencies are directly "external" (the legacy policy by default).
+     * All of them are evaluated in the same parse: the first one decides ClassInfo.hasExternalDependencies
+     * and the reports, and the rest are available through getExternal and makePolicyReport
+     * @param policies the policies (at most PolicySet.MAX_POLICIES)
+     */
+    public void setPolicies(List<AnalysisPolicy> policies) {
+        if (policies.isEmpty() || policies.size() > PolicySet.MAX_POLICIES) {
+            throw new IllegalArgumentException("Between 1 and " + PolicySet.MAX_POLICIES + " policies expected");
+        }
+        this.policies = new ArrayList<>(policies);
+    }
+
+    /**
+     *
+     * @return policies compiled for the project (null if the project has not been analyzed)
+     */
+    public PolicySet getPolicySet() {
+        return policySet;
+    }
+
+    /**
+     * Get the classes with "external" dependencies for one of the policies
+     * @param policy index of the policy (see setPolicies)
+     * @return ids of the classes in the dependency graph (or in the compact graph, if the classes were handed over)
+     */
+    public BitSet getExternal(int policy) {
+        return compactGraph != null ? compactGraph.getExternal(policy) : graph.getExternal(policy);
+    }
+
+    /**
+     * Set whether the packages of the dependencies are resolved syntactically (from the imports and
+     * the types of the project) and only with bindings when that is not possible, which is much faster
+     * @param syntactic whether to resolve syntactically (false resolves everything with bindings)
+     */
+    public void setSyntactic(boolean syntactic) {
+        this.syntactic = syntactic;
+    }
+
+    /**
+     * Parse java source files of the project
+     * @param filePaths paths of the files to parse
+     */
+    private void parseClasses(List<String> filePaths) {
+        typeIndex = syntactic ? TypeIndex.build(sourceFilePaths) : null;
+        List<String> fallbackPaths = Collections.synchronizedList(new ArrayList<>());
+        if (layout != null && layout.getModules().size() > 1) {
+            this.classes = parseModules(filePaths);
+        } else if (shards == 1 || filePaths.size() < 2) {
+            this.classes = parseBatch(filePaths, getEnvironment(), null, !syntactic, fallbackPaths);
+        } else {
+            //parse each batch with its own parser
+            String[] environment = getEnvironment();
+            List<List<String>> batches = splitByPackage(filePaths, shards);
+            ExecutorService executor = Executors.newFixedThreadPool(batches.size());
+            try {
+                List<Future<List<ClassInfo>>> results = new ArrayList<>();
+                for (List<String> batch : batches) {
+                    results.add(executor.submit(() -> parseBatch(batch, environment, null, !syntactic, fallbackPaths)));
+                }
+                //merge, in batch order
+                this.classes = new ArrayList<>();
+                for (Future<List<ClassInfo>> result : results) {
+                    classes.addAll(result.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while parsing " + project, e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Error parsing " + project, e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        //parse again with bindings the files with some dependency not resolved syntactically
+        //(the modules parse their own again, see parseModule)
+        if (!fallbackPaths.isEmpty()) {
+            classes.addAll(parseBatch(fallbackPaths, getEnvironment(), null, true, null));
+        }
+    }
+
+    /**
+     * Parse java source files of the project module by module, in dependency order
+     * @param filePaths paths of the files to parse
+     * @return info of the classes of the files, in module order
+     */
+    private List<ClassInfo> parseModules(List<String> filePaths) {
+        Map<ModuleLayout.Module, List<String>> moduleFiles = new HashMap<>();
+        for (String filePath : filePaths) {
+            moduleFiles.computeIfAbsent(layout.moduleOf(filePath), k -> new ArrayList<>()).add(filePath);
+        }
+        List<ClassInfo> parsed = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(shards);
+        try {
+            for (List<ModuleLayout.Module> level : layout.getLevels()) {
+                //the modules of a level only depend on modules of previous levels
+                List<Future<List<ClassInfo>>> results = new ArrayList<>();
+                for (ModuleLayout.Module module : level) {
+                    List<String> files = moduleFiles.get(module);
+                    if (files == null) continue; //all cached
+                    results.add(executor.submit(() -> parseModule(module, files)));
+                }
+                for (Future<List<ClassInfo>> result : results) {
+                    parsed.addAll(result.get());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing " + project, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error parsing " + project, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return parsed;
+    }
+
+    /**
+     * Parse java source files of a module, and parse again with bindings (with the same source roots and classpath)
+     * the files with some dependency not resolved syntactically
+     * @param module the module
+     * @param filePaths paths of the files of the module to parse
+     * @return info of the classes of the files
      */
-    private void parseClasses() {
+    private List<ClassInfo> parseModule(ModuleLayout.Module module, List<String> filePaths) {
+        Set<String> environment = new LinkedHashSet<>(module.getSourceRoots());
+        List<String> classpath = new ArrayList<>();
+        for (ModuleLayout.Module dependency : ModuleLayout.getTransitiveDependencies(module)) {
+            //built modules are read from their classes instead of parsing their sources again
+            if (dependency.getClassesDir() != null) classpath.add(dependency.getClassesDir().getAbsolutePath());
+            else environment.addAll(dependency.getSourceRoots());
+        }
+        String[] sourcePaths = environment.toArray(new String[environment.size()]);
+        String[] classPaths = classpath.toArray(new String[classpath.size()]);
+        List<String> fallbackPaths = new ArrayList<>();
+        List<ClassInfo> parsed = parseBatch(filePaths, sourcePaths, classPaths, !syntactic, fallbackPaths);
+        if (!fallbackPaths.isEmpty()) {
+            parsed.addAll(parseBatch(fallbackPaths, sourcePaths, classPaths, true, null));
+        }
+        return parsed;
+    }
+
+    /**
+     * Get the source paths used to resolve the bindings: the source roots of the project, so that JDT does
+     * not look for every type in every package directory
+     * @return source paths
+     */
+    private String[] getEnvironment() {
+        if (sourceRoots == null) {
+            Set<String> roots = findSourceRoots(sourceFilePaths);
+            sourceRoots = roots.toArray(new String[roots.size()]);
+        }
+        return sourceRoots;
+    }
+
+    /**
+     * Set the module of a class, if modules are detected
+     * @param classInfo the class
+     * @param sourceFilePath path of its source file
+     */
+    private void setModule(ClassInfo classInfo, String sourceFilePath) {
+        if (layout == null) return;
+        ModuleLayout.Module module = layout.moduleOf(sourceFilePath);
+        if (module != null) classInfo.setModule(module.getName());
+    }
+
+    /**
+     * Parse a batch of java source files of the project
+     * @param filePaths paths of the files to parse
+     * @param environment source paths used to resolve the bindings
+     * @param classpath class paths used to resolve the bindings (null if none)
+     * @param bindings whether to resolve bindings
+     * @param fallbackPaths list to store the paths of the files with some dependency not resolved without bindings
+     * @return info of the classes of the files
+     */
+    private List<ClassInfo> parseBatch(List<String> filePaths, String[] environment, String[] classpath, boolean bindings, List<String> fallbackPaths) {
         //set parser
         ASTParser parser = ASTParser.newParser(AST.JLS10);
-        parser.setResolveBindings(true);
-        parser.setBindingsRecovery(true);
+        parser.setResolveBindings(bindings);
+        parser.setBindingsRecovery(bindings);
         Map options = JavaCore.getOptions();
         JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
         parser.setCompilerOptions(options);
-        parser.setEnvironment(null, sourceDirPaths.toArray(new String[sourceDirPaths.size()]), null, true);
+        parser.setEnvironment(classpath, environment, null, true);
+        if (metrics != null) {
+            metrics.add(ProjectMetrics.Counter.FILES_PARSED, filePaths.size());
+            long bytes = 0;
+            for (String filePath : filePaths) bytes += new File(filePath).length();
+            metrics.add(ProjectMetrics.Counter.BYTES_PARSED, bytes);
+        }
         //parse files into ClassInfo
-        this.classes = new ArrayList<>();
+        List<ClassInfo> classes = new ArrayList<>();
         FileASTRequestor requestor = new FileASTRequestor() {
             public void acceptAST(String sourceFilePath, CompilationUnit cu) { //for each class
+                if (metrics != null) metrics.add(ProjectMetrics.Counter.CUS_ACCEPTED, 1);
                 if (cu.types().size()>0) {
                     TypeDeclaration typeDeclaration=null;
                     for (AbstractTypeDeclaration declaration: (List<AbstractTypeDeclaration>) cu.types()){
@@ -76,51 +577,223 @@ public class Analyzer {
                             //create and add the java info
                             String name = ((AbstractTypeDeclaration) cu.types().get(0)).getName().toString();
                             String pkg = cu.getPackage() == null ? "<no package>" : cu.getPackage().getName().toString();
-                            ClassInfo classInfo = new ClassInfo(name, pkg, project.toString());
+                            ClassInfo classInfo = new ClassInfo(name, pkg, project.toString(), symbols);
+                            setModule(classInfo, sourceFilePath);
+                            classInfo.setPolicies(policySet);
+                            if (typeIndex != null) classInfo.setTypeResolver(new TypeResolver(cu, typeIndex));
+                            if (edgeSink != null) classInfo.setRecordEdges(true);
                             cu.accept(classInfo);
-                            classes.add(classInfo);
+                            if (!bindings && classInfo.getUnresolved() > 0) {
+                                fallbackPaths.add(sourceFilePath);
+                                return;
+                            }
+                            if (!handOver(classInfo, sourceFilePath)) classes.add(classInfo);
+                            if (edgeSink != null) {
+                                edgeSink.edges(sourceFilePath, classInfo);
+                                classInfo.setRecordEdges(false); //release them
+                            }
+                            if (fileHashes != null) cache.put(sourceFilePath, fileHashes.get(sourceFilePath), classInfo);
+                            return;
                         }
                     }
                 }
+                if (fileHashes != null) cache.put(sourceFilePath, fileHashes.get(sourceFilePath), null);
             }
         };
-        parser.createASTs(sourceFilePaths.toArray(new String[sourceFilePaths.size()]), null, new String[]{}, requestor , null );
+        parser.createASTs(filePaths.toArray(new String[filePaths.size()]), null, new String[]{}, requestor , null );
+        return classes;
     }
 
     /**
-     * Spread all "external" dependencies of the project classes
-     * (i.e. if a class A has a dependency of a class B with "external" dependencies,
-     * then class B is consider "external" so class A has "external" dependencies too )
+     * Hand over a class to the handler, if there is one, adding it to the compact graph instead of keeping it
+     * @param classInfo the class
+     * @param sourceFilePath path of its source file
+     * @return whether it was handed over
      */
-    private void spreadExternalDependencies() {
-        //split classes
-        List<ClassInfo> withExternal = new ArrayList<>();
-        List<ClassInfo> noExternal = new ArrayList<>();
-        for (ClassInfo classInfo: classes){
-            if (classInfo.hasExternalDependencies()){
-                noExternal.add(classInfo);
-            }else{
-                withExternal.add(classInfo);
+    private boolean handOver(ClassInfo classInfo, String sourceFilePath) {
+        if (handler == null) return false;
+        handler.parsed(compactGraph.add(classInfo), classInfo, sourceFilePath);
+        return true;
+    }
+
+    /**
+     * Find the source roots of some java files, i.e. their directories without the folders of their package
+     * (or the directory itself, if the folders do not match the package)
+     * @param filePaths paths of the java files
+     * @return source roots paths
+     */
+    static Set<String> findSourceRoots(List<String> filePaths) {
+        Set<String> roots = new LinkedHashSet<>();
+        Set<String> dirs = new HashSet<>();
+        for (String filePath : filePaths) {
+            File dir = new File(filePath).getParentFile();
+            if (dir == null || !dirs.add(dir.getPath())) continue; //one file per directory is enough
+            String pkg = readPackage(filePath);
+            File root = dir;
+            if (pkg != null) {
+                String[] segments = pkg.split("\\.");
+                for (int i = segments.length - 1; i >= 0 && root != null; i--) {
+                    root = segments[i].equals(root.getName()) ? root.getParentFile() : null;
+                }
             }
+            roots.add((root != null ? root : dir).getAbsolutePath());
+        }
+        return roots;
+    }
+
+    /**
+     * Read the package declaration of a java file without parsing it
+     * @param filePath path of the java file
+     * @return name of the package (null if it has no package declaration or it can not be read)
+     */
+    static String readPackage(String filePath) {
+        try (Reader reader = new FileReader(filePath)) {
+            return readPackage(reader);
+        } catch (IOException e) {
+            return null;
         }
-        //spread external dependencies
-        int i = 0;
-        while (i<withExternal.size()){
-            ClassInfo badClassInfo = withExternal.get(i);
-            boolean dependencyMatch = false;
-            int j=0;
-            while (j<noExternal.size() & !dependencyMatch){
-                ClassInfo goodClassInfo = noExternal.get(j);
-                if (goodClassInfo.getDependencies().contains(badClassInfo.getFullName())){
-                    dependencyMatch = true;
-                    goodClassInfo.setExternalDependencies(true);
-                    noExternal.remove(j);
-                    withExternal.add(goodClassInfo);
+    }
+
+    /**
+     * Read the package declaration of a java source without parsing it
+     * @param source content of the java source
+     * @return name of the package (null if it has no package declaration or it can not be read)
+     */
+    static String readPackage(Reader source) {
+        try (BufferedReader reader = new BufferedReader(source)) {
+            boolean comment = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                //skip comments and annotations before the declaration
+                if (comment) {
+                    if (line.contains("*/")) {
+                        comment = false;
+                        line = line.substring(line.indexOf("*/") + 2).trim();
+                    } else continue;
                 }
-                j++;
+                if (line.startsWith("/*")) {
+                    if (!line.contains("*/")) {
+                        comment = true;
+                        continue;
+                    }
+                    line = line.substring(line.indexOf("*/") + 2).trim();
+                }
+                if (line.isEmpty() || line.startsWith("//") || line.startsWith("@")) continue;
+                if (line.startsWith("package ") || line.startsWith("package\t")) {
+                    int end = line.indexOf(';');
+                    return line.substring("package".length(), end < 0 ? line.length() : end).replaceAll("\\s", "");
+                }
+                return null; //first declaration is not a package
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Split source files into batches, keeping the files of the same directory (package) together
+     * and balancing the number of files of each batch
+     * @param filePaths paths of the files to split
+     * @param numBatches maximum number of batches
+     * @return non empty batches of file paths
+     */
+    static List<List<String>> splitByPackage(List<String> filePaths, int numBatches) {
+        //group by directory
+        Map<String, List<String>> packages = new TreeMap<>();
+        for (String filePath : filePaths) {
+            String dir = new File(filePath).getParent();
+            packages.computeIfAbsent(dir == null ? "" : dir, k -> new ArrayList<>()).add(filePath);
+        }
+        List<List<String>> groups = new ArrayList<>(packages.values());
+        groups.sort((a, b) -> Integer.compare(b.size(), a.size()));
+        //assign biggest packages first to the smallest batch
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < Math.min(numBatches, groups.size()); i++) {
+            batches.add(new ArrayList<>());
+        }
+        for (List<String> group : groups) {
+            List<String> smallest = batches.get(0);
+            for (List<String> batch : batches) {
+                if (batch.size() < smallest.size()) smallest = batch;
             }
-            i++;
+            smallest.addAll(group);
         }
+        return batches;
+    }
+
+    /**
+     *
+     * @return number of dependencies of the analyzed classes resolved without bindings
+     */
+    public int getSyntacticResolved() {
+        if (compactGraph != null) return (int) compactGraph.getSyntacticResolved();
+        int count = 0;
+        for (int i = 0; i < graph.size(); i++) count += graph.getClassInfo(i).getSyntacticResolved();
+        return count;
+    }
+
+    /**
+     *
+     * @return number of dependencies of the analyzed classes resolved with bindings
+     */
+    public int getBindingResolved() {
+        if (compactGraph != null) return (int) compactGraph.getBindingResolved();
+        int count = 0;
+        for (int i = 0; i < graph.size(); i++) count += graph.getClassInfo(i).getBindingResolved();
+        return count;
+    }
+
+    /**
+     *
+     * @return number of dependencies of the analyzed classes whose package could not be resolved
+     */
+    public int getUnresolved() {
+        if (compactGraph != null) return (int) compactGraph.getUnresolved();
+        int count = 0;
+        for (int i = 0; i < graph.size(); i++) count += graph.getClassInfo(i).getUnresolved();
+        return count;
+    }
+
+    /**
+     * Spread all "external" dependencies of the project classes
+     * (i.e. if a class A has a dependency of a class B with "external" dependencies,
+     * then class B is consider "external" so class A has "external" dependencies too )
+     */
+    private void spreadExternalDependencies() {
+        if (compactGraph == null) this.graph = new DependencyGraph(classes);
+        BitSet assumedExternal = sample == null || sample.isComplete() ? null : findOutOfSampleDependents();
+        int numExternal = compactGraph != null ? compactGraph.propagate(assumedExternal) : graph.propagate(assumedExternal);
+        if (metrics != null) {
+            metrics.add(ProjectMetrics.Counter.EXTERNAL_CLASSES, numExternal);
+            metrics.add(ProjectMetrics.Counter.PROPAGATION_STEPS, compactGraph != null ? compactGraph.getPropagationSteps() : graph.getPropagationSteps());
+        }
+    }
+
+    /**
+     *
+     * @return interned names of the classes and dependencies of the project (null if it has not been analyzed)
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     *
+     * @return dependency graph of the project classes (null if the project has not been analyzed, or the classes
+     *      were handed over by analyze(ClassInfoHandler))
+     */
+    public DependencyGraph getDependencyGraph() {
+        return graph;
+    }
+
+    /**
+     *
+     * @return compact graph of the classes handed over by the last analysis (null if they were listed)
+     */
+    public CompactGraph getCompactGraph() {
+        return compactGraph;
     }
 
     /**
@@ -129,50 +802,104 @@ public class Analyzer {
      * @throws IOException
      */
     public void makeReport(String file) throws IOException {
+        if (classes == null || compactGraph != null) {
+            if (compactGraph == null) throw new IllegalStateException("The project has not been analyzed");
+            writeReport(file, compactGraph, compactGraph.size()); //handed over: from the compact graph
+            return;
+        }
         String csvPath = project.getAbsolutePath() + File.separator + file;
         Writer writer = new FileWriter(csvPath);
         CSVWriter csvWriter = new CSVWriter(writer);
-        String[] headerRecord = {"Package", "Class", "External dependencies"};
-        csvWriter.writeNext(headerRecord);
+        csvWriter.writeNext(getHeader());
+        long start = System.nanoTime();
         Collections.sort(classes); //by package, then by name
         for (ClassInfo classInfo: classes){
-            String[] record = {classInfo.getPkg(),
-                    classInfo.getName(),
-                    classInfo.hasExternalDependencies() ? "Y" : "N"};
-            csvWriter.writeNext(record);
+            csvWriter.writeNext(getRecord(classInfo));
         }
         csvWriter.close();
+        if (metrics != null) metrics.time(ProjectMetrics.Phase.REPORT, start);
 
     }
 
     /**
-     * Find all java source files in a directory recursevely and their directories paths
-     * @param folder folder to search
-     * @param sourceFilePaths list to store the file paths of the java files
-     * @param sourceDirPaths list to store the directories paths of the java files
-     * @return number of java files found in that directory (not recursive)
+     * Analyze the project handing over the classes (see analyze(ClassInfoHandler)) and write the same report
+     * as makeReport from the compact graph, with at most maxInMemory report records in memory
+     * (the rest are sorted on disk, see ExternalSorter)
+     * @param file file to write report to
+     * @param maxInMemory maximum number of records sorted in memory
+     * @throws IOException
      */
-    private static int findAllClasses(File folder, List<String> sourceFilePaths, List<String> sourceDirPaths) {
-        int numFiles=0;
-        if (folder.exists()) {
-            for (final File fileEntry : folder.listFiles()) {
-                if (fileEntry.isDirectory()) {
-                    if (findAllClasses(fileEntry, sourceFilePaths, sourceDirPaths)>0) {
-                        sourceDirPaths.add(fileEntry.getAbsolutePath());
-                    }
-                } else {
-                    if (fileEntry.getName().endsWith(".java") &&
-                            !isTest(fileEntry.getName()) &&
-                            !fileEntry.getName().equals("module-info.java") &&
-                            !fileEntry.getName().equals("package-info.java")) {
-                        sourceFilePaths.add(fileEntry.getAbsolutePath());
-                        numFiles++;
+    public void makeReport(String file, int maxInMemory) throws IOException {
+        this.analyze(graph -> { });
+        writeReport(file, compactGraph, maxInMemory);
+    }
 
-                    }
-                }
+    /**
+     * Writes the report of makeReport from a compact graph
+     * @param file file to write report to
+     * @param graph the graph, once propagated
+     * @param maxInMemory maximum number of records sorted in memory
+     * @throws IOException
+     */
+    private void writeReport(String file, CompactGraph graph, int maxInMemory) throws IOException {
+        String csvPath = project.getAbsolutePath() + File.separator + file;
+        long start = System.nanoTime();
+        //same order as ClassInfo.compareTo
+        try (ExternalSorter sorter = new ExternalSorter((a, b) -> a[0].equals(b[0]) ? b[1].compareTo(a[1]) : b[0].compareTo(a[0]), maxInMemory)) {
+            for (int id = 0; id < graph.size(); id++) {
+                String external = graph.isExternal(id) ? "Y" : "N";
+                sorter.add(layout == null ? new String[]{graph.getPkg(id), graph.getName(id), external} :
+                        new String[]{graph.getPkg(id), graph.getName(id), external, String.valueOf(graph.getModule(id))});
+            }
+            try (CSVWriter csvWriter = new CSVWriter(new FileWriter(csvPath))) {
+                csvWriter.writeNext(getHeader());
+                sorter.sorted(csvWriter::writeNext);
             }
         }
-        return numFiles;
+        if (metrics != null) metrics.time(ProjectMetrics.Phase.REPORT, start);
+    }
+
+    /**
+     * Writes list with all project classes and, for each policy, whether they have "external dependencies" or not
+     * (after analyze(), the classes are needed)
+     * @param file file to write report to
+     * @throws IOException
+     */
+    public void makePolicyReport(String file) throws IOException {
+        String csvPath = project.getAbsolutePath() + File.separator + file;
+        long start = System.nanoTime();
+        BitSet[] external = new BitSet[policySet.size()];
+        for (int p = 0; p < external.length; p++) external[p] = graph.getExternal(p);
+        Integer[] order = new Integer[graph.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> graph.getClassInfo(a).compareTo(graph.getClassInfo(b))); //as makeReport
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(csvPath))) {
+            String[] header = new String[2 + external.length];
+            header[0] = "Package";
+            header[1] = "Class";
+            for (int p = 0; p < external.length; p++) header[2 + p] = "External dependencies (" + policySet.getPolicy(p).getName() + ")";
+            csvWriter.writeNext(header);
+            for (int id : order) {
+                ClassInfo classInfo = graph.getClassInfo(id);
+                String[] record = new String[header.length];
+                record[0] = classInfo.getPkg();
+                record[1] = classInfo.getName();
+                for (int p = 0; p < external.length; p++) record[2 + p] = external[p].get(id) ? "Y" : "N";
+                csvWriter.writeNext(record);
+            }
+        }
+        if (metrics != null) metrics.time(ProjectMetrics.Phase.REPORT, start);
+    }
+
+    private String[] getHeader() {
+        return layout == null ? new String[]{"Package", "Class", "External dependencies"} :
+                new String[]{"Package", "Class", "External dependencies", "Module"};
+    }
+
+    private String[] getRecord(ClassInfo classInfo) {
+        String external = classInfo.hasExternalDependencies() ? "Y" : "N";
+        return layout == null ? new String[]{classInfo.getPkg(), classInfo.getName(), external} :
+                new String[]{classInfo.getPkg(), classInfo.getName(), external, String.valueOf(classInfo.getModule())};
     }
 
     /**
@@ -0,0 +1,346 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+
+/**
+ * Analysis engine that reads the compiled classes of a project (class directories and jars) instead of its sources
+ * <p>
+ * NOTES:
+ * The classes are built with the same facts as the source engine: a ClassInfo per source file (class files are
+ * grouped by their package and SourceFile attribute, so nested, local and anonymous classes are folded into
+ * the class of their file), named after the source file, and with a dependency per NEW instruction.
+ * Packages come from the class files, so they are always resolved.
+ * Differences with the source engine:
+ * - the creation of a anonymous class is a dependency on its interface (or its superclass)
+ * - dependency names are canonical (java.util.Map.Entry, without type arguments), as written in the source
+ * - code generated by the compiler is included (e.g. the StringBuilder of string concatenation, for
+ *   class files of Java 8 or older, or the AssertionError of assert statements), except the creation of
+ *   the enum constants
+ * Files whose main class is an interface, an annotation or an enum are skipped, as in the source engine.
+ * Class files of directories are memory mapped; entries of jars are inflated in memory. Each file is read
+ * in parallel, and only the facts of the classes are kept.
+ * */
+
+public class BytecodeEngine {
+
+    private int parallelism = Runtime.getRuntime().availableProcessors(); //number of threads reading class files
+    private long numFiles = 0, numBytes = 0; //class files read by the last analysis
+
+    /**
+     * Set the number of threads reading class files
+     * @param parallelism number of threads
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Find the compiled classes of a project: the class directories of its modules (target/classes,
+     * build/classes/java/main) or, for modules without them, the jars of target (except sources, javadoc and tests)
+     * @param project base folder of the project
+     * @param buildFilePaths paths of the build files of the project (see SourceScanner.Scan)
+     * @return class directories and jars
+     */
+    public static List<File> findClassInputs(File project, List<String> buildFilePaths) {
+        Set<File> moduleDirs = new TreeSet<>();
+        moduleDirs.add(project.getAbsoluteFile());
+        for (String path : buildFilePaths) moduleDirs.add(new File(path).getAbsoluteFile().getParentFile());
+        List<File> inputs = new ArrayList<>();
+        for (File dir : moduleDirs) {
+            boolean found = false;
+            for (String classesDir : ModuleLayout.CLASSES_DIRS) {
+                File candidate = new File(dir, classesDir);
+                if (candidate.isDirectory()) {
+                    inputs.add(candidate);
+                    found = true;
+                }
+            }
+            File[] jars = found ? null : new File(dir, "target").listFiles((parent, name) -> name.endsWith(".jar")
+                    && !name.endsWith("-sources.jar") && !name.endsWith("-javadoc.jar") && !name.endsWith("-tests.jar"));
+            if (jars != null) {
+                Arrays.sort(jars);
+                inputs.addAll(Arrays.asList(jars));
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * A class file to read: a file of a directory or a entry of a jar
+     */
+    static class Input {
+        private Path file;
+        private ZipFile jar;
+        private ZipEntry entry;
+
+        String getPath() {
+            return file != null ? file.toString() : jar.getName() + "!/" + entry.getName();
+        }
+
+        ByteBuffer read() throws IOException {
+            if (file != null) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+            try (InputStream in = jar.getInputStream(entry)) {
+                return ByteBuffer.wrap(in.readAllBytes());
+            }
+        }
+    }
+
+    /**
+     * Analyze the compiled classes of a project
+     * @param inputs class directories and jars
+     * @param project the project, as given to ClassInfo
+     * @param symbols interned names of the project
+     * @param policies policies that decide the "external" dependencies
+     * @param parsed receiver of each class as it is built, with the path of its main class file (null if none)
+     * @return the classes, in order of their package and source file
+     */
+    public List<ClassInfo> analyze(List<File> inputs, String project, SymbolTable symbols, PolicySet policies, BiConsumer<ClassInfo, String> parsed) {
+        List<ZipFile> jars = new ArrayList<>();
+        try {
+            List<Input> files = listInputs(inputs, jars);
+            List<ClassFileReader.ClassFile> classFiles = readAll(files);
+            //index by name, and group by source file
+            Map<String, ClassFileReader.ClassFile> byName = new HashMap<>();
+            Map<String, String> paths = new HashMap<>(); //class name -> path of its class file
+            for (int i = 0; i < files.size(); i++) {
+                ClassFileReader.ClassFile classFile = classFiles.get(i);
+                if (classFile != null && byName.putIfAbsent(classFile.getName(), classFile) == null) {
+                    paths.put(classFile.getName(), files.get(i).getPath());
+                }
+            }
+            Map<String, List<ClassFileReader.ClassFile>> sourceFiles = new TreeMap<>();
+            for (ClassFileReader.ClassFile classFile : byName.values()) {
+                sourceFiles.computeIfAbsent(getSourceFile(classFile, byName), k -> new ArrayList<>()).add(classFile);
+            }
+            List<ClassInfo> classes = new ArrayList<>();
+            for (Map.Entry<String, List<ClassFileReader.ClassFile>> sourceFile : sourceFiles.entrySet()) {
+                String path = sourceFile.getKey();
+                String internalPkg = path.lastIndexOf('/') < 0 ? "" : path.substring(0, path.lastIndexOf('/'));
+                String name = path.substring(internalPkg.isEmpty() ? 0 : internalPkg.length() + 1, path.length() - ".java".length());
+                ClassFileReader.ClassFile main = byName.get(internalPkg.isEmpty() ? name : internalPkg + "/" + name);
+                if (main == null) main = sourceFile.getValue().get(0);
+                if (main.isInterfaceOrEnum()) continue;
+                ClassInfo classInfo = toClassInfo(name, internalPkg, sourceFile.getValue(), byName, project, symbols, policies);
+                classes.add(classInfo);
+                if (parsed != null) parsed.accept(classInfo, paths.get(main.getName()));
+            }
+            return classes;
+        } finally {
+            close(jars);
+        }
+    }
+
+    /**
+     * Close the jars opened by listInputs
+     * @param jars the jars
+     */
+    static void close(List<ZipFile> jars) {
+        for (ZipFile jar : jars) {
+            try {
+                jar.close();
+            } catch (IOException e) {
+                //nothing was written
+            }
+        }
+    }
+
+    /**
+     * List the class files of the inputs
+     * @param inputs class directories and jars
+     * @param jars list to store the opened jars
+     * @return class files (without module-info and package-info)
+     */
+    static List<Input> listInputs(List<File> inputs, List<ZipFile> jars) {
+        List<Input> files = new ArrayList<>();
+        for (File input : inputs) {
+            try {
+                if (input.isDirectory()) {
+                    List<Path> found = new ArrayList<>();
+                    Files.walkFileTree(input.toPath(), new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            if (isClassFile(file.getFileName().toString())) found.add(file);
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+                    Collections.sort(found);
+                    for (Path file : found) {
+                        Input classFile = new Input();
+                        classFile.file = file.toAbsolutePath();
+                        files.add(classFile);
+                    }
+                } else {
+                    ZipFile jar = new ZipFile(input);
+                    jars.add(jar);
+                    for (ZipEntry entry : Collections.list(jar.entries())) {
+                        String name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+                        if (entry.isDirectory() || !isClassFile(name) || entry.getName().startsWith("META-INF/")) continue;
+                        Input classFile = new Input();
+                        classFile.jar = jar;
+                        classFile.entry = entry;
+                        files.add(classFile);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error listing the classes of " + input, e);
+            }
+        }
+        return files;
+    }
+
+    private static boolean isClassFile(String name) {
+        return name.endsWith(".class") && !name.equals("module-info.class") && !name.equals("package-info.class");
+    }
+
+    /**
+     * Read the class files in parallel
+     * @param files the class files
+     * @return facts of each class file, in the same order (null for the invalid ones)
+     */
+    private List<ClassFileReader.ClassFile> readAll(List<Input> files) {
+        long[] sizes = new long[files.size()];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Integer> indexes = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) indexes.add(i);
+            List<ClassFileReader.ClassFile> classFiles = pool.submit(() -> indexes.parallelStream().map(i -> {
+                try {
+                    ByteBuffer buffer = files.get(i).read();
+                    sizes[i] = buffer.remaining();
+                    return ClassFileReader.read(buffer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Error reading " + files.get(i).getPath(), e);
+                } catch (IllegalArgumentException e) {
+                    System.err.println(files.get(i).getPath() + ": " + e.getMessage());
+                    return null;
+                }
+            }).collect(Collectors.toList())).get();
+            numFiles = files.size();
+            numBytes = 0;
+            for (long size : sizes) numBytes += size;
+            return classFiles;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading class files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) throw (UncheckedIOException) e.getCause();
+            throw new IllegalStateException("Error reading class files", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Get the source file of a class
+     * @param classFile the class
+     * @param byName classes by name
+     * @return internal path of the source file (package/Name.java)
+     */
+    private static String getSourceFile(ClassFileReader.ClassFile classFile, Map<String, ClassFileReader.ClassFile> byName) {
+        String name = classFile.getName();
+        int slash = name.lastIndexOf('/');
+        if (classFile.getSourceFile() != null && classFile.getSourceFile().endsWith(".java")) {
+            return name.substring(0, slash + 1) + classFile.getSourceFile();
+        }
+        //without SourceFile attribute: the top level class whose name is a prefix before a $
+        for (int dollar = name.indexOf('$', slash + 1); dollar > 0; dollar = name.indexOf('$', dollar + 1)) {
+            if (byName.containsKey(name.substring(0, dollar))) return name.substring(0, dollar) + ".java";
+        }
+        return name + ".java";
+    }
+
+    /**
+     * Build the info of a source file from its classes
+     * @param name name of the source file, without .java
+     * @param internalPkg package of the source file (internal form)
+     * @param classFiles classes of the source file
+     * @param byName classes of the project by name
+     * @param project the project
+     * @param symbols interned names of the project
+     * @param policies policies that decide the "external" dependencies
+     * @return info of the class
+     */
+    private static ClassInfo toClassInfo(String name, String internalPkg, List<ClassFileReader.ClassFile> classFiles,
+                                         Map<String, ClassFileReader.ClassFile> byName, String project, SymbolTable symbols, PolicySet policies) {
+        Map<String, Integer> creations = new TreeMap<>();
+        for (ClassFileReader.ClassFile classFile : classFiles) {
+            for (Map.Entry<String, Integer> creation : classFile.getCreations().entrySet()) {
+                String type = getCreatedType(creation.getKey(), byName);
+                if (type != null) creations.merge(type, creation.getValue(), Integer::sum);
+            }
+        }
+        String[] dependencies = new String[creations.size()];
+        String[] dependencyPkgs = new String[creations.size()];
+        int[] counts = new int[creations.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> creation : creations.entrySet()) {
+            String type = creation.getKey();
+            ClassFileReader.ClassFile created = byName.get(type);
+            int slash = type.lastIndexOf('/');
+            String pkg = slash < 0 ? "<no package>" : type.substring(0, slash).replace('/', '.');
+            String simpleName = created != null && created.isLocal() ? created.getSimpleName() : type.substring(slash + 1).replace('$', '.');
+            dependencyPkgs[i] = pkg;
+            dependencies[i] = pkg + "." + simpleName;
+            counts[i++] = creation.getValue();
+        }
+        String pkg = internalPkg.isEmpty() ? "<no package>" : internalPkg.replace('/', '.');
+        ClassInfo classInfo = new ClassInfo(name, pkg, project, symbols, dependencies, dependencyPkgs, counts, false);
+        classInfo.applyPolicies(policies);
+        return classInfo;
+    }
+
+    /**
+     * Get the type a creation is a dependency on: the created class or, for anonymous classes, its interface
+     * or its superclass
+     * @param type created class (internal name)
+     * @param byName classes of the project by name
+     * @return internal name of the type (null for enum constants, which are not created in the source)
+     */
+    private static String getCreatedType(String type, Map<String, ClassFileReader.ClassFile> byName) {
+        ClassFileReader.ClassFile created = byName.get(type);
+        if (created == null) return type;
+        if (created.isEnum()) return null;
+        if (!created.isAnonymous()) return type;
+        ClassFileReader.ClassFile superClass = byName.get(created.getSuperName());
+        if (superClass != null && superClass.isEnum()) return null; //constant with a body
+        if ("java/lang/Object".equals(created.getSuperName()) && created.getInterfaces().length == 1) {
+            return created.getInterfaces()[0];
+        }
+        return created.getSuperName() == null ? type : created.getSuperName();
+    }
+
+    /**
+     *
+     * @return number of class files read by the last analysis
+     */
+    public long getNumFiles() {
+        return numFiles;
+    }
+
+    /**
+     *
+     * @return bytes of the class files read by the last analysis
+     */
+    public long getNumBytes() {
+        return numBytes;
+    }
+}
@@ -0,0 +1,304 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+
+/**
+ * Reads from a class file the facts the bytecode engine needs: its name, supertypes, kind, source file
+ * and the classes it creates (NEW instructions)
+ * <p>
+ * NOTES:
+ * Only the constant pool, the class attributes and the Code attribute of the methods are read; the rest of the
+ * file is skipped by its lengths, and only the UTF-8 constants that are used are decoded.
+ * Names are internal names (java/util/Map$Entry).
+ * */
+
+public class ClassFileReader {
+
+    private static final int ACC_INTERFACE = 0x0200, ACC_ANNOTATION = 0x2000, ACC_ENUM = 0x4000;
+    private static final int NEW = 0xbb, TABLESWITCH = 0xaa, LOOKUPSWITCH = 0xab, WIDE = 0xc4, IINC = 0x84;
+    //length of each instruction (0 if it is variable: the switches and wide)
+    private static final byte[] INSTRUCTION_LENGTHS = new byte[256];
+
+    static {
+        Arrays.fill(INSTRUCTION_LENGTHS, (byte) 1);
+        INSTRUCTION_LENGTHS[0x10] = 2; //bipush
+        INSTRUCTION_LENGTHS[0x11] = 3; //sipush
+        INSTRUCTION_LENGTHS[0x12] = 2; //ldc
+        INSTRUCTION_LENGTHS[0x13] = 3; //ldc_w
+        INSTRUCTION_LENGTHS[0x14] = 3; //ldc2_w
+        for (int op = 0x15; op <= 0x19; op++) INSTRUCTION_LENGTHS[op] = 2; //loads
+        for (int op = 0x36; op <= 0x3a; op++) INSTRUCTION_LENGTHS[op] = 2; //stores
+        INSTRUCTION_LENGTHS[IINC] = 3;
+        for (int op = 0x99; op <= 0xa8; op++) INSTRUCTION_LENGTHS[op] = 3; //branches, goto, jsr
+        INSTRUCTION_LENGTHS[0xa9] = 2; //ret
+        INSTRUCTION_LENGTHS[TABLESWITCH] = 0;
+        INSTRUCTION_LENGTHS[LOOKUPSWITCH] = 0;
+        for (int op = 0xb2; op <= 0xb8; op++) INSTRUCTION_LENGTHS[op] = 3; //fields, invokevirtual/special/static
+        INSTRUCTION_LENGTHS[0xb9] = 5; //invokeinterface
+        INSTRUCTION_LENGTHS[0xba] = 5; //invokedynamic
+        INSTRUCTION_LENGTHS[NEW] = 3;
+        INSTRUCTION_LENGTHS[0xbc] = 2; //newarray
+        INSTRUCTION_LENGTHS[0xbd] = 3; //anewarray
+        INSTRUCTION_LENGTHS[0xc0] = 3; //checkcast
+        INSTRUCTION_LENGTHS[0xc1] = 3; //instanceof
+        INSTRUCTION_LENGTHS[WIDE] = 0;
+        INSTRUCTION_LENGTHS[0xc5] = 4; //multianewarray
+        INSTRUCTION_LENGTHS[0xc6] = 3; //ifnull
+        INSTRUCTION_LENGTHS[0xc7] = 3; //ifnonnull
+        INSTRUCTION_LENGTHS[0xc8] = 5; //goto_w
+        INSTRUCTION_LENGTHS[0xc9] = 5; //jsr_w
+    }
+
+    /**
+     * Facts of a class file
+     */
+    public static class ClassFile {
+        private String name, superName, sourceFile;
+        private String[] interfaces;
+        private int access;
+        private boolean anonymous, local;
+        private String simpleName; //simple name of a member or local class (null for top level and anonymous classes)
+        private Map<String, Integer> creations = new LinkedHashMap<>(); //created class -> number of NEW instructions
+
+        public String getName() {
+            return name;
+        }
+
+        public String getSuperName() {
+            return superName;
+        }
+
+        public String[] getInterfaces() {
+            return interfaces;
+        }
+
+        /**
+         *
+         * @return name of the source file (null if the class file does not have it)
+         */
+        public String getSourceFile() {
+            return sourceFile;
+        }
+
+        /**
+         *
+         * @return whether it is an interface, an annotation or an enum
+         */
+        public boolean isInterfaceOrEnum() {
+            return (access & (ACC_INTERFACE | ACC_ANNOTATION | ACC_ENUM)) != 0;
+        }
+
+        public boolean isEnum() {
+            return (access & ACC_ENUM) != 0;
+        }
+
+        public boolean isAnonymous() {
+            return anonymous;
+        }
+
+        public boolean isLocal() {
+            return local;
+        }
+
+        /**
+         *
+         * @return simple name of a member or local class (null for top level and anonymous classes)
+         */
+        public String getSimpleName() {
+            return simpleName;
+        }
+
+        /**
+         *
+         * @return created classes (internal names) and the number of NEW instructions of each one
+         */
+        public Map<String, Integer> getCreations() {
+            return creations;
+        }
+    }
+
+    /**
+     * Read a class file
+     * @param buffer content of the class file (from its position; the position is moved)
+     * @return facts of the class
+     * @throws IllegalArgumentException if it is not a valid class file
+     */
+    public static ClassFile read(ByteBuffer buffer) {
+        try {
+            return new ClassFileReader(buffer).read();
+        } catch (RuntimeException e) { //underflows, bad indexes...
+            throw new IllegalArgumentException("Invalid class file: " + e, e);
+        }
+    }
+
+    private ByteBuffer buffer;
+    private int[] offsets; //position of each constant
+    private String[] strings; //decoded UTF-8 constants
+
+    private ClassFileReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    private ClassFile read() {
+        if (buffer.getInt() != 0xCAFEBABE) throw new IllegalArgumentException("bad magic number");
+        buffer.getInt(); //versions
+        readConstantPool();
+        ClassFile classFile = new ClassFile();
+        classFile.access = u2();
+        classFile.name = className(u2());
+        int superIndex = u2();
+        classFile.superName = superIndex == 0 ? null : className(superIndex);
+        classFile.interfaces = new String[u2()];
+        for (int i = 0; i < classFile.interfaces.length; i++) classFile.interfaces[i] = className(u2());
+        //fields
+        for (int fields = u2(); fields > 0; fields--) {
+            buffer.position(buffer.position() + 6);
+            skipAttributes();
+        }
+        //methods
+        for (int methods = u2(); methods > 0; methods--) {
+            buffer.position(buffer.position() + 6);
+            for (int attributes = u2(); attributes > 0; attributes--) {
+                String name = utf8(u2());
+                int length = buffer.getInt();
+                int end = buffer.position() + length;
+                if (name.equals("Code")) {
+                    buffer.position(buffer.position() + 4); //max stack and locals
+                    int codeLength = buffer.getInt();
+                    readCode(buffer.position(), codeLength, classFile);
+                }
+                buffer.position(end);
+            }
+        }
+        //class attributes
+        for (int attributes = u2(); attributes > 0; attributes--) {
+            String name = utf8(u2());
+            int length = buffer.getInt();
+            int end = buffer.position() + length;
+            if (name.equals("SourceFile")) {
+                classFile.sourceFile = utf8(u2());
+            } else if (name.equals("InnerClasses")) {
+                for (int classes = u2(); classes > 0; classes--) {
+                    int inner = u2(), outer = u2(), innerName = u2();
+                    buffer.getShort(); //flags
+                    if (inner != 0 && className(inner).equals(classFile.name)) {
+                        classFile.anonymous = innerName == 0;
+                        classFile.local = innerName != 0 && outer == 0;
+                        if (innerName != 0) classFile.simpleName = utf8(innerName);
+                    }
+                }
+            }
+            buffer.position(end);
+        }
+        return classFile;
+    }
+
+    private void readConstantPool() {
+        int count = u2();
+        offsets = new int[count];
+        strings = new String[count];
+        for (int i = 1; i < count; i++) {
+            offsets[i] = buffer.position();
+            int tag = buffer.get() & 0xff;
+            switch (tag) {
+                case 1: //Utf8
+                    int length = u2();
+                    buffer.position(buffer.position() + length);
+                    break;
+                case 3: case 4: //Integer, Float
+                case 9: case 10: case 11: case 12: //references, NameAndType
+                case 17: case 18: //Dynamic, InvokeDynamic
+                    buffer.position(buffer.position() + 4);
+                    break;
+                case 5: case 6: //Long, Double (two entries)
+                    buffer.position(buffer.position() + 8);
+                    i++;
+                    break;
+                case 7: case 8: case 16: case 19: case 20: //Class, String, MethodType, Module, Package
+                    buffer.position(buffer.position() + 2);
+                    break;
+                case 15: //MethodHandle
+                    buffer.position(buffer.position() + 3);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown constant tag " + tag);
+            }
+        }
+    }
+
+    /**
+     * Find the NEW instructions of a method
+     * @param start position of the code
+     * @param length length of the code
+     * @param classFile class to add the created classes to
+     */
+    private void readCode(int start, int length, ClassFile classFile) {
+        int pc = 0;
+        while (pc < length) {
+            int op = buffer.get(start + pc) & 0xff;
+            int size = INSTRUCTION_LENGTHS[op];
+            if (op == NEW) {
+                String created = className(buffer.getShort(start + pc + 1) & 0xffff);
+                classFile.creations.merge(created, 1, Integer::sum);
+            } else if (size == 0) {
+                int padded = (pc + 4) & ~3; //operands are aligned to 4 bytes from the start of the code
+                if (op == TABLESWITCH) {
+                    int low = buffer.getInt(start + padded + 4), high = buffer.getInt(start + padded + 8);
+                    size = padded - pc + 12 + 4 * (high - low + 1);
+                } else if (op == LOOKUPSWITCH) {
+                    int pairs = buffer.getInt(start + padded + 4);
+                    size = padded - pc + 8 + 8 * pairs;
+                } else { //wide
+                    size = (buffer.get(start + pc + 1) & 0xff) == IINC ? 6 : 4;
+                }
+            }
+            pc += size;
+        }
+    }
+
+    private void skipAttributes() {
+        for (int attributes = u2(); attributes > 0; attributes--) {
+            buffer.getShort();
+            int length = buffer.getInt();
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    private int u2() {
+        return buffer.getShort() & 0xffff;
+    }
+
+    private String className(int index) {
+        return utf8(buffer.getShort(offsets[index] + 1) & 0xffff);
+    }
+
+    /**
+     * Decode a (modified) UTF-8 constant
+     * @param index index of the constant
+     * @return the string
+     */
+    private String utf8(int index) {
+        String string = strings[index];
+        if (string != null) return string;
+        int pos = offsets[index] + 1;
+        int length = buffer.getShort(pos) & 0xffff;
+        pos += 2;
+        char[] chars = new char[length];
+        int n = 0;
+        for (int end = pos + length; pos < end; ) {
+            int b = buffer.get(pos++) & 0xff;
+            if (b < 0x80) {
+                chars[n++] = (char) b;
+            } else if ((b & 0xe0) == 0xc0) {
+                chars[n++] = (char) (((b & 0x1f) << 6) | (buffer.get(pos++) & 0x3f));
+            } else {
+                chars[n++] = (char) (((b & 0x0f) << 12) | ((buffer.get(pos++) & 0x3f) << 6) | (buffer.get(pos++) & 0x3f));
+            }
+        }
+        string = new String(chars, 0, n);
+        strings[index] = string;
+        return string;
+    }
+}
@@ -1,10 +1,13 @@
 package com.github.iraticasi.testability.analyzer;
 
+import com.github.iraticasi.testability.metrics.Metrics;
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.dom.IMethodBinding;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 
@@ -16,13 +19,34 @@ import java.util.List;
  * We consider a dependency to be "external" if it is on:
  * - a class that is neither from the same package nor from java.util
  * - a class that has external dependencies itself (recursive)
+ * The first rule is the legacy policy; other rules can be given with a PolicySet, and several policies are
+ * evaluated in the same visit (the first one is the policy of hasExternalDependencies).
+ * The dependencies are kept once each, as ids of the symbol table of the project with the number of times they
+ * are created. getDependencies still repeats each name by its count, but in the order of the ids (the order in
+ * which the project first found each name) instead of the order of the object creations in the source, and so
+ * does toString.
  * */
 
 public class ClassInfo extends ASTVisitor implements Comparable<ClassInfo> {
 
     private String name, pkg, project;
-    private List<String> dependencies; //dependency injection principle violations
+    private String module; //module of the project the class belongs to (null if modules are not detected)
+    private SymbolTable symbols; //interned names of the project
+    private int[] dependencyIds = new int[0]; //dependency injection principle violations (sorted distinct ids)
+    private int[] dependencyCounts = new int[0]; //number of violations of each dependency
+    private int[] visitedIds = new int[8]; //ids of the dependencies visited and not compacted yet
+    private int numVisited = 0;
+    private List<String> dependencies; //view of the dependencies names (created when needed)
     private boolean externalDependencies = false; //whether some dependency is "external"
+    private boolean directExternalDependencies = false; //whether some dependency is directly "external"
+    private PolicySet policies; //rules of the "external" dependencies (the legacy one if null)
+    private int directExternalMask = 0; //policies for which some dependency is directly "external"
+    private int pkgId = -1; //id of the package of the class (-1 if not interned yet)
+    private TypeResolver resolver; //resolver of packages without bindings (null to use only bindings)
+    private int syntacticResolved = 0, bindingResolved = 0, unresolved = 0; //how the dependencies were resolved
+    private long bindingNanos = 0; //time resolving bindings (only measured if metrics are enabled)
+    private int[] edges; //line, column, dependency id and direct external flag of each object creation (null if not recorded)
+    private int numEdges = 0;
 
     /**
      *
@@ -31,10 +55,43 @@ public class ClassInfo extends ASTVisitor implements Comparable<ClassInfo> {
      * @param project name of its project
      */
     public ClassInfo(String name, String pkg, String project){
+        this(name, pkg, project, new SymbolTable());
+    }
+
+    /**
+     *
+     * @param name name of the java class
+     * @param pkg name ot its package
+     * @param project name of its project
+     * @param symbols interned names of the project
+     */
+    public ClassInfo(String name, String pkg, String project, SymbolTable symbols){
         this.name = name;
         this.pkg = pkg;
         this.project = project;
-        this.dependencies = new ArrayList<>();
+        this.symbols = symbols;
+    }
+
+    /**
+     * Recreates the info of a class already analyzed (before spreading the "external" dependencies)
+     * @param name name of the java class
+     * @param pkg name ot its package
+     * @param project name of its project
+     * @param symbols interned names of the project
+     * @param dependencies dependencies names
+     * @param dependencyPkgs packages of the dependencies
+     * @param counts number of violations of each dependency
+     * @param directExternal whether some dependency is directly "external"
+     */
+    ClassInfo(String name, String pkg, String project, SymbolTable symbols,
+              String[] dependencies, String[] dependencyPkgs, int[] counts, boolean directExternal){
+        this(name, pkg, project, symbols);
+        int[] ids = new int[dependencies.length];
+        for (int i = 0; i < ids.length; i++) ids[i] = symbols.internType(dependencyPkgs[i], dependencies[i]);
+        setDependencies(ids, counts.clone(), ids.length);
+        this.externalDependencies = directExternal;
+        this.directExternalDependencies = directExternal;
+        this.directExternalMask = directExternal ? 1 : 0;
     }
 
     /**
@@ -46,25 +103,255 @@ public class ClassInfo extends ASTVisitor implements Comparable<ClassInfo> {
     public boolean visit(ClassInstanceCreation creation){
         //get dependency
         String dependencyName = creation.getType().toString();
-        IMethodBinding constructorBinding = creation.resolveConstructorBinding();
-        String dependencyPkg="<not resolve>";
-        if (constructorBinding!=null)  dependencyPkg = constructorBinding.getDeclaringClass().getPackage().getName();
+        String dependencyPkg = resolvePackage(creation, dependencyName);
         if (dependencyPkg.equals("")) dependencyPkg = "<no package>";
         String dependencyFullName = dependencyPkg + "." + dependencyName;
-        //check if is external
-        if (isExternalDependency(dependencyFullName)) externalDependencies = true;
         //add it to list
-        this.dependencies.add(dependencyFullName);
+        int id = symbols.internType(dependencyPkg, dependencyFullName);
+        addDependency(id);
+        //check if is external
+        int mask = getExternalMask(id);
+        directExternalMask |= mask;
+        boolean external = (mask & 1) != 0;
+        if (external) {
+            externalDependencies = true;
+            directExternalDependencies = true;
+        }
+        if (edges != null) addEdge(creation, id, external);
         return true;
     }
 
+    private void addEdge(ClassInstanceCreation creation, int id, boolean external) {
+        if (4 * (numEdges + 1) > edges.length) edges = Arrays.copyOf(edges, Math.max(32, edges.length * 2));
+        CompilationUnit cu = (CompilationUnit) creation.getRoot();
+        int i = 4 * numEdges++;
+        edges[i] = cu.getLineNumber(creation.getStartPosition());
+        edges[i + 1] = cu.getColumnNumber(creation.getStartPosition()) + 1;
+        edges[i + 2] = id;
+        edges[i + 3] = external ? 1 : 0;
+    }
+
+    /**
+     * Set whether each object creation (edge) is recorded with its location, besides adding its dependency
+     * @param record whether to record the edges (false discards the recorded ones)
+     */
+    public void setRecordEdges(boolean record) {
+        this.edges = record ? new int[0] : null;
+        this.numEdges = 0;
+    }
+
+    /**
+     *
+     * @return number of object creations recorded (see setRecordEdges)
+     */
+    public int getNumEdges() {
+        return numEdges;
+    }
+
     /**
-     * Check if a dependency is consider directly external or not
-     * @param dependency
-     * @return whether a dependency is consider directly external or not
+     * @param i index of a recorded object creation
+     * @return line of the object creation
+     */
+    public int getEdgeLine(int i) {
+        return edges[4 * i];
+    }
+
+    /**
+     * @param i index of a recorded object creation
+     * @return column of the object creation (starting at 1)
+     */
+    public int getEdgeColumn(int i) {
+        return edges[4 * i + 1];
+    }
+
+    /**
+     * @param i index of a recorded object creation
+     * @return symbol id of the created class
+     */
+    public int getEdgeDependencyId(int i) {
+        return edges[4 * i + 2];
+    }
+
+    /**
+     * @param i index of a recorded object creation
+     * @return whether the created class is directly "external"
+     */
+    public boolean isEdgeDirectExternal(int i) {
+        return edges[4 * i + 3] != 0;
+    }
+
+    private void addDependency(int id) {
+        if (numVisited == visitedIds.length) visitedIds = Arrays.copyOf(visitedIds, numVisited * 2);
+        visitedIds[numVisited++] = id;
+        dependencies = null;
+    }
+
+    /**
+     * Merge the visited dependencies into the sorted distinct ids and their counts
+     */
+    private void compact() {
+        if (numVisited == 0) return;
+        int n = dependencyIds.length;
+        int[] all = Arrays.copyOf(dependencyIds, n + numVisited);
+        int[] allCounts = Arrays.copyOf(dependencyCounts, n + numVisited);
+        System.arraycopy(visitedIds, 0, all, n, numVisited);
+        Arrays.fill(allCounts, n, all.length, 1);
+        visitedIds = new int[8];
+        numVisited = 0;
+        setDependencies(all, allCounts, all.length);
+    }
+
+    /**
+     * Set the dependencies, sorting them by id and merging equal ids
+     * @param ids ids of the dependencies (modified)
+     * @param counts number of violations of each id (modified)
+     * @param length number of dependencies in the arrays
+     */
+    private void setDependencies(int[] ids, int[] counts, int length) {
+        long[] pairs = new long[length]; //(id, count) packed to sort them together
+        for (int i = 0; i < length; i++) pairs[i] = ((long) ids[i] << 32) | counts[i];
+        Arrays.sort(pairs);
+        int n = 0;
+        for (long pair : pairs) {
+            int id = (int) (pair >>> 32);
+            int count = (int) pair;
+            if (n > 0 && ids[n - 1] == id) {
+                counts[n - 1] += count;
+            } else {
+                ids[n] = id;
+                counts[n++] = count;
+            }
+        }
+        dependencyIds = Arrays.copyOf(ids, n);
+        dependencyCounts = Arrays.copyOf(counts, n);
+        dependencies = null;
+    }
+
+    @Override
+    public void endVisit(CompilationUnit cu) {
+        compact();
+        resolver = null; //not needed once the compilation unit is visited
+    }
+
+    /**
+     * Resolve the package of the class of an object creation, without bindings if possible
+     * @param creation object creation
+     * @param dependencyName name of the class as written in the source
+     * @return name of the package ("" for no package, "<not resolve>" if it is not found)
+     */
+    private String resolvePackage(ClassInstanceCreation creation, String dependencyName) {
+        if (resolver != null) {
+            String dependencyPkg = creation.getAnonymousClassDeclaration() != null ?
+                    resolver.getPackage() : //bindings resolve the anonymous class itself
+                    resolver.resolvePackage(dependencyName);
+            if (dependencyPkg != null) {
+                syntacticResolved++;
+                return dependencyPkg;
+            }
+        }
+        boolean timed = Metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        IMethodBinding constructorBinding = creation.resolveConstructorBinding();
+        if (timed) bindingNanos += System.nanoTime() - start;
+        if (constructorBinding == null) {
+            unresolved++;
+            return "<not resolve>";
+        }
+        bindingResolved++;
+        return constructorBinding.getDeclaringClass().getPackage().getName();
+    }
+
+    /**
+     * Set the resolver used to find the packages of the dependencies without bindings
+     * @param resolver resolver for the compilation unit of the class
+     */
+    public void setTypeResolver(TypeResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     *
+     * @return number of dependencies resolved without bindings
+     */
+    public int getSyntacticResolved() {
+        return syntacticResolved;
+    }
+
+    /**
+     *
+     * @return number of dependencies resolved with bindings
      */
-    private boolean isExternalDependency(String dependency) {
-        return !dependency.contains("org.apache."+ project) && !dependency.startsWith("java.util");
+    public int getBindingResolved() {
+        return bindingResolved;
+    }
+
+    /**
+     *
+     * @return number of dependencies whose package could not be resolved
+     */
+    public int getUnresolved() {
+        return unresolved;
+    }
+
+    /**
+     *
+     * @return time resolving the bindings of the dependencies, in nanoseconds (0 if metrics are disabled)
+     */
+    public long getBindingNanos() {
+        return bindingNanos;
+    }
+
+    /**
+     * Check for which policies a dependency is consider directly external
+     * @param id id of the dependency
+     * @return mask of the policies (bit 0 is the first policy)
+     */
+    private int getExternalMask(int id) {
+        if (policies == null) policies = PolicySet.legacy(project);
+        int mask = policies.evaluate(id, symbols);
+        int samePackage = mask & policies.getSamePackageMask();
+        if (samePackage != 0) {
+            if (pkgId < 0) pkgId = symbols.intern(pkg);
+            if (symbols.getPackage(id) == pkgId) mask &= ~samePackage;
+        }
+        return mask;
+    }
+
+    /**
+     * Set the policies that decide which dependencies are directly "external", before visiting the class
+     * @param policies the policies (the first one decides hasExternalDependencies)
+     */
+    public void setPolicies(PolicySet policies) {
+        this.policies = policies;
+    }
+
+    /**
+     * Evaluate again the dependencies of a class already analyzed (e.g. taken from a cache) with some policies
+     * @param policies the policies (the first one decides hasExternalDependencies)
+     */
+    public void applyPolicies(PolicySet policies) {
+        this.policies = policies;
+        compact();
+        directExternalMask = 0;
+        for (int id : dependencyIds) directExternalMask |= getExternalMask(id);
+        directExternalDependencies = (directExternalMask & 1) != 0;
+        externalDependencies = directExternalDependencies;
+    }
+
+    /**
+     * @param policy index of the policy
+     * @return whether some dependency is directly "external" for that policy
+     */
+    public boolean hasDirectExternalDependencies(int policy) {
+        return (directExternalMask & (1 << policy)) != 0;
+    }
+
+    /**
+     *
+     * @return mask of the policies for which some dependency is directly "external" (bit 0 is the first policy)
+     */
+    int getDirectExternalMask() {
+        return directExternalMask;
     }
 
     /**
@@ -84,13 +371,86 @@ public class ClassInfo extends ASTVisitor implements Comparable<ClassInfo> {
     }
 
     /**
-     *
-     * @return list of dependencies names
+     * The dependencies names, as the original list of the class. NOTE: the list is ordered by symbol id (equal names
+     * together), not in the order of the object creations in the source
+     * @return read-only list of dependencies names (each one repeated as many times as it is violated, ordered by id)
      */
     public List<String> getDependencies() {
+        compact();
+        if (dependencies == null) {
+            int[] ends = new int[dependencyCounts.length];
+            int size = 0;
+            for (int i = 0; i < ends.length; i++) {
+                size += dependencyCounts[i];
+                ends[i] = size;
+            }
+            int total = size;
+            dependencies = new AbstractList<String>() {
+                @Override
+                public String get(int index) {
+                    if (index < 0 || index >= total) throw new IndexOutOfBoundsException(String.valueOf(index));
+                    int i = Arrays.binarySearch(ends, index + 1); //first dependency whose occurrences reach index
+                    return symbols.getName(dependencyIds[i < 0 ? -i - 1 : i]);
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return o instanceof String && hasDependencyId(symbols.getId((String) o));
+                }
+
+                @Override
+                public int size() {
+                    return total;
+                }
+            };
+        }
         return dependencies;
     }
 
+    /**
+     *
+     * @return ids (in the symbol table of the project) of the distinct dependencies, sorted
+     */
+    public int[] getDependencyIds() {
+        compact();
+        return dependencyIds;
+    }
+
+    /**
+     *
+     * @return number of violations of each distinct dependency (in the order of getDependencyIds)
+     */
+    public int[] getDependencyCounts() {
+        compact();
+        return dependencyCounts;
+    }
+
+    /**
+     *
+     * @param id id of a name in the symbol table of the project
+     * @return whether the class has a dependency with that id
+     */
+    public boolean hasDependencyId(int id) {
+        return id >= 0 && Arrays.binarySearch(getDependencyIds(), id) >= 0;
+    }
+
+    /**
+     *
+     * @param id id of a dependency in the symbol table of the project
+     * @return whether that dependency is directly "external" for the first policy (the one of hasExternalDependencies)
+     */
+    public boolean isDirectExternalDependency(int id) {
+        return (getExternalMask(id) & 1) != 0;
+    }
+
+    /**
+     *
+     * @return interned names of the project
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
     /**
      *
      * @return name of the java class
@@ -107,6 +467,18 @@ public class ClassInfo extends ASTVisitor implements Comparable<ClassInfo> {
         return pkg;
     }
 
+    /**
+     *
+     * @return module of the project the class belongs to (null if modules are not detected)
+     */
+    public String getModule() {
+        return module;
+    }
+
+    public void setModule(String module) {
+        this.module = module;
+    }
+
     /**
      *
      * @return whether the class has "external" dependencies
@@ -115,23 +487,35 @@ public class ClassInfo extends ASTVisitor implements Comparable<ClassInfo> {
         return externalDependencies;
     }
 
+    /**
+     *
+     * @return whether the class has some dependency directly "external" (i.e. not because of the propagation)
+     */
+    public boolean hasDirectExternalDependencies(){
+        return directExternalDependencies;
+    }
+
     /**
      * Check if the class has some dependency that matches the string s
      * @param s string to match
      * @return whether the class has some dependency that matches the string s
      */
     public boolean hasDependency(String s){
-        for(String dependency:dependencies){
-            if (dependency.contains(s)) return true;
+        for(int id:getDependencyIds()){
+            if (symbols.getName(id).contains(s)) return true;
         }
         return false;
     }
 
+    /**
+     *
+     * @return the class, its "external" flag and its dependencies (in the order of getDependencies)
+     */
     @Override
     public String toString(){
         return "{ " + this.getFullName()
                 + ", external dependencies: " + (this.externalDependencies ? "Y": "N")
-                + ", dependencies: " + dependencies.toString() + "}\n";
+                + ", dependencies: " + getDependencies().toString() + "}\n";
     }
 
     @Override
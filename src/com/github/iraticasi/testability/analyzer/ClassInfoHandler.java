@@ -0,0 +1,26 @@
+package com.github.iraticasi.testability.analyzer;
+
+
+/**
+ * Receives the classes of a project as they are analyzed (see Analyzer.analyze(ClassInfoHandler))
+ */
+public interface ClassInfoHandler {
+
+    /**
+     * Called as soon as a class is extracted from its source file (or taken from the cache),
+     * before the "external" dependencies are spread, so only hasDirectExternalDependencies is known.
+     * The analyzer does not keep the class, so anything else needed from it (e.g. its libraries) has to be taken here.
+     * It may be called from several threads when the project is parsed in batches.
+     * @param id id of the class in the graph handed over to analyzed
+     * @param classInfo the class
+     * @param sourceFilePath path of its source file
+     */
+    default void parsed(int id, ClassInfo classInfo, String sourceFilePath) {
+    }
+
+    /**
+     * Called once the "external" dependencies are spread, from the thread running the analysis
+     * @param graph compact graph of the classes, with the ids of parsed
+     */
+    void analyzed(CompactGraph graph);
+}
@@ -0,0 +1,259 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.util.*;
+
+
+/**
+ * Compact dependency graph of the classes of a project, for the analyses that hand over the classes instead of
+ * keeping them (see Analyzer.analyze(ClassInfoHandler))
+ * <p>
+ * NOTES:
+ * Each class is added as soon as it is extracted, and only ids are kept of it: its full name, package, name and
+ * module (interned in the symbol table of the project), the policies for which it is directly "external" and its
+ * distinct dependencies (appended to a single int array). Once all the classes are added, the dependencies on
+ * project classes are turned into a reverse index (compressed sparse rows, as in DependencyGraph) and the
+ * "external" flag is spread over it.
+ * */
+
+public class CompactGraph {
+
+    private SymbolTable symbols; //interned names of the project
+    private int size = 0; //number of classes (nodes)
+    private int[] fullNames = new int[64], packages = new int[64], names = new int[64], modules = new int[64]; //class id -> symbol id
+    private int[] masks = new int[64]; //class id -> policies for which it is directly "external"
+    private int[] dependencyOffsets = new int[65]; //class id -> first of its dependencies
+    private int[] dependencies = new int[256]; //symbol ids of the distinct dependencies of each class
+    private long syntacticResolved = 0, bindingResolved = 0, unresolved = 0, bindingNanos = 0;
+    private int[] predOffsets, predecessors; //CSR of the dependents of each class (built by propagate)
+    private BitSet external = new BitSet(); //classes with "external" dependencies
+    private long propagationSteps; //edges followed by the last propagation
+
+    /**
+     * Creates an empty graph
+     * @param symbols interned names of the project
+     */
+    public CompactGraph(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Add a class, keeping only its ids. It can be called from several threads
+     * @param classInfo the class (it must use the symbol table of the graph)
+     * @return id of the class in the graph
+     */
+    synchronized int add(ClassInfo classInfo) {
+        int[] classDependencies = classInfo.getDependencyIds();
+        if (size == masks.length) {
+            int capacity = size * 2;
+            fullNames = Arrays.copyOf(fullNames, capacity);
+            packages = Arrays.copyOf(packages, capacity);
+            names = Arrays.copyOf(names, capacity);
+            modules = Arrays.copyOf(modules, capacity);
+            masks = Arrays.copyOf(masks, capacity);
+            dependencyOffsets = Arrays.copyOf(dependencyOffsets, capacity + 1);
+        }
+        int numDependencies = dependencyOffsets[size];
+        if (numDependencies + classDependencies.length > dependencies.length) {
+            dependencies = Arrays.copyOf(dependencies, Math.max(dependencies.length * 2, numDependencies + classDependencies.length));
+        }
+        System.arraycopy(classDependencies, 0, dependencies, numDependencies, classDependencies.length);
+        dependencyOffsets[size + 1] = numDependencies + classDependencies.length;
+        fullNames[size] = symbols.intern(classInfo.getFullName());
+        packages[size] = symbols.intern(classInfo.getPkg());
+        names[size] = symbols.intern(classInfo.getName());
+        modules[size] = classInfo.getModule() == null ? -1 : symbols.intern(classInfo.getModule());
+        masks[size] = classInfo.getDirectExternalMask();
+        syntacticResolved += classInfo.getSyntacticResolved();
+        bindingResolved += classInfo.getBindingResolved();
+        unresolved += classInfo.getUnresolved();
+        bindingNanos += classInfo.getBindingNanos();
+        return size++;
+    }
+
+    /**
+     * Build the reverse index of the dependencies between the classes and spread the "external" flag from the
+     * classes with direct external dependencies to all their (transitive) dependents
+     * @param assumedExternal ids of the classes assumed to be external (null if none)
+     * @return number of classes with "external" dependencies
+     */
+    synchronized int propagate(BitSet assumedExternal) {
+        //symbol id -> class id (the first class with that name, as DependencyGraph)
+        int[] classOfSymbol = new int[symbols.size()];
+        Arrays.fill(classOfSymbol, -1);
+        for (int i = size - 1; i >= 0; i--) classOfSymbol[fullNames[i]] = i;
+        //reverse index (counting sort of the edges by target); the dependencies of a class are distinct,
+        //and so are the classes they map to
+        this.predOffsets = new int[size + 1];
+        for (int e = 0; e < dependencyOffsets[size]; e++) {
+            int target = classOf(classOfSymbol, dependencies[e]);
+            if (target >= 0) predOffsets[target + 1]++;
+        }
+        for (int i = 0; i < size; i++) {
+            predOffsets[i + 1] += predOffsets[i];
+        }
+        this.predecessors = new int[predOffsets[size]];
+        int[] fill = Arrays.copyOf(predOffsets, size);
+        for (int i = 0; i < size; i++) {
+            for (int e = dependencyOffsets[i]; e < dependencyOffsets[i + 1]; e++) {
+                int target = classOf(classOfSymbol, dependencies[e]);
+                if (target >= 0) predecessors[fill[target]++] = i;
+            }
+        }
+        this.external = getDirectExternal(0);
+        if (assumedExternal != null) external.or(assumedExternal);
+        propagationSteps = DependencyGraph.spread(external, null, predOffsets, predecessors);
+        return external.cardinality();
+    }
+
+    private static int classOf(int[] classOfSymbol, int symbol) {
+        return symbol < classOfSymbol.length ? classOfSymbol[symbol] : -1;
+    }
+
+    private BitSet getDirectExternal(int policy) {
+        BitSet direct = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            if ((masks[i] & (1 << policy)) != 0) direct.set(i);
+        }
+        return direct;
+    }
+
+    /**
+     * Spread the "external" flag of one of the policies the classes were analyzed with (see PolicySet)
+     * @param policy index of the policy (0 is the policy of isExternal)
+     * @return classes with "external" dependencies for that policy
+     */
+    public synchronized BitSet getExternal(int policy) {
+        BitSet policyExternal = getDirectExternal(policy);
+        DependencyGraph.spread(policyExternal, null, predOffsets, predecessors);
+        return policyExternal;
+    }
+
+    /**
+     *
+     * @return number of classes (nodes) of the graph
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     *
+     * @return number of distinct dependencies between project classes (edges) of the graph (0 until propagated)
+     */
+    public int numEdges() {
+        return predecessors == null ? 0 : predecessors.length;
+    }
+
+    /**
+     *
+     * @param id id of the class
+     * @return symbol ids of its distinct dependencies, sorted
+     */
+    int[] getDependencyIds(int id) {
+        return Arrays.copyOfRange(dependencies, dependencyOffsets[id], dependencyOffsets[id + 1]);
+    }
+
+    /**
+     *
+     * @param id id of the class
+     * @return full name of the class (package+name)
+     */
+    public String getFullName(int id) {
+        return symbols.getName(fullNames[id]);
+    }
+
+    /**
+     *
+     * @param id id of the class
+     * @return name of its package
+     */
+    public String getPkg(int id) {
+        return symbols.getName(packages[id]);
+    }
+
+    /**
+     *
+     * @param id id of the class
+     * @return name of the java class
+     */
+    public String getName(int id) {
+        return symbols.getName(names[id]);
+    }
+
+    /**
+     *
+     * @param id id of the class
+     * @return module of the project the class belongs to (null if modules are not detected)
+     */
+    public String getModule(int id) {
+        return modules[id] < 0 ? null : symbols.getName(modules[id]);
+    }
+
+    /**
+     *
+     * @param id id of the class
+     * @return whether the class has some dependency directly "external" (for the first policy)
+     */
+    public boolean hasDirectExternalDependencies(int id) {
+        return (masks[id] & 1) != 0;
+    }
+
+    /**
+     *
+     * @param id id of the class
+     * @return whether the class has "external" dependencies (after propagation)
+     */
+    public boolean isExternal(int id) {
+        return external.get(id);
+    }
+
+    /**
+     * Compare two classes in the order of ClassInfo.compareTo (the order of the reports)
+     * @param a id of a class
+     * @param b id of another class
+     * @return as ClassInfo.compareTo
+     */
+    public int compare(int a, int b) {
+        return packages[a] == packages[b] ? getName(b).compareTo(getName(a)) : getPkg(b).compareTo(getPkg(a));
+    }
+
+    /**
+     *
+     * @return number of edges followed by the last propagation
+     */
+    public long getPropagationSteps() {
+        return propagationSteps;
+    }
+
+    /**
+     *
+     * @return number of dependencies of the classes resolved without bindings
+     */
+    public long getSyntacticResolved() {
+        return syntacticResolved;
+    }
+
+    /**
+     *
+     * @return number of dependencies of the classes resolved with bindings
+     */
+    public long getBindingResolved() {
+        return bindingResolved;
+    }
+
+    /**
+     *
+     * @return number of dependencies of the classes whose package could not be resolved
+     */
+    public long getUnresolved() {
+        return unresolved;
+    }
+
+    /**
+     *
+     * @return time resolving bindings, in nanoseconds (only measured if metrics are enabled)
+     */
+    public long getBindingNanos() {
+        return bindingNanos;
+    }
+}
@@ -0,0 +1,631 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+
+
+/**
+ * Dependency graph of the classes of all the projects of a corpus, stored in files of a folder
+ * <p>
+ * NOTES:
+ * The projects are added one at a time as they are analyzed, so only the classes of one project are in memory.
+ * Every class is a node, identified by a 64-bit hash of its full name (see hash), and its edges are the hashes
+ * of the names of its distinct dependencies (the new X() of the class, see canonicalName), with the lowest bit set
+ * when the dependency is directly "external" for the policy of its project. Nodes and edges are appended to column files (big endian):
+ * - node-hash.bin (long), node-flags.bin (byte: external in its project, dedicated test), node-edges.bin (long:
+ *   first edge of the node) and node-name.bin (long: offset of its name in strings.bin)
+ * - edges.bin (long: hash of the dependency | direct external flag)
+ * - strings.bin: hash (long), length (int) and UTF-8 bytes of the names of the classes and dependencies
+ * - projects.tsv: name of each project and the end of its nodes, edges and strings, written once the project
+ *   is complete, so a interrupted append is discarded when the folder is opened again.
+ * Sealing the graph builds, with the files mapped in memory instead of the heap:
+ * - index.bin: open addressing table (hash, node) of the nodes, to resolve the edges
+ * - rev-offsets.bin (long) and rev-sources.bin (int): reverse CSR of the resolved edges (dependents of each node)
+ * - external.bin: the "external" flag of each node for the corpus (bitset)
+ * An edge is resolved to the class of the same project with that name (the first one, as DependencyGraph), or else
+ * to the classes of other projects with that name. A class is directly external if some dependency is directly
+ * "external" and is not resolved to a class of another project; the flag is then spread to the (transitive)
+ * dependents through the project and cross-project edges. So with a single project the flags are the ones of
+ * DependencyGraph.propagate (which does not link creations with type arguments or a qualified type, such as
+ * new C<>() or new a.b.C(), so they may only add some dependents here), and a class depending on another project
+ * of the corpus is external only if that class is. Prefix queries (reach) spread the same way from the classes with dependencies in a package.
+ * The heap used is a few bitsets of the nodes; the rest is read from the mapped files (hash collisions of two
+ * names, with 63-bit hashes, are ignored).
+ * */
+
+public class CorpusGraph implements Closeable {
+
+    public static final int PROJECT_EXTERNAL = 1, TEST = 2; //node flags
+
+    private static final String[] DERIVED_FILES = {"index.bin", "rev-offsets.bin", "rev-sources.bin", "external.bin", "seal.tsv"};
+
+    private File folder;
+    private List<String> projects = new ArrayList<>();
+    private List<long[]> projectEnds = new ArrayList<>(); //project -> {end of its nodes, edges, strings}
+    private int numNodes = 0;
+    private long numEdges = 0, stringsSize = 0;
+    private long numResolved = 0, numCrossProject = 0; //edges resolved to classes, and to classes of other projects
+    private boolean sealed = false;
+    //mapped files, while sealed
+    private MappedFile nodeHashes, nodeFlags, nodeEdges, nodeNames, edges, strings, index, revOffsets, revSources;
+    private BitSet external;
+
+    private CorpusGraph(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Open the graph of a folder, creating it if it does not exist, to add projects or query it
+     * @param folder the folder
+     * @return the graph (sealed if it was sealed after its last project)
+     * @throws IOException if the files can not be read
+     */
+    public static CorpusGraph open(File folder) throws IOException {
+        folder.mkdirs();
+        CorpusGraph graph = new CorpusGraph(folder);
+        graph.readProjects();
+        File seal = new File(folder, "seal.tsv");
+        if (seal.exists()) {
+            String[] fields = new String(Files.readAllBytes(seal.toPath()), StandardCharsets.UTF_8).trim().split("\t");
+            if (fields.length == 3 && Integer.parseInt(fields[0]) == graph.numNodes) {
+                graph.numResolved = Long.parseLong(fields[1]);
+                graph.numCrossProject = Long.parseLong(fields[2]);
+                graph.map();
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Read the complete projects and discard what was appended after the last one
+     */
+    private void readProjects() throws IOException {
+        File file = new File(folder, "projects.tsv");
+        if (file.exists()) {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                if (fields.length != 4) break; //interrupted while writing the line
+                projects.add(fields[0]);
+                projectEnds.add(new long[]{Long.parseLong(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3])});
+            }
+        }
+        if (!projects.isEmpty()) {
+            long[] ends = projectEnds.get(projects.size() - 1);
+            numNodes = (int) ends[0];
+            numEdges = ends[1];
+            stringsSize = ends[2];
+        }
+        truncate("node-hash.bin", 8L * numNodes);
+        truncate("node-flags.bin", numNodes);
+        truncate("node-edges.bin", 8L * numNodes);
+        truncate("node-name.bin", 8L * numNodes);
+        truncate("edges.bin", 8 * numEdges);
+        truncate("strings.bin", stringsSize);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            for (int p = 0; p < projects.size(); p++) writer.write(projectLine(p));
+        }
+    }
+
+    private void truncate(String name, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(folder, name).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (channel.size() > size) channel.truncate(size);
+            if (channel.size() < size) throw new IOException(name + " of " + folder + " is truncated");
+        }
+    }
+
+    private String projectLine(int p) {
+        long[] ends = projectEnds.get(p);
+        return projects.get(p) + "\t" + ends[0] + "\t" + ends[1] + "\t" + ends[2] + "\n";
+    }
+
+    /**
+     * 64-bit hash of a name (FNV-1a of its chars, mixed), with the lowest bit cleared and never 0
+     * @param name the name
+     * @return its hash
+     */
+    public static long hash(String name) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            h ^= name.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        h &= ~1L;
+        return h == 0 ? 2 : h;
+    }
+
+    /**
+     * Full name of the class created by a dependency, so that it can be resolved to a class of any project
+     * @param dependency name of the dependency (package + "." + the type as written, see ClassInfo)
+     * @param pkg package of the dependency (null if unknown)
+     * @return the name without type arguments (a.b.C<D> is a.b.C) and, if the type was written with its package
+     *      (a.b.a.b.C or <not resolve>.a.b.C), without the package prepended by ClassInfo (a.b.C)
+     */
+    public static String canonicalName(String dependency, String pkg) {
+        String name = dependency;
+        if (pkg != null && dependency.startsWith(pkg + ".")) {
+            String written = dependency.substring(pkg.length() + 1);
+            if (written.startsWith(pkg + ".") || (pkg.equals("<not resolve>") && written.indexOf('.') > 0)) name = written;
+        }
+        int typeArguments = name.indexOf('<', name.startsWith("<") ? name.indexOf('>') : 0);
+        return typeArguments > 0 ? name.substring(0, typeArguments) : name;
+    }
+
+    /**
+     * Append the classes of a analyzed project (the graph is no longer sealed)
+     * @param project name of the project (unique in the corpus)
+     * @param classes analyzed classes of the project, with their "external" flag spread
+     * @param hasTest whether a class has a dedicated test
+     * @throws IOException if the files can not be written
+     */
+    public void addProject(String project, List<ClassInfo> classes, Predicate<ClassInfo> hasTest) throws IOException {
+        if (projects.contains(project)) throw new IllegalArgumentException(project + " is already in " + folder);
+        if (project.contains("\t") || project.contains("\n")) throw new IllegalArgumentException("Invalid project name: " + project);
+        unseal();
+        int nodes = numNodes;
+        long edgeCount = numEdges, stringsEnd = stringsSize;
+        try (DataOutputStream hashOut = append("node-hash.bin"); DataOutputStream flagOut = append("node-flags.bin");
+             DataOutputStream edgeStartOut = append("node-edges.bin"); DataOutputStream nameOut = append("node-name.bin");
+             DataOutputStream edgeOut = append("edges.bin"); DataOutputStream stringOut = append("strings.bin")) {
+            Set<Integer> writtenNames = new HashSet<>(); //dependencies of the project already in strings.bin
+            for (ClassInfo classInfo : classes) {
+                String fullName = classInfo.getFullName();
+                hashOut.writeLong(hash(fullName));
+                flagOut.writeByte((classInfo.hasExternalDependencies() ? PROJECT_EXTERNAL : 0) | (hasTest.test(classInfo) ? TEST : 0));
+                edgeStartOut.writeLong(edgeCount);
+                nameOut.writeLong(stringsEnd);
+                stringsEnd += writeString(stringOut, fullName);
+                SymbolTable symbols = classInfo.getSymbols();
+                for (int id : classInfo.getDependencyIds()) {
+                    int pkg = symbols.getPackage(id);
+                    String dependency = canonicalName(symbols.getName(id), pkg < 0 ? null : symbols.getName(pkg));
+                    edgeOut.writeLong(hash(dependency) | (classInfo.isDirectExternalDependency(id) ? 1 : 0));
+                    edgeCount++;
+                    if (writtenNames.add(id)) stringsEnd += writeString(stringOut, dependency);
+                }
+                nodes++;
+            }
+        }
+        //commit the project
+        projects.add(project);
+        projectEnds.add(new long[]{nodes, edgeCount, stringsEnd});
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(folder, "projects.tsv"), true), StandardCharsets.UTF_8)) {
+            writer.write(projectLine(projects.size() - 1));
+        }
+        numNodes = nodes;
+        numEdges = edgeCount;
+        stringsSize = stringsEnd;
+    }
+
+    private DataOutputStream append(String name) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(folder, name), true), 1 << 16));
+    }
+
+    private static int writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeLong(hash(string));
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        return 12 + bytes.length;
+    }
+
+    /**
+     * Resolve the edges, build the reverse index and spread the "external" flag over the corpus
+     * @throws IOException if the files can not be written
+     */
+    public void seal() throws IOException {
+        unseal();
+        mapColumns();
+        int n = numNodes;
+        //index of the nodes by hash
+        int capacity = 16;
+        while (capacity < 2L * n) capacity *= 2;
+        index = MappedFile.create(new File(folder, "index.bin"), 16L * capacity);
+        for (int i = 0; i < n; i++) {
+            long h = nodeHashes.getLong(i);
+            int slot = slot(h, capacity);
+            while (index.getLong(2L * slot) != 0) slot = (slot + 1) & (capacity - 1);
+            index.putLong(2L * slot, h);
+            index.putLong(2L * slot + 1, i);
+        }
+        //resolve the edges: dependents of each node are counted and spooled, seeds are the directly external nodes
+        revOffsets = MappedFile.create(new File(folder, "rev-offsets.bin"), 8L * (n + 1));
+        BitSet seeds = new BitSet(n);
+        File spool = new File(folder, "resolved.tmp");
+        numResolved = 0;
+        numCrossProject = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spool), 1 << 16))) {
+            int project = 0;
+            for (int i = 0; i < n; i++) {
+                while (i >= projectEnds.get(project)[0]) project++;
+                long first = projectEnds.get(project)[0] - projectSize(project), last = projectEnds.get(project)[0];
+                for (long e = nodeEdges.getLong(i), end = edgeEnd(i); e < end; e++) {
+                    long edge = edges.getLong(e);
+                    long h = edge & ~1L;
+                    int sameProject = -1;
+                    int numOther = 0;
+                    for (int slot = slot(h, capacity); index.getLong(2L * slot) != 0; slot = (slot + 1) & (capacity - 1)) {
+                        if (index.getLong(2L * slot) != h) continue;
+                        int target = (int) index.getLong(2L * slot + 1);
+                        if (target >= first && target < last) {
+                            if (sameProject < 0) sameProject = target;
+                        } else {
+                            numOther++;
+                        }
+                    }
+                    if (sameProject >= 0 || numOther == 0) {
+                        if ((edge & 1) != 0) seeds.set(i);
+                        if (sameProject >= 0) spool(out, sameProject, i);
+                    } else {
+                        for (int slot = slot(h, capacity); index.getLong(2L * slot) != 0; slot = (slot + 1) & (capacity - 1)) {
+                            if (index.getLong(2L * slot) == h) spool(out, (int) index.getLong(2L * slot + 1), i);
+                        }
+                        numCrossProject += numOther;
+                    }
+                }
+            }
+        }
+        //reverse CSR (counting sort of the spooled edges by target)
+        for (int t = 0; t < n; t++) revOffsets.putLong(t + 1, revOffsets.getLong(t + 1) + revOffsets.getLong(t));
+        revSources = MappedFile.create(new File(folder, "rev-sources.bin"), 4 * Math.max(1, numResolved));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spool), 1 << 16))) {
+            for (long e = 0; e < numResolved; e++) {
+                long pair = in.readLong();
+                int target = (int) (pair >>> 32);
+                long position = revOffsets.getLong(target);
+                revSources.putInt(position, (int) pair);
+                revOffsets.putLong(target, position + 1);
+            }
+        }
+        spool.delete();
+        for (int t = n; t > 0; t--) revOffsets.putLong(t, revOffsets.getLong(t - 1)); //back to the first dependent of each node
+        revOffsets.putLong(0, 0);
+        //spread the external flag
+        external = spread(seeds);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(folder, "external.bin"))))) {
+            long[] words = Arrays.copyOf(external.toLongArray(), (n + 63) / 64);
+            for (long word : words) out.writeLong(word);
+        }
+        index.force();
+        revOffsets.force();
+        revSources.force();
+        Files.write(new File(folder, "seal.tsv").toPath(),
+                (n + "\t" + numResolved + "\t" + numCrossProject + "\n").getBytes(StandardCharsets.UTF_8));
+        sealed = true;
+    }
+
+    private long projectSize(int project) {
+        return projectEnds.get(project)[0] - (project == 0 ? 0 : projectEnds.get(project - 1)[0]);
+    }
+
+    private void spool(DataOutputStream out, int target, int source) throws IOException {
+        out.writeLong(((long) target << 32) | source);
+        revOffsets.putLong(target + 1, revOffsets.getLong(target + 1) + 1);
+        numResolved++;
+    }
+
+    private static int slot(long hash, int capacity) {
+        return (int) (hash >>> 1) & (capacity - 1);
+    }
+
+    private long edgeEnd(int node) {
+        return node + 1 < numNodes ? nodeEdges.getLong(node + 1) : numEdges;
+    }
+
+    /**
+     * Spread a set of nodes to all their (transitive) dependents, level by level over the reverse index
+     * @param seeds the nodes
+     * @return the seeds and their dependents
+     */
+    private BitSet spread(BitSet seeds) {
+        BitSet reached = (BitSet) seeds.clone();
+        BitSet frontier = (BitSet) seeds.clone();
+        while (!frontier.isEmpty()) {
+            BitSet next = new BitSet(numNodes);
+            for (int node = frontier.nextSetBit(0); node >= 0; node = frontier.nextSetBit(node + 1)) {
+                for (long e = revOffsets.getLong(node), end = revOffsets.getLong(node + 1); e < end; e++) {
+                    int dependent = revSources.getInt(e);
+                    if (!reached.get(dependent)) {
+                        reached.set(dependent);
+                        next.set(dependent);
+                    }
+                }
+            }
+            frontier = next;
+        }
+        return reached;
+    }
+
+    /**
+     * Map the files of the sealed graph
+     */
+    private void map() throws IOException {
+        mapColumns();
+        index = MappedFile.open(new File(folder, "index.bin"));
+        revOffsets = MappedFile.open(new File(folder, "rev-offsets.bin"));
+        revSources = MappedFile.open(new File(folder, "rev-sources.bin"));
+        MappedFile externalFile = MappedFile.open(new File(folder, "external.bin"));
+        long[] words = new long[(numNodes + 63) / 64];
+        for (int w = 0; w < words.length; w++) words[w] = externalFile.getLong(w);
+        external = BitSet.valueOf(words);
+        sealed = true;
+    }
+
+    private void mapColumns() throws IOException {
+        nodeHashes = MappedFile.open(new File(folder, "node-hash.bin"));
+        nodeFlags = MappedFile.open(new File(folder, "node-flags.bin"));
+        nodeEdges = MappedFile.open(new File(folder, "node-edges.bin"));
+        nodeNames = MappedFile.open(new File(folder, "node-name.bin"));
+        edges = MappedFile.open(new File(folder, "edges.bin"));
+        strings = MappedFile.open(new File(folder, "strings.bin"));
+    }
+
+    /**
+     * Drop the mapped files and the files derived from them (they are built again by seal)
+     */
+    private void unseal() {
+        unmap();
+        for (String name : DERIVED_FILES) new File(folder, name).delete();
+    }
+
+    private void checkSealed() {
+        if (!sealed) throw new IllegalStateException("The graph of " + folder + " is not sealed");
+    }
+
+    /**
+     * Find the classes that depend, directly or transitively (also through other projects), on a package
+     * @param prefix name of the package (it matches the package and its subpackages) or, ending with *, any
+     *               prefix of the full names of the dependencies
+     * @return the nodes of those classes
+     * @throws IOException if the names can not be read
+     */
+    public BitSet reach(String prefix) throws IOException {
+        checkSealed();
+        boolean raw = prefix.endsWith("*");
+        String start = raw ? prefix.substring(0, prefix.length() - 1) : prefix;
+        //hashes of the names that match
+        long[] matches = new long[16];
+        int numMatches = 0;
+        byte[] prefixBytes = start.getBytes(StandardCharsets.UTF_8);
+        for (long position = 0; position < stringsSize; ) {
+            long h = strings.getLong8(position);
+            int length = strings.getInt4(position + 8);
+            if (matches(position + 12, length, prefixBytes, raw)) {
+                if (numMatches == matches.length) matches = Arrays.copyOf(matches, 2 * numMatches);
+                matches[numMatches++] = h;
+            }
+            position += 12 + length;
+        }
+        matches = Arrays.copyOf(matches, numMatches);
+        Arrays.sort(matches);
+        //classes with a dependency on them
+        BitSet seeds = new BitSet(numNodes);
+        if (numMatches > 0) {
+            for (int i = 0; i < numNodes; i++) {
+                for (long e = nodeEdges.getLong(i), end = edgeEnd(i); e < end; e++) {
+                    if (Arrays.binarySearch(matches, edges.getLong(e) & ~1L) >= 0) {
+                        seeds.set(i);
+                        break;
+                    }
+                }
+            }
+        }
+        return spread(seeds);
+    }
+
+    /**
+     * Check if a UTF-8 name of strings.bin starts with a prefix (at a package boundary, unless raw)
+     */
+    private boolean matches(long position, int length, byte[] prefix, boolean raw) {
+        if (length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (strings.getByte(position + i) != prefix[i]) return false;
+        }
+        return raw || length == prefix.length || strings.getByte(position + prefix.length) == '.';
+    }
+
+    /**
+     * Count some nodes by project
+     * @param nodes the nodes
+     * @return number of them of each project (in the order of getProjects)
+     */
+    public long[] countByProject(BitSet nodes) {
+        long[] counts = new long[projects.size()];
+        int project = 0;
+        for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+            while (node >= projectEnds.get(project)[0]) project++;
+            counts[project]++;
+        }
+        return counts;
+    }
+
+    /**
+     *
+     * @return names of the projects, in the order they were added
+     */
+    public List<String> getProjects() {
+        return Collections.unmodifiableList(projects);
+    }
+
+    /**
+     * @param project index of the project
+     * @return its nodes: {first, end}
+     */
+    public int[] getNodes(int project) {
+        return new int[]{(int) (projectEnds.get(project)[0] - projectSize(project)), (int) projectEnds.get(project)[0]};
+    }
+
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    public long getNumEdges() {
+        return numEdges;
+    }
+
+    /**
+     *
+     * @return number of edges resolved to classes of the corpus (after sealing)
+     */
+    public long getNumResolved() {
+        return numResolved;
+    }
+
+    /**
+     *
+     * @return number of edges resolved to classes of other projects (after sealing)
+     */
+    public long getNumCrossProject() {
+        return numCrossProject;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * @param node the node
+     * @return full name of its class
+     */
+    public String getName(int node) {
+        checkSealed();
+        long position = nodeNames.getLong(node);
+        byte[] bytes = new byte[strings.getInt4(position + 8)];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = strings.getByte(position + 12 + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param node the node
+     * @return its flags (PROJECT_EXTERNAL, TEST)
+     */
+    public int getFlags(int node) {
+        checkSealed();
+        return nodeFlags.getByte(node);
+    }
+
+    /**
+     * @param node the node
+     * @return whether the class has "external" dependencies in the corpus
+     */
+    public boolean isExternal(int node) {
+        checkSealed();
+        return external.get(node);
+    }
+
+    /**
+     * @param node the node
+     * @return nodes of the classes (of any project) that depend on it
+     */
+    public int[] getDependents(int node) {
+        checkSealed();
+        long first = revOffsets.getLong(node);
+        int[] dependents = new int[(int) (revOffsets.getLong(node + 1) - first)];
+        for (int i = 0; i < dependents.length; i++) dependents[i] = revSources.getInt(first + i);
+        return dependents;
+    }
+
+    @Override
+    public void close() {
+        unmap();
+    }
+
+    /**
+     * Drop the mapped files (they are unmapped when they are garbage collected)
+     */
+    private void unmap() {
+        sealed = false;
+        nodeHashes = nodeFlags = nodeEdges = nodeNames = edges = strings = index = revOffsets = revSources = null;
+        external = null;
+    }
+
+    /**
+     * A file mapped in memory in segments of 1 GB (a single mapped buffer is limited to 2 GB)
+     */
+    private static class MappedFile {
+        private static final int SEGMENT_BITS = 30;
+        private MappedByteBuffer[] segments;
+
+        private MappedFile(File file, long size, boolean writable) throws IOException {
+            try (FileChannel channel = writable ?
+                    FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE) :
+                    FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                segments = new MappedByteBuffer[(int) ((size + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS)];
+                for (int s = 0; s < segments.length; s++) {
+                    long start = (long) s << SEGMENT_BITS;
+                    segments[s] = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                            start, Math.min(1L << SEGMENT_BITS, size - start));
+                }
+            }
+        }
+
+        /**
+         * Create a file of zeros and map it to read and write
+         */
+        static MappedFile create(File file, long size) throws IOException {
+            file.delete();
+            return new MappedFile(file, size, true);
+        }
+
+        static MappedFile open(File file) throws IOException {
+            return new MappedFile(file, file.length(), false);
+        }
+
+        //values are aligned to their size, so they never cross a segment
+        long getLong(long index) {
+            return getLong8(8 * index);
+        }
+
+        void putLong(long index, long value) {
+            long position = 8 * index;
+            segments[(int) (position >>> SEGMENT_BITS)].putLong((int) (position & ((1L << SEGMENT_BITS) - 1)), value);
+        }
+
+        int getInt(long index) {
+            return getInt4(4 * index);
+        }
+
+        void putInt(long index, int value) {
+            long position = 4 * index;
+            segments[(int) (position >>> SEGMENT_BITS)].putInt((int) (position & ((1L << SEGMENT_BITS) - 1)), value);
+        }
+
+        byte getByte(long position) {
+            return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & ((1L << SEGMENT_BITS) - 1)));
+        }
+
+        //unaligned values (strings.bin) may cross a segment
+        long getLong8(long position) {
+            int offset = (int) (position & ((1L << SEGMENT_BITS) - 1));
+            ByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+            if (offset + 8 <= segment.limit()) return segment.getLong(offset);
+            long value = 0;
+            for (int i = 0; i < 8; i++) value = (value << 8) | (getByte(position + i) & 0xff);
+            return value;
+        }
+
+        int getInt4(long position) {
+            int offset = (int) (position & ((1L << SEGMENT_BITS) - 1));
+            ByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+            if (offset + 4 <= segment.limit()) return segment.getInt(offset);
+            int value = 0;
+            for (int i = 0; i < 4; i++) value = (value << 8) | (getByte(position + i) & 0xff);
+            return value;
+        }
+
+        void force() {
+            for (MappedByteBuffer segment : segments) segment.force();
+        }
+    }
+}
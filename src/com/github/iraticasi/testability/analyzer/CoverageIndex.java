@@ -0,0 +1,268 @@
+package com.github.iraticasi.testability.analyzer;
+
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.internal.data.CRC64;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.zip.ZipFile;
+
+
+/**
+ * Coverage of the classes of a project by its tests, from JaCoCo execution data (jacoco.exec files)
+ * <p>
+ * NOTES:
+ * Execution data files are streamed: each class record is merged (OR) into the probes of its class id as it is
+ * read, so the memory is one bit per probe of each distinct class, however many sessions the files have.
+ * With the compiled classes of the project (see BytecodeEngine.findClassInputs) the probes are turned into
+ * covered lines and branches with the JaCoCo analyzer, one class file at a time; classes never loaded by the
+ * tests are then counted as uncovered. Without them only the ratio of executed probes is known.
+ * Coverage is folded into the class of the source file (as ClassInfo), i.e. package + SourceFile attribute,
+ * and stored in a int array with COUNTERS values per class.
+ * A class is covered if some line (or, without class files, some probe) of it was executed.
+ * */
+
+public class CoverageIndex {
+
+    public static final int COVERED_LINES = 0, LINES = 1, COVERED_BRANCHES = 2, BRANCHES = 3, COVERED_PROBES = 4, PROBES = 5;
+    private static final int COUNTERS = 6;
+
+    //execution data: jacoco class id -> slot
+    private Map<Long, Integer> slots = new HashMap<>();
+    private List<String> execNames = new ArrayList<>(); //slot -> internal name of the class
+    private List<long[]> execProbes = new ArrayList<>(); //slot -> executed probes (bits)
+    private List<Integer> numProbes = new ArrayList<>(); //slot -> number of probes
+    private int numExecFiles = 0;
+
+    //coverage of the source files: full name (package.Name) -> id
+    private Map<String, Integer> ids = new HashMap<>();
+    private int[] counters = new int[0]; //id * COUNTERS + counter
+    private boolean resolved = false; //whether lines and branches are known
+
+    /**
+     * Find the execution data files of a project
+     * @param project base folder of the project
+     * @return the .exec files below it, sorted (version control directories are skipped)
+     * @throws IOException if the project can not be walked
+     */
+    public static List<File> findExecFiles(File project) throws IOException {
+        List<File> found = new ArrayList<>();
+        Files.walkFileTree(project.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+                return name.equals(".git") || name.equals("node_modules") ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.getFileName().toString().endsWith(".exec")) found.add(file.toFile());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE; //unreadable entries are ignored
+            }
+        });
+        Collections.sort(found);
+        return found;
+    }
+
+    /**
+     * Build the coverage index of a project from its execution data files and its compiled classes
+     * @param project base folder of the project
+     * @param buildFilePaths paths of the build files of the project (see SourceScanner.Scan)
+     * @return the index (empty if the project has no execution data)
+     * @throws IOException if a execution data file can not be read
+     */
+    public static CoverageIndex build(File project, List<String> buildFilePaths) throws IOException {
+        CoverageIndex index = new CoverageIndex();
+        for (File execFile : findExecFiles(project)) index.load(execFile);
+        if (index.numExecFiles > 0) index.resolve(BytecodeEngine.findClassInputs(project, buildFilePaths));
+        return index;
+    }
+
+    /**
+     * Stream a execution data file into the index
+     * @param execFile the file
+     * @throws IOException if the file can not be read or it is not a execution data file
+     */
+    public void load(File execFile) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(execFile), 1 << 16)) {
+            ExecutionDataReader reader = new ExecutionDataReader(in);
+            reader.setSessionInfoVisitor(info -> { });
+            reader.setExecutionDataVisitor(this::merge);
+            reader.read();
+        }
+        numExecFiles++;
+        resolved = false;
+        computeProbeCoverage();
+    }
+
+    /**
+     * Merge the probes of a class record
+     * @param data the record
+     */
+    private void merge(ExecutionData data) {
+        boolean[] probes = data.getProbes();
+        Integer slot = slots.get(data.getId());
+        if (slot == null) {
+            slot = execNames.size();
+            slots.put(data.getId(), slot);
+            execNames.add(data.getName());
+            execProbes.add(new long[(probes.length + 63) / 64]);
+            numProbes.add(probes.length);
+        }
+        long[] bits = execProbes.get(slot);
+        for (int p = 0; p < probes.length && p < 64 * bits.length; p++) {
+            if (probes[p]) bits[p >> 6] |= 1L << p;
+        }
+    }
+
+    /**
+     * Fold the executed probes into the classes of the source files (before the class files are analyzed)
+     */
+    private void computeProbeCoverage() {
+        ids.clear();
+        counters = new int[0];
+        for (int slot = 0; slot < execNames.size(); slot++) {
+            String name = execNames.get(slot);
+            int dollar = name.indexOf('$', name.lastIndexOf('/') + 1);
+            int id = getOrAddId((dollar < 0 ? name : name.substring(0, dollar)).replace('/', '.'));
+            int covered = 0;
+            for (long bits : execProbes.get(slot)) covered += Long.bitCount(bits);
+            counters[id * COUNTERS + COVERED_PROBES] += covered;
+            counters[id * COUNTERS + PROBES] += numProbes.get(slot);
+        }
+    }
+
+    /**
+     * Compute the covered lines and branches of each class, analyzing the compiled classes of the project
+     * (nothing changes if there are no class files)
+     * @param classInputs class directories and jars
+     */
+    public void resolve(List<File> classInputs) {
+        computeProbeCoverage(); //discard the lines and branches of a previous resolution
+        List<ZipFile> jars = new ArrayList<>();
+        try {
+            List<BytecodeEngine.Input> inputs = BytecodeEngine.listInputs(classInputs, jars);
+            if (inputs.isEmpty()) return;
+            for (BytecodeEngine.Input input : inputs) {
+                ByteBuffer buffer = input.read();
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                resolve(bytes, input.getPath());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading the classes for the coverage", e);
+        } finally {
+            BytecodeEngine.close(jars);
+        }
+        resolved = true;
+    }
+
+    /**
+     * Analyze a class file with its execution data
+     * @param bytes content of the class file
+     * @param path path of the class file
+     */
+    private void resolve(byte[] bytes, String path) {
+        long classId = CRC64.classId(bytes);
+        ExecutionDataStore store = new ExecutionDataStore(); //only the data of this class
+        Integer slot = slots.get(classId);
+        if (slot != null) {
+            boolean[] probes = new boolean[numProbes.get(slot)];
+            long[] bits = execProbes.get(slot);
+            for (int p = 0; p < probes.length; p++) probes[p] = (bits[p >> 6] & (1L << p)) != 0;
+            store.put(new ExecutionData(classId, execNames.get(slot), probes));
+        }
+        org.jacoco.core.analysis.Analyzer analyzer = new org.jacoco.core.analysis.Analyzer(store, this::add);
+        try {
+            analyzer.analyzeClass(bytes, path);
+        } catch (IOException e) {
+            System.err.println(path + ": " + e.getMessage()); //unsupported or invalid class files are skipped
+        }
+    }
+
+    /**
+     * Add the coverage of a class to the class of its source file
+     * @param coverage coverage of the class
+     */
+    private void add(IClassCoverage coverage) {
+        String sourceFile = coverage.getSourceFileName();
+        String name = coverage.getName();
+        if (sourceFile != null && sourceFile.endsWith(".java")) {
+            String pkg = coverage.getPackageName();
+            name = (pkg.isEmpty() ? "" : pkg + "/") + sourceFile.substring(0, sourceFile.length() - ".java".length());
+        } else if (name.indexOf('$', name.lastIndexOf('/') + 1) > 0) {
+            name = name.substring(0, name.indexOf('$', name.lastIndexOf('/') + 1));
+        }
+        int id = getOrAddId(name.replace('/', '.'));
+        ICounter lines = coverage.getLineCounter(), branches = coverage.getBranchCounter();
+        counters[id * COUNTERS + COVERED_LINES] += lines.getCoveredCount();
+        counters[id * COUNTERS + LINES] += lines.getTotalCount();
+        counters[id * COUNTERS + COVERED_BRANCHES] += branches.getCoveredCount();
+        counters[id * COUNTERS + BRANCHES] += branches.getTotalCount();
+    }
+
+    private int getOrAddId(String fullName) {
+        Integer id = ids.get(fullName);
+        if (id == null) {
+            id = ids.size();
+            ids.put(fullName, id);
+            if (counters.length < COUNTERS * (id + 1)) counters = Arrays.copyOf(counters, Math.max(COUNTERS * 16, counters.length * 2));
+        }
+        return id;
+    }
+
+    /**
+     * Get a counter of a class
+     * @param classInfo the class
+     * @param counter the counter (COVERED_LINES, LINES...)
+     * @return its value (0 if the class has no coverage data)
+     */
+    public int get(ClassInfo classInfo, int counter) {
+        Integer id = ids.get(classInfo.getPkg().equals("<no package>") ? classInfo.getName() : classInfo.getFullName());
+        return id == null ? 0 : counters[id * COUNTERS + counter];
+    }
+
+    /**
+     * @param classInfo the class
+     * @return whether some line (or probe, if the class files were not analyzed) of the class was executed
+     */
+    public boolean isCovered(ClassInfo classInfo) {
+        return get(classInfo, resolved ? COVERED_LINES : COVERED_PROBES) > 0;
+    }
+
+    /**
+     *
+     * @return whether the lines and branches are known (the compiled classes were analyzed)
+     */
+    public boolean isResolved() {
+        return resolved;
+    }
+
+    /**
+     *
+     * @return number of execution data files loaded
+     */
+    public int getNumExecFiles() {
+        return numExecFiles;
+    }
+
+    /**
+     *
+     * @return number of distinct classes (ids) in the execution data
+     */
+    public int getNumExecClasses() {
+        return execNames.size();
+    }
+}
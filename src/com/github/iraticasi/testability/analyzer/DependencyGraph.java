@@ -0,0 +1,247 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.util.*;
+
+
+/**
+ * Dependency graph between the classes of a project
+ * <p>
+ * NOTES:
+ * Classes are interned to int ids (in the order of the list they were built from), and both the successors
+ * (dependencies) and the predecessors (dependents) of each class are stored as compressed sparse rows,
+ * so the graph is built once in O(V+E) and every query is a slice of an int array.
+ * Only dependencies on classes of the project are edges of the graph.
+ * */
+
+public class DependencyGraph {
+
+    private List<ClassInfo> classes; //nodes of the graph, indexed by id
+    private Map<String, Integer> ids; //full name of the class -> id
+    private int[] succOffsets, successors; //CSR of the dependencies of each class
+    private int[] predOffsets, predecessors; //CSR of the dependents of each class (reverse index)
+    private int[] reason; //successor that made a class external (-1 if directly external or not external)
+    private BitSet external; //classes with "external" dependencies
+    private long propagationSteps; //edges followed by the last propagation
+
+    /**
+     * Builds the dependency graph of a list of classes
+     * @param classes classes of the project
+     */
+    public DependencyGraph(List<ClassInfo> classes) {
+        this.classes = classes;
+        int n = classes.size();
+        //intern class names
+        this.ids = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            ids.putIfAbsent(classes.get(i).getFullName(), i);
+        }
+        //symbol id -> class id, for the classes that share a symbol table
+        SymbolTable symbols = n == 0 ? null : classes.get(0).getSymbols();
+        int[] classOfSymbol = new int[symbols == null ? 0 : symbols.size()];
+        Arrays.fill(classOfSymbol, -1);
+        for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+            int symbol = symbols.getId(entry.getKey());
+            if (symbol >= 0 && symbol < classOfSymbol.length) classOfSymbol[symbol] = entry.getValue();
+        }
+        //forward index: distinct dependencies of each class on other project classes
+        this.succOffsets = new int[n + 1];
+        int[] edges = new int[Math.max(16, n)];
+        int numEdges = 0;
+        int[] lastSeen = new int[n];
+        Arrays.fill(lastSeen, -1);
+        for (int i = 0; i < n; i++) {
+            ClassInfo classInfo = classes.get(i);
+            for (int dependency : classInfo.getDependencyIds()) {
+                int target = classInfo.getSymbols() == symbols ?
+                        (dependency < classOfSymbol.length ? classOfSymbol[dependency] : -1) :
+                        getId(classInfo.getSymbols().getName(dependency));
+                if (target >= 0 && lastSeen[target] != i) {
+                    lastSeen[target] = i;
+                    if (numEdges == edges.length) edges = Arrays.copyOf(edges, edges.length * 2);
+                    edges[numEdges++] = target;
+                }
+            }
+            succOffsets[i + 1] = numEdges;
+        }
+        this.successors = Arrays.copyOf(edges, numEdges);
+        //reverse index (counting sort of the edges by target)
+        this.predOffsets = new int[n + 1];
+        for (int e = 0; e < numEdges; e++) {
+            predOffsets[successors[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            predOffsets[i + 1] += predOffsets[i];
+        }
+        this.predecessors = new int[numEdges];
+        int[] fill = Arrays.copyOf(predOffsets, n);
+        for (int i = 0; i < n; i++) {
+            for (int e = succOffsets[i]; e < succOffsets[i + 1]; e++) {
+                predecessors[fill[successors[e]]++] = i;
+            }
+        }
+        this.reason = new int[n];
+        Arrays.fill(reason, -1);
+        this.external = new BitSet(n);
+    }
+
+    /**
+     * Spread the "external" flag from the classes with direct external dependencies to all their
+     * (transitive) dependents with a single BFS over the reverse index, and store it in each ClassInfo
+     * @return number of classes with "external" dependencies
+     */
+    public int propagate() {
+        return propagate(null);
+    }
+
+    /**
+     * Spread the "external" flag as propagate(), also from some classes assumed to be external
+     * (e.g. classes that depend on classes of the project that were not analyzed)
+     * @param assumedExternal ids of the classes assumed to be external (null if none)
+     * @return number of classes with "external" dependencies
+     */
+    public int propagate(BitSet assumedExternal) {
+        int n = classes.size();
+        external.clear();
+        Arrays.fill(reason, -1);
+        //seeds: classes with direct external dependencies
+        for (int i = 0; i < n; i++) {
+            if (classes.get(i).hasDirectExternalDependencies()) external.set(i);
+        }
+        if (assumedExternal != null) external.or(assumedExternal);
+        propagationSteps = spread(external, reason, predOffsets, predecessors);
+        for (int i = 0; i < n; i++) {
+            classes.get(i).setExternalDependencies(external.get(i));
+        }
+        return external.cardinality();
+    }
+
+    /**
+     * Spread the "external" flag of one of the policies the classes were analyzed with (see PolicySet),
+     * without changing the classes
+     * @param policy index of the policy (0 is the policy of propagate)
+     * @return classes with "external" dependencies for that policy
+     */
+    public BitSet getExternal(int policy) {
+        BitSet policyExternal = new BitSet(classes.size());
+        for (int i = 0; i < classes.size(); i++) {
+            if (classes.get(i).hasDirectExternalDependencies(policy)) policyExternal.set(i);
+        }
+        spread(policyExternal, null, predOffsets, predecessors);
+        return policyExternal;
+    }
+
+    /**
+     * Spread a set of classes to all their (transitive) dependents with a BFS over the reverse index
+     * @param set the seeds (modified)
+     * @param reason array to store the successor that added each class (null if not needed)
+     * @param predOffsets offsets of the dependents of each class in predecessors
+     * @param predecessors dependents of each class
+     * @return number of edges followed
+     */
+    static long spread(BitSet set, int[] reason, int[] predOffsets, int[] predecessors) {
+        int[] worklist = new int[predOffsets.length - 1];
+        int head = 0, tail = 0;
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) worklist[tail++] = i;
+        long steps = 0;
+        while (head < tail) {
+            int bad = worklist[head++];
+            steps += predOffsets[bad + 1] - predOffsets[bad];
+            for (int e = predOffsets[bad]; e < predOffsets[bad + 1]; e++) {
+                int good = predecessors[e];
+                if (!set.get(good)) {
+                    set.set(good);
+                    if (reason != null) reason[good] = bad;
+                    worklist[tail++] = good;
+                }
+            }
+        }
+        return steps;
+    }
+
+    /**
+     *
+     * @return number of edges followed by the last propagation
+     */
+    public long getPropagationSteps() {
+        return propagationSteps;
+    }
+
+    /**
+     *
+     * @return number of classes (nodes) of the graph
+     */
+    public int size() {
+        return classes.size();
+    }
+
+    /**
+     *
+     * @return number of distinct dependencies between project classes (edges) of the graph
+     */
+    public int numEdges() {
+        return successors.length;
+    }
+
+    /**
+     *
+     * @param fullName full name of the class (package+name)
+     * @return id of the class, or -1 if it is not a class of the project
+     */
+    public int getId(String fullName) {
+        Integer id = ids.get(fullName);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     *
+     * @param id id of the class
+     * @return the class with that id
+     */
+    public ClassInfo getClassInfo(int id) {
+        return classes.get(id);
+    }
+
+    /**
+     *
+     * @param id id of the class
+     * @return ids of the project classes it depends on
+     */
+    public int[] getSuccessors(int id) {
+        return Arrays.copyOfRange(successors, succOffsets[id], succOffsets[id + 1]);
+    }
+
+    /**
+     *
+     * @param id id of the class
+     * @return ids of the project classes that depend on it
+     */
+    public int[] getPredecessors(int id) {
+        return Arrays.copyOfRange(predecessors, predOffsets[id], predOffsets[id + 1]);
+    }
+
+    /**
+     *
+     * @param id id of the class
+     * @return whether the class has "external" dependencies (after propagation)
+     */
+    public boolean isExternal(int id) {
+        return external.get(id);
+    }
+
+    /**
+     * Explains why a class is "external"
+     * @param fullName full name of the class (package+name)
+     * @return chain of classes from the given one to a class with direct external dependencies
+     *      (empty if the class is not external or not a class of the project)
+     */
+    public List<ClassInfo> getPropagationPath(String fullName) {
+        List<ClassInfo> path = new ArrayList<>();
+        int id = getId(fullName);
+        if (id < 0 || !external.get(id)) return path;
+        while (id >= 0) {
+            path.add(classes.get(id));
+            id = reason[id];
+        }
+        return path;
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.iraticasi.testability.analyzer;
+
+
+/**
+ * Receives the object creations (edges) of each class as its file is parsed (see Analyzer.setEdgeSink)
+ */
+public interface EdgeSink {
+
+    /**
+     * Called once for each class kept by the analysis, before the "external" dependencies are spread.
+     * It may be called from several threads when the project is parsed in batches.
+     * @param sourceFilePath path of the source file of the class
+     * @param classInfo the class, with its edges recorded (getNumEdges, getEdgeLine...)
+     */
+    void edges(String sourceFilePath, ClassInfo classInfo);
+}
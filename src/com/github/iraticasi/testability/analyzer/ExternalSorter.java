@@ -0,0 +1,133 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.io.*;
+import java.util.*;
+
+
+/**
+ * Sorts records (string arrays) with a bounded number of them in memory
+ * <p>
+ * NOTES:
+ * Records are buffered until the buffer is full, then the buffer is sorted and written to a temporary file (a run).
+ * At the end, the runs and the last buffer are merged. If everything fits in the buffer no file is written.
+ * */
+
+public class ExternalSorter implements Closeable {
+
+    private Comparator<String[]> comparator;
+    private int maxInMemory; //maximum number of records in the buffer
+    private List<String[]> buffer = new ArrayList<>();
+    private List<File> runs = new ArrayList<>(); //sorted temporary files
+
+    /**
+     * Creates a sorter
+     * @param comparator order of the records
+     * @param maxInMemory maximum number of records kept in memory
+     */
+    public ExternalSorter(Comparator<String[]> comparator, int maxInMemory) {
+        this.comparator = comparator;
+        this.maxInMemory = Math.max(1, maxInMemory);
+    }
+
+    /**
+     * Add a record
+     * @param record the record
+     * @throws IOException if a run can not be written
+     */
+    public void add(String[] record) throws IOException {
+        buffer.add(record);
+        if (buffer.size() >= maxInMemory) spill();
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(comparator);
+        File run = File.createTempFile("sort-run", ".bin");
+        run.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)))) {
+            for (String[] record : buffer) {
+                out.writeInt(record.length);
+                for (String field : record) out.writeUTF(field);
+            }
+        }
+        runs.add(run);
+        buffer.clear();
+    }
+
+    /**
+     * Hands over all the records in order
+     * @param consumer consumer of the records
+     * @throws IOException if the runs can not be read
+     */
+    public void sorted(RecordConsumer consumer) throws IOException {
+        buffer.sort(comparator);
+        List<DataInputStream> inputs = new ArrayList<>();
+        try {
+            //heap of the next record of each run (index -1 is the buffer)
+            PriorityQueue<Head> heap = new PriorityQueue<>((a, b) -> comparator.compare(a.record, b.record));
+            for (int i = 0; i < runs.size(); i++) {
+                inputs.add(new DataInputStream(new BufferedInputStream(new FileInputStream(runs.get(i)))));
+                String[] record = read(inputs.get(i));
+                if (record != null) heap.add(new Head(record, i));
+            }
+            Iterator<String[]> bufferIterator = buffer.iterator();
+            if (bufferIterator.hasNext()) heap.add(new Head(bufferIterator.next(), -1));
+            while (!heap.isEmpty()) {
+                Head head = heap.poll();
+                consumer.accept(head.record);
+                String[] next = head.source < 0 ?
+                        (bufferIterator.hasNext() ? bufferIterator.next() : null) :
+                        read(inputs.get(head.source));
+                if (next != null) heap.add(new Head(next, head.source));
+            }
+        } finally {
+            for (DataInputStream input : inputs) input.close();
+        }
+    }
+
+    private static String[] read(DataInputStream input) throws IOException {
+        int length;
+        try {
+            length = input.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        String[] record = new String[length];
+        for (int i = 0; i < length; i++) record[i] = input.readUTF();
+        return record;
+    }
+
+    /**
+     *
+     * @return number of runs written to temporary files
+     */
+    public int getNumRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Deletes the temporary files
+     */
+    @Override
+    public void close() {
+        for (File run : runs) run.delete();
+        runs.clear();
+        buffer.clear();
+    }
+
+    /**
+     * Consumer of sorted records
+     */
+    public interface RecordConsumer {
+        void accept(String[] record) throws IOException;
+    }
+
+    private static class Head {
+        private String[] record;
+        private int source; //index of the run, -1 for the buffer
+
+        private Head(String[] record, int source) {
+            this.record = record;
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.github.iraticasi.testability.analyzer;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+
+/**
+ * Analyzes the commits of a git repository straight from its objects, without checking them out
+ * <p>
+ * NOTES:
+ * The commits of a range are listed with git rev-list (first parent only, oldest first), the files of each one
+ * with git ls-tree and the content of the java files with a single git cat-file --batch process.
+ * The files of a commit are classified as in a scan of its working tree (see SourceScanner.scan(Path, Collection)).
+ * The info of a source file is extracted once per blob (content) id and reused by every commit that has the same
+ * blob, so each commit only parses its new or changed files and then spreads the "external" dependencies again.
+ * Files are parsed without bindings (there is no working tree to resolve them against): packages are resolved
+ * from the imports and the types of the commit (see TypeResolver) where the blob is first seen, and the rest
+ * are "<not resolve>". The policies are compiled with the source files of the first commit.
+ * */
+
+public class GitHistory {
+
+    private File repository; //working tree (or git directory) of the repository
+    private SourceScanner scanner = new SourceScanner();
+    private List<AnalysisPolicy> policies = Collections.singletonList(AnalysisPolicy.legacy()); //decide which dependencies are directly "external"
+    private SymbolTable symbols; //interned names of all the commits
+    private Map<String, Optional<ClassInfo>> blobClasses = new HashMap<>(); //blob id -> info of its class (empty if none)
+    private Map<String, String> blobPackages = new HashMap<>(); //blob id -> package ("" if it has no package declaration)
+    private int numParsed = 0; //blobs parsed in the last analysis
+
+    /**
+     * Creates a history analyzer for a repository
+     * @param repository working tree or git directory of the repository
+     */
+    public GitHistory(File repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Set the scanner that classifies the files of each commit
+     * @param scanner the scanner (with its naming conventions of the dedicated tests)
+     */
+    public void setScanner(SourceScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    /**
+     * Set the policies that decide which dependencies are directly "external" (see Analyzer.setPolicies)
+     * @param policies the policies (the first one is the one of hasExternalDependencies)
+     */
+    public void setPolicies(List<AnalysisPolicy> policies) {
+        this.policies = new ArrayList<>(policies);
+    }
+
+    /**
+     * A analyzed commit
+     */
+    public static class Revision {
+        private String commit;
+        private long time; //commit time, in seconds since the epoch
+        private DependencyGraph graph;
+        private TestIndex testIndex;
+        private int numSourceFiles, numParsed;
+
+        public String getCommit() {
+            return commit;
+        }
+
+        /**
+         *
+         * @return commit time, in seconds since the epoch
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         *
+         * @return classes of the commit, with the "external" dependencies spread
+         */
+        public DependencyGraph getDependencyGraph() {
+            return graph;
+        }
+
+        /**
+         *
+         * @return dedicated tests of the commit
+         */
+        public TestIndex getTestIndex() {
+            return testIndex;
+        }
+
+        public int getNumSourceFiles() {
+            return numSourceFiles;
+        }
+
+        /**
+         *
+         * @return source files parsed for this commit (the rest were reused from previous commits)
+         */
+        public int getNumParsed() {
+            return numParsed;
+        }
+    }
+
+    /**
+     * Analyze the commits of a range, handing over each one as it is analyzed.
+     * The classes of a commit are only valid until the next one is handed over (the reused ones are shared)
+     * @param range range of commits (e.g. "v1.0..master" or a single commit and its history)
+     * @param handler receiver of the commits, oldest first
+     * @throws IOException if git fails
+     */
+    public void analyze(String range, Consumer<Revision> handler) throws IOException {
+        symbols = new SymbolTable();
+        blobClasses.clear();
+        blobPackages.clear();
+        numParsed = 0;
+        String project = repository.getAbsolutePath();
+        PolicySet policySet = null;
+        try (ObjectReader objects = new ObjectReader(repository)) {
+            for (String line : git(repository, "rev-list", "--first-parent", "--reverse", "--timestamp", range).split("\n")) {
+                if (line.isEmpty()) continue;
+                Revision revision = new Revision();
+                revision.time = Long.parseLong(line.substring(0, line.indexOf(' ')));
+                revision.commit = line.substring(line.indexOf(' ') + 1);
+                //files of the commit
+                Map<String, String> pathBlobs = new LinkedHashMap<>(); //absolute path -> blob id
+                List<String> relativePaths = new ArrayList<>();
+                for (String entry : git(repository, "ls-tree", "-r", "-z", "--full-tree", revision.commit).split("\0")) {
+                    int tab = entry.indexOf('\t');
+                    if (tab < 0 || !entry.contains(" blob ")) continue; //submodules
+                    String path = entry.substring(tab + 1);
+                    relativePaths.add(path);
+                    if (path.endsWith(".java")) {
+                        pathBlobs.put(new File(repository, path).getAbsolutePath(), entry.substring(entry.lastIndexOf(' ', tab) + 1, tab));
+                    }
+                }
+                SourceScanner.Scan scan = scanner.scan(repository.toPath(), relativePaths);
+                List<String> sourceFilePaths = scan.getSourceFilePaths();
+                //read the new blobs
+                Map<String, String> contents = new HashMap<>(); //blob id -> content, of the blobs to parse
+                for (String path : sourceFilePaths) {
+                    String blob = pathBlobs.get(path);
+                    if (!blobClasses.containsKey(blob) && !contents.containsKey(blob)) {
+                        contents.put(blob, objects.read(blob));
+                        blobPackages.put(blob, packageOf(contents.get(blob)));
+                    }
+                }
+                for (String path : scan.getTestFilePaths()) {
+                    String blob = pathBlobs.get(path);
+                    if (!blobPackages.containsKey(blob)) blobPackages.put(blob, packageOf(objects.read(blob)));
+                }
+                Function<String, String> packageReader = path -> nullIfEmpty(blobPackages.get(pathBlobs.get(path)));
+                if (policySet == null) policySet = PolicySet.compile(policies, project, sourceFilePaths, packageReader);
+                //parse them and collect the classes of the commit
+                TypeIndex typeIndex = contents.isEmpty() ? null : TypeIndex.build(sourceFilePaths, packageReader);
+                List<ClassInfo> classes = new ArrayList<>();
+                Set<String> added = new HashSet<>(); //blobs of the commit, a copied file is the same class
+                for (String path : sourceFilePaths) {
+                    String blob = pathBlobs.get(path);
+                    String content = contents.remove(blob);
+                    if (content != null) {
+                        blobClasses.put(blob, Optional.ofNullable(parse(content, project, policySet, typeIndex)));
+                        revision.numParsed++;
+                    }
+                    Optional<ClassInfo> classInfo = blobClasses.get(blob);
+                    if (classInfo.isPresent() && added.add(blob)) classes.add(classInfo.get());
+                }
+                numParsed += revision.numParsed;
+                revision.numSourceFiles = sourceFilePaths.size();
+                revision.testIndex = scan.getTestIndex(packageReader);
+                revision.graph = new DependencyGraph(classes);
+                revision.graph.propagate();
+                handler.accept(revision);
+            }
+        }
+    }
+
+    /**
+     * Extract the info of the class of a java source, as Analyzer does with a file
+     * @param content the java source
+     * @param project name of the project
+     * @param policySet policies of the project
+     * @param typeIndex types of the commit
+     * @return info of its class (null if it has no class to analyze)
+     */
+    private ClassInfo parse(String content, String project, PolicySet policySet, TypeIndex typeIndex) {
+        ASTParser parser = ASTParser.newParser(AST.JLS10);
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        Map<String, String> options = JavaCore.getOptions();
+        JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+        parser.setCompilerOptions(options);
+        parser.setSource(content.toCharArray());
+        CompilationUnit cu = (CompilationUnit) parser.createAST(null);
+        TypeDeclaration typeDeclaration = null;
+        for (Object declaration : cu.types()) { //JDT lists are raw
+            if (declaration instanceof TypeDeclaration) typeDeclaration = (TypeDeclaration) declaration;
+        }
+        if (typeDeclaration == null || typeDeclaration.isInterface()) return null;
+        String name = ((AbstractTypeDeclaration) cu.types().get(0)).getName().toString();
+        String pkg = cu.getPackage() == null ? "<no package>" : cu.getPackage().getName().toString();
+        ClassInfo classInfo = new ClassInfo(name, pkg, project, symbols);
+        classInfo.setPolicies(policySet);
+        classInfo.setTypeResolver(new TypeResolver(cu, typeIndex));
+        cu.accept(classInfo);
+        return classInfo;
+    }
+
+    private static String packageOf(String content) {
+        String pkg = Analyzer.readPackage(new StringReader(content));
+        return pkg == null ? "" : pkg;
+    }
+
+    private static String nullIfEmpty(String pkg) {
+        return pkg == null || pkg.isEmpty() ? null : pkg;
+    }
+
+    /**
+     *
+     * @return source files parsed in the last analysis, for all its commits
+     */
+    public int getNumParsed() {
+        return numParsed;
+    }
+
+    /**
+     *
+     * @return distinct blobs whose info has been extracted
+     */
+    public int getNumBlobs() {
+        return blobClasses.size();
+    }
+
+    /**
+     * Run a git command in a repository
+     * @param repository the repository
+     * @param args arguments of git
+     * @return standard output of the command
+     * @throws IOException if the command can not be run or it fails
+     */
+    static String git(File repository, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).directory(repository)
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        String output;
+        try (InputStream input = process.getInputStream()) {
+            output = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try {
+            int exitCode = process.waitFor();
+            if (exitCode != 0) throw new IOException("git " + args[0] + " failed (exit code " + exitCode + ")");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted running git " + args[0]);
+        }
+        return output;
+    }
+
+    /**
+     * Reads blobs from a long-running git cat-file --batch process
+     */
+    private static class ObjectReader implements Closeable {
+        private Process process;
+        private OutputStream requests;
+        private BufferedInputStream responses;
+
+        ObjectReader(File repository) throws IOException {
+            process = new ProcessBuilder("git", "cat-file", "--batch").directory(repository)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            requests = new BufferedOutputStream(process.getOutputStream());
+            responses = new BufferedInputStream(process.getInputStream(), 1 << 16);
+        }
+
+        /**
+         * Read a blob
+         * @param id id of the blob
+         * @return its content, decoded as UTF-8
+         * @throws IOException if the blob can not be read
+         */
+        String read(String id) throws IOException {
+            requests.write((id + "\n").getBytes(StandardCharsets.US_ASCII));
+            requests.flush();
+            String header = readLine(); //<id> <type> <size>, or <id> missing
+            String[] fields = header.split(" ");
+            if (fields.length != 3 || !fields[1].equals("blob")) throw new IOException("Can not read blob " + id + ": " + header);
+            byte[] content = new byte[Integer.parseInt(fields[2])];
+            int read = 0;
+            while (read < content.length) {
+                int n = responses.read(content, read, content.length - read);
+                if (n < 0) throw new EOFException("Truncated blob " + id);
+                read += n;
+            }
+            responses.read(); //trailing newline
+            return new String(content, StandardCharsets.UTF_8);
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            for (int b = responses.read(); b != '\n'; b = responses.read()) {
+                if (b < 0) throw new EOFException("git cat-file exited");
+                line.append((char) b);
+            }
+            return line.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            requests.close();
+            responses.close();
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Modules of a project (Maven or Gradle), with their source files, source roots and dependencies between them
+ * <p>
+ * NOTES:
+ * A module is a directory with a build file (pom.xml, build.gradle or build.gradle.kts) and some source file
+ * below it; each source file belongs to the deepest module that contains it. Files outside every module
+ * (or every file, in a project without build files) belong to a module named after the project folder.
+ * The name of a Maven module is its artifactId, and the dependencies between modules are the <dependency>
+ * artifactIds that name other modules. The name of a Gradle module is its folder name, and the dependencies
+ * are the project(':...') references to other modules. Build files are read with regular expressions,
+ * so properties, profiles and inherited dependencies are not taken into account.
+ * The source roots of a module are inferred from the package declarations (see Analyzer.findSourceRoots).
+ * */
+
+public class ModuleLayout {
+
+    private static final Pattern XML_COMMENT = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
+    private static final Pattern POM_PARENT = Pattern.compile("<parent>.*?</parent>", Pattern.DOTALL);
+    private static final Pattern POM_DEPENDENCY = Pattern.compile("<dependency>.*?</dependency>", Pattern.DOTALL);
+    private static final Pattern POM_PLUGINS = Pattern.compile("<(build|reporting)>.*?</\\1>", Pattern.DOTALL);
+    private static final Pattern POM_ARTIFACT_ID = Pattern.compile("<artifactId>\\s*([^<\\s]+)\\s*</artifactId>");
+    private static final Pattern GRADLE_PROJECT = Pattern.compile("project\\s*\\(\\s*(?:path\\s*:\\s*)?['\"]([^'\"]+)['\"]\\s*\\)");
+    //build outputs of a module, used as classpath of the modules that depend on it
+    static final String[] CLASSES_DIRS = {"target/classes", "build/classes/java/main"};
+
+    private List<Module> modules = new ArrayList<>(); //modules in order of their folder
+    private Map<String, Module> moduleDirs = new HashMap<>(); //folder -> module
+
+    /**
+     * A module of the project
+     */
+    public static class Module {
+        private String name;
+        private File dir;
+        private List<String> sourceFilePaths = new ArrayList<>();
+        private Set<String> sourceRoots;
+        private Set<String> dependencyNames = new LinkedHashSet<>(); //names of the modules or artifacts it depends on
+        private List<Module> dependencies = new ArrayList<>(); //modules of the project it depends on
+        private File classesDir; //compiled classes of the module (null if it has not been built)
+
+        private Module(String name, File dir) {
+            this.name = name;
+            this.dir = dir;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public File getDir() {
+            return dir;
+        }
+
+        public List<String> getSourceFilePaths() {
+            return sourceFilePaths;
+        }
+
+        /**
+         *
+         * @return source roots of the module, inferred from the package declarations of its files
+         */
+        public synchronized Set<String> getSourceRoots() {
+            if (sourceRoots == null) {
+                sourceRoots = Analyzer.findSourceRoots(sourceFilePaths);
+            }
+            return sourceRoots;
+        }
+
+        /**
+         *
+         * @return modules of the project this module depends on
+         */
+        public List<Module> getDependencies() {
+            return dependencies;
+        }
+
+        /**
+         *
+         * @return folder of the compiled classes of the module (null if it has not been built)
+         */
+        public File getClassesDir() {
+            return classesDir;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Detect the modules of a project
+     * @param project base folder of the project
+     * @param buildFilePaths paths of the build files of the project (see SourceScanner.Scan)
+     * @param sourceFilePaths paths of the source files of the project
+     * @return modules of the project
+     */
+    public static ModuleLayout detect(File project, List<String> buildFilePaths, List<String> sourceFilePaths) {
+        ModuleLayout layout = new ModuleLayout();
+        Map<String, List<String>> dirBuildFiles = new TreeMap<>(); //module folder -> build files
+        for (String path : buildFilePaths) {
+            String name = new File(path).getName();
+            if (name.equals("pom.xml") || name.startsWith("build.gradle")) {
+                dirBuildFiles.computeIfAbsent(new File(path).getParent(), k -> new ArrayList<>()).add(path);
+            }
+        }
+        //assign each source file to the deepest module folder that contains it
+        String projectDir = project.getAbsolutePath();
+        Map<String, String> moduleOfDir = new HashMap<>(); //source directory -> module folder (memoized)
+        Map<String, List<String>> moduleFiles = new TreeMap<>();
+        for (String path : sourceFilePaths) {
+            String dir = new File(path).getParent();
+            String moduleDir = moduleOfDir.get(dir);
+            if (moduleDir == null) {
+                File current = new File(dir);
+                while (current != null && !dirBuildFiles.containsKey(current.getPath())
+                        && !current.getPath().equals(projectDir)) {
+                    current = current.getParentFile();
+                }
+                moduleDir = current == null || !dirBuildFiles.containsKey(current.getPath()) ? projectDir : current.getPath();
+                moduleOfDir.put(dir, moduleDir);
+            }
+            moduleFiles.computeIfAbsent(moduleDir, k -> new ArrayList<>()).add(path);
+        }
+        //read the modules with source files
+        Map<String, Module> byName = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : moduleFiles.entrySet()) {
+            File dir = new File(entry.getKey());
+            Module module = new Module(dir.getName(), dir);
+            for (String buildFile : dirBuildFiles.getOrDefault(entry.getKey(), Collections.emptyList())) {
+                readBuildFile(buildFile, module);
+            }
+            if (byName.containsKey(module.name)) module.name = projectDir.equals(entry.getKey()) ?
+                    module.name : new File(projectDir).toPath().relativize(dir.toPath()).toString();
+            module.sourceFilePaths = entry.getValue();
+            for (String classesDir : CLASSES_DIRS) {
+                File candidate = new File(dir, classesDir);
+                if (candidate.isDirectory()) module.classesDir = candidate;
+            }
+            layout.modules.add(module);
+            layout.moduleDirs.put(entry.getKey(), module);
+            byName.putIfAbsent(module.name, module);
+            byName.putIfAbsent(dir.getName(), module); //gradle references by folder name
+        }
+        for (Module module : layout.modules) {
+            for (String dependencyName : module.dependencyNames) {
+                Module dependency = byName.get(dependencyName);
+                if (dependency != null && dependency != module && !module.dependencies.contains(dependency)) {
+                    module.dependencies.add(dependency);
+                }
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Read the name and the dependencies of a module from a build file
+     * @param path path of the build file
+     * @param module the module
+     */
+    private static void readBuildFile(String path, Module module) {
+        String text;
+        try {
+            text = new String(Files.readAllBytes(new File(path).toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return; //unreadable build files are ignored
+        }
+        if (path.endsWith(".xml")) {
+            text = XML_COMMENT.matcher(text).replaceAll("");
+            Matcher dependencies = POM_DEPENDENCY.matcher(text);
+            while (dependencies.find()) {
+                Matcher artifactId = POM_ARTIFACT_ID.matcher(dependencies.group());
+                if (artifactId.find()) module.dependencyNames.add(artifactId.group(1));
+            }
+            //the first artifactId outside <parent>, the dependencies and the plugins is the one of the module
+            String own = POM_PLUGINS.matcher(POM_DEPENDENCY.matcher(POM_PARENT.matcher(text).replaceAll("")).replaceAll("")).replaceAll("");
+            Matcher artifactId = POM_ARTIFACT_ID.matcher(own);
+            if (artifactId.find()) module.name = artifactId.group(1);
+        } else {
+            Matcher references = GRADLE_PROJECT.matcher(text);
+            while (references.find()) {
+                String reference = references.group(1);
+                module.dependencyNames.add(reference.substring(reference.lastIndexOf(':') + 1));
+            }
+        }
+    }
+
+    /**
+     *
+     * @return modules of the project
+     */
+    public List<Module> getModules() {
+        return modules;
+    }
+
+    /**
+     * Get the module of a source file
+     * @param sourceFilePath path of the source file
+     * @return its module (null if it is not a source file of the project)
+     */
+    public Module moduleOf(String sourceFilePath) {
+        for (File dir = new File(sourceFilePath).getParentFile(); dir != null; dir = dir.getParentFile()) {
+            Module module = moduleDirs.get(dir.getPath());
+            if (module != null) return module;
+        }
+        return null;
+    }
+
+    /**
+     * Sort the modules in dependency order
+     * @return levels of modules: every module only depends on modules of previous levels, so the modules
+     *         of a level are independent. Modules in a dependency cycle are put together in a last level
+     */
+    public List<List<Module>> getLevels() {
+        Map<Module, Integer> pending = new HashMap<>(); //module -> dependencies not in a level yet
+        Map<Module, List<Module>> dependents = new HashMap<>();
+        for (Module module : modules) {
+            pending.put(module, module.dependencies.size());
+            for (Module dependency : module.dependencies) {
+                dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(module);
+            }
+        }
+        List<List<Module>> levels = new ArrayList<>();
+        List<Module> level = new ArrayList<>();
+        for (Module module : modules) {
+            if (pending.get(module) == 0) level.add(module);
+        }
+        int placed = 0;
+        while (!level.isEmpty()) {
+            levels.add(level);
+            placed += level.size();
+            List<Module> next = new ArrayList<>();
+            for (Module module : level) {
+                for (Module dependent : dependents.getOrDefault(module, Collections.emptyList())) {
+                    if (pending.merge(dependent, -1, Integer::sum) == 0) next.add(dependent);
+                }
+            }
+            next.sort(Comparator.comparing(module -> module.dir.getPath())); //deterministic order
+            level = next;
+        }
+        if (placed < modules.size()) { //cycles
+            List<Module> cycles = new ArrayList<>();
+            for (Module module : modules) {
+                if (pending.get(module) > 0) cycles.add(module);
+            }
+            levels.add(cycles);
+        }
+        return levels;
+    }
+
+    /**
+     * Get all the modules a module depends on, directly or through other modules
+     * @param module the module
+     * @return its transitive dependencies, nearest first
+     */
+    public static List<Module> getTransitiveDependencies(Module module) {
+        Set<Module> found = new LinkedHashSet<>();
+        Deque<Module> queue = new ArrayDeque<>(module.dependencies);
+        while (!queue.isEmpty()) {
+            Module dependency = queue.poll();
+            if (dependency != module && found.add(dependency)) queue.addAll(dependency.dependencies);
+        }
+        return new ArrayList<>(found);
+    }
+}
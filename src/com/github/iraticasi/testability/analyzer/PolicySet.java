@@ -0,0 +1,174 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.util.*;
+import java.util.function.Function;
+
+
+/**
+ * Analysis policies compiled for a project, evaluated together in a single parse
+ * <p>
+ * NOTES:
+ * Each policy is compiled into a PrefixMatcher of its prefix rules, with its ${project} and root package resolved.
+ * The result of evaluating a dependency is a mask with a bit per policy (bit 0 is the first policy) set if
+ * the dependency is directly "external" for that policy. Masks are memoized by symbol id, so each distinct
+ * dependency of the project is matched once however many times it is created; a set is meant for a single
+ * analysis (a single SymbolTable).
+ * The same package rule depends on the class, so it is applied by ClassInfo on top of the mask (see getSamePackageMask).
+ * */
+
+public class PolicySet {
+
+    public static final int MAX_POLICIES = 32; //bits of a mask
+
+    private List<AnalysisPolicy> policies;
+    private String[] roots; //root package of each policy (null if none)
+    private PrefixMatcher[] matchers; //prefix rules of each policy (value: ordinal of the kind)
+    private String[][] infixes; //allowed infixes of each policy
+    private int defaultExternalMask = 0; //policies whose unmatched dependencies are external
+    private int samePackageMask = 0; //policies whose same package dependencies are not external
+    private volatile int[] memo = new int[0]; //symbol id -> mask (-1 if not evaluated)
+
+    /**
+     * Compile policies for a project
+     * @param policies the policies (at most MAX_POLICIES)
+     * @param project the project, as given to ClassInfo (replaces ${project})
+     * @param sourceFilePaths source files of the project, to detect its root package if some policy needs it
+     * @return the compiled policies
+     */
+    public static PolicySet compile(List<AnalysisPolicy> policies, String project, List<String> sourceFilePaths) {
+        return compile(policies, project, sourceFilePaths, Analyzer::readPackage);
+    }
+
+    /**
+     * Compile policies for a project, reading the packages of its files from elsewhere (e.g. git objects)
+     * @param policies the policies (at most MAX_POLICIES)
+     * @param project the project, as given to ClassInfo (replaces ${project})
+     * @param sourceFilePaths source files of the project, to detect its root package if some policy needs it
+     * @param packageReader package of a source file (null if it has no package declaration)
+     * @return the compiled policies
+     */
+    public static PolicySet compile(List<AnalysisPolicy> policies, String project, List<String> sourceFilePaths,
+                                    Function<String, String> packageReader) {
+        if (policies.isEmpty() || policies.size() > MAX_POLICIES) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_POLICIES + " policies expected, got " + policies.size());
+        }
+        PolicySet set = new PolicySet();
+        int n = policies.size();
+        set.policies = new ArrayList<>(policies);
+        set.roots = new String[n];
+        set.matchers = new PrefixMatcher[n];
+        set.infixes = new String[n][];
+        String detectedRoot = null;
+        boolean detected = false;
+        for (int p = 0; p < n; p++) {
+            AnalysisPolicy policy = policies.get(p);
+            PrefixMatcher matcher = new PrefixMatcher();
+            String root = policy.getRoot();
+            if ("auto".equals(root)) {
+                if (!detected) {
+                    detectedRoot = AnalysisPolicy.detectRootPackage(sourceFilePaths, packageReader);
+                    detected = true;
+                }
+                root = detectedRoot;
+            }
+            set.roots[p] = root;
+            if (root != null) matcher.add(root, false, AnalysisPolicy.Kind.ALLOW.ordinal()); //explicit rules override it
+            for (AnalysisPolicy.Rule rule : policy.getRules()) {
+                matcher.add(rule.prefix.replace("${project}", project), rule.raw, rule.kind.ordinal());
+            }
+            set.matchers[p] = matcher;
+            List<String> allowed = policy.getAllowedInfixes();
+            set.infixes[p] = new String[allowed.size()];
+            for (int i = 0; i < allowed.size(); i++) set.infixes[p][i] = allowed.get(i).replace("${project}", project);
+            if (policy.isDefaultExternal()) set.defaultExternalMask |= 1 << p;
+            if (policy.isSamePackageInternal()) set.samePackageMask |= 1 << p;
+        }
+        return set;
+    }
+
+    /**
+     * Compile the legacy policy alone
+     * @param project the project, as given to ClassInfo
+     * @return the compiled policy
+     */
+    public static PolicySet legacy(String project) {
+        return compile(Collections.singletonList(AnalysisPolicy.legacy()), project, Collections.emptyList());
+    }
+
+    /**
+     *
+     * @return number of policies
+     */
+    public int size() {
+        return policies.size();
+    }
+
+    public AnalysisPolicy getPolicy(int policy) {
+        return policies.get(policy);
+    }
+
+    /**
+     * @param policy index of the policy
+     * @return root package of the project that is not external for the policy (null if none)
+     */
+    public String getRoot(int policy) {
+        return roots[policy];
+    }
+
+    /**
+     *
+     * @return mask of the policies whose dependencies of the same package as the class are not external
+     */
+    public int getSamePackageMask() {
+        return samePackageMask;
+    }
+
+    /**
+     * Evaluate a dependency, memoized by its id
+     * @param id id of the full name of the dependency
+     * @param symbols table of the id
+     * @return mask of the policies for which the dependency is directly external
+     */
+    public int evaluate(int id, SymbolTable symbols) {
+        int[] memo = this.memo;
+        if (id < memo.length && memo[id] >= 0) return memo[id];
+        int mask = evaluate(symbols.getName(id));
+        synchronized (this) {
+            memo = this.memo;
+            if (id >= memo.length) {
+                int[] grown = Arrays.copyOf(memo, Math.max(id + 1, 2 * memo.length));
+                Arrays.fill(grown, memo.length, grown.length, -1);
+                memo = grown;
+            }
+            memo[id] = mask;
+            this.memo = memo;
+        }
+        return mask;
+    }
+
+    /**
+     * Evaluate a dependency
+     * @param fullName full name of the dependency (package+name)
+     * @return mask of the policies for which the dependency is directly external
+     */
+    public int evaluate(String fullName) {
+        int mask = 0;
+        for (int p = 0; p < matchers.length; p++) {
+            int kind = matchers[p].match(fullName);
+            boolean external;
+            if (kind >= 0) {
+                external = kind == AnalysisPolicy.Kind.DENY.ordinal();
+            } else {
+                external = (defaultExternalMask & (1 << p)) != 0;
+                for (String infix : infixes[p]) {
+                    if (fullName.contains(infix)) {
+                        external = false;
+                        break;
+                    }
+                }
+            }
+            if (external) mask |= 1 << p;
+        }
+        return mask;
+    }
+}
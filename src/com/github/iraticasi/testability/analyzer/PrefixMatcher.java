@@ -0,0 +1,77 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.util.Arrays;
+
+
+/**
+ * Finds the longest prefix of a name among a set of prefixes, each one with a value
+ * <p>
+ * NOTES:
+ * The prefixes are stored in a trie of chars, so a lookup walks the name once whatever the number of prefixes.
+ * A prefix matches at package boundaries (java.util matches java.util and java.util.Map, but not java.utilx)
+ * unless it is raw, in which case it matches any name that starts with it (as String.startsWith).
+ * */
+
+public class PrefixMatcher {
+
+    private Node root = new Node();
+
+    private static class Node {
+        private char[] labels = new char[0]; //chars of the children, sorted
+        private Node[] children = new Node[0];
+        private int value = -1; //value of the prefix ending here (-1 if no prefix ends here)
+        private boolean raw; //whether the prefix ending here matches at any position
+
+        private Node child(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return i < 0 ? null : children[i];
+        }
+
+        private Node addChild(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            if (i >= 0) return children[i];
+            i = -i - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            newLabels[i] = c;
+            newChildren[i] = new Node();
+            System.arraycopy(labels, i, newLabels, i + 1, labels.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[i];
+        }
+    }
+
+    /**
+     * Add a prefix (replacing the value of the same prefix, if it was added before)
+     * @param prefix the prefix
+     * @param raw whether it matches any name that starts with it, not only at package boundaries
+     * @param value value of the prefix (not negative)
+     */
+    public void add(String prefix, boolean raw, int value) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) node = node.addChild(prefix.charAt(i));
+        node.value = value;
+        node.raw = raw;
+    }
+
+    /**
+     * Find the longest prefix of a name
+     * @param name the name
+     * @return value of the longest matching prefix (-1 if none matches)
+     */
+    public int match(String name) {
+        int found = -1;
+        Node node = root;
+        for (int i = 0; ; i++) {
+            if (node.value >= 0 && (node.raw || i == name.length() || name.charAt(i) == '.')) found = node.value;
+            if (i == name.length()) break;
+            node = node.child(name.charAt(i));
+            if (node == null) break;
+        }
+        return found;
+    }
+}
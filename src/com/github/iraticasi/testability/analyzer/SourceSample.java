@@ -0,0 +1,145 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.io.File;
+import java.util.*;
+
+
+/**
+ * Random sample of the source files of a project, stratified by package (directory)
+ * <p>
+ * NOTES:
+ * The files of each directory are shuffled once with the seed, and the sample grows by taking the next files
+ * of each directory, so a bigger sample always contains a smaller one with the same seed.
+ * A sample of a fraction f has ceil(f * N) files of each directory of N files (at least one).
+ * The name of the class of a file is its package (read once per directory) and its file name, which is the name
+ * the source engine gives to it in most cases.
+ * */
+
+public class SourceSample {
+
+    private Map<String, List<String>> strata = new TreeMap<>(); //directory -> files, shuffled
+    private Map<String, Integer> taken = new HashMap<>(); //directory -> number of files in the sample
+    private int numFiles = 0, numSampled = 0;
+
+    /**
+     * Stratify the source files of a project
+     * @param sourceFilePaths paths of the source files
+     * @param seed seed of the shuffles
+     * @return a empty sample
+     */
+    public static SourceSample stratify(List<String> sourceFilePaths, long seed) {
+        SourceSample sample = new SourceSample();
+        for (String path : sourceFilePaths) {
+            sample.strata.computeIfAbsent(stratumOf(path), k -> new ArrayList<>()).add(path);
+        }
+        Random random = new Random(seed);
+        for (Map.Entry<String, List<String>> stratum : sample.strata.entrySet()) {
+            Collections.sort(stratum.getValue()); //independent of the order of the scan
+            Collections.shuffle(stratum.getValue(), random);
+            sample.taken.put(stratum.getKey(), 0);
+            sample.numFiles += stratum.getValue().size();
+        }
+        return sample;
+    }
+
+    /**
+     * @param path path of a source file
+     * @return its stratum (directory)
+     */
+    public static String stratumOf(String path) {
+        String dir = new File(path).getParent();
+        return dir == null ? "" : dir;
+    }
+
+    /**
+     * Grow the sample to a fraction of the files of each directory
+     * @param fraction the fraction (0 to 1)
+     * @return files added to the sample
+     */
+    public List<String> grow(double fraction) {
+        List<String> added = new ArrayList<>();
+        for (Map.Entry<String, List<String>> stratum : strata.entrySet()) {
+            List<String> files = stratum.getValue();
+            int target = Math.min(files.size(), Math.max(1, (int) Math.ceil(fraction * files.size())));
+            int current = taken.get(stratum.getKey());
+            if (target > current) {
+                added.addAll(files.subList(current, target));
+                taken.put(stratum.getKey(), target);
+                numSampled += target - current;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Grow the sample by (at least) a number of files, keeping it stratified
+     * @param files number of files to add
+     * @return files added to the sample
+     */
+    public List<String> growBy(int files) {
+        if (files <= 0 || isComplete()) return Collections.emptyList();
+        double fraction = Math.min(1, (numSampled + files) / (double) numFiles);
+        return grow(fraction);
+    }
+
+    /**
+     *
+     * @return whether all the files are in the sample
+     */
+    public boolean isComplete() {
+        return numSampled == numFiles;
+    }
+
+    public int getNumFiles() {
+        return numFiles;
+    }
+
+    public int getNumSampled() {
+        return numSampled;
+    }
+
+    /**
+     *
+     * @return strata (directories) of the project
+     */
+    public Set<String> getStrata() {
+        return strata.keySet();
+    }
+
+    /**
+     * @param stratum a stratum
+     * @return number of files of the stratum
+     */
+    public int getStratumSize(String stratum) {
+        List<String> files = strata.get(stratum);
+        return files == null ? 0 : files.size();
+    }
+
+    /**
+     * @param stratum a stratum
+     * @return number of files of the stratum in the sample
+     */
+    public int getStratumSampled(String stratum) {
+        return taken.getOrDefault(stratum, 0);
+    }
+
+    /**
+     *
+     * @return full names of the classes of the files that are not in the sample
+     */
+    public Set<String> getUnsampledClassNames() {
+        Set<String> names = new HashSet<>();
+        for (Map.Entry<String, List<String>> stratum : strata.entrySet()) {
+            List<String> files = stratum.getValue();
+            int sampled = taken.get(stratum.getKey());
+            if (sampled == files.size()) continue;
+            String pkg = Analyzer.readPackage(files.get(0));
+            for (String path : files.subList(sampled, files.size())) {
+                String fileName = new File(path).getName();
+                String name = fileName.substring(0, fileName.length() - ".java".length());
+                names.add((pkg == null ? "<no package>" : pkg) + "." + name);
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,346 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+
+/**
+ * Finds in a single pass the java source files, their directories and the dedicated tests of a project
+ * <p>
+ * NOTES:
+ * Some directories are skipped:
+ * - always: version control and dependencies directories (.git, node_modules...)
+ * - build outputs (target, build...) when their parent directory has a build file (pom.xml, build.gradle...)
+ * Source files are the java files that are not dedicated tests (see TestIndex.Convention, by default
+ * the ones of Analyzer.isTest), module-info.java nor package-info.java.
+ * */
+
+public class SourceScanner {
+
+    private Set<String> skippedDirs = new HashSet<>(Arrays.asList(".git", ".svn", ".hg", ".idea", "node_modules"));
+    private Set<String> buildOutputDirs = new HashSet<>(Arrays.asList("target", "build"));
+    private Set<String> buildFiles = new HashSet<>(Arrays.asList("pom.xml", "build.gradle", "build.gradle.kts", "build.xml"));
+    private int parallelism = 1; //number of threads walking the directories
+    private Set<TestIndex.Convention> testConventions = TestIndex.DEFAULT_CONVENTIONS; //naming conventions of the dedicated tests
+
+    /**
+     * Set the directories that are always skipped
+     * @param names names of the directories
+     */
+    public void setSkippedDirs(Collection<String> names) {
+        this.skippedDirs = new HashSet<>(names);
+    }
+
+    /**
+     * Set the build output directories, skipped when their parent directory has a build file
+     * @param names names of the directories
+     */
+    public void setBuildOutputDirs(Collection<String> names) {
+        this.buildOutputDirs = new HashSet<>(names);
+    }
+
+    /**
+     * Set the number of threads walking the directories
+     * @param parallelism number of threads (1 walks the tree with Files.walkFileTree)
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Set the naming conventions of the dedicated tests
+     * @param testConventions the conventions
+     */
+    public void setTestConventions(Set<TestIndex.Convention> testConventions) {
+        this.testConventions = EnumSet.copyOf(testConventions);
+    }
+
+    /**
+     * Scan a project
+     * @param project base folder of the project
+     * @return files found in the project
+     */
+    public Scan scan(Path project) {
+        Scan scan = new Scan(testConventions, buildFiles);
+        if (!Files.isDirectory(project)) return scan;
+        if (parallelism == 1) {
+            walk(project, scan);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                scan = pool.invoke(new DirectoryTask(project, true));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return scan;
+    }
+
+    /**
+     * Scan a listing of the files of a project instead of its directory tree (e.g. the files of a git commit),
+     * skipping the same directories
+     * @param project base folder of the project (the paths of the scan are resolved against it)
+     * @param relativePaths paths of all the files of the project, relative to its base folder ('/' separated)
+     * @return files found in the listing
+     */
+    public Scan scan(Path project, Collection<String> relativePaths) {
+        Scan scan = new Scan(testConventions, buildFiles);
+        Set<String> listed = relativePaths instanceof Set ? (Set<String>) relativePaths : new HashSet<>(relativePaths);
+        Map<String, Boolean> skippedDirsCache = new HashMap<>(); //directory -> whether it (or a parent) is skipped
+        Set<String> sourceDirs = new LinkedHashSet<>();
+        for (String path : relativePaths) {
+            int slash = path.lastIndexOf('/');
+            String dir = slash < 0 ? "" : path.substring(0, slash);
+            if (isSkipped(dir, listed, skippedDirsCache)) continue;
+            if (scan.addFile(project.resolve(path)) && !dir.isEmpty()) sourceDirs.add(dir);
+        }
+        for (String dir : sourceDirs) scan.sourceDirPaths.add(project.resolve(dir).toAbsolutePath().toString());
+        return scan;
+    }
+
+    /**
+     * Check if a directory of a listing has to be skipped
+     * @param dir the directory, relative to the base folder ("" for the base folder)
+     * @param listed paths of all the files of the listing
+     * @param cache directories already checked
+     * @return whether it or any of its parents is skipped
+     */
+    private boolean isSkipped(String dir, Set<String> listed, Map<String, Boolean> cache) {
+        if (dir.isEmpty()) return false;
+        Boolean skipped = cache.get(dir);
+        if (skipped != null) return skipped;
+        int slash = dir.lastIndexOf('/');
+        String parent = slash < 0 ? "" : dir.substring(0, slash);
+        String name = dir.substring(slash + 1);
+        skipped = isSkipped(parent, listed, cache) || skippedDirs.contains(name);
+        if (!skipped && buildOutputDirs.contains(name)) {
+            for (String buildFile : buildFiles) {
+                if (listed.contains(parent.isEmpty() ? buildFile : parent + "/" + buildFile)) skipped = true;
+            }
+        }
+        cache.put(dir, skipped);
+        return skipped;
+    }
+
+    /**
+     * Walk sequentially the directory tree of a project
+     */
+    private void walk(Path project, Scan scan) {
+        Deque<int[]> sourceCounts = new ArrayDeque<>(); //source files found directly in each open directory
+        try {
+            Files.walkFileTree(project, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (!dir.equals(project) && isSkipped(dir)) return FileVisitResult.SKIP_SUBTREE;
+                    sourceCounts.push(new int[1]);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && scan.addFile(file)) sourceCounts.peek()[0]++;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE; //unreadable entries are ignored
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    if (sourceCounts.pop()[0] > 0 && !dir.equals(project)) {
+                        scan.sourceDirPaths.add(dir.toAbsolutePath().toString());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error scanning " + project, e);
+        }
+    }
+
+    /**
+     * Check if a directory has to be skipped
+     * @param dir the directory
+     * @return whether it is skipped
+     */
+    private boolean isSkipped(Path dir) {
+        String name = dir.getFileName().toString();
+        if (skippedDirs.contains(name)) return true;
+        if (buildOutputDirs.contains(name)) {
+            for (String buildFile : buildFiles) {
+                if (Files.exists(dir.resolveSibling(buildFile))) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scans a directory, forking a task for each subdirectory
+     */
+    private class DirectoryTask extends RecursiveTask<Scan> {
+
+        private static final long serialVersionUID = 1L;
+
+        private Path dir;
+        private boolean root;
+
+        DirectoryTask(Path dir, boolean root) {
+            this.dir = dir;
+            this.root = root;
+        }
+
+        @Override
+        protected Scan compute() {
+            List<Object> parts = new ArrayList<>(); //scans of files and subtasks, in the order of the entries
+            Scan files = null;
+            int numSources = 0;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue; //unreadable entries are ignored
+                    }
+                    if (attrs.isDirectory()) {
+                        if (!isSkipped(entry)) {
+                            DirectoryTask subtask = new DirectoryTask(entry, false);
+                            subtask.fork();
+                            parts.add(subtask);
+                            files = null;
+                        }
+                    } else if (attrs.isRegularFile()) {
+                        if (files == null) {
+                            files = new Scan(testConventions, buildFiles);
+                            parts.add(files);
+                        }
+                        if (files.addFile(entry)) numSources++;
+                    }
+                }
+            } catch (IOException e) {
+                //unreadable directories are ignored
+            }
+            //merge in order, as the sequential walk finds them
+            Scan merged = new Scan(testConventions, buildFiles);
+            for (Object part : parts) {
+                merged.addAll(part instanceof DirectoryTask ? ((DirectoryTask) part).join() : (Scan) part);
+            }
+            if (numSources > 0 && !root) merged.sourceDirPaths.add(dir.toAbsolutePath().toString());
+            return merged;
+        }
+    }
+
+    /**
+     * Files found in a project
+     */
+    public static class Scan {
+
+        private List<String> sourceFilePaths = new ArrayList<>(); //source files paths
+        private List<String> sourceDirPaths = new ArrayList<>(); //directories paths that contain source files
+        private List<String> testFilePaths = new ArrayList<>(); //dedicated tests paths
+        private Set<String> testFileNames = new HashSet<>(); //dedicated tests file names
+        private Set<TestIndex.Convention> testConventions; //naming conventions of the dedicated tests
+        private TestIndex testIndex; //index of the dedicated tests (built when needed)
+        private Set<String> buildFiles; //names of the build files
+        private List<String> buildFilePaths = new ArrayList<>(); //build files paths (e.g. of the modules)
+
+        private Scan(Set<TestIndex.Convention> testConventions, Set<String> buildFiles) {
+            this.testConventions = testConventions;
+            this.buildFiles = buildFiles;
+        }
+
+        /**
+         * Classify a file
+         * @param file the file
+         * @return whether it is a source file
+         */
+        private boolean addFile(Path file) {
+            String name = file.getFileName().toString();
+            if (buildFiles.contains(name)) buildFilePaths.add(file.toAbsolutePath().toString());
+            if (!name.endsWith(".java")) return false;
+            if (TestIndex.isTest(name, testConventions)) {
+                testFilePaths.add(file.toAbsolutePath().toString());
+                testFileNames.add(name);
+                return false;
+            }
+            if (name.equals("module-info.java") || name.equals("package-info.java")) return false;
+            sourceFilePaths.add(file.toAbsolutePath().toString());
+            return true;
+        }
+
+        private void addAll(Scan other) {
+            sourceFilePaths.addAll(other.sourceFilePaths);
+            sourceDirPaths.addAll(other.sourceDirPaths);
+            testFilePaths.addAll(other.testFilePaths);
+            testFileNames.addAll(other.testFileNames);
+            buildFilePaths.addAll(other.buildFilePaths);
+        }
+
+        /**
+         *
+         * @return paths of the java source files
+         */
+        public List<String> getSourceFilePaths() {
+            return sourceFilePaths;
+        }
+
+        /**
+         *
+         * @return paths of the directories that contain java source files
+         */
+        public List<String> getSourceDirPaths() {
+            return sourceDirPaths;
+        }
+
+        /**
+         *
+         * @return paths of the dedicated tests
+         */
+        public List<String> getTestFilePaths() {
+            return testFilePaths;
+        }
+
+        /**
+         *
+         * @return file names of the dedicated tests
+         */
+        public Set<String> getTestFileNames() {
+            return testFileNames;
+        }
+
+        /**
+         *
+         * @return paths of the build files (pom.xml, build.gradle...)
+         */
+        public List<String> getBuildFilePaths() {
+            return buildFilePaths;
+        }
+
+        /**
+         *
+         * @return index of the dedicated tests by the package and name of the class they test
+         */
+        public synchronized TestIndex getTestIndex() {
+            if (testIndex == null) testIndex = TestIndex.build(testFilePaths, testConventions);
+            return testIndex;
+        }
+
+        /**
+         * Build the index of the dedicated tests reading their packages from elsewhere (e.g. git objects)
+         * @param packageReader package of a test file (null if it has no package declaration)
+         * @return index of the dedicated tests by the package and name of the class they test
+         */
+        public synchronized TestIndex getTestIndex(Function<String, String> packageReader) {
+            if (testIndex == null) testIndex = TestIndex.build(testFilePaths, testConventions, packageReader);
+            return testIndex;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Table of interned names (classes, dependencies and packages) shared by all the classes of a project
+ * <p>
+ * NOTES:
+ * Each distinct name is stored once and identified by an int id, assigned in order from 0.
+ * The table can be used from several threads (e.g. when parsing in batches): lookups of existing names
+ * do not lock, and only new names are added under a lock.
+ * */
+
+public class SymbolTable {
+
+    private Map<String, Integer> ids = new ConcurrentHashMap<>(); //name -> id
+    private volatile String[] names = new String[64]; //id -> name
+    private volatile int[] packages = new int[64]; //id -> id of its package (-1 if unknown)
+    private volatile int size = 0;
+
+    /**
+     * Creates an empty table
+     */
+    public SymbolTable() {
+        Arrays.fill(packages, -1);
+    }
+
+    /**
+     * Intern a name
+     * @param name the name
+     * @return id of the name
+     */
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) return id;
+            if (size == names.length) {
+                int[] newPackages = Arrays.copyOf(packages, size * 2);
+                Arrays.fill(newPackages, size, newPackages.length, -1);
+                packages = newPackages;
+                names = Arrays.copyOf(names, size * 2);
+            }
+            names[size] = name;
+            ids.put(name, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Intern the full name of a type and its package
+     * @param pkg name of the package
+     * @param fullName full name of the type
+     * @return id of the full name
+     */
+    public int internType(String pkg, String fullName) {
+        int id = intern(fullName);
+        if (packages[id] < 0) {
+            int pkgId = intern(pkg);
+            synchronized (this) {
+                packages[id] = pkgId;
+            }
+        }
+        return id;
+    }
+
+    /**
+     *
+     * @param name the name
+     * @return id of the name, or -1 if it is not interned
+     */
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     *
+     * @param id id of the name
+     * @return the name
+     */
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     *
+     * @param id id of the full name of a type
+     * @return id of its package, or -1 if it is unknown
+     */
+    public int getPackage(int id) {
+        return packages[id];
+    }
+
+    /**
+     *
+     * @return number of interned names
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,195 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.io.File;
+import java.util.*;
+import java.util.function.Function;
+
+
+/**
+ * Index of the dedicated tests of a project by the package and simple name of the class they test
+ * <p>
+ * NOTES:
+ * A test file is a dedicated test of the class of the same package whose name is the test name without the
+ * affix of a naming convention (e.g. FooTest, FooTests, FooIT and TestFoo test Foo).
+ * The package of a test is read from the header of the first test file of each directory and shared with the rest
+ * of the tests of that directory, so building the index reads one file per test directory.
+ * The index is a map of packages to maps of class names, so a lookup does not allocate anything.
+ * A class is ambiguous if several test files match it (e.g. FooTest and FooTests, or tests of several modules).
+ * */
+
+public class TestIndex {
+
+    /**
+     * Naming conventions of the dedicated tests
+     */
+    public enum Convention {
+        TEST_SUFFIX("Test", false), TESTS_SUFFIX("Tests", false), IT_SUFFIX("IT", false), TEST_PREFIX("Test", true);
+
+        private String affix;
+        private boolean prefix;
+
+        Convention(String affix, boolean prefix) {
+            this.affix = affix;
+            this.prefix = prefix;
+        }
+
+        /**
+         * Get the name of the class tested by a test
+         * @param testName name of the test (without .java)
+         * @return name of the tested class (null if the test does not follow this convention)
+         */
+        public String testedClass(String testName) {
+            if (testName.length() <= affix.length()) return null;
+            if (prefix) {
+                //the tested class name starts after the prefix, with a capital letter (Testing is not TestIng)
+                return testName.startsWith(affix) && Character.isUpperCase(testName.charAt(affix.length())) ?
+                        testName.substring(affix.length()) : null;
+            }
+            return testName.endsWith(affix) ? testName.substring(0, testName.length() - affix.length()) : null;
+        }
+
+        /**
+         * If a name follows this convention, including the name that is only the affix (e.g. Test), which is
+         * a test as in Analyzer.isTest although it does not test any class
+         * @param testName name of the test (without .java)
+         * @return whether it is a test of this convention
+         */
+        public boolean isTest(String testName) {
+            return testName.equals(affix) || testedClass(testName) != null;
+        }
+    }
+
+    /**
+     * Conventions accepted by Analyzer.isTest
+     */
+    public static final Set<Convention> DEFAULT_CONVENTIONS = Collections.unmodifiableSet(EnumSet.of(Convention.TEST_SUFFIX, Convention.TESTS_SUFFIX));
+
+    private Map<String, Map<String, Object>> tests = new HashMap<>(); //package -> class name -> test path or list of test paths
+    private int numTests = 0;
+    private int numAmbiguous = 0;
+
+    /**
+     * If a java file is a dedicated test following some of the conventions
+     * @param fileName name of the java file
+     * @param conventions the conventions
+     * @return whether it is a dedicated test
+     */
+    public static boolean isTest(String fileName, Set<Convention> conventions) {
+        if (!fileName.endsWith(".java")) return false;
+        String testName = fileName.substring(0, fileName.length() - ".java".length());
+        for (Convention convention : conventions) {
+            if (convention.isTest(testName)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Build the index of some tests
+     * @param testFilePaths paths of the test files
+     * @param conventions naming conventions of the tests
+     * @return the index
+     */
+    public static TestIndex build(List<String> testFilePaths, Set<Convention> conventions) {
+        return build(testFilePaths, conventions, Analyzer::readPackage);
+    }
+
+    /**
+     * Build the index of some tests, reading their packages from elsewhere (e.g. git objects)
+     * @param testFilePaths paths of the test files
+     * @param conventions naming conventions of the tests
+     * @param packageReader package of a test file (null if it has no package declaration)
+     * @return the index
+     */
+    public static TestIndex build(List<String> testFilePaths, Set<Convention> conventions, Function<String, String> packageReader) {
+        TestIndex index = new TestIndex();
+        Map<String, String> dirPackages = new HashMap<>(); //directory -> package of its tests
+        for (String path : testFilePaths) {
+            File file = new File(path);
+            String dir = file.getParent() == null ? "" : file.getParent();
+            String pkg = dirPackages.get(dir);
+            if (pkg == null) {
+                pkg = packageReader.apply(path);
+                if (pkg == null) pkg = "<no package>";
+                dirPackages.put(dir, pkg);
+            }
+            String fileName = file.getName();
+            String testName = fileName.substring(0, fileName.length() - ".java".length());
+            Set<String> testedClasses = new HashSet<>(2); //a test counts once even if several conventions match
+            for (Convention convention : conventions) {
+                String testedClass = convention.testedClass(testName);
+                if (testedClass != null && testedClasses.add(testedClass)) index.add(pkg, testedClass, path);
+            }
+        }
+        return index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void add(String pkg, String className, String path) {
+        Map<String, Object> classes = tests.computeIfAbsent(pkg, k -> new HashMap<>());
+        Object previous = classes.get(className);
+        if (previous == null) {
+            classes.put(className, path);
+        } else if (previous instanceof String) {
+            classes.put(className, new ArrayList<>(Arrays.asList((String) previous, path)));
+            numAmbiguous++;
+        } else {
+            ((List<String>) previous).add(path);
+        }
+        numTests++;
+    }
+
+    /**
+     * Count the dedicated tests of a class
+     * @param pkg package of the class
+     * @param className simple name of the class
+     * @return number of test files of the class
+     */
+    public int countTests(String pkg, String className) {
+        Map<String, Object> classes = tests.get(pkg);
+        Object found = classes == null ? null : classes.get(className);
+        if (found == null) return 0;
+        return found instanceof String ? 1 : ((List<?>) found).size();
+    }
+
+    /**
+     * @param classInfo the class
+     * @return whether the class has some dedicated test
+     */
+    public boolean hasTest(ClassInfo classInfo) {
+        Map<String, Object> classes = tests.get(classInfo.getPkg());
+        return classes != null && classes.containsKey(classInfo.getName());
+    }
+
+    /**
+     *
+     * @return number of (test, tested class) pairs in the index
+     */
+    public int size() {
+        return numTests;
+    }
+
+    /**
+     *
+     * @return number of classes with several dedicated tests
+     */
+    public int getNumAmbiguous() {
+        return numAmbiguous;
+    }
+
+    /**
+     * Get the classes with several dedicated tests
+     * @return for each of them, the full name of the class and the paths of its tests, sorted by class
+     */
+    @SuppressWarnings("unchecked")
+    public SortedMap<String, List<String>> getAmbiguous() {
+        SortedMap<String, List<String>> ambiguous = new TreeMap<>();
+        for (Map.Entry<String, Map<String, Object>> pkg : tests.entrySet()) {
+            for (Map.Entry<String, Object> entry : pkg.getValue().entrySet()) {
+                if (entry.getValue() instanceof List) {
+                    ambiguous.put(pkg.getKey() + "." + entry.getKey(), Collections.unmodifiableList((List<String>) entry.getValue()));
+                }
+            }
+        }
+        return ambiguous;
+    }
+}
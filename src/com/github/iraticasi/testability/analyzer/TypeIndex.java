@@ -0,0 +1,84 @@
+package com.github.iraticasi.testability.analyzer;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+
+/**
+ * Index of the top level types of a project by simple name, built without parsing the source files
+ * <p>
+ * NOTES:
+ * The name of a type is the name of its file, and its package is read from the package declaration of the file,
+ * so only the public (file named) top level types are indexed.
+ * Types of the JDK are checked against the running VM.
+ * */
+
+public class TypeIndex {
+
+    private Map<String, Set<String>> packages; //simple name -> packages with a type of that name
+    private static final Map<String, Boolean> JDK_TYPES = new ConcurrentHashMap<>(); //full name -> whether it is a JDK type
+
+    private TypeIndex(Map<String, Set<String>> packages) {
+        this.packages = packages;
+    }
+
+    /**
+     * Builds the index of some java source files
+     * @param sourceFilePaths paths of the java source files
+     * @return the index
+     */
+    public static TypeIndex build(List<String> sourceFilePaths) {
+        return build(sourceFilePaths, Analyzer::readPackage);
+    }
+
+    /**
+     * Builds the index of some java source files, reading their packages from elsewhere (e.g. git objects)
+     * @param sourceFilePaths paths of the java source files
+     * @param packageReader package of each file (null if it has no package declaration)
+     * @return the index
+     */
+    public static TypeIndex build(List<String> sourceFilePaths, Function<String, String> packageReader) {
+        Map<String, Set<String>> packages = new HashMap<>();
+        for (String filePath : sourceFilePaths) {
+            String fileName = new File(filePath).getName();
+            String name = fileName.substring(0, fileName.length() - ".java".length());
+            String pkg = packageReader.apply(filePath);
+            packages.computeIfAbsent(name, k -> new HashSet<>(2)).add(pkg == null ? "" : pkg);
+        }
+        return new TypeIndex(packages);
+    }
+
+    /**
+     *
+     * @param pkg name of the package ("" for no package)
+     * @param name simple name of the type
+     * @return whether there is a type of the project with that name in that package
+     */
+    public boolean contains(String pkg, String name) {
+        Set<String> set = packages.get(name);
+        return set != null && set.contains(pkg);
+    }
+
+    /**
+     *
+     * @param pkg name of the package
+     * @param name simple name of the type (with $ for nested types)
+     * @return whether there is a type of the JDK with that name in that package
+     */
+    public static boolean isJdkType(String pkg, String name) {
+        String fullName = pkg + "." + name;
+        Boolean found = JDK_TYPES.get(fullName);
+        if (found == null) {
+            try {
+                Class.forName(fullName, false, ClassLoader.getPlatformClassLoader());
+                found = true;
+            } catch (ClassNotFoundException | LinkageError e) {
+                found = false;
+            }
+            JDK_TYPES.put(fullName, found);
+        }
+        return found;
+    }
+}
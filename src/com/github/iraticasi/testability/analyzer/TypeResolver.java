@@ -0,0 +1,134 @@
+package com.github.iraticasi.testability.analyzer;
+
+import org.eclipse.jdt.core.dom.*;
+
+import java.util.*;
+
+
+/**
+ * Resolves the package of the types used in a compilation unit without JDT bindings
+ * <p>
+ * NOTES:
+ * A simple name is looked up, following the java scoping rules, in:
+ * - the types declared in the compilation unit (which shadow the imports)
+ * - the single type imports, if the imported type is a type of the project or of the JDK
+ * - the types of the same package (see TypeIndex)
+ * - java.lang and the on demand imports
+ * If a name is not found or it is ambiguous it is left unresolved, so it can be resolved with bindings.
+ * A single type import that can not be confirmed (e.g. of a library or a nested type of the project) is
+ * ambiguous too, since bindings may not find it where the import says.
+ * */
+
+public class TypeResolver {
+
+    private String pkg; //package of the compilation unit ("" for no package)
+    private TypeIndex index; //types of the project
+    private Map<String, String> singleImports = new HashMap<>(); //simple name -> qualifier (package or type)
+    private List<String> onDemandImports = new ArrayList<>(); //imported packages (and types)
+    private Set<String> declaredTypes = new HashSet<>(); //types declared in the compilation unit
+
+    /**
+     * Creates a resolver for a compilation unit
+     * @param cu the compilation unit
+     * @param index types of the project
+     */
+    public TypeResolver(CompilationUnit cu, TypeIndex index) {
+        this.pkg = cu.getPackage() == null ? "" : cu.getPackage().getName().getFullyQualifiedName();
+        this.index = index;
+        onDemandImports.add("java.lang");
+        for (Object node : cu.imports()) { //JDT lists are raw
+            ImportDeclaration declaration = (ImportDeclaration) node;
+            if (declaration.isStatic()) continue;
+            String name = declaration.getName().getFullyQualifiedName();
+            if (declaration.isOnDemand()) {
+                onDemandImports.add(name);
+            } else {
+                int dot = name.lastIndexOf('.');
+                if (dot > 0) singleImports.put(name.substring(dot + 1), name.substring(0, dot));
+            }
+        }
+        cu.accept(new ASTVisitor() {
+            @Override
+            public boolean visit(TypeDeclaration node) {
+                declaredTypes.add(node.getName().getIdentifier());
+                return true;
+            }
+
+            @Override
+            public boolean visit(EnumDeclaration node) {
+                declaredTypes.add(node.getName().getIdentifier());
+                return true;
+            }
+        });
+    }
+
+    /**
+     *
+     * @return package of the compilation unit ("" for no package)
+     */
+    public String getPackage() {
+        return pkg;
+    }
+
+    /**
+     * Resolve the package of a type used in the compilation unit
+     * @param typeName name of the type as written in the source (possibly qualified or parameterized)
+     * @return name of the package ("" for no package), or null if it is not found or it is ambiguous
+     */
+    public String resolvePackage(String typeName) {
+        int generic = typeName.indexOf('<');
+        if (generic >= 0) typeName = typeName.substring(0, generic);
+        typeName = typeName.trim();
+        //qualified name: the package is the lower case prefix, and the first type is resolved otherwise
+        if (typeName.indexOf('.') >= 0) {
+            String qualifier = packageOf(typeName);
+            if (!qualifier.isEmpty()) return qualifier;
+            typeName = typeName.substring(0, typeName.indexOf('.'));
+        }
+        if (declaredTypes.contains(typeName)) return pkg;
+        String imported = singleImports.get(typeName);
+        if (imported != null) {
+            boolean confirmed = index.contains(imported, typeName) || isJdkType(imported, typeName);
+            return confirmed ? packageOf(imported + "." + typeName) : null;
+        }
+        if (index.contains(pkg, typeName)) return pkg;
+        //on demand imports (java.lang included): it must be found in exactly one of them
+        String found = null;
+        for (String onDemand : onDemandImports) {
+            if (index.contains(onDemand, typeName) || isJdkType(onDemand, typeName)) {
+                String candidate = packageOf(onDemand + "." + typeName);
+                if (found != null && !found.equals(candidate)) return null;
+                found = candidate;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Checks a JDK type, where the qualifier may be a package or a type (for nested types)
+     */
+    private static boolean isJdkType(String qualifier, String name) {
+        String pkg = packageOf(qualifier);
+        if (pkg.length() == qualifier.length()) return TypeIndex.isJdkType(pkg, name);
+        if (pkg.isEmpty()) return false;
+        return TypeIndex.isJdkType(pkg, qualifier.substring(pkg.length() + 1).replace('.', '$') + "$" + name);
+    }
+
+    /**
+     * Get the package part of a qualified name, i.e. its segments before the first one that starts with upper case
+     * @param qualifiedName qualified name
+     * @return name of the package ("" if the name starts with a type)
+     */
+    static String packageOf(String qualifiedName) {
+        int end = 0;
+        int start = 0;
+        while (start < qualifiedName.length()) {
+            int dot = qualifiedName.indexOf('.', start);
+            int segmentEnd = dot < 0 ? qualifiedName.length() : dot;
+            if (Character.isUpperCase(qualifiedName.charAt(start))) break;
+            end = segmentEnd;
+            start = segmentEnd + 1;
+        }
+        return qualifiedName.substring(0, end);
+    }
+}
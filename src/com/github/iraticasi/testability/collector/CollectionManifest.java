@@ -0,0 +1,119 @@
+package com.github.iraticasi.testability.collector;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Record of the state of each collected repository, so an interrupted collection can be resumed
+ * <p>
+ * NOTES:
+ * The manifest is a tab separated file with a line per repository: name, state, commit, run and message.
+ * A run is a collection of all the repositories, so a repository is done if it was cloned or updated
+ * in the current run. Resuming a run skips the repositories already done in it, starting a new run updates them all.
+ * The file is rewritten (through a temporary file) after every change, so it is valid whenever the collection stops.
+ * */
+
+public class CollectionManifest {
+
+    /**
+     * State of a repository
+     */
+    public enum State {CLONED, UPDATED, FAILED}
+
+    private File file; //file of the manifest
+    private Map<String, Record> records = new TreeMap<>(); //repository name -> record
+    private long run; //current run
+
+    /**
+     * Loads a manifest (empty if the file does not exist)
+     * @param file file of the manifest
+     * @param resume whether to continue the last run instead of starting a new one
+     * @throws IOException if the file can not be read
+     */
+    public CollectionManifest(File file, boolean resume) throws IOException {
+        this.file = file;
+        long lastRun = 0;
+        if (file.exists()) {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            for (String line : lines) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\t", 5);
+                if (fields.length < 4) continue; //truncated line
+                Record record = new Record(State.valueOf(fields[1]), fields[2], Long.parseLong(fields[3]),
+                        fields.length > 4 ? fields[4] : "");
+                records.put(fields[0], record);
+                lastRun = Math.max(lastRun, record.run);
+            }
+        }
+        this.run = resume && lastRun > 0 ? lastRun : Math.max(lastRun + 1, System.currentTimeMillis());
+    }
+
+    /**
+     * If a repository was collected in the current run
+     * @param name name of the repository
+     * @return true if it was cloned or updated in the current run
+     */
+    public synchronized boolean isDone(String name) {
+        Record record = records.get(name);
+        return record != null && record.run == run && record.state != State.FAILED;
+    }
+
+    /**
+     * Record the state of a repository and save the manifest
+     * @param name name of the repository
+     * @param state new state
+     * @param commit commit checked out ("" if unknown)
+     * @param message error message ("" if none)
+     * @throws IOException if the manifest can not be written
+     */
+    public synchronized void update(String name, State state, String commit, String message) throws IOException {
+        records.put(name, new Record(state, commit, run, message.replaceAll("\\s+", " ").trim()));
+        save();
+    }
+
+    /**
+     *
+     * @param name name of the repository
+     * @return state of the repository (null if it was never collected)
+     */
+    public synchronized State getState(String name) {
+        Record record = records.get(name);
+        return record == null ? null : record.state;
+    }
+
+    private void save() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("# name\tstate\tcommit\trun\tmessage\n");
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                Record record = entry.getValue();
+                writer.write(entry.getKey() + "\t" + record.state + "\t" + record.commit + "\t" + record.run + "\t" + record.message + "\n");
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class Record {
+        private State state;
+        private String commit;
+        private long run;
+        private String message;
+
+        private Record(State state, String commit, long run, String message) {
+            this.state = state;
+            this.commit = commit;
+            this.run = run;
+            this.message = message;
+        }
+    }
+}
@@ -1,58 +1,197 @@
 package com.github.iraticasi.testability.collector;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
 
 
 /**
  * Collects apache projects from github.
- */
+ * <p>
+ * NOTES:
+ * Repositories are cloned shallow (last commit of the default branch) by a pool of workers.
+ * A repository that is already checked out is updated with a fetch instead of cloned again.
+ * A clone is made into a temporary folder and renamed when complete, so a interrupted clone is never taken as a checkout.
+ * The state of each repository is recorded in a manifest (collection.tsv in the destination folder),
+ * so a interrupted collection can be resumed (see CollectionManifest).
+ * */
+
 public class ProjectCollector {
 
-    public static void main(String[] args) throws IOException, InterruptedException {
+    private File destination; //folder of the checkouts
+    private int threads = 4; //number of repositories cloned or updated at the same time
+    private CollectionManifest manifest; //state of each repository
 
-        int numprojects = 20;
-
-        Runtime rt = Runtime.getRuntime();
-        String[] commands = {
-                "/bin/sh",
-                "-c",
-                "curl 'https://api.github.com/search/repositories?q=+org:apache+language:Java&per_page=" + numprojects + "' > apache_projects.json"
-        };
-        Process p = rt.exec(commands);
-        p.waitFor();
-
-
-        JSONArray jsonArray= new JSONObject(readFile("apache_projects.json")).getJSONArray("items");
-        for (int i = 0; i < jsonArray.length(); i++) {
-            JSONObject jsonObject = jsonArray.getJSONObject(i);
-            String cloneURL = jsonObject.getString("clone_url");
-            String name = jsonObject.getString("name");
-            String[] cloneCommand = {
-                    "git",
-                    "clone",
-                    cloneURL,
-                    "apache_projects/" + name
-            };
-            System.out.println(cloneURL);
-            Process process = rt.exec(cloneCommand);
-            process.waitFor();
+    /**
+     * Creates a collector
+     * @param destination folder of the checkouts
+     * @param resume whether to resume the last collection (skipping the repositories already done in it)
+     * @throws IOException if the manifest can not be read
+     */
+    public ProjectCollector(File destination, boolean resume) throws IOException {
+        this.destination = destination;
+        this.manifest = new CollectionManifest(new File(destination, "collection.tsv"), resume);
+    }
+
+    /**
+     * Set the number of repositories cloned or updated at the same time
+     * @param threads number of workers
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     *
+     * @return state of each repository
+     */
+    public CollectionManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Clone or update the repositories
+     * @param projects repositories to collect
+     * @return number of repositories that failed
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public int collect(List<RemoteProject> projects) throws InterruptedException {
+        destination.mkdirs();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (RemoteProject project : projects) {
+                results.add(executor.submit(() -> collect(project)));
+            }
+            int failures = 0;
+            for (Future<Boolean> result : results) {
+                try {
+                    if (!result.get()) failures++;
+                } catch (ExecutionException e) {
+                    failures++;
+                }
+            }
+            return failures;
+        } finally {
+            executor.shutdownNow();
         }
     }
 
+    /**
+     * Clone or update a repository, recording its state in the manifest
+     * @param project the repository
+     * @return true if it was collected, false if it failed
+     * @throws IOException if the manifest can not be written
+     */
+    private boolean collect(RemoteProject project) throws IOException {
+        if (manifest.isDone(project.getName())) {
+            System.out.println(project.getName() + ": already collected");
+            return true;
+        }
+        File checkout = new File(destination, project.getName());
+        try {
+            CollectionManifest.State state;
+            if (new File(checkout, ".git").exists()) {
+                String ref = project.getBranch() == null ? "HEAD" : project.getBranch();
+                git(checkout, "fetch", "--depth", "1", project.getCloneURL(), ref);
+                git(checkout, "reset", "--hard", "FETCH_HEAD");
+                state = CollectionManifest.State.UPDATED;
+            } else {
+                File partial = new File(destination, project.getName() + ".partial");
+                deleteRecursively(partial);
+                List<String> command = new ArrayList<>(Arrays.asList("clone", "--depth", "1", "--single-branch"));
+                if (project.getBranch() != null) command.addAll(Arrays.asList("--branch", project.getBranch()));
+                command.addAll(Arrays.asList(project.getCloneURL(), partial.getPath()));
+                git(null, command.toArray(new String[0]));
+                deleteRecursively(checkout);
+                Files.move(partial.toPath(), checkout.toPath());
+                state = CollectionManifest.State.CLONED;
+            }
+            String commit = git(checkout, "rev-parse", "HEAD").trim();
+            manifest.update(project.getName(), state, commit, "");
+            System.out.println(project.getName() + ": " + state.toString().toLowerCase() + " at " + commit);
+            return true;
+        } catch (IOException e) {
+            manifest.update(project.getName(), CollectionManifest.State.FAILED, "", e.getMessage());
+            System.err.println(project.getName() + ": " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Run a git command
+     * @param dir working directory (null for the current one)
+     * @param args arguments of git
+     * @return standard output (and error) of the command
+     * @throws IOException if the command can not be run or it fails
+     * @throws InterruptedException if interrupted while waiting for the command
+     */
+    static String git(File dir, String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        if (dir != null) builder.directory(dir);
+        builder.environment().put("GIT_TERMINAL_PROMPT", "0"); //fail instead of asking for credentials
+        Process process = builder.start();
+        String output;
+        try (InputStream input = process.getInputStream()) {
+            output = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("git " + args[0] + " failed (exit code " + exitCode + "): " + output.trim());
+        }
+        return output;
+    }
 
-    static String readFile(String path) throws IOException {
+    private static void deleteRecursively(File file) throws IOException {
+        if (!file.exists()) return;
+        File[] children = file.isDirectory() ? file.listFiles() : null;
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        Files.delete(file.toPath());
+    }
 
-        File file = new File(path);
+    /**
+     * Collects the projects of a search
+     * @param args [--threads n] [--per-page n] [--pages n] [--resume] [--dest folder] [search URL, file:// URL or search results file]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        ProjectSearch search = new ProjectSearch();
+        String source = ProjectSearch.APACHE_QUERY;
+        String dest = "apache_projects";
+        int threads = 4, perPage = 20, pages = 1;
+        boolean resume = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--per-page": perPage = Integer.parseInt(args[++i]); break;
+                case "--pages": pages = Integer.parseInt(args[++i]); break;
+                case "--resume": resume = true; break;
+                case "--dest": dest = args[++i]; break;
+                default: source = args[i];
+            }
+        }
+        search.setPages(perPage, pages);
+        List<RemoteProject> projects = search.search(source);
+        System.out.println(projects.size() + " projects found");
 
-        byte[] encoded = Files.readAllBytes(Paths.get(file.getCanonicalPath()));
-        String string =  new String(encoded, Charset.defaultCharset());
-        return string;
+        ProjectCollector collector = new ProjectCollector(new File(dest), resume);
+        collector.setThreads(threads);
+        int failures = collector.collect(projects);
+        System.out.println((projects.size() - failures) + " projects collected, " + failures + " failed");
+        if (failures > 0) System.exit(1);
     }
+
 }
@@ -0,0 +1,103 @@
+package com.github.iraticasi.testability.collector;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Lists the repositories to collect from the github search API or from a local search results file
+ * <p>
+ * NOTES:
+ * The API returns the results in pages, which are requested until a page is not full, the number of pages
+ * is reached or all the results are listed.
+ * A local file (path or file:// URL) has the same format as a page, or it is an array of pages or of repositories.
+ * Repositories are listed once even if they appear in several pages.
+ * */
+
+public class ProjectSearch {
+
+    public static final String APACHE_QUERY = "https://api.github.com/search/repositories?q=+org:apache+language:Java";
+
+    private int perPage = 20; //results per page requested to the API
+    private int maxPages = 1; //maximum number of pages requested to the API
+
+    /**
+     * Set the pages requested to the API
+     * @param perPage results per page (the API allows at most 100)
+     * @param maxPages maximum number of pages
+     */
+    public void setPages(int perPage, int maxPages) {
+        this.perPage = perPage;
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * List the repositories of a search
+     * @param source URL of the search API query, file:// URL or path of a local search results file
+     * @return the repositories, in the order of the results
+     * @throws IOException if the results can not be read
+     */
+    public List<RemoteProject> search(String source) throws IOException {
+        Map<String, RemoteProject> projects = new LinkedHashMap<>();
+        if (source.startsWith("http://") || source.startsWith("https://")) {
+            for (int page = 1; page <= maxPages; page++) {
+                JSONObject results = new JSONObject(get(source + "&per_page=" + perPage + "&page=" + page));
+                JSONArray items = results.getJSONArray("items");
+                addAll(items, projects);
+                if (items.length() < perPage || projects.size() >= results.optInt("total_count", Integer.MAX_VALUE)) break;
+            }
+        } else {
+            String path = source.startsWith("file:") ? Paths.get(URI.create(source)).toString() : source;
+            Object json = new JSONTokener(new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8)).nextValue();
+            add(json, projects);
+        }
+        return new ArrayList<>(projects.values());
+    }
+
+    private static void add(Object json, Map<String, RemoteProject> projects) {
+        if (json instanceof JSONArray) {
+            for (Object element : (JSONArray) json) add(element, projects);
+        } else if (json instanceof JSONObject) {
+            JSONObject object = (JSONObject) json;
+            if (object.has("items")) addAll(object.getJSONArray("items"), projects); //a page
+            else projects.putIfAbsent(object.getString("name"), RemoteProject.fromJSON(object)); //a repository
+        }
+    }
+
+    private static void addAll(JSONArray items, Map<String, RemoteProject> projects) {
+        for (int i = 0; i < items.length(); i++) {
+            RemoteProject project = RemoteProject.fromJSON(items.getJSONObject(i));
+            projects.putIfAbsent(project.getName(), project);
+        }
+    }
+
+    private static String get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty("Accept", "application/vnd.github+json");
+        String token = System.getenv("GITHUB_TOKEN"); //higher rate limit
+        if (token != null) connection.setRequestProperty("Authorization", "token " + token);
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Search request " + url + " failed with status " + status);
+        }
+        try (InputStream input = connection.getInputStream()) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.iraticasi.testability.collector;
+
+import org.json.JSONObject;
+
+
+/**
+ * A repository to collect, as listed in the search results
+ */
+public class RemoteProject {
+
+    private String name; //name of the repository (and of its folder)
+    private String cloneURL; //URL to clone the repository from
+    private String branch; //default branch (null to use the remote HEAD)
+
+    /**
+     * Creates a project
+     * @param name name of the repository
+     * @param cloneURL URL to clone the repository from
+     * @param branch default branch (null to use the remote HEAD)
+     */
+    public RemoteProject(String name, String cloneURL, String branch) {
+        this.name = name;
+        this.cloneURL = cloneURL;
+        this.branch = branch;
+    }
+
+    /**
+     * Creates a project from a item of the github search results
+     * @param item JSON object of the repository
+     * @return the project
+     */
+    public static RemoteProject fromJSON(JSONObject item) {
+        return new RemoteProject(item.getString("name"),
+                item.getString("clone_url"),
+                item.optString("default_branch", null));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCloneURL() {
+        return cloneURL;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + cloneURL + ")";
+    }
+}
@@ -0,0 +1,219 @@
+package com.github.iraticasi.testability.metrics;
+
+import com.opencsv.CSVWriter;
+import org.json.JSONObject;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * Metrics of the analysis of each project
+ * <p>
+ * NOTES:
+ * Metrics are disabled by default (enable them with -Dtestability.metrics=true or setEnabled).
+ * When disabled, forProject returns null and the instrumented code only checks for it, so the overhead is
+ * a null check per phase and a volatile read per dependency resolved with bindings.
+ * When enabled, the metrics are registered as a MXBean and every timed phase is sent to the phase listeners
+ * (e.g. to record it as a JFR event, which can not be defined at the language level of the project).
+ * */
+
+public final class Metrics {
+
+    public static final String OBJECT_NAME = "com.github.iraticasi.testability:type=Metrics";
+
+    private static volatile boolean enabled = false;
+    private static boolean registered = false; //whether the MXBean is registered
+    private static final Map<String, ProjectMetrics> projects = new ConcurrentHashMap<>(); //project path -> metrics
+    private static final List<PhaseListener> listeners = new CopyOnWriteArrayList<>();
+
+    static {
+        if (Boolean.getBoolean("testability.metrics")) setEnabled(true);
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     *
+     * @return whether the metrics are collected
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable the metrics (the MXBean is registered the first time they are enabled)
+     * @param enabled whether to collect metrics
+     */
+    public static synchronized void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+        if (enabled && !registered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+                registered = true;
+            } catch (JMException e) {
+                System.err.println("Metrics not registered in JMX: " + e);
+            }
+        }
+    }
+
+    /**
+     * Get the metrics of a project, to be updated by its analysis
+     * @param project path of the project
+     * @return the metrics (null if metrics are disabled)
+     */
+    public static ProjectMetrics forProject(String project) {
+        return enabled ? projects.computeIfAbsent(project, ProjectMetrics::new) : null;
+    }
+
+    /**
+     * @param project path of the project
+     * @return metrics of a project (null if it has no metrics)
+     */
+    public static ProjectMetrics getProject(String project) {
+        return projects.get(project);
+    }
+
+    /**
+     *
+     * @return metrics of all projects, by path
+     */
+    public static Collection<ProjectMetrics> getProjects() {
+        return new TreeMap<>(projects).values();
+    }
+
+    /**
+     * Discard the metrics of all projects
+     */
+    public static void reset() {
+        projects.clear();
+    }
+
+    /**
+     * Add a listener of the timed phases
+     * @param listener the listener
+     */
+    public static void addListener(PhaseListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener of the timed phases
+     * @param listener the listener
+     */
+    public static void removeListener(PhaseListener listener) {
+        listeners.remove(listener);
+    }
+
+    static void phaseCompleted(String project, ProjectMetrics.Phase phase, long nanos) {
+        for (PhaseListener listener : listeners) listener.phaseCompleted(project, phase, nanos);
+    }
+
+    /**
+     * Write the metrics of all projects as JSON: {"projects": [{"project": path, "phases_ms": {...}, "counters": {...}}]}
+     * @param file file to write to
+     * @throws IOException if the file can not be written
+     */
+    public static void writeJSON(File file) throws IOException {
+        List<JSONObject> projectsJSON = new ArrayList<>();
+        for (ProjectMetrics metrics : getProjects()) {
+            JSONObject phases = new JSONObject();
+            for (ProjectMetrics.Phase phase : ProjectMetrics.Phase.values()) phases.put(phase.toString().toLowerCase(), metrics.getMillis(phase));
+            JSONObject counters = new JSONObject();
+            for (ProjectMetrics.Counter counter : ProjectMetrics.Counter.values()) counters.put(counter.toString().toLowerCase(), metrics.get(counter));
+            projectsJSON.add(new JSONObject().put("project", metrics.getProject()).put("phases_ms", phases).put("counters", counters));
+        }
+        try (Writer writer = new FileWriter(file)) {
+            new JSONObject().put("projects", projectsJSON).write(writer, 2, 0);
+        }
+    }
+
+    /**
+     * Write the metrics of all projects as CSV, a row per project and a column per phase (ms) and counter
+     * @param file file to write to
+     * @throws IOException if the file can not be written
+     */
+    public static void writeCSV(File file) throws IOException {
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            List<String> header = new ArrayList<>();
+            header.add("Project");
+            for (ProjectMetrics.Phase phase : ProjectMetrics.Phase.values()) header.add(phase.toString().toLowerCase() + " (ms)");
+            for (ProjectMetrics.Counter counter : ProjectMetrics.Counter.values()) header.add(counter.toString().toLowerCase());
+            csvWriter.writeNext(header.toArray(new String[0]));
+            for (ProjectMetrics metrics : getProjects()) {
+                List<String> record = new ArrayList<>();
+                record.add(metrics.getProject());
+                for (ProjectMetrics.Phase phase : ProjectMetrics.Phase.values()) record.add(String.valueOf(metrics.getMillis(phase)));
+                for (ProjectMetrics.Counter counter : ProjectMetrics.Counter.values()) record.add(String.valueOf(metrics.get(counter)));
+                csvWriter.writeNext(record.toArray(new String[0]));
+            }
+        }
+    }
+
+    /**
+     * Receives the time of each phase as it completes
+     */
+    public interface PhaseListener {
+        void phaseCompleted(String project, ProjectMetrics.Phase phase, long nanos);
+    }
+
+    private static class Bean implements MetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return Metrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            Metrics.setEnabled(enabled);
+        }
+
+        @Override
+        public String[] getProjects() {
+            return new TreeSet<>(projects.keySet()).toArray(new String[0]);
+        }
+
+        @Override
+        public Map<String, Long> getPhaseMillis() {
+            Map<String, Long> millis = new LinkedHashMap<>();
+            for (ProjectMetrics.Phase phase : ProjectMetrics.Phase.values()) {
+                long sum = 0;
+                for (ProjectMetrics metrics : projects.values()) sum += metrics.getMillis(phase);
+                millis.put(phase.toString().toLowerCase(), sum);
+            }
+            return millis;
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            Map<String, Long> values = new LinkedHashMap<>();
+            for (ProjectMetrics.Counter counter : ProjectMetrics.Counter.values()) {
+                long sum = 0;
+                for (ProjectMetrics metrics : projects.values()) sum += metrics.get(counter);
+                values.put(counter.toString().toLowerCase(), sum);
+            }
+            return values;
+        }
+
+        @Override
+        public String getProjectSummary(String project) {
+            ProjectMetrics metrics = projects.get(project);
+            return metrics == null ? null : metrics.summary();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
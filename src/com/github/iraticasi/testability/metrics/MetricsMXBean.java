@@ -0,0 +1,43 @@
+package com.github.iraticasi.testability.metrics;
+
+import java.util.Map;
+
+
+/**
+ * JMX view of the metrics (registered as com.github.iraticasi.testability:type=Metrics)
+ */
+public interface MetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     *
+     * @return paths of the projects with metrics
+     */
+    String[] getProjects();
+
+    /**
+     *
+     * @return time of each phase in milliseconds, summed over all projects
+     */
+    Map<String, Long> getPhaseMillis();
+
+    /**
+     *
+     * @return value of each counter, summed over all projects
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @param project path of the project
+     * @return one line summary of the project (null if it has no metrics)
+     */
+    String getProjectSummary(String project);
+
+    /**
+     * Discard the metrics of all projects
+     */
+    void reset();
+}
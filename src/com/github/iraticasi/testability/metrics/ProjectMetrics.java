@@ -0,0 +1,111 @@
+package com.github.iraticasi.testability.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Timers of the phases and counters of the analysis of a project
+ * <p>
+ * NOTES:
+ * Timers and counters are LongAdders, so the batches of a project parsed in parallel can update them without contention.
+ * A phase run several times (e.g. parsing the fallback files) adds up its times.
+ * */
+
+public class ProjectMetrics {
+
+    /**
+     * Timed phases of an analysis
+     */
+    public enum Phase {SCAN, PARSE, BINDINGS, PROPAGATION, REPORT}
+
+    /**
+     * Counted events of an analysis
+     */
+    public enum Counter {FILES_SCANNED, FILES_PARSED, BYTES_PARSED, CUS_ACCEPTED, CACHE_HITS, CACHE_MISSES,
+        SYNTACTIC_RESOLVED, BINDING_RESOLVED, UNRESOLVED, CLASSES, EDGES, PROPAGATION_STEPS, EXTERNAL_CLASSES}
+
+    private String project; //path of the project
+    private LongAdder[] nanos = newAdders(Phase.values().length); //time of each phase
+    private LongAdder[] counters = newAdders(Counter.values().length); //value of each counter
+
+    ProjectMetrics(String project) {
+        this.project = project;
+    }
+
+    private static LongAdder[] newAdders(int length) {
+        LongAdder[] adders = new LongAdder[length];
+        for (int i = 0; i < length; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+
+    /**
+     * Add the time of a phase, from its start until now
+     * @param phase the phase
+     * @param start System.nanoTime() at the start of the phase
+     * @return System.nanoTime() now, to time the next phase
+     */
+    public long time(Phase phase, long start) {
+        long now = System.nanoTime();
+        addNanos(phase, now - start);
+        return now;
+    }
+
+    /**
+     * Add time to a phase
+     * @param phase the phase
+     * @param nanos time in nanoseconds
+     */
+    public void addNanos(Phase phase, long nanos) {
+        this.nanos[phase.ordinal()].add(nanos);
+        Metrics.phaseCompleted(project, phase, nanos);
+    }
+
+    /**
+     * Add to a counter
+     * @param counter the counter
+     * @param value value to add
+     */
+    public void add(Counter counter, long value) {
+        counters[counter.ordinal()].add(value);
+    }
+
+    public String getProject() {
+        return project;
+    }
+
+    /**
+     *
+     * @param phase the phase
+     * @return time of the phase in milliseconds
+     */
+    public long getMillis(Phase phase) {
+        return nanos[phase.ordinal()].sum() / 1_000_000;
+    }
+
+    /**
+     *
+     * @param counter the counter
+     * @return value of the counter
+     */
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     *
+     * @return one line summary of the phases and the main counters
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder(project).append(':');
+        for (Phase phase : Phase.values()) {
+            summary.append(' ').append(phase.toString().toLowerCase()).append('=').append(getMillis(phase)).append("ms");
+        }
+        summary.append(", files=").append(get(Counter.FILES_SCANNED))
+                .append(", parsed=").append(get(Counter.FILES_PARSED))
+                .append(", classes=").append(get(Counter.CLASSES))
+                .append(", edges=").append(get(Counter.EDGES))
+                .append(", external=").append(get(Counter.EXTERNAL_CLASSES))
+                .append(", unresolved=").append(get(Counter.UNRESOLVED));
+        return summary.toString();
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Provides timers and counters of the analysis phases, exposed through JMX and written to metrics files.
+ */
+package com.github.iraticasi.testability.metrics;
@@ -0,0 +1,270 @@
+package com.github.iraticasi.testability.report;
+
+import com.opencsv.CSVWriter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+
+/**
+ * Reads a columnar file written by ColumnarWriter, mapping it in memory
+ * <p>
+ * NOTES:
+ * Only the positions of the sections are read when the file is opened; values are read from the mapped
+ * file when they are requested, and strings are decoded once.
+ * The CSV reports are views of the file (writeClassesCSV, writeExternalCSV and writeLibrariesCSV),
+ * with the same records as Analyzer.makeReport, TestChecker.externalReport and TestChecker.librariesReport.
+ * A file must be smaller than 2 GB (the size of a mapped buffer).
+ * */
+
+public class ColumnarReader implements Closeable {
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int numRows, numEdges;
+    private DictionaryView projects, packages, names, dependencies;
+    private int dependencyPkgsPos, projectPos, pkgPos, namePos, externalPos, testsPos, edgeOffsetsPos, edgeTargetsPos;
+
+    /**
+     * Opens a file
+     * @param file the file
+     * @throws IOException if the file can not be read or it is not a columnar file
+     */
+    public ColumnarReader(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.remaining() < 16 || buffer.getInt(0) != ColumnarWriter.MAGIC || buffer.getInt(4) != ColumnarWriter.VERSION) {
+            channel.close();
+            throw new IOException(file + " is not a columnar report");
+        }
+        numRows = buffer.getInt(8);
+        numEdges = buffer.getInt(12);
+        int pos = 16;
+        projects = new DictionaryView(pos);
+        pos = projects.end;
+        packages = new DictionaryView(pos);
+        pos = packages.end;
+        names = new DictionaryView(pos);
+        pos = names.end;
+        dependencies = new DictionaryView(pos);
+        pos = dependencies.end;
+        dependencyPkgsPos = pos;
+        pos += 4 * dependencies.size;
+        projectPos = pos;
+        pos += 4 * numRows;
+        pkgPos = pos;
+        pos += 4 * numRows;
+        namePos = pos;
+        pos += 4 * numRows;
+        int words = (numRows + 63) / 64;
+        externalPos = pos;
+        pos += 8 * words;
+        testsPos = pos;
+        pos += 8 * words;
+        edgeOffsetsPos = pos;
+        pos += 4 * (numRows + 1);
+        edgeTargetsPos = pos;
+        pos += 4 * numEdges;
+        if (pos != buffer.capacity()) {
+            channel.close();
+            throw new IOException(file + " is truncated or corrupted");
+        }
+    }
+
+    /**
+     *
+     * @return number of classes (rows)
+     */
+    public int size() {
+        return numRows;
+    }
+
+    /**
+     *
+     * @return number of dependencies of all classes
+     */
+    public int numEdges() {
+        return numEdges;
+    }
+
+    public String getProject(int row) {
+        return projects.get(buffer.getInt(projectPos + 4 * row));
+    }
+
+    public String getPkg(int row) {
+        return packages.get(buffer.getInt(pkgPos + 4 * row));
+    }
+
+    public String getName(int row) {
+        return names.get(buffer.getInt(namePos + 4 * row));
+    }
+
+    /**
+     * @param row the class
+     * @return whether it has "external" dependencies
+     */
+    public boolean isExternal(int row) {
+        return (buffer.getLong(externalPos + 8 * (row >>> 6)) & (1L << row)) != 0;
+    }
+
+    /**
+     * @param row the class
+     * @return whether it has a dedicated test
+     */
+    public boolean hasTest(int row) {
+        return (buffer.getLong(testsPos + 8 * (row >>> 6)) & (1L << row)) != 0;
+    }
+
+    /**
+     * @param row the class
+     * @return indexes of its distinct dependencies (see getDependencyName)
+     */
+    public int[] getDependencies(int row) {
+        int start = buffer.getInt(edgeOffsetsPos + 4 * row), end = buffer.getInt(edgeOffsetsPos + 4 * (row + 1));
+        int[] targets = new int[end - start];
+        for (int i = 0; i < targets.length; i++) targets[i] = buffer.getInt(edgeTargetsPos + 4 * (start + i));
+        return targets;
+    }
+
+    /**
+     * @param dependency index of a dependency
+     * @return full name of the dependency
+     */
+    public String getDependencyName(int dependency) {
+        return dependencies.get(dependency);
+    }
+
+    /**
+     * @param dependency index of a dependency
+     * @return package of the dependency (null if it is unknown)
+     */
+    public String getDependencyPkg(int dependency) {
+        int pkg = buffer.getInt(dependencyPkgsPos + 4 * dependency);
+        return pkg < 0 ? null : packages.get(pkg);
+    }
+
+    /**
+     *
+     * @return number of distinct dependencies
+     */
+    public int numDependencies() {
+        return dependencies.size;
+    }
+
+    /**
+     * Write the classes of a project as the report of Analyzer.makeReport
+     * @param project name of the project
+     * @param file file to write to
+     * @throws IOException
+     */
+    public void writeClassesCSV(String project, File file) throws IOException {
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            csvWriter.writeNext(new String[]{"Package", "Class", "External dependencies"});
+            for (int row = 0; row < numRows; row++) {
+                if (!getProject(row).equals(project)) continue;
+                csvWriter.writeNext(new String[]{getPkg(row), getName(row), isExternal(row) ? "Y" : "N"});
+            }
+        }
+    }
+
+    /**
+     * Write the statistics of each project as the report of TestChecker.externalReport (without times)
+     * @param file file to write to
+     * @throws IOException
+     */
+    public void writeExternalCSV(File file) throws IOException {
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            csvWriter.writeNext(new String[]{"Project name", "# external classes with tests", "# of external classes without test", "# internal classes with tests", "# of internal classes without test"});
+            int[][] counts = new int[projects.size][4];
+            for (int row = 0; row < numRows; row++) {
+                counts[buffer.getInt(projectPos + 4 * row)][(isExternal(row) ? 0 : 2) + (hasTest(row) ? 0 : 1)]++;
+            }
+            for (int project = 0; project < projects.size; project++) {
+                csvWriter.writeNext(new String[]{projects.get(project),
+                        String.valueOf(counts[project][0]), String.valueOf(counts[project][1]),
+                        String.valueOf(counts[project][2]), String.valueOf(counts[project][3])});
+            }
+        }
+    }
+
+    /**
+     * Write the statistics of each library as the report of TestChecker.librariesReport
+     * @param file file to write to
+     * @param libraries library names
+     * @param mode how a library name is matched with the dependencies
+     * @throws IOException
+     */
+    public void writeLibrariesCSV(File file, String[] libraries, LibraryMatcher.Mode mode) throws IOException {
+        LibraryMatcher matcher = new LibraryMatcher(libraries, mode);
+        //libraries matched by each distinct dependency
+        BitSet[] matches = new BitSet[dependencies.size];
+        for (int dependency = 0; dependency < matches.length; dependency++) {
+            matches[dependency] = new BitSet();
+            if (mode == LibraryMatcher.Mode.SUBSTRING) {
+                matcher.matchSubstring(getDependencyName(dependency), matches[dependency]);
+            } else if (getDependencyPkg(dependency) != null) {
+                matcher.matchPackage(getDependencyPkg(dependency), matches[dependency]);
+            }
+        }
+        int[][] counts = new int[libraries.length][4];
+        for (int row = 0; row < numRows; row++) {
+            BitSet classLibraries = new BitSet();
+            for (int dependency : getDependencies(row)) classLibraries.or(matches[dependency]);
+            boolean hasTest = hasTest(row);
+            for (int i = 0; i < libraries.length; i++) {
+                counts[i][(classLibraries.get(i) ? 0 : 2) + (hasTest ? 0 : 1)]++;
+            }
+        }
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            csvWriter.writeNext(new String[]{"Library name", "library_dep WITH test", "library_dep NO test", "NO library_dep WITH test", "NO Library_dep NO test"});
+            for (int i = 0; i < libraries.length; i++) {
+                csvWriter.writeNext(new String[]{libraries[i],
+                        String.valueOf(counts[i][0]), String.valueOf(counts[i][1]),
+                        String.valueOf(counts[i][2]), String.valueOf(counts[i][3])});
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Dictionary of strings in the mapped file
+     */
+    private class DictionaryView {
+        private int size; //number of strings
+        private int offsetsPos, bytesPos; //positions of the offsets and of the bytes
+        private int end; //position after the dictionary
+        private String[] decoded; //strings already decoded
+
+        private DictionaryView(int pos) {
+            size = buffer.getInt(pos);
+            offsetsPos = pos + 4;
+            bytesPos = offsetsPos + 4 * (size + 1);
+            int length = buffer.getInt(offsetsPos + 4 * size);
+            end = bytesPos + (length + 3) / 4 * 4;
+            decoded = new String[size];
+        }
+
+        private String get(int id) {
+            String string = decoded[id];
+            if (string == null) {
+                int start = buffer.getInt(offsetsPos + 4 * id), end = buffer.getInt(offsetsPos + 4 * (id + 1));
+                byte[] bytes = new byte[end - start];
+                for (int i = 0; i < bytes.length; i++) bytes[i] = buffer.get(bytesPos + start + i);
+                string = new String(bytes, StandardCharsets.UTF_8);
+                decoded[id] = string;
+            }
+            return string;
+        }
+    }
+}
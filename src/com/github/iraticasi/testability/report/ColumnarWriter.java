@@ -0,0 +1,230 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import com.github.iraticasi.testability.analyzer.SymbolTable;
+import com.github.iraticasi.testability.analyzer.TestIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+
+/**
+ * Writes the classes of the analyzed projects in a columnar binary file (read with ColumnarReader)
+ * <p>
+ * NOTES:
+ * File layout (big endian, every section aligned to 4 bytes):
+ * - header: magic, version, number of classes (rows), number of edges
+ * - dictionaries of projects, packages, class names and dependencies (full names): count, byte offsets (count + 1)
+ *   and UTF-8 bytes of the strings
+ * - package of each dependency (index in the packages dictionary, -1 if unknown)
+ * - project, package and class name columns (indexes in the dictionaries)
+ * - "external" and "dedicated test" columns as bitsets (longs)
+ * - dependencies of each class in CSR form: offsets (rows + 1) and dependency indexes
+ * The columns are kept in memory as int arrays until the file is written, so a row costs a few ints
+ * plus its distinct dependencies, whatever the length of the names.
+ * */
+
+public class ColumnarWriter {
+
+    static final int MAGIC = 0x54535442; //"TSTB"
+    static final int VERSION = 1;
+
+    private Dictionary projects = new Dictionary(), packages = new Dictionary(), names = new Dictionary(), dependencies = new Dictionary();
+    private IntColumn dependencyPkgs = new IntColumn(); //package of each dependency
+    private IntColumn projectColumn = new IntColumn(), pkgColumn = new IntColumn(), nameColumn = new IntColumn();
+    private BitSet external = new BitSet(), tests = new BitSet();
+    private IntColumn edgeOffsets = new IntColumn(), edgeTargets = new IntColumn();
+    private int numRows = 0;
+
+    public ColumnarWriter() {
+        edgeOffsets.add(0);
+    }
+
+    /**
+     * Add the classes of a project, in the order of the report (by package, then by name)
+     * @param project name of the project
+     * @param classes analyzed classes of the project
+     * @param tests dedicated tests of the project
+     */
+    public void addProject(String project, List<ClassInfo> classes, TestIndex tests) {
+        List<ClassInfo> sorted = new ArrayList<>(classes);
+        Collections.sort(sorted);
+        for (ClassInfo classInfo : sorted) {
+            addClass(project, classInfo, tests.hasTest(classInfo));
+        }
+    }
+
+    /**
+     * Add a class
+     * @param project name of the project
+     * @param classInfo the analyzed class
+     * @param hasTest whether it has a dedicated test
+     */
+    public void addClass(String project, ClassInfo classInfo, boolean hasTest) {
+        projectColumn.add(projects.intern(project));
+        pkgColumn.add(packages.intern(classInfo.getPkg()));
+        nameColumn.add(names.intern(classInfo.getName()));
+        if (classInfo.hasExternalDependencies()) external.set(numRows);
+        if (hasTest) tests.set(numRows);
+        SymbolTable symbols = classInfo.getSymbols();
+        for (int id : classInfo.getDependencyIds()) {
+            int dependency = dependencies.intern(symbols.getName(id));
+            if (dependency == dependencyPkgs.size()) { //new dependency
+                int pkg = symbols.getPackage(id);
+                dependencyPkgs.add(pkg < 0 ? -1 : packages.intern(symbols.getName(pkg)));
+            }
+            edgeTargets.add(dependency);
+        }
+        edgeOffsets.add(edgeTargets.size());
+        numRows++;
+    }
+
+    /**
+     *
+     * @return number of classes added
+     */
+    public int size() {
+        return numRows;
+    }
+
+    /**
+     * Write the file (through a temporary file, so a existing file is only replaced by a complete one)
+     * @param file the file
+     * @throws IOException if the file can not be written
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(numRows);
+            out.putInt(edgeTargets.size());
+            projects.write(out);
+            packages.write(out);
+            names.write(out);
+            dependencies.write(out);
+            dependencyPkgs.write(out);
+            projectColumn.write(out);
+            pkgColumn.write(out);
+            nameColumn.write(out);
+            writeBits(external, out);
+            writeBits(tests, out);
+            edgeOffsets.write(out);
+            edgeTargets.write(out);
+            out.flush();
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeBits(BitSet bits, Output out) throws IOException {
+        long[] words = Arrays.copyOf(bits.toLongArray(), (numRows + 63) / 64);
+        for (long word : words) out.putLong(word);
+    }
+
+    /**
+     * Buffered output to a file channel
+     */
+    private static class Output {
+        private FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+        private Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Growable int array
+     */
+    private static class IntColumn {
+        private int[] values = new int[1024];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void write(Output out) throws IOException {
+            for (int i = 0; i < size; i++) out.putInt(values[i]);
+        }
+    }
+
+    /**
+     * Strings interned to consecutive indexes, in order of appearance
+     */
+    private static class Dictionary {
+        private Map<String, Integer> ids = new HashMap<>();
+        private List<String> strings = new ArrayList<>();
+
+        int intern(String string) {
+            Integer id = ids.get(string);
+            if (id == null) {
+                id = strings.size();
+                ids.put(string, id);
+                strings.add(string);
+            }
+            return id;
+        }
+
+        void write(Output out) throws IOException {
+            out.putInt(strings.size());
+            byte[][] bytes = new byte[strings.size()][];
+            int offset = 0;
+            out.putInt(0);
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+                offset += bytes[i].length;
+                out.putInt(offset);
+            }
+            for (byte[] string : bytes) out.put(string);
+            for (int i = offset; i % 4 != 0; i++) out.put(new byte[1]); //align
+        }
+    }
+}
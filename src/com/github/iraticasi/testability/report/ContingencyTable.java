@@ -0,0 +1,229 @@
+package com.github.iraticasi.testability.report;
+
+import java.util.Locale;
+
+
+/**
+ * Online 2x2 contingency table of the classes of one or more projects, e.g. external (or depending on a library)
+ * vs. having a dedicated test, with the statistics of the association between both
+ * <p>
+ * NOTES:
+ * Cells: a = exposed with outcome, b = exposed without outcome, c = not exposed with outcome,
+ * d = not exposed without outcome (the order of the columns of the reports).
+ * Tables are updated one class at a time and merged by adding their cells, so partial tables of threads,
+ * shards or projects give the same statistics as a single table of all the classes.
+ * - Odds ratio: ad/bc, with the Haldane-Anscombe correction (0.5 added to every cell) when some cell is 0;
+ *   its 95% confidence interval is Woolf's: exp(ln OR +- 1.96 sqrt(1/a + 1/b + 1/c + 1/d)).
+ * - Chi-square: Pearson's statistic (without continuity correction) and its p-value with 1 degree of freedom.
+ * - Fisher: two-sided exact p-value, summing the probabilities of the tables with the same margins that are
+ *   not more probable than the observed one (with a relative tolerance of 1e-7, as R's fisher.test).
+ * */
+
+public class ContingencyTable {
+
+    private static final double Z_95 = 1.959964;
+
+    private long a, b, c, d;
+
+    public ContingencyTable() {
+    }
+
+    /**
+     * Creates a table from its cells
+     * @param a exposed with outcome
+     * @param b exposed without outcome
+     * @param c not exposed with outcome
+     * @param d not exposed without outcome
+     */
+    public ContingencyTable(long a, long b, long c, long d) {
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+    }
+
+    /**
+     * Count a class
+     * @param exposed whether it is exposed (e.g. it has external dependencies)
+     * @param outcome whether it has the outcome (e.g. a dedicated test)
+     */
+    public void add(boolean exposed, boolean outcome) {
+        if (exposed) {
+            if (outcome) a++;
+            else b++;
+        } else {
+            if (outcome) c++;
+            else d++;
+        }
+    }
+
+    /**
+     * Add the classes of another table
+     * @param other the table
+     */
+    public void merge(ContingencyTable other) {
+        a += other.a;
+        b += other.b;
+        c += other.c;
+        d += other.d;
+    }
+
+    public long getA() {
+        return a;
+    }
+
+    public long getB() {
+        return b;
+    }
+
+    public long getC() {
+        return c;
+    }
+
+    public long getD() {
+        return d;
+    }
+
+    /**
+     *
+     * @return number of classes of the table
+     */
+    public long getTotal() {
+        return a + b + c + d;
+    }
+
+    /**
+     *
+     * @return whether some cell is 0 (the odds ratio is then corrected)
+     */
+    private boolean hasZeroCell() {
+        return a == 0 || b == 0 || c == 0 || d == 0;
+    }
+
+    /**
+     *
+     * @return odds ratio (NaN for a empty table)
+     */
+    public double getOddsRatio() {
+        if (getTotal() == 0) return Double.NaN;
+        double k = hasZeroCell() ? 0.5 : 0;
+        return ((a + k) * (d + k)) / ((b + k) * (c + k));
+    }
+
+    /**
+     *
+     * @return 95% confidence interval of the odds ratio: {lower, upper}
+     */
+    public double[] getOddsRatioInterval() {
+        if (getTotal() == 0) return new double[]{Double.NaN, Double.NaN};
+        double k = hasZeroCell() ? 0.5 : 0;
+        double logOddsRatio = Math.log(getOddsRatio());
+        double se = Math.sqrt(1 / (a + k) + 1 / (b + k) + 1 / (c + k) + 1 / (d + k));
+        return new double[]{Math.exp(logOddsRatio - Z_95 * se), Math.exp(logOddsRatio + Z_95 * se)};
+    }
+
+    /**
+     *
+     * @return Pearson's chi-square statistic (NaN if some margin is 0)
+     */
+    public double getChiSquare() {
+        double n = getTotal();
+        double rows = (double) (a + b) * (c + d), columns = (double) (a + c) * (b + d);
+        if (rows == 0 || columns == 0) return Double.NaN;
+        double cross = (double) a * d - (double) b * c;
+        return n * cross / rows * cross / columns;
+    }
+
+    /**
+     *
+     * @return p-value of the chi-square statistic, with 1 degree of freedom
+     */
+    public double getChiSquarePValue() {
+        double chiSquare = getChiSquare();
+        return Double.isNaN(chiSquare) ? Double.NaN : erfc(Math.sqrt(chiSquare / 2));
+    }
+
+    /**
+     *
+     * @return two-sided p-value of Fisher's exact test
+     */
+    public double getFisherPValue() {
+        long row1 = a + b, column1 = a + c, n = getTotal();
+        if (n == 0) return Double.NaN;
+        long min = Math.max(0, row1 + column1 - n), max = Math.min(row1, column1);
+        double observed = logHypergeometric(a, row1, column1, n);
+        double p = 0;
+        for (long x = min; x <= max; x++) {
+            double log = logHypergeometric(x, row1, column1, n);
+            if (log <= observed + 1e-7) p += Math.exp(log - observed);
+        }
+        return Math.min(1, p * Math.exp(observed));
+    }
+
+    /**
+     * Log of the probability of a table with given margins
+     * @param x value of the first cell
+     * @param row1 sum of the first row
+     * @param column1 sum of the first column
+     * @param n total
+     * @return log of the hypergeometric probability
+     */
+    private static double logHypergeometric(long x, long row1, long column1, long n) {
+        return logChoose(column1, x) + logChoose(n - column1, row1 - x) - logChoose(n, row1);
+    }
+
+    private static double logChoose(long n, long k) {
+        return logGamma(n + 1) - logGamma(k + 1) - logGamma(n - k + 1);
+    }
+
+    /**
+     * Log of the gamma function (Lanczos approximation, g = 7, relative error below 1e-13)
+     * @param x a positive number
+     * @return ln(gamma(x))
+     */
+    static double logGamma(double x) {
+        if (x < 0.5) return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1 - x);
+        double[] coefficients = {0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+                -176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7};
+        x -= 1;
+        double sum = coefficients[0];
+        for (int i = 1; i < coefficients.length; i++) sum += coefficients[i] / (x + i);
+        double t = x + 7.5;
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+    }
+
+    /**
+     * Complementary error function (Chebyshev approximation, relative error below 1.2e-7)
+     * @param x a number
+     * @return erfc(x)
+     */
+    static double erfc(double x) {
+        double z = Math.abs(x);
+        double t = 1 / (1 + 0.5 * z);
+        double r = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+                + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+                + t * (-0.82215223 + t * 0.17087277)))))))));
+        return x >= 0 ? r : 2 - r;
+    }
+
+    /**
+     *
+     * @return the cells and the statistics: {a, b, c, d, odds ratio, CI lower, CI upper, chi-square,
+     *      chi-square p-value, Fisher p-value}
+     */
+    public String[] getRecord() {
+        double[] interval = getOddsRatioInterval();
+        return new String[]{String.valueOf(a), String.valueOf(b), String.valueOf(c), String.valueOf(d),
+                format(getOddsRatio()), format(interval[0]), format(interval[1]),
+                format(getChiSquare()), format(getChiSquarePValue()), format(getFisherPValue())};
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? "" : String.format(Locale.ROOT, "%.6g", value);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + a + ", " + b + ", " + c + ", " + d + "]";
+    }
+}
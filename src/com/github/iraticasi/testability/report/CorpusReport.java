@@ -0,0 +1,143 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.analyzer.Analyzer;
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import com.github.iraticasi.testability.analyzer.CorpusGraph;
+import com.github.iraticasi.testability.analyzer.TestIndex;
+import com.opencsv.CSVWriter;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+
+/**
+ * Report of the "external" classes of a corpus of projects with the dependencies between the projects
+ * (see CorpusGraph)
+ * <p>
+ * NOTES:
+ * The projects of the folder that are not in the graph yet are analyzed and appended to it one at a time, so a
+ * interrupted run (or a folder with new projects) only analyzes the missing ones. The graph is then sealed and,
+ * for each project, the report has the classes external in its own analysis (where a dependency on another
+ * project is always external) and in the corpus (where it is external only if the class of the other project is),
+ * the counters of TestChecker.checkExternal with the corpus flag, and the classes that reach each queried package.
+ * */
+
+public class CorpusReport {
+
+    public static final String[] DEFAULT_QUERIES = {"java.sql", "java.net", "java.io"};
+
+    private File folder; //folder with all projects to check
+    private File graphFolder; //folder of the graph
+    private int threads = 1; //number of projects analyzed concurrently
+
+    /**
+     * Creates a corpus report
+     * @param folder folder with the projects
+     * @param graphFolder folder to store the graph in (reused by later runs)
+     */
+    public CorpusReport(File folder, File graphFolder) {
+        this.folder = folder;
+        this.graphFolder = graphFolder;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Add the missing projects to the graph and seal it
+     * @return the graph, sealed
+     * @throws IOException if the graph can not be written
+     */
+    public CorpusGraph build() throws IOException {
+        CorpusGraph graph = CorpusGraph.open(graphFolder);
+        List<File> missing = new ArrayList<>();
+        for (File project : ProjectScheduler.listProjects(folder)) {
+            if (!graph.getProjects().contains(project.getName())) missing.add(project);
+        }
+        new ProjectScheduler(threads, 2 * threads).run(missing, project -> {
+            Analyzer analyzer = new Analyzer(project);
+            List<ClassInfo> classInfos = analyzer.analyze();
+            return new AnalyzedProject(classInfos, analyzer.getScan().getTestIndex());
+        }, result -> {
+            System.out.println(result.getProject() + " (" + result.getMillis() + " ms)");
+            if (result.getFailure() != null) {
+                System.err.println(result.getProject() + " failed: " + result.getFailure());
+            } else {
+                AnalyzedProject analyzed = result.getValue();
+                graph.addProject(result.getProject().getName(), analyzed.classes, analyzed.tests::hasTest);
+            }
+        });
+        if (!graph.isSealed()) {
+            long start = System.nanoTime();
+            graph.seal();
+            System.out.println("Graph sealed: " + graph.getNumNodes() + " classes, " + graph.getNumEdges() + " dependencies, "
+                    + graph.getNumResolved() + " on classes of the corpus (" + graph.getNumCrossProject() + " of other projects) in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+        return graph;
+    }
+
+    /**
+     * Build the graph and write the report
+     * @param file the name of the file to write the CSV report
+     * @param queries packages to find the classes that reach them (see CorpusGraph.reach)
+     * @throws IOException if the graph or the report can not be written
+     */
+    public void write(String file, String[] queries) throws IOException {
+        try (CorpusGraph graph = build(); CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            List<String> header = new ArrayList<>(Arrays.asList("Project name", "# classes", "# external classes (project)",
+                    "# external classes (corpus)", "# external classes with tests", "# of external classes without test",
+                    "# internal classes with tests", "# of internal classes without test"));
+            List<long[]> reached = new ArrayList<>();
+            for (String query : queries) {
+                header.add("# classes reaching " + query);
+                reached.add(graph.countByProject(graph.reach(query)));
+            }
+            csvWriter.writeNext(header.toArray(new String[0]));
+            for (int p = 0; p < graph.getProjects().size(); p++) {
+                int[] nodes = graph.getNodes(p);
+                long projectExternal = 0, corpusExternal = 0;
+                ContingencyTable counts = new ContingencyTable();
+                for (int node = nodes[0]; node < nodes[1]; node++) {
+                    int flags = graph.getFlags(node);
+                    if ((flags & CorpusGraph.PROJECT_EXTERNAL) != 0) projectExternal++;
+                    if (graph.isExternal(node)) corpusExternal++;
+                    counts.add(graph.isExternal(node), (flags & CorpusGraph.TEST) != 0);
+                }
+                List<String> record = new ArrayList<>(Arrays.asList(graph.getProjects().get(p), String.valueOf(nodes[1] - nodes[0]),
+                        String.valueOf(projectExternal), String.valueOf(corpusExternal)));
+                record.addAll(Arrays.asList(counts.getRecord()).subList(0, 4));
+                for (long[] reachedCounts : reached) record.add(String.valueOf(reachedCounts[p]));
+                csvWriter.writeNext(record.toArray(new String[0]));
+            }
+        }
+    }
+
+    /**
+     * Classes and dedicated tests of a analyzed project
+     */
+    private static class AnalyzedProject {
+        private List<ClassInfo> classes;
+        private TestIndex tests;
+
+        private AnalyzedProject(List<ClassInfo> classes, TestIndex tests) {
+            this.classes = classes;
+            this.tests = tests;
+        }
+    }
+
+    /**
+     * Writes the corpus report of a folder of projects into corpus_report.csv
+     * @param args folder with the projects, folder of the graph and packages to query (java.sql, java.net and java.io by default)
+     */
+    public static void main(String[] args) throws IOException {
+        File folder = new File(args.length > 0 ? args[0] : "apache_projects");
+        File graphFolder = new File(args.length > 1 ? args[1] : "corpus_graph");
+        CorpusReport report = new CorpusReport(folder, graphFolder);
+        report.setThreads(Runtime.getRuntime().availableProcessors());
+        report.write("corpus_report.csv", args.length > 2 ? Arrays.copyOfRange(args, 2, args.length) : DEFAULT_QUERIES);
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.iraticasi.testability.report;
+
+import com.opencsv.CSVWriter;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+
+/**
+ * Contingency tables (see ContingencyTable) of a correlation report, by name (a project or a library), and the
+ * pooled table of all of them
+ * <p>
+ * NOTES:
+ * Summaries are merged by merging their tables of the same name, so partial summaries of threads or shards
+ * give the same report as a single one. Names keep the order they were first added in.
+ * The pooled table is the sum of the tables (the classes of all the projects), so it is only meaningful when
+ * the tables do not overlap (e.g. projects, not libraries).
+ * */
+
+public class CorrelationSummary {
+
+    public static final String[] COLUMNS = {"Exposed with outcome", "Exposed without outcome", "Not exposed with outcome",
+            "Not exposed without outcome", "Odds ratio", "OR 95% CI lower", "OR 95% CI upper", "Chi-square",
+            "Chi-square p-value", "Fisher p-value"};
+
+    private Map<String, ContingencyTable> tables = new LinkedHashMap<>();
+
+    /**
+     * Get the table of a name, creating it if needed
+     * @param name name of the table (a project, a library...)
+     * @return its table
+     */
+    public ContingencyTable get(String name) {
+        return tables.computeIfAbsent(name, k -> new ContingencyTable());
+    }
+
+    /**
+     * Add the tables of another summary
+     * @param other the summary
+     */
+    public void merge(CorrelationSummary other) {
+        for (Map.Entry<String, ContingencyTable> entry : other.tables.entrySet()) {
+            get(entry.getKey()).merge(entry.getValue());
+        }
+    }
+
+    /**
+     *
+     * @return tables by name
+     */
+    public Map<String, ContingencyTable> getTables() {
+        return tables;
+    }
+
+    /**
+     *
+     * @return sum of all the tables
+     */
+    public ContingencyTable getPooled() {
+        ContingencyTable pooled = new ContingencyTable();
+        for (ContingencyTable table : tables.values()) pooled.merge(table);
+        return pooled;
+    }
+
+    /**
+     * Write the statistics of each table, and optionally of the pooled table
+     * @param file the name of the file to write the CSV report
+     * @param nameColumn header of the column of the names
+     * @param pooledName name of the row of the pooled table (null to not write it)
+     * @throws IOException if the report can not be written
+     */
+    public void write(String file, String nameColumn, String pooledName) throws IOException {
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            List<String> header = new ArrayList<>();
+            header.add(nameColumn);
+            header.addAll(Arrays.asList(COLUMNS));
+            csvWriter.writeNext(header.toArray(new String[0]));
+            for (Map.Entry<String, ContingencyTable> entry : tables.entrySet()) {
+                csvWriter.writeNext(record(entry.getKey(), entry.getValue()));
+            }
+            if (pooledName != null) csvWriter.writeNext(record(pooledName, getPooled()));
+        }
+    }
+
+    private static String[] record(String name, ContingencyTable table) {
+        String[] statistics = table.getRecord();
+        String[] record = new String[statistics.length + 1];
+        record[0] = name;
+        System.arraycopy(statistics, 0, record, 1, statistics.length);
+        return record;
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.analyzer.*;
+import com.opencsv.CSVWriter;
+
+import java.io.*;
+import java.util.*;
+
+
+/**
+ * Edge level report of a project: every object creation with its location and classification,
+ * and the fan-in and fan-out of each class and package
+ * <p>
+ * NOTES:
+ * The edges are recorded in the same parse as the analysis and spooled to a temporary file as each class is parsed,
+ * so the edges are not kept in memory, only the classes and their dependency graph. Once the "external" dependencies are spread,
+ * the spooled edges are streamed to the CSV with their classification:
+ * - direct: the created class is "external" itself (see ClassInfo)
+ * - transitive: the created class is a class of the project with "external" dependencies
+ * - internal: otherwise
+ * Fan-out of a class counts its distinct dependencies, fan-in the distinct classes of the project that depend on it.
+ * Fan-out of a package counts the distinct classes of other packages its classes depend on, fan-in the distinct
+ * classes of other packages that depend on its classes.
+ * */
+
+public class EdgeReport {
+
+    private File project; //base folder of the project
+
+    /**
+     * Creates a edge report for a project
+     * @param project base folder of the project
+     */
+    public EdgeReport(File project) {
+        this.project = project;
+    }
+
+    /**
+     * Analyze the project and write the reports
+     * @param edgesFile file to write the edges to
+     * @param classesFile file to write the fan-in and fan-out of the classes to
+     * @param packagesFile file to write the fan-in and fan-out of the packages to
+     * @throws IOException if a file can not be written
+     */
+    public void write(String edgesFile, String classesFile, String packagesFile) throws IOException {
+        File spool = File.createTempFile("edges", ".bin");
+        try {
+            Analyzer analyzer = new Analyzer(project);
+            List<String> paths = new ArrayList<>(); //spooled file ids -> path relative to the project
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spool)))) {
+                Map<String, Integer> pathIds = new HashMap<>();
+                analyzer.setEdgeSink((sourceFilePath, classInfo) -> {
+                    synchronized (out) {
+                        try {
+                            Integer fileId = pathIds.get(sourceFilePath);
+                            if (fileId == null) {
+                                fileId = paths.size();
+                                pathIds.put(sourceFilePath, fileId);
+                                paths.add(relativize(sourceFilePath));
+                            }
+                            int source = classInfo.getSymbols().intern(classInfo.getFullName());
+                            for (int i = 0; i < classInfo.getNumEdges(); i++) {
+                                out.writeInt(fileId);
+                                out.writeInt(source);
+                                out.writeInt(classInfo.getEdgeLine(i));
+                                out.writeInt(classInfo.getEdgeColumn(i));
+                                out.writeInt(classInfo.getEdgeDependencyId(i));
+                                out.writeBoolean(classInfo.isEdgeDirectExternal(i));
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+                analyzer.analyze();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            DependencyGraph graph = analyzer.getDependencyGraph();
+            SymbolTable symbols = analyzer.getSymbols();
+            writeEdges(spool, paths, graph, symbols, edgesFile);
+            writeClasses(graph, classesFile);
+            writePackages(graph, symbols, packagesFile);
+        } finally {
+            spool.delete();
+        }
+    }
+
+    private String relativize(String path) {
+        String base = project.getPath() + File.separator;
+        return path.startsWith(base) ? path.substring(base.length()) : path;
+    }
+
+    private void writeEdges(File spool, List<String> paths, DependencyGraph graph, SymbolTable symbols, String file) throws IOException {
+        //symbol id -> class id of the graph (memoized, -2 not computed yet)
+        int[] classOfSymbol = new int[symbols.size()];
+        Arrays.fill(classOfSymbol, -2);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spool)));
+             CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            csvWriter.writeNext(new String[]{"File", "Line", "Column", "Class", "Dependency", "Classification", "Class external"});
+            long numEdges = spool.length() / 21; //size of a spooled edge
+            for (long e = 0; e < numEdges; e++) {
+                String path = paths.get(in.readInt());
+                int source = in.readInt();
+                int line = in.readInt(), column = in.readInt();
+                int target = in.readInt();
+                boolean direct = in.readBoolean();
+                if (classOfSymbol[target] == -2) classOfSymbol[target] = graph.getId(symbols.getName(target));
+                String classification = direct ? "direct" :
+                        classOfSymbol[target] >= 0 && graph.isExternal(classOfSymbol[target]) ? "transitive" : "internal";
+                String sourceName = symbols.getName(source);
+                int sourceId = graph.getId(sourceName);
+                csvWriter.writeNext(new String[]{path, String.valueOf(line), String.valueOf(column), sourceName,
+                        symbols.getName(target), classification, sourceId >= 0 && graph.isExternal(sourceId) ? "Y" : "N"});
+            }
+        }
+    }
+
+    private void writeClasses(DependencyGraph graph, String file) throws IOException {
+        Integer[] order = new Integer[graph.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> graph.getClassInfo(a).compareTo(graph.getClassInfo(b))); //as the class report
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            csvWriter.writeNext(new String[]{"Package", "Class", "Object creations", "Fan-out", "Fan-out project classes", "Fan-in", "External dependencies"});
+            for (int id : order) {
+                ClassInfo classInfo = graph.getClassInfo(id);
+                int creations = 0;
+                for (int count : classInfo.getDependencyCounts()) creations += count;
+                csvWriter.writeNext(new String[]{classInfo.getPkg(), classInfo.getName(), String.valueOf(creations),
+                        String.valueOf(classInfo.getDependencyIds().length),
+                        String.valueOf(graph.getSuccessors(id).length),
+                        String.valueOf(graph.getPredecessors(id).length),
+                        graph.isExternal(id) ? "Y" : "N"});
+            }
+        }
+    }
+
+    private void writePackages(DependencyGraph graph, SymbolTable symbols, String file) throws IOException {
+        Map<String, int[]> packages = new TreeMap<>(); //package -> classes, external classes
+        Map<String, Set<Integer>> fanOut = new HashMap<>(), fanIn = new HashMap<>();
+        for (int id = 0; id < graph.size(); id++) {
+            ClassInfo classInfo = graph.getClassInfo(id);
+            String pkg = classInfo.getPkg();
+            int[] counts = packages.computeIfAbsent(pkg, k -> new int[2]);
+            counts[0]++;
+            if (graph.isExternal(id)) counts[1]++;
+            Set<Integer> out = fanOut.computeIfAbsent(pkg, k -> new HashSet<>());
+            for (int dependency : classInfo.getDependencyIds()) {
+                int dependencyPkg = symbols.getPackage(dependency);
+                if (dependencyPkg < 0 || !symbols.getName(dependencyPkg).equals(pkg)) out.add(dependency);
+            }
+            for (int predecessor : graph.getPredecessors(id)) {
+                if (!graph.getClassInfo(predecessor).getPkg().equals(pkg)) {
+                    fanIn.computeIfAbsent(pkg, k -> new HashSet<>()).add(predecessor);
+                }
+            }
+        }
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            csvWriter.writeNext(new String[]{"Package", "Classes", "External classes", "Fan-out", "Fan-in"});
+            for (Map.Entry<String, int[]> entry : packages.entrySet()) {
+                String pkg = entry.getKey();
+                csvWriter.writeNext(new String[]{pkg, String.valueOf(entry.getValue()[0]), String.valueOf(entry.getValue()[1]),
+                        String.valueOf(fanOut.get(pkg).size()),
+                        String.valueOf(fanIn.getOrDefault(pkg, Collections.emptySet()).size())});
+            }
+        }
+    }
+
+    /**
+     * Writes the edge report of a project into its folder
+     * @param args project folder
+     */
+    public static void main(String[] args) throws IOException {
+        File project = new File(args.length > 0 ? args[0] : "apache_projects/zeppelin");
+        String prefix = project.getAbsolutePath() + File.separator;
+        new EdgeReport(project).write(prefix + "edges_report.csv", prefix + "classes_fan_report.csv", prefix + "packages_fan_report.csv");
+    }
+}
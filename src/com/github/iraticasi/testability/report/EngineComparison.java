@@ -0,0 +1,117 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.analyzer.Analyzer;
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import com.opencsv.CSVWriter;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+
+/**
+ * Cross-check of the source and bytecode engines (see Analyzer.Engine) on a built project
+ * <p>
+ * NOTES:
+ * Both engines analyze the project and their classes are joined by full name. For each class the report has
+ * its "external" flag in each engine and the dependencies found by only one of them.
+ * Dependencies are compared by simple name without type arguments, since the source engine keeps the names as
+ * written (HashMap<>, Map.Entry) and the bytecode engine has the canonical ones (java.util.HashMap,
+ * java.util.Map.Entry); a anonymous class is compared by its interface or superclass.
+ * */
+
+public class EngineComparison {
+
+    private File project; //base folder of the project
+    private int numClasses, numOnlySource, numOnlyBytecode, numSameExternal, numSameDependencies;
+
+    /**
+     * Creates a comparison for a built project
+     * @param project base folder of the project
+     */
+    public EngineComparison(File project) {
+        this.project = project;
+    }
+
+    /**
+     * Analyze the project with both engines and write the report
+     * @param file file to write the report to
+     * @throws IOException if the report can not be written
+     */
+    public void write(String file) throws IOException {
+        Map<String, ClassInfo> source = analyze(Analyzer.Engine.SOURCE);
+        Map<String, ClassInfo> bytecode = analyze(Analyzer.Engine.BYTECODE);
+        SortedSet<String> names = new TreeSet<>(source.keySet());
+        names.addAll(bytecode.keySet());
+        numClasses = numOnlySource = numOnlyBytecode = numSameExternal = numSameDependencies = 0;
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            csvWriter.writeNext(new String[]{"Class", "Source external", "Bytecode external", "Only in source", "Only in bytecode"});
+            for (String name : names) {
+                ClassInfo sourceClass = source.get(name), bytecodeClass = bytecode.get(name);
+                numClasses++;
+                if (bytecodeClass == null) numOnlySource++;
+                if (sourceClass == null) numOnlyBytecode++;
+                Set<String> sourceDependencies = simpleNames(sourceClass), bytecodeDependencies = simpleNames(bytecodeClass);
+                Set<String> onlySource = new TreeSet<>(sourceDependencies), onlyBytecode = new TreeSet<>(bytecodeDependencies);
+                onlySource.removeAll(bytecodeDependencies);
+                onlyBytecode.removeAll(sourceDependencies);
+                if (sourceClass != null && bytecodeClass != null) {
+                    if (sourceClass.hasExternalDependencies() == bytecodeClass.hasExternalDependencies()) numSameExternal++;
+                    if (onlySource.isEmpty() && onlyBytecode.isEmpty()) numSameDependencies++;
+                }
+                csvWriter.writeNext(new String[]{name, flag(sourceClass), flag(bytecodeClass),
+                        String.join(" ", onlySource), String.join(" ", onlyBytecode)});
+            }
+        }
+    }
+
+    private Map<String, ClassInfo> analyze(Analyzer.Engine engine) {
+        Analyzer analyzer = new Analyzer(project);
+        analyzer.setEngine(engine);
+        Map<String, ClassInfo> classes = new HashMap<>();
+        for (ClassInfo classInfo : analyzer.analyze()) classes.put(classInfo.getFullName(), classInfo);
+        return classes;
+    }
+
+    private static String flag(ClassInfo classInfo) {
+        return classInfo == null ? "" : classInfo.hasExternalDependencies() ? "Y" : "N";
+    }
+
+    /**
+     * @param classInfo a class (null if the engine did not find it)
+     * @return simple names of its dependencies, without type arguments
+     */
+    private static Set<String> simpleNames(ClassInfo classInfo) {
+        Set<String> names = new HashSet<>();
+        if (classInfo == null) return names;
+        for (String dependency : new LinkedHashSet<>(classInfo.getDependencies())) {
+            int typeArguments = dependency.indexOf('<');
+            String name = typeArguments < 0 ? dependency : dependency.substring(0, typeArguments);
+            names.add(name.substring(name.lastIndexOf('.') + 1));
+        }
+        return names;
+    }
+
+    /**
+     *
+     * @return summary of the last comparison
+     */
+    public String getSummary() {
+        int common = numClasses - numOnlySource - numOnlyBytecode;
+        return numClasses + " classes (" + numOnlySource + " only in source, " + numOnlyBytecode + " only in bytecode), "
+                + numSameExternal + "/" + common + " with the same external flag, "
+                + numSameDependencies + "/" + common + " with the same dependencies";
+    }
+
+    /**
+     * Compares the engines on a built project, writing engine_comparison.csv into its folder
+     * @param args project folder
+     */
+    public static void main(String[] args) throws IOException {
+        File project = new File(args.length > 0 ? args[0] : "apache_projects/zeppelin");
+        EngineComparison comparison = new EngineComparison(project);
+        comparison.write(project.getAbsolutePath() + File.separator + "engine_comparison.csv");
+        System.out.println(comparison.getSummary());
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import com.github.iraticasi.testability.analyzer.DependencyGraph;
+import com.github.iraticasi.testability.analyzer.GitHistory;
+import com.github.iraticasi.testability.analyzer.SourceScanner;
+import com.github.iraticasi.testability.analyzer.TestIndex;
+import com.opencsv.CSVWriter;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Set;
+
+
+/**
+ * Time series of the statistics of TestChecker.checkExternal over the commits of a git repository
+ * <p>
+ * NOTES:
+ * The commits are analyzed from the git objects (see GitHistory), so the repository is not checked out and only
+ * the files changed by each commit are parsed again. Dependencies are resolved without bindings, so the counts
+ * may differ slightly from the ones of a checkout of the same commit (see GitHistory).
+ * */
+
+public class HistoryReport {
+
+    private GitHistory history;
+
+    /**
+     * Creates a history report for a repository
+     * @param repository working tree or git directory of the repository
+     * @param testConventions naming conventions of the dedicated tests
+     */
+    public HistoryReport(File repository, Set<TestIndex.Convention> testConventions) {
+        this.history = new GitHistory(repository);
+        SourceScanner scanner = new SourceScanner();
+        scanner.setTestConventions(testConventions);
+        history.setScanner(scanner);
+    }
+
+    /**
+     *
+     * @return the history analyzer (e.g. to set its policies)
+     */
+    public GitHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Write the statistics of each commit of a range, oldest first
+     * @param range range of commits (see GitHistory.analyze)
+     * @param file the name of the file to write the CSV report
+     * @throws IOException if git fails or the report can not be written
+     */
+    public void write(String range, String file) throws IOException {
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            csvWriter.writeNext(new String[]{"Commit", "Date", "# external classes with tests", "# of external classes without test",
+                    "# internal classes with tests", "# of internal classes without test", "# source files", "# parsed files"});
+            long[] time = {System.nanoTime()};
+            history.analyze(range, revision -> {
+                int[] counts = count(revision);
+                csvWriter.writeNext(new String[]{revision.getCommit(), Instant.ofEpochSecond(revision.getTime()).toString(),
+                        String.valueOf(counts[0]), String.valueOf(counts[1]), String.valueOf(counts[2]), String.valueOf(counts[3]),
+                        String.valueOf(revision.getNumSourceFiles()), String.valueOf(revision.getNumParsed())});
+            });
+            System.out.println(history.getNumParsed() + " files parsed (" + history.getNumBlobs() + " distinct blobs) in "
+                    + (System.nanoTime() - time[0]) / 1000000 + " ms");
+        }
+    }
+
+    /**
+     * Count the classes of a commit as TestChecker.checkExternal does
+     * @param revision the commit
+     * @return {extWithTest, extNoTest, intWithTest, intNoTest}
+     */
+    public static int[] count(GitHistory.Revision revision) {
+        int[] counts = new int[4];
+        DependencyGraph graph = revision.getDependencyGraph();
+        for (int i = 0; i < graph.size(); i++) {
+            ClassInfo cr = graph.getClassInfo(i);
+            boolean hasTest = revision.getTestIndex().hasTest(cr);
+            counts[(cr.hasExternalDependencies() ? 0 : 2) + (hasTest ? 0 : 1)]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Writes the history of a repository into history_report.csv
+     * @param args repository folder and range of commits (HEAD by default)
+     */
+    public static void main(String[] args) throws IOException {
+        File repository = new File(args.length > 0 ? args[0] : ".");
+        HistoryReport report = new HistoryReport(repository, TestIndex.DEFAULT_CONVENTIONS);
+        report.write(args.length > 1 ? args[1] : "HEAD", "history_report.csv");
+    }
+}
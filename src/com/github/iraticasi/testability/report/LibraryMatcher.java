@@ -0,0 +1,217 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import com.github.iraticasi.testability.analyzer.SymbolTable;
+
+import java.util.*;
+
+
+/**
+ * Finds which libraries a class depends on, for many libraries at once
+ * <p>
+ * NOTES:
+ * There are two ways of matching a library name with a dependency:
+ * - SUBSTRING: the full name of the dependency contains the library name (as ClassInfo.hasDependency does).
+ *   All the names are compiled into an Aho-Corasick automaton, so each dependency is scanned once.
+ * - PACKAGE_PREFIX: the package of the dependency is the library package or a subpackage of it
+ *   (e.g. "java.sql" matches java.sql and java.sql.rowset but not java.sqlx). The names are compiled into
+ *   a trie of package segments.
+ * Each distinct dependency of a project is only matched once (see Session).
+ * */
+
+public class LibraryMatcher {
+
+    /**
+     * Way of matching a library name with a dependency
+     */
+    public enum Mode { SUBSTRING, PACKAGE_PREFIX }
+
+    private static final int ALPHABET = 128; //library names must be ASCII
+
+    private String[] libraries; //library names
+    private Mode mode;
+    //Aho-Corasick automaton (SUBSTRING)
+    private int[][] transitions; //node -> char -> node
+    private BitSet[] outputs; //node -> libraries that end at that node (including its suffixes)
+    //trie of package segments (PACKAGE_PREFIX)
+    private SegmentNode root;
+
+    /**
+     * Compiles a matcher for some libraries
+     * @param libraries library names
+     * @param mode way of matching a library name with a dependency
+     */
+    public LibraryMatcher(String[] libraries, Mode mode) {
+        this.libraries = libraries.clone();
+        this.mode = mode;
+        if (mode == Mode.SUBSTRING) {
+            buildAutomaton();
+        } else {
+            buildTrie();
+        }
+    }
+
+    private void buildAutomaton() {
+        //trie of the names
+        List<int[]> nodes = new ArrayList<>();
+        List<BitSet> nodeOutputs = new ArrayList<>();
+        nodes.add(newNode());
+        nodeOutputs.add(new BitSet());
+        for (int i = 0; i < libraries.length; i++) {
+            int node = 0;
+            for (char c : libraries[i].toCharArray()) {
+                if (c >= ALPHABET) throw new IllegalArgumentException("Library names must be ASCII: " + libraries[i]);
+                if (nodes.get(node)[c] < 0) {
+                    nodes.get(node)[c] = nodes.size();
+                    nodes.add(newNode());
+                    nodeOutputs.add(new BitSet());
+                }
+                node = nodes.get(node)[c];
+            }
+            nodeOutputs.get(node).set(i);
+        }
+        //failure links in BFS order, turning the trie into a complete automaton
+        int[] fail = new int[nodes.size()];
+        Deque<Integer> queue = new ArrayDeque<>();
+        int[] rootNode = nodes.get(0);
+        for (int c = 0; c < ALPHABET; c++) {
+            if (rootNode[c] < 0) {
+                rootNode[c] = 0;
+            } else {
+                fail[rootNode[c]] = 0;
+                queue.add(rootNode[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            nodeOutputs.get(node).or(nodeOutputs.get(fail[node]));
+            int[] next = nodes.get(node);
+            for (int c = 0; c < ALPHABET; c++) {
+                if (next[c] < 0) {
+                    next[c] = nodes.get(fail[node])[c];
+                } else {
+                    fail[next[c]] = nodes.get(fail[node])[c];
+                    queue.add(next[c]);
+                }
+            }
+        }
+        this.transitions = nodes.toArray(new int[nodes.size()][]);
+        this.outputs = nodeOutputs.toArray(new BitSet[nodeOutputs.size()]);
+    }
+
+    private static int[] newNode() {
+        int[] node = new int[ALPHABET];
+        Arrays.fill(node, -1);
+        return node;
+    }
+
+    private void buildTrie() {
+        this.root = new SegmentNode();
+        for (int i = 0; i < libraries.length; i++) {
+            SegmentNode node = root;
+            for (String segment : libraries[i].split("\\.")) {
+                if (segment.isEmpty()) continue;
+                node = node.children.computeIfAbsent(segment, k -> new SegmentNode());
+            }
+            if (node != root) node.libraries.set(i);
+        }
+    }
+
+    /**
+     * Find the libraries whose names are contained in a text
+     * @param text the text (full name of a dependency)
+     * @param matches set to add the indexes of the libraries found
+     */
+    public void matchSubstring(String text, BitSet matches) {
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            node = c < ALPHABET ? transitions[node][c] : 0; //no name contains other characters
+            if (!outputs[node].isEmpty()) matches.or(outputs[node]);
+        }
+    }
+
+    /**
+     * Find the libraries that are a package prefix of a package
+     * @param pkg name of the package
+     * @param matches set to add the indexes of the libraries found
+     */
+    public void matchPackage(String pkg, BitSet matches) {
+        SegmentNode node = root;
+        int start = 0;
+        while (node != null && start <= pkg.length()) {
+            int end = pkg.indexOf('.', start);
+            if (end < 0) end = pkg.length();
+            node = node.children.get(pkg.substring(start, end));
+            if (node != null) matches.or(node.libraries);
+            start = end + 1;
+        }
+    }
+
+    /**
+     *
+     * @return library names
+     */
+    public String[] getLibraries() {
+        return libraries.clone();
+    }
+
+    /**
+     * Creates a session to classify the classes of a project
+     * @param symbols interned names of the project
+     * @return the session
+     */
+    public Session newSession(SymbolTable symbols) {
+        return new Session(symbols);
+    }
+
+    /**
+     * Classifies the classes of a project, matching each distinct dependency only once.
+     * A session must be used from a single thread.
+     */
+    public class Session {
+
+        private SymbolTable symbols;
+        private BitSet[] memo = new BitSet[0]; //symbol id -> libraries matched by that dependency
+
+        private Session(SymbolTable symbols) {
+            this.symbols = symbols;
+        }
+
+        /**
+         * Find the libraries a class depends on
+         * @param classInfo the class (whose names are interned in the symbol table of the session)
+         * @return indexes of the libraries
+         */
+        public BitSet classify(ClassInfo classInfo) {
+            BitSet libraries = new BitSet();
+            for (int id : classInfo.getDependencyIds()) {
+                libraries.or(match(id));
+            }
+            return libraries;
+        }
+
+        private BitSet match(int id) {
+            if (id >= memo.length) memo = Arrays.copyOf(memo, Math.max(id + 1, 2 * memo.length));
+            if (memo[id] == null) {
+                BitSet matches = new BitSet();
+                if (mode == Mode.SUBSTRING) {
+                    matchSubstring(symbols.getName(id), matches);
+                } else {
+                    int pkg = symbols.getPackage(id);
+                    if (pkg >= 0) matchPackage(symbols.getName(pkg), matches);
+                }
+                memo[id] = matches;
+            }
+            return memo[id];
+        }
+    }
+
+    /**
+     * Node of the trie of package segments
+     */
+    private static class SegmentNode {
+        private Map<String, SegmentNode> children = new HashMap<>();
+        private BitSet libraries = new BitSet(); //libraries whose package ends at this node
+    }
+}
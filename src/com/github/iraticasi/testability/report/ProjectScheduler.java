@@ -0,0 +1,167 @@
+package com.github.iraticasi.testability.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+
+/**
+ * Runs a task over several projects concurrently on a bounded pool of workers
+ * <p>
+ * NOTES:
+ * Results are handed over in the same order as the projects were given, no matter in which order they finish,
+ * and at most maxInFlight projects are being analyzed or waiting to be handed over at the same time,
+ * so the memory used by the analysis of the projects stays bounded.
+ * A failure of a project is recorded in its result instead of stopping the run.
+ * */
+
+public class ProjectScheduler {
+
+    private int threads; //number of workers
+    private int maxInFlight; //maximum number of projects submitted and not handed over yet
+
+    /**
+     * Creates a scheduler
+     * @param threads number of workers
+     * @param maxInFlight maximum number of projects submitted and not handed over yet
+     */
+    public ProjectScheduler(int threads, int maxInFlight) {
+        this.threads = Math.max(1, threads);
+        this.maxInFlight = Math.max(this.threads, maxInFlight);
+    }
+
+    /**
+     * Runs a task for each project and hands over the results in order
+     * @param projects base folders of the projects
+     * @param task task to run for each project
+     * @param handler handler of the results
+     * @param <T> type of the result of the task
+     * @throws IOException if the handler fails
+     */
+    public <T> void run(List<File> projects, Function<File, T> task, ResultHandler<T> handler) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "project-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Deque<Future<ProjectResult<T>>> inFlight = new ArrayDeque<>();
+            Iterator<File> iterator = projects.iterator();
+            while (iterator.hasNext() || !inFlight.isEmpty()) {
+                //fill the window
+                while (iterator.hasNext() && inFlight.size() < maxInFlight) {
+                    File project = iterator.next();
+                    inFlight.add(executor.submit(() -> execute(project, task)));
+                }
+                //hand over the oldest one
+                handler.handle(await(inFlight.poll()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the task for a project, measuring its wall time and catching its failure
+     * (other errors than a stack overflow, e.g. out of memory, are not a failure of the project and propagate)
+     */
+    private static <T> ProjectResult<T> execute(File project, Function<File, T> task) {
+        long start = System.nanoTime();
+        try {
+            T value = task.apply(project);
+            return new ProjectResult<>(project, value, null, (System.nanoTime() - start) / 1000000);
+        } catch (RuntimeException | StackOverflowError e) { //JDT may overflow on deeply nested code
+            return new ProjectResult<>(project, null, e, (System.nanoTime() - start) / 1000000);
+        }
+    }
+
+    private static <T> ProjectResult<T> await(Future<ProjectResult<T>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a project", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Lists the projects of a folder in a deterministic order (by name)
+     * @param folder folder with the projects
+     * @return base folders of the projects
+     */
+    public static List<File> listProjects(File folder) {
+        List<File> projects = new ArrayList<>();
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) projects.add(file);
+            }
+        }
+        projects.sort(Comparator.comparing(File::getName));
+        return projects;
+    }
+
+    /**
+     * Handler of the results of the projects, called in order from the thread that runs the scheduler
+     * @param <T> type of the result of the task
+     */
+    public interface ResultHandler<T> {
+        void handle(ProjectResult<T> result) throws IOException;
+    }
+
+    /**
+     * Result of the task for a project
+     * @param <T> type of the result of the task
+     */
+    public static class ProjectResult<T> {
+
+        private File project;
+        private T value;
+        private Throwable failure;
+        private long millis;
+
+        private ProjectResult(File project, T value, Throwable failure, long millis) {
+            this.project = project;
+            this.value = value;
+            this.failure = failure;
+            this.millis = millis;
+        }
+
+        /**
+         *
+         * @return base folder of the project
+         */
+        public File getProject() {
+            return project;
+        }
+
+        /**
+         *
+         * @return result of the task (null if it failed)
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         *
+         * @return failure of the task (null if it did not fail)
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        /**
+         *
+         * @return wall time of the task in milliseconds
+         */
+        public long getMillis() {
+            return millis;
+        }
+    }
+}
@@ -0,0 +1,491 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.analyzer.AnalysisPolicy;
+import com.github.iraticasi.testability.analyzer.TestIndex;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.zip.CRC32;
+
+
+/**
+ * Runs the external and libraries reports of TestChecker over a folder of projects split into shards, one worker
+ * process per shard, and merges the partial results of the workers into the reports of a single run
+ * <p>
+ * NOTES:
+ * Every worker lists the projects of the folder and takes its own slice of them, so the workers only need to
+ * share the folder (and the options), not to talk to each other:
+ * - HASH: by the CRC32 of the name of the project, so a project stays in its shard when others are added.
+ * - SIZE: balanced by the bytes of the java files of each project (a pre-scan of the file sizes, without
+ *   parsing), the largest projects first, each one to the shard with fewer bytes so far.
+ * Each project is analyzed once for both reports (see TestChecker.checkProject) and its counters are appended
+ * to the partial file of the shard as soon as they are known. A partial file is a CSV with a "#shard" record
+ * (shard, number of shards, assignment, number of projects), a "#libraries" record, a record per project
+ * (name, time, failure, the counters of the external classes and then 4 counters per library) and a "#end"
+ * record, so a truncated file (a killed worker) is detected by the merge.
+ * The merge checks that all the shards are there, with the same number of shards, assignment and libraries, and
+ * writes the projects by name, as ProjectScheduler.listProjects orders them, so the reports are the same as
+ * TestChecker.externalReport and TestChecker.librariesReport (but for the times). Sampled runs are not supported:
+ * their estimates can not be merged exactly.
+ * */
+
+public class ShardRunner {
+
+    /**
+     * How the projects are assigned to the shards
+     */
+    public enum Assignment {
+        HASH, //by the hash of the name of the project
+        SIZE //balanced by the bytes of the java files of the projects
+    }
+
+    public static final String[] DEFAULT_LIBRARIES = {"java.io", "java.sql.", "java.net.", "javax"};
+
+    private File folder; //folder with all projects to check
+    private int numShards;
+    private Assignment assignment = Assignment.HASH;
+    private int threads = 1; //number of projects analyzed concurrently by each worker
+    private String[] libraries = DEFAULT_LIBRARIES; //libraries of the libraries report
+    private LibraryMatcher.Mode libraryMatching = LibraryMatcher.Mode.SUBSTRING;
+    private TestChecker.TestDetection testDetection = TestChecker.TestDetection.NAME;
+    private Set<TestIndex.Convention> testConventions = TestIndex.DEFAULT_CONVENTIONS;
+    private String heap = null; //maximum heap of each worker process launched (e.g. "2g"), null for the default
+    private List<File> policyFiles = Collections.emptyList(); //rules files of the policies (empty for the legacy rule)
+
+    /**
+     * Creates a shard runner for a given folder
+     * @param folder folder with projects to check
+     * @param numShards number of shards the projects are split into
+     */
+    public ShardRunner(File folder, int numShards) {
+        if (numShards < 1) throw new IllegalArgumentException("Invalid number of shards: " + numShards);
+        this.folder = folder;
+        this.numShards = numShards;
+    }
+
+    public void setAssignment(Assignment assignment) {
+        this.assignment = assignment;
+    }
+
+    /**
+     * Set the number of projects analyzed concurrently by each worker
+     * @param threads number of threads of each worker
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Set the libraries of the libraries report and how they are matched (see TestChecker.setLibraryMatching)
+     * @param libraries names of the libraries (empty for no libraries report)
+     * @param libraryMatching how a library name is matched with the dependencies of a class
+     */
+    public void setLibraries(String[] libraries, LibraryMatcher.Mode libraryMatching) {
+        this.libraries = libraries;
+        this.libraryMatching = libraryMatching;
+    }
+
+    public void setTestDetection(TestChecker.TestDetection testDetection) {
+        this.testDetection = testDetection;
+    }
+
+    public void setTestConventions(Set<TestIndex.Convention> testConventions) {
+        this.testConventions = testConventions;
+    }
+
+    /**
+     * Set the policies that decide which dependencies are directly "external" (see TestChecker.setPolicies)
+     * @param policyFiles rules files of the policies, read by each worker (empty for the legacy rule)
+     */
+    public void setPolicyFiles(List<File> policyFiles) {
+        this.policyFiles = policyFiles;
+    }
+
+    /**
+     * Set the maximum heap of the worker processes started by launch
+     * @param heap the heap, as in -Xmx (e.g. "2g"), null for the default of the JVM
+     */
+    public void setHeap(String heap) {
+        this.heap = heap;
+    }
+
+    /**
+     * Find the projects of a shard
+     * @param shard index of the shard (0 to number of shards - 1)
+     * @return base folders of its projects, by name
+     * @throws IOException if the sizes of the projects can not be computed
+     */
+    public List<File> assign(int shard) throws IOException {
+        List<File> projects = ProjectScheduler.listProjects(folder);
+        int[] shards = new int[projects.size()];
+        if (assignment == Assignment.HASH) {
+            for (int i = 0; i < projects.size(); i++) {
+                CRC32 crc = new CRC32();
+                crc.update(projects.get(i).getName().getBytes(StandardCharsets.UTF_8));
+                shards[i] = (int) (crc.getValue() % numShards);
+            }
+        } else {
+            long[] sizes = new long[projects.size()];
+            for (int i = 0; i < projects.size(); i++) sizes[i] = sourceBytes(projects.get(i));
+            List<Integer> bySize = new ArrayList<>();
+            for (int i = 0; i < projects.size(); i++) bySize.add(i);
+            bySize.sort((i, j) -> Long.compare(sizes[j], sizes[i])); //stable: ties keep the order by name
+            long[] loads = new long[numShards];
+            for (int i : bySize) {
+                int lightest = 0;
+                for (int s = 1; s < numShards; s++) {
+                    if (loads[s] < loads[lightest]) lightest = s;
+                }
+                shards[i] = lightest;
+                loads[lightest] += sizes[i];
+            }
+        }
+        List<File> assigned = new ArrayList<>();
+        for (int i = 0; i < projects.size(); i++) {
+            if (shards[i] == shard) assigned.add(projects.get(i));
+        }
+        return assigned;
+    }
+
+    /**
+     * Compute the bytes of the java files of a project (version control directories are skipped)
+     * @param project base folder of the project
+     * @return the sum of their sizes
+     * @throws IOException if the project can not be walked
+     */
+    public static long sourceBytes(File project) throws IOException {
+        long[] bytes = {0};
+        Files.walkFileTree(project.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+                return name.equals(".git") ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.getFileName().toString().endsWith(".java")) bytes[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE; //unreadable entries are ignored
+            }
+        });
+        return bytes[0];
+    }
+
+    /**
+     * Analyze the projects of a shard and write their counters to a partial file
+     * @param shard index of the shard
+     * @param partial the partial file
+     * @throws IOException if the projects can not be listed or the file can not be written
+     */
+    public void runWorker(int shard, File partial) throws IOException {
+        if (shard < 0 || shard >= numShards) throw new IllegalArgumentException("Invalid shard: " + shard + " of " + numShards);
+        List<File> projects = assign(shard);
+        LibraryMatcher matcher = libraries.length == 0 ? null : new LibraryMatcher(libraries, libraryMatching);
+        List<AnalysisPolicy> policies = new ArrayList<>();
+        for (File policyFile : policyFiles) policies.add(AnalysisPolicy.read(policyFile));
+        if (policies.isEmpty()) policies.add(AnalysisPolicy.legacy());
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(partial))) {
+            csvWriter.writeNext(new String[]{"#shard", String.valueOf(shard), String.valueOf(numShards), assignment.name(),
+                    String.valueOf(projects.size())});
+            List<String> librariesRecord = new ArrayList<>();
+            librariesRecord.add("#libraries");
+            librariesRecord.addAll(Arrays.asList(libraries));
+            csvWriter.writeNext(librariesRecord.toArray(new String[0]));
+            csvWriter.flush();
+            new ProjectScheduler(threads, 2 * threads).run(projects,
+                    project -> TestChecker.checkProject(project, testConventions, testDetection, matcher, policies), result -> {
+                System.out.println(result.getProject() + " (" + result.getMillis() + " ms)");
+                List<String> record = new ArrayList<>(Arrays.asList(result.getProject().getName(),
+                        String.valueOf(result.getMillis()), result.getFailure() == null ? "" : result.getFailure().toString()));
+                if (result.getFailure() == null) {
+                    for (ContingencyTable table : result.getValue()) {
+                        record.addAll(Arrays.asList(table.getRecord()).subList(0, 4));
+                    }
+                }
+                csvWriter.writeNext(record.toArray(new String[0]));
+                csvWriter.flush();
+            });
+            csvWriter.writeNext(new String[]{"#end", String.valueOf(projects.size())});
+        }
+    }
+
+    /**
+     * Counters of a project read from a partial file
+     */
+    private static class ProjectCounts {
+        private String name;
+        private String millis;
+        private String failure;
+        private ContingencyTable[] tables; //external classes, then each library (null if failed)
+    }
+
+    /**
+     * Merge the partial files of all the shards into the reports of a single run
+     * @param partials the partial files, one per shard, in any order
+     * @param externalFile the name of the file to write the external report (see TestChecker.externalReport)
+     * @param librariesFile the name of the file to write the libraries report (see TestChecker.librariesReport),
+     *                      null to not write it
+     * @throws IOException if a partial file is missing, truncated or inconsistent with the others
+     */
+    public static void merge(List<File> partials, String externalFile, String librariesFile) throws IOException {
+        int numShards = -1;
+        String assignment = null;
+        String[] libraries = null;
+        BitSet seen = new BitSet();
+        Map<String, ProjectCounts> projects = new TreeMap<>(); //by name, as ProjectScheduler.listProjects
+        for (File partial : partials) {
+            try (CSVReader csvReader = new CSVReader(new FileReader(partial))) {
+                String[] shardRecord = csvReader.readNext();
+                String[] librariesRecord = csvReader.readNext();
+                if (shardRecord == null || !shardRecord[0].equals("#shard") || librariesRecord == null
+                        || !librariesRecord[0].equals("#libraries")) {
+                    throw new IOException(partial + " is not a partial file");
+                }
+                int shard = Integer.parseInt(shardRecord[1]);
+                if (numShards < 0) numShards = Integer.parseInt(shardRecord[2]);
+                if (assignment == null) assignment = shardRecord[3];
+                String[] shardLibraries = Arrays.copyOfRange(librariesRecord, 1, librariesRecord.length);
+                if (libraries == null) libraries = shardLibraries;
+                if (Integer.parseInt(shardRecord[2]) != numShards || !shardRecord[3].equals(assignment)
+                        || !Arrays.equals(libraries, shardLibraries)) {
+                    throw new IOException(partial + " was written with other options than " + partials.get(0));
+                }
+                if (shard < 0 || shard >= numShards) throw new IOException("Invalid shard " + shard + " of " + numShards + " in " + partial);
+                if (seen.get(shard)) throw new IOException("Shard " + shard + " is repeated in " + partial);
+                seen.set(shard);
+                int numProjects = 0;
+                boolean complete = false;
+                for (String[] record = csvReader.readNext(); record != null; record = csvReader.readNext()) {
+                    if (record[0].equals("#end")) {
+                        complete = Integer.parseInt(record[1]) == numProjects;
+                        break;
+                    }
+                    ProjectCounts counts = new ProjectCounts();
+                    counts.name = record[0];
+                    counts.millis = record[1];
+                    counts.failure = record[2];
+                    if (counts.failure.isEmpty()) {
+                        counts.tables = new ContingencyTable[(record.length - 3) / 4];
+                        for (int t = 0; t < counts.tables.length; t++) {
+                            counts.tables[t] = new ContingencyTable(Long.parseLong(record[3 + 4 * t]), Long.parseLong(record[4 + 4 * t]),
+                                    Long.parseLong(record[5 + 4 * t]), Long.parseLong(record[6 + 4 * t]));
+                        }
+                    }
+                    if (projects.put(counts.name, counts) != null) throw new IOException("Project " + counts.name + " is repeated in " + partial);
+                    numProjects++;
+                }
+                if (!complete) throw new IOException(partial + " is truncated (its worker did not finish)");
+                if (numProjects != Integer.parseInt(shardRecord[4])) {
+                    throw new IOException(partial + " is incomplete (" + numProjects + " of " + shardRecord[4] + " projects)");
+                }
+            }
+        }
+        if (numShards < 0 || seen.cardinality() != numShards) {
+            throw new IOException("Missing shards: " + seen.cardinality() + " of " + Math.max(numShards, 0) + " partial files");
+        }
+        writeExternalReport(projects.values(), externalFile);
+        if (librariesFile != null && libraries.length > 0) writeLibrariesReport(projects.values(), libraries, librariesFile);
+    }
+
+    /**
+     * Write the external report (and its summary) of the merged projects, as TestChecker.externalReport
+     */
+    private static void writeExternalReport(Collection<ProjectCounts> projects, String file) throws IOException {
+        CorrelationSummary summary = new CorrelationSummary();
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            List<String> headerRecord = new ArrayList<>(Arrays.asList(TestChecker.EXTERNAL_COLUMNS));
+            headerRecord.addAll(Arrays.asList(TestChecker.RUN_COLUMNS));
+            csvWriter.writeNext(headerRecord.toArray(new String[0]));
+            for (ProjectCounts project : projects) {
+                List<String> record = new ArrayList<>();
+                record.add(project.name);
+                if (project.tables != null) {
+                    record.addAll(Arrays.asList(project.tables[0].getRecord()).subList(0, 4));
+                    summary.get(project.name).merge(project.tables[0]);
+                } else {
+                    record.addAll(Collections.nCopies(4, ""));
+                }
+                record.add(project.millis);
+                record.add(project.failure);
+                csvWriter.writeNext(record.toArray(new String[0]));
+            }
+        }
+        summary.write(file + ".summary.csv", "Project name", "All projects");
+        ContingencyTable pooled = summary.getPooled();
+        System.out.println("All projects " + pooled + ": odds ratio " + pooled.getOddsRatio() + ", Fisher p-value " + pooled.getFisherPValue());
+    }
+
+    /**
+     * Write the libraries report (and its summary) of the merged projects, as TestChecker.librariesReport
+     */
+    private static void writeLibrariesReport(Collection<ProjectCounts> projects, String[] libraries, String file) throws IOException {
+        CorrelationSummary summary = new CorrelationSummary();
+        for (String library : libraries) summary.get(library);
+        for (ProjectCounts project : projects) {
+            if (project.tables == null) continue;
+            for (int i = 0; i < libraries.length; i++) summary.get(libraries[i]).merge(project.tables[1 + i]);
+        }
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            csvWriter.writeNext(TestChecker.LIBRARIES_COLUMNS);
+            for (Map.Entry<String, ContingencyTable> entry : summary.getTables().entrySet()) {
+                List<String> record = new ArrayList<>();
+                record.add(entry.getKey());
+                record.addAll(Arrays.asList(entry.getValue().getRecord()).subList(0, 4));
+                csvWriter.writeNext(record.toArray(new String[0]));
+            }
+        }
+        summary.write(file + ".summary.csv", "Library name", null);
+    }
+
+    /**
+     * Run every shard in its own worker process of this machine, wait for them and merge their partial files.
+     * The output of each worker goes to its partial file + ".log"
+     * @param workDir folder for the partial files and the reports (external_report.csv and libraries_report.csv)
+     * @throws IOException if a worker fails or the partial files can not be merged
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public void launch(File workDir) throws IOException, InterruptedException {
+        workDir.mkdirs();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> processes = new ArrayList<>();
+        List<File> partials = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < numShards; shard++) {
+                File partial = new File(workDir, "shard-" + shard + ".csv");
+                partials.add(partial);
+                List<String> command = new ArrayList<>(Arrays.asList(java, "-cp", System.getProperty("java.class.path")));
+                if (heap != null) command.add("-Xmx" + heap);
+                command.add(ShardRunner.class.getName());
+                command.add("worker");
+                command.addAll(getOptions());
+                command.addAll(Arrays.asList(folder.getAbsolutePath(), String.valueOf(shard), String.valueOf(numShards), partial.getAbsolutePath()));
+                processes.add(new ProcessBuilder(command).redirectErrorStream(true)
+                        .redirectOutput(new File(partial.getPath() + ".log")).start());
+            }
+            List<String> failed = new ArrayList<>();
+            for (int shard = 0; shard < numShards; shard++) {
+                int exitCode = processes.get(shard).waitFor();
+                System.out.println("Shard " + shard + " finished (exit code " + exitCode + ")");
+                if (exitCode != 0) failed.add(partials.get(shard) + ".log");
+            }
+            if (!failed.isEmpty()) throw new IOException("Workers failed, see " + failed);
+        } finally {
+            for (Process process : processes) process.destroy();
+        }
+        merge(partials, new File(workDir, "external_report.csv").getPath(),
+                new File(workDir, "libraries_report.csv").getPath());
+    }
+
+    /**
+     * @return the options of the workers, as parsed by parseOptions
+     */
+    private List<String> getOptions() {
+        return Arrays.asList("-assignment", assignment.name().toLowerCase(Locale.ROOT), "-threads", String.valueOf(threads),
+                "-libraries", String.join(",", libraries), "-matching", libraryMatching.name().toLowerCase(Locale.ROOT),
+                "-detection", testDetection.name().toLowerCase(Locale.ROOT), "-conventions", getConventionNames(),
+                "-policies", getPolicyPaths());
+    }
+
+    /**
+     * @return the absolute paths of the rules files, separated as parsed by parseOptions
+     */
+    private String getPolicyPaths() {
+        List<String> paths = new ArrayList<>();
+        for (File policyFile : policyFiles) paths.add(policyFile.getAbsolutePath());
+        return String.join(File.pathSeparator, paths);
+    }
+
+    /**
+     * @return the test conventions, comma separated as parsed by parseOptions
+     */
+    private String getConventionNames() {
+        List<String> names = new ArrayList<>();
+        for (TestIndex.Convention convention : testConventions) names.add(convention.name().toLowerCase(Locale.ROOT));
+        return String.join(",", names);
+    }
+
+    /**
+     * Set the options given in the command line
+     * @param args arguments of the command line
+     * @param from index of the first option
+     * @return index of the first argument after the options
+     */
+    private int parseOptions(String[] args, int from) {
+        int i = from;
+        for (; i + 1 < args.length && args[i].startsWith("-"); i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-assignment": assignment = Assignment.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                case "-threads": threads = Integer.parseInt(value); break;
+                case "-libraries": libraries = value.isEmpty() ? new String[0] : value.split(","); break;
+                case "-matching": libraryMatching = LibraryMatcher.Mode.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                case "-detection": testDetection = TestChecker.TestDetection.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                case "-conventions": {
+                    testConventions = EnumSet.noneOf(TestIndex.Convention.class);
+                    for (String name : value.split(",")) {
+                        if (!name.isEmpty()) testConventions.add(TestIndex.Convention.valueOf(name.toUpperCase(Locale.ROOT)));
+                    }
+                    break;
+                }
+                case "-policies":
+                case "--policies": {
+                    policyFiles = new ArrayList<>();
+                    for (String path : value.split(File.pathSeparator)) {
+                        if (!path.isEmpty()) policyFiles.add(new File(path));
+                    }
+                    break;
+                }
+                case "-heap": heap = value; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Commands:
+     *  worker [options] <folder> <shard> <number of shards> <partial file>
+     *  merge <external report> <libraries report> <partial files...>
+     *  launch [options] <folder> <number of shards> <work folder>
+     * Options: -assignment hash|size, -threads <n>, -libraries <comma separated names>, -matching substring|package_prefix,
+     * -detection name|coverage, -conventions <comma separated test conventions, e.g. test_suffix,tests_suffix>,
+     * -policies (or --policies) <rules files, separated as in a class path, see AnalysisPolicy; the first one decides
+     * the external classes> and (launch) -heap <max heap of each worker>
+     * @param args command and its arguments
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String command = args.length > 0 ? args[0] : "";
+        if (command.equals("merge") && args.length >= 4) {
+            List<File> partials = new ArrayList<>();
+            for (int i = 3; i < args.length; i++) partials.add(new File(args[i]));
+            merge(partials, args[1], args[2]);
+            return;
+        }
+        ShardRunner runner = new ShardRunner(new File("."), 1);
+        int i = command.isEmpty() ? 0 : runner.parseOptions(args, 1);
+        if (command.equals("worker") && args.length - i == 4) {
+            runner.folder = new File(args[i]);
+            runner.numShards = Integer.parseInt(args[i + 2]);
+            runner.runWorker(Integer.parseInt(args[i + 1]), new File(args[i + 3]));
+        } else if (command.equals("launch") && args.length - i == 3) {
+            runner.folder = new File(args[i]);
+            runner.numShards = Integer.parseInt(args[i + 1]);
+            runner.launch(new File(args[i + 2]));
+        } else {
+            System.err.println("Usage: ShardRunner worker [options] <folder> <shard> <shards> <partial file>\n"
+                    + "       ShardRunner merge <external report> <libraries report> <partial files...>\n"
+                    + "       ShardRunner launch [options] <folder> <shards> <work folder>");
+            System.exit(2);
+        }
+    }
+}
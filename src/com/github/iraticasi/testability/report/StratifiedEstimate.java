@@ -0,0 +1,117 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.analyzer.SourceSample;
+
+import java.util.*;
+
+
+/**
+ * Estimates of the number of classes of each category (e.g. external with test) in a project, from the classes
+ * of a stratified sample of its source files (see SourceSample)
+ * <p>
+ * NOTES:
+ * The sampling unit is the source file, and its value is the number of classes of the category it has, so the
+ * sampled files without classes also count (as zeros). The estimate of a category is sum(N_h / n_h * x_h) over
+ * the strata, where N_h is the number of files of the stratum, n_h the sampled ones and x_h their classes of
+ * the category. Its variance is sum(N_h^2 * (1 - n_h / N_h) * s_h^2 / n_h), where s_h^2 is the sample variance
+ * of the stratum; a stratum with only one sampled file (out of several) takes the variance of all the sampled
+ * files. The confidence interval is the normal one (95%), and it is never below the classes actually found.
+ * A complete sample gives the exact counts with a interval of 0.
+ * */
+
+public class StratifiedEstimate {
+
+    private static final double Z_95 = 1.959964;
+
+    private SourceSample sample;
+    private int numCategories;
+    private Map<String, int[]> fileCounts = new HashMap<>(); //sampled file -> classes of each category
+
+    /**
+     * Creates a empty estimate
+     * @param sample sample of the source files of the project
+     * @param numCategories number of categories of the classes
+     */
+    public StratifiedEstimate(SourceSample sample, int numCategories) {
+        this.sample = sample;
+        this.numCategories = numCategories;
+    }
+
+    /**
+     * Count a class of the sample
+     * @param sourceFilePath path of its source file
+     * @param category its category
+     */
+    public synchronized void add(String sourceFilePath, int category) {
+        fileCounts.computeIfAbsent(sourceFilePath, k -> new int[numCategories])[category]++;
+    }
+
+    /**
+     * @param category a category
+     * @return number of classes of the category found in the sample
+     */
+    public synchronized long getSampled(int category) {
+        long sampled = 0;
+        for (int[] counts : fileCounts.values()) sampled += counts[category];
+        return sampled;
+    }
+
+    /**
+     * @param category a category
+     * @return estimated number of classes of the category in the project
+     */
+    public double getEstimate(int category) {
+        return compute(category)[0];
+    }
+
+    /**
+     * @param category a category
+     * @return half width of the 95% confidence interval of the estimate
+     */
+    public double getHalfWidth(int category) {
+        return Z_95 * Math.sqrt(compute(category)[1]);
+    }
+
+    /**
+     * @param category a category
+     * @return 95% confidence interval of the estimate: {lower, upper}
+     */
+    public double[] getInterval(int category) {
+        double estimate = getEstimate(category), halfWidth = getHalfWidth(category);
+        return new double[]{Math.max(getSampled(category), estimate - halfWidth), estimate + halfWidth};
+    }
+
+    /**
+     * Estimate the number of classes of a category
+     * @param category the category
+     * @return {estimate, variance of the estimate}
+     */
+    private synchronized double[] compute(int category) {
+        //sums of the values (and their squares) of the sampled files of each stratum
+        Map<String, double[]> sums = new HashMap<>();
+        double totalSum = 0, totalSquares = 0;
+        for (Map.Entry<String, int[]> file : fileCounts.entrySet()) {
+            int value = file.getValue()[category];
+            double[] stratumSums = sums.computeIfAbsent(SourceSample.stratumOf(file.getKey()), k -> new double[2]);
+            stratumSums[0] += value;
+            stratumSums[1] += (double) value * value;
+            totalSum += value;
+            totalSquares += (double) value * value;
+        }
+        int totalSampled = sample.getNumSampled();
+        double pooledVariance = totalSampled < 2 ? 0 :
+                (totalSquares - totalSum * totalSum / totalSampled) / (totalSampled - 1);
+        double estimate = 0, variance = 0;
+        for (String stratum : sample.getStrata()) {
+            int size = sample.getStratumSize(stratum), sampled = sample.getStratumSampled(stratum);
+            if (sampled == 0) continue;
+            double[] stratumSums = sums.getOrDefault(stratum, new double[2]);
+            estimate += size * stratumSums[0] / sampled;
+            if (sampled == size) continue; //no uncertainty left in the stratum
+            double stratumVariance = sampled < 2 ? pooledVariance :
+                    (stratumSums[1] - stratumSums[0] * stratumSums[0] / sampled) / (sampled - 1);
+            variance += (double) size * size * (1 - sampled / (double) size) * Math.max(0, stratumVariance) / sampled;
+        }
+        return new double[]{estimate, variance};
+    }
+}
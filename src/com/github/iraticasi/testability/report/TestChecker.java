@@ -1,15 +1,27 @@
 package com.github.iraticasi.testability.report;
 
+import com.github.iraticasi.testability.analyzer.AnalysisPolicy;
 import com.github.iraticasi.testability.analyzer.Analyzer;
 import com.github.iraticasi.testability.analyzer.ClassInfo;
+import com.github.iraticasi.testability.analyzer.ClassInfoHandler;
+import com.github.iraticasi.testability.analyzer.CompactGraph;
+import com.github.iraticasi.testability.analyzer.CoverageIndex;
+import com.github.iraticasi.testability.analyzer.SourceSample;
+import com.github.iraticasi.testability.analyzer.SourceScanner;
+import com.github.iraticasi.testability.analyzer.TestIndex;
+import com.github.iraticasi.testability.metrics.Metrics;
+import com.github.iraticasi.testability.metrics.ProjectMetrics;
 
 import com.opencsv.CSVWriter;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 /**
  * Class to report statistics of the existence of dedicated tests of classes
@@ -20,12 +32,35 @@ import java.util.*;
  * - a class that is neither from the same package nor from java.util
  * - a class that has external dependencies itself (recursive)
  * Therefore, we consider A class to be "external" if it has "extena dependencies"
- * A class has a dedicated test if there exits a class <classname>Test.java or <classname>Tests.java
+ * A class has a dedicated test if there exits a class <classname>Test.java or <classname>Tests.java in its package
+ * (or following other naming conventions, see TestIndex), or, detecting the tests by coverage, if the JaCoCo
+ * execution data of the project shows that some line of it was executed (see CoverageIndex)
  * */
 
 public class TestChecker {
 
+    /**
+     * How the tests of a class are detected
+     */
+    public enum TestDetection {
+        NAME, //a dedicated test by name (see TestIndex)
+        COVERAGE //the class is covered by the tests (see CoverageIndex)
+    }
+
+    static final String[] EXTERNAL_COLUMNS = {"Project name", "# external classes with tests", "# of external classes without test", "# internal classes with tests", "# of internal classes without test"};
+    static final String[] RUN_COLUMNS = {"Time (ms)", "Failure"};
+    static final String[] LIBRARIES_COLUMNS = {"Library name", "library_dep WITH test", "library_dep NO test", "NO library_dep WITH test", "NO Library_dep NO test"};
+
     private File folder; //folder with all projects to check
+    private int threads = 1; //number of projects analyzed concurrently
+    private int maxInFlight = 2; //maximum number of projects analyzed or waiting to be written at the same time
+    private LibraryMatcher.Mode libraryMatching = LibraryMatcher.Mode.SUBSTRING; //how libraries are matched
+    private Set<TestIndex.Convention> testConventions = TestIndex.DEFAULT_CONVENTIONS; //naming conventions of the dedicated tests
+    private double sampleFraction = 1; //fraction of the source files of each package analyzed in the external report
+    private long sampleBudget = 0; //time budget of each project in the external report, in milliseconds (0 for none)
+    private long sampleSeed = 0;
+    private TestDetection testDetection = TestDetection.NAME; //how the tests of a class are detected
+    private List<AnalysisPolicy> policies = Collections.singletonList(AnalysisPolicy.legacy()); //the first one decides "external"
 
     /**
      * Create a test checker for a given folder
@@ -36,11 +71,100 @@ public class TestChecker {
 
     }
 
+    /**
+     * Set the number of projects analyzed concurrently
+     * @param threads number of workers (1 analyzes the projects one at a time)
+     * @param maxInFlight maximum number of projects analyzed or waiting to be written at the same time
+     */
+    public void setParallelism(int threads, int maxInFlight) {
+        this.threads = threads;
+        this.maxInFlight = maxInFlight;
+    }
+
+
+    /**
+     * Set how a library name is matched with the dependencies of a class in the libraries report
+     * @param libraryMatching SUBSTRING (the dependency contains the name) or PACKAGE_PREFIX (the dependency
+     *                        is in that package or a subpackage)
+     */
+    public void setLibraryMatching(LibraryMatcher.Mode libraryMatching) {
+        this.libraryMatching = libraryMatching;
+    }
+
+    /**
+     * Set the naming conventions of the dedicated tests
+     * @param testConventions the conventions (e.g. TEST_SUFFIX and IT_SUFFIX)
+     */
+    public void setTestConventions(Set<TestIndex.Convention> testConventions) {
+        this.testConventions = testConventions;
+    }
+
+    /**
+     * Set how the tests of a class are detected in the external report
+     * @param testDetection NAME (a dedicated test by its name) or COVERAGE (JaCoCo execution data of the project)
+     */
+    public void setTestDetection(TestDetection testDetection) {
+        this.testDetection = testDetection;
+    }
+
+    /**
+     * Set the policies that decide which dependencies are directly "external" (see AnalysisPolicy)
+     * @param policies the policies (the first one decides the "external" classes of the reports)
+     */
+    public void setPolicies(List<AnalysisPolicy> policies) {
+        this.policies = policies;
+    }
+
+    /**
+     * Make the external report approximate: only a stratified random sample of the source files of each project
+     * is analyzed (see Analyzer.setSampling), and the report has the estimated counts with their 95% confidence
+     * intervals (see StratifiedEstimate)
+     * @param fraction fraction of the source files of each package (1 analyzes all the files)
+     * @param budgetMillis time to grow the sample of each project in, in milliseconds (0 for a fixed fraction)
+     * @param seed seed of the samples
+     */
+    public void setSampling(double fraction, long budgetMillis, long seed) {
+        this.sampleFraction = fraction;
+        this.sampleBudget = budgetMillis;
+        this.sampleSeed = seed;
+    }
+
+    /**
+     * Creates a analyzer for a project, with the naming conventions of the dedicated tests
+     * @param project base folder of the project
+     * @param testConventions naming conventions of the dedicated tests
+     * @param policies policies that decide which dependencies are directly "external"
+     * @return the analyzer
+     */
+    private static Analyzer newAnalyzer(File project, Set<TestIndex.Convention> testConventions, List<AnalysisPolicy> policies) {
+        Analyzer analyzer = new Analyzer(project);
+        SourceScanner scanner = new SourceScanner();
+        scanner.setTestConventions(testConventions);
+        analyzer.setScanner(scanner);
+        analyzer.setPolicies(policies);
+        return analyzer;
+    }
+
+    /**
+     * Report the classes of a project with several dedicated tests
+     * @param project base folder of the project
+     * @param testIndex dedicated tests of the project
+     */
+    private static void printAmbiguousTests(File project, TestIndex testIndex) {
+        if (testIndex.getNumAmbiguous() == 0) return;
+        StringBuilder message = new StringBuilder(project + ": " + testIndex.getNumAmbiguous() + " classes with several dedicated tests");
+        for (Map.Entry<String, List<String>> entry : testIndex.getAmbiguous().entrySet()) {
+            message.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        System.err.println(message);
+    }
 
     /**
      * Creates a CSV report for external dependencies.
      * <p>
-     * For each project, statistics of the relation between classes with external dependencies and classes with dedicated test
+     * For each project, statistics of the relation between classes with external dependencies and classes with dedicated test.
+     * Unless the projects are sampled, the odds ratio, chi-square and Fisher tests of each project and of all of them
+     * are written to <file>.summary.csv (see CorrelationSummary)
      * @param file the name of the file to write the CSV report
      * @throws IOException
      */
@@ -49,20 +173,88 @@ public class TestChecker {
         Writer writer = new FileWriter(file);
         CSVWriter csvWriter = new CSVWriter(writer);
         //write header
-        String[] headerRecord = {"Project name", "# external classes with tests", "# of external classes without test", "# internal classes with tests", "# of internal classes without test",};
-        csvWriter.writeNext(headerRecord);
-        //write record for each project
-        if (this.folder.exists()) {
-            for (final File project : this.folder.listFiles()) {
-                if (project.isDirectory()) {
-                //for each project
-                    System.out.println(project);
-                    csvWriter.writeNext(checkExternal(project));
-                }
-            }
+        boolean sampled = sampleFraction < 1 || sampleBudget > 0;
+        List<String> headerRecord = new ArrayList<>(Arrays.asList(EXTERNAL_COLUMNS));
+        if (sampled) {
+            headerRecord.addAll(Arrays.asList("95% CI external with tests (+-)", "95% CI external without test (+-)", "95% CI internal with tests (+-)", "95% CI internal without test (+-)", "Sampled files", "Files"));
         }
+        headerRecord.addAll(Arrays.asList(RUN_COLUMNS));
+        int columns = headerRecord.size();
+        csvWriter.writeNext(headerRecord.toArray(new String[0]));
+        CorrelationSummary summary = new CorrelationSummary();
+        //write record for each project, in order
+        new ProjectScheduler(threads, maxInFlight).run(ProjectScheduler.listProjects(folder), project -> sampled ?
+                checkExternal(project, testConventions, testDetection, sampleFraction, sampleBudget, sampleSeed, policies) :
+                checkExternal(project, testConventions, testDetection, policies), result -> {
+            System.out.println(result.getProject());
+            printMetrics(result.getProject());
+            String[] record = Arrays.copyOf(result.getFailure() == null ?
+                    result.getValue() : new String[]{result.getProject().getName()}, columns);
+            Arrays.setAll(record, i -> record[i] == null ? "" : record[i]);
+            record[columns - 2] = String.valueOf(result.getMillis());
+            record[columns - 1] = result.getFailure() == null ? "" : result.getFailure().toString();
+            csvWriter.writeNext(record);
+            csvWriter.flush();
+            if (result.getFailure() == null && !sampled) {
+                summary.get(record[0]).merge(new ContingencyTable(Long.parseLong(record[1]), Long.parseLong(record[2]),
+                        Long.parseLong(record[3]), Long.parseLong(record[4])));
+            }
+        });
         //close
         csvWriter.close();
+        if (!sampled) {
+            summary.write(file + ".summary.csv", "Project name", "All projects");
+            ContingencyTable pooled = summary.getPooled();
+            System.out.println("All projects " + pooled + ": odds ratio " + pooled.getOddsRatio() + ", Fisher p-value " + pooled.getFisherPValue());
+        }
+        writeMetrics(file);
+    }
+
+    /**
+     * Creates a columnar binary report (see ColumnarWriter) with all the classes of all projects, their
+     * "external" flag, whether they have a dedicated test and their dependencies.
+     * The CSV reports can be generated from it with ColumnarReader.
+     * @param file the name of the file to write the report
+     * @throws IOException
+     */
+    public void columnarReport(String file) throws IOException {
+        ColumnarWriter columnarWriter = new ColumnarWriter();
+        new ProjectScheduler(threads, maxInFlight).run(ProjectScheduler.listProjects(folder), project -> {
+            Analyzer analyzer = newAnalyzer(project, testConventions, policies);
+            List<ClassInfo> classInfos = analyzer.analyze();
+            return new AnalyzedProject(classInfos, analyzer.getScan().getTestIndex());
+        }, result -> {
+            System.out.println(result.getProject() + " (" + result.getMillis() + " ms)");
+            printMetrics(result.getProject());
+            if (result.getFailure() != null) {
+                System.err.println(result.getProject() + " failed: " + result.getFailure());
+            } else {
+                columnarWriter.addProject(result.getProject().getName(), result.getValue().classes, result.getValue().tests);
+            }
+        });
+        columnarWriter.write(new File(file));
+        writeMetrics(file);
+    }
+
+    /**
+     * Print the summary of the metrics of a project, if metrics are enabled
+     * @param project base folder of the project
+     */
+    private static void printMetrics(File project) {
+        ProjectMetrics metrics = Metrics.isEnabled() ? Metrics.getProject(project.toString()) : null;
+        if (metrics != null) System.out.println(metrics.summary());
+    }
+
+    /**
+     * Write the metrics of all projects next to a report (<file>.metrics.json and <file>.metrics.csv),
+     * if metrics are enabled
+     * @param file the name of the report
+     * @throws IOException
+     */
+    private static void writeMetrics(String file) throws IOException {
+        if (!Metrics.isEnabled()) return;
+        Metrics.writeJSON(new File(file + ".metrics.json"));
+        Metrics.writeCSV(new File(file + ".metrics.csv"));
     }
 
     /**
@@ -76,34 +268,296 @@ public class TestChecker {
      *      <# internal classes withOUT test>}
      */
     public static String[] checkExternal(File project){
-        //analyze
-        List<ClassInfo> classInfos = new Analyzer(project).analyze();
-        Set<String> tests = findAllJavaTest(project);
-        //compute statistics
-        int extNoTest=0, extWithTest=0, intNoTest=0, intWithTest=0;
-        for (ClassInfo cr : classInfos){
-            if (cr.hasExternalDependencies()){
-                if (tests.contains(cr.getName() + "Test.java")) extWithTest++;
-                else extNoTest++;
-            }else{
-                if (tests.contains(cr.getName() + "Test.java")) intWithTest++;
-                else intNoTest++;
+        return checkExternal(project, TestIndex.DEFAULT_CONVENTIONS);
+    }
 
-            }
-        }
+    /**
+     * Compute statistics of the relation between classes with external dependencies and classes with dedicated test
+     * @param project base folder of the projects
+     * @param testConventions naming conventions of the dedicated tests
+     * @return String array with the same statistics as checkExternal(project)
+     */
+    public static String[] checkExternal(File project, Set<TestIndex.Convention> testConventions){
+        return checkExternal(project, testConventions, TestDetection.NAME);
+    }
+
+    /**
+     * Compute statistics of the relation between classes with external dependencies and classes with tests
+     * @param project base folder of the projects
+     * @param testConventions naming conventions of the dedicated tests
+     * @param testDetection how the tests of a class are detected
+     * @return String array with the same statistics as checkExternal(project)
+     */
+    public static String[] checkExternal(File project, Set<TestIndex.Convention> testConventions, TestDetection testDetection){
+        return checkExternal(project, testConventions, testDetection, Collections.singletonList(AnalysisPolicy.legacy()));
+    }
+
+    /**
+     * Compute statistics of the relation between classes with external dependencies and classes with tests
+     * @param project base folder of the projects
+     * @param testConventions naming conventions of the dedicated tests
+     * @param testDetection how the tests of a class are detected
+     * @param policies policies that decide which dependencies are directly "external" (the first one is counted)
+     * @return String array with the same statistics as checkExternal(project)
+     */
+    public static String[] checkExternal(File project, Set<TestIndex.Convention> testConventions, TestDetection testDetection,
+                                         List<AnalysisPolicy> policies){
+        ContingencyTable counts = checkProject(project, testConventions, testDetection, null, policies)[0];
         //return string array
         return new String[]{
                 project.getName(),
-                String.valueOf(extWithTest),
-                String.valueOf(extNoTest),
-                String.valueOf(intWithTest),
-                String.valueOf(intNoTest)};
+                String.valueOf(counts.getA()),
+                String.valueOf(counts.getB()),
+                String.valueOf(counts.getC()),
+                String.valueOf(counts.getD())};
     }
 
+    /**
+     * Compute the statistics of checkExternal and of the libraries report of a project with a single analysis
+     * @param project base folder of the projects
+     * @param testConventions naming conventions of the dedicated tests
+     * @param testDetection how the tests of a class are detected (for the external statistics)
+     * @param matcher libraries to count (null for none)
+     * @return the table of the external classes (extWithTest, extNoTest, intWithTest, intNoTest) followed by
+     *      the table of each library (with dedicated tests by name, as librariesReport)
+     */
+    public static ContingencyTable[] checkProject(File project, Set<TestIndex.Convention> testConventions,
+                                                  TestDetection testDetection, LibraryMatcher matcher) {
+        return checkProject(project, testConventions, testDetection, matcher, Collections.singletonList(AnalysisPolicy.legacy()));
+    }
+
+    /**
+     * Compute the statistics of checkExternal and of the libraries report of a project with a single analysis
+     * @param project base folder of the projects
+     * @param testConventions naming conventions of the dedicated tests
+     * @param testDetection how the tests of a class are detected (for the external statistics)
+     * @param matcher libraries to count (null for none)
+     * @param policies policies that decide which dependencies are directly "external" (the first one is counted)
+     * @return the same tables as checkProject(project, testConventions, testDetection, matcher)
+     */
+    public static ContingencyTable[] checkProject(File project, Set<TestIndex.Convention> testConventions,
+                                                  TestDetection testDetection, LibraryMatcher matcher,
+                                                  List<AnalysisPolicy> policies) {
+        //analyze, counting the classes as they are handed over
+        Analyzer analyzer = newAnalyzer(project, testConventions, policies);
+        int numLibraries = matcher == null ? 0 : matcher.getLibraries().length;
+        ContingencyTable[] counts = new ContingencyTable[1 + numLibraries];
+        Arrays.setAll(counts, i -> new ContingencyTable());
+        List<Predicate<ClassInfo>> tests = new ArrayList<>(1); //created once the project is scanned
+        List<LibraryMatcher.Session> sessions = new ArrayList<>(1);
+        BitSet tested = new BitSet(); //ids of the classes with tests
+        analyzer.analyze(new ClassInfoHandler() {
+            @Override
+            public synchronized void parsed(int id, ClassInfo cr, String sourceFilePath) {
+                //the classes are not kept, so the libraries are counted as they are parsed
+                if (tests.isEmpty()) tests.add(newTestDetector(project, analyzer, testDetection));
+                if (tests.get(0).test(cr)) tested.set(id);
+                if (numLibraries == 0) return;
+                if (sessions.isEmpty()) sessions.add(matcher.newSession(analyzer.getSymbols()));
+                boolean hasTest = analyzer.getScan().getTestIndex().hasTest(cr);
+                BitSet classLibraries = sessions.get(0).classify(cr);
+                for (int i = 0; i < numLibraries; i++) counts[1 + i].add(classLibraries.get(i), hasTest);
+            }
+
+            @Override
+            public synchronized void analyzed(CompactGraph graph) {
+                for (int id = 0; id < graph.size(); id++) counts[0].add(graph.isExternal(id), tested.get(id));
+            }
+        });
+        printAmbiguousTests(project, analyzer.getScan().getTestIndex());
+        return counts;
+    }
+
+    /**
+     * Estimate the statistics of the relation between classes with external dependencies and classes with
+     * dedicated test from a stratified sample of the source files (see Analyzer.setSampling).
+     * Classes that depend on classes out of the sample are counted as external, so the external classes
+     * are over-estimated rather than missed
+     * @param project base folder of the projects
+     * @param testConventions naming conventions of the dedicated tests
+     * @param testDetection how the tests of a class are detected
+     * @param fraction fraction of the source files of each package (1 analyzes all the files)
+     * @param budgetMillis time to grow the sample in, in milliseconds (0 for a fixed fraction)
+     * @param seed seed of the sample
+     * @return String array with the (estimated) statistics of checkExternal(project), the half widths of their
+     *      95% confidence intervals, the number of sampled files and the number of files of the project
+     */
+    public static String[] checkExternal(File project, Set<TestIndex.Convention> testConventions, TestDetection testDetection,
+                                         double fraction, long budgetMillis, long seed) {
+        return checkExternal(project, testConventions, testDetection, fraction, budgetMillis, seed,
+                Collections.singletonList(AnalysisPolicy.legacy()));
+    }
+
+    /**
+     * Estimate the statistics of checkExternal from a stratified sample of the source files, with other policies
+     * @param project base folder of the projects
+     * @param testConventions naming conventions of the dedicated tests
+     * @param testDetection how the tests of a class are detected
+     * @param fraction fraction of the source files of each package (1 analyzes all the files)
+     * @param budgetMillis time to grow the sample in, in milliseconds (0 for a fixed fraction)
+     * @param seed seed of the sample
+     * @param policies policies that decide which dependencies are directly "external" (the first one is counted)
+     * @return the same statistics as checkExternal(project, testConventions, testDetection, fraction, budgetMillis, seed)
+     */
+    public static String[] checkExternal(File project, Set<TestIndex.Convention> testConventions, TestDetection testDetection,
+                                         double fraction, long budgetMillis, long seed, List<AnalysisPolicy> policies) {
+        Analyzer analyzer = newAnalyzer(project, testConventions, policies);
+        analyzer.setSampling(fraction, seed);
+        analyzer.setSampleBudget(budgetMillis);
+        Map<Integer, String> sourceFiles = new ConcurrentHashMap<>(); //class id -> its source file
+        StratifiedEstimate[] estimate = new StratifiedEstimate[1]; //created once the sample is known
+        List<Predicate<ClassInfo>> tests = new ArrayList<>(1); //created once the project is scanned
+        BitSet tested = new BitSet(); //ids of the classes with tests
+        analyzer.analyze(new ClassInfoHandler() {
+            @Override
+            public synchronized void parsed(int id, ClassInfo cr, String sourceFilePath) {
+                sourceFiles.put(id, sourceFilePath);
+                if (tests.isEmpty()) tests.add(newTestDetector(project, analyzer, testDetection));
+                if (tests.get(0).test(cr)) tested.set(id);
+            }
+
+            @Override
+            public synchronized void analyzed(CompactGraph graph) {
+                estimate[0] = new StratifiedEstimate(getSample(analyzer), 4);
+                for (int id = 0; id < graph.size(); id++) {
+                    estimate[0].add(sourceFiles.get(id), (graph.isExternal(id) ? 0 : 2) + (tested.get(id) ? 0 : 1));
+                }
+            }
+        });
+        printAmbiguousTests(project, analyzer.getScan().getTestIndex());
+        SourceSample sample = getSample(analyzer);
+        String[] record = new String[11];
+        record[0] = project.getName();
+        for (int category = 0; category < 4; category++) {
+            record[1 + category] = String.valueOf(Math.round(estimate[0].getEstimate(category)));
+            record[5 + category] = String.format(Locale.ROOT, "%.1f", estimate[0].getHalfWidth(category));
+        }
+        record[9] = String.valueOf(sample.getNumSampled());
+        record[10] = String.valueOf(sample.getNumFiles());
+        return record;
+    }
+
+    /**
+     * Creates the detector of the tests of the classes of a project
+     * @param project base folder of the project
+     * @param analyzer analyzer of the project, once it is scanned
+     * @param testDetection how the tests are detected
+     * @return whether a class has tests
+     */
+    private static Predicate<ClassInfo> newTestDetector(File project, Analyzer analyzer, TestDetection testDetection) {
+        if (testDetection == TestDetection.NAME) return analyzer.getScan().getTestIndex()::hasTest;
+        return loadCoverage(project, analyzer)::isCovered;
+    }
+
+    /**
+     * Load the JaCoCo execution data of a project
+     * @param project base folder of the project
+     * @param analyzer analyzer of the project, once it is scanned
+     * @return coverage of its classes
+     */
+    private static CoverageIndex loadCoverage(File project, Analyzer analyzer) {
+        try {
+            return CoverageIndex.build(project, analyzer.getScan().getBuildFilePaths());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading the coverage of " + project, e);
+        }
+    }
+
+    /**
+     * Compute the coverage of the classes with and without external dependencies, from the JaCoCo execution
+     * data of a project (see CoverageIndex)
+     * @param project base folder of the project
+     * @return String array with:
+     *      {<project_name>, <# execution data files>,
+     *      <# external classes>, <# covered external classes>, <external line, branch and probe coverage>,
+     *      <# internal classes>, <# covered internal classes>, <internal line, branch and probe coverage>}
+     *      (coverage ratios are empty when unknown)
+     */
+    public static String[] checkCoverage(File project) {
+        return checkCoverage(project, Collections.singletonList(AnalysisPolicy.legacy()));
+    }
+
+    /**
+     * Compute the coverage of the classes with and without external dependencies, with other policies
+     * @param project base folder of the project
+     * @param policies policies that decide which dependencies are directly "external" (the first one is counted)
+     * @return String array with the same values as checkCoverage(project)
+     */
+    public static String[] checkCoverage(File project, List<AnalysisPolicy> policies) {
+        Analyzer analyzer = newAnalyzer(project, TestIndex.DEFAULT_CONVENTIONS, policies);
+        List<ClassInfo> classInfos = analyzer.analyze();
+        CoverageIndex coverage = loadCoverage(project, analyzer);
+        long[][] sums = new long[2][8]; //external, internal -> classes, covered classes, then covered/total lines, branches and probes
+        for (ClassInfo cr : classInfos) {
+            long[] sum = sums[cr.hasExternalDependencies() ? 0 : 1];
+            sum[0]++;
+            if (coverage.isCovered(cr)) sum[1]++;
+            sum[2] += coverage.get(cr, CoverageIndex.COVERED_LINES);
+            sum[3] += coverage.get(cr, CoverageIndex.LINES);
+            sum[4] += coverage.get(cr, CoverageIndex.COVERED_BRANCHES);
+            sum[5] += coverage.get(cr, CoverageIndex.BRANCHES);
+            sum[6] += coverage.get(cr, CoverageIndex.COVERED_PROBES);
+            sum[7] += coverage.get(cr, CoverageIndex.PROBES);
+        }
+        List<String> record = new ArrayList<>(Arrays.asList(project.getName(), String.valueOf(coverage.getNumExecFiles())));
+        for (long[] sum : sums) {
+            record.add(String.valueOf(sum[0]));
+            record.add(String.valueOf(sum[1]));
+            record.add(coverage.isResolved() ? ratio(sum[2], sum[3]) : "");
+            record.add(coverage.isResolved() ? ratio(sum[4], sum[5]) : "");
+            record.add(ratio(sum[6], sum[7]));
+        }
+        return record.toArray(new String[0]);
+    }
+
+    private static String ratio(long covered, long total) {
+        return total == 0 ? "" : String.format(Locale.ROOT, "%.4f", covered / (double) total);
+    }
+
+    /**
+     * Creates a CSV report of the coverage of the classes with and without external dependencies.
+     * <p>
+     * For each project, the coverage of its JaCoCo execution data files (*.exec) aggregated by external and internal classes
+     * @param file the name of the file to write the CSV report
+     * @throws IOException
+     */
+    public void coverageReport(String file) throws IOException {
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            String[] headerRecord = {"Project name", "# exec files",
+                    "# external classes", "# covered external classes", "External line coverage", "External branch coverage", "External probe coverage",
+                    "# internal classes", "# covered internal classes", "Internal line coverage", "Internal branch coverage", "Internal probe coverage",
+                    "Time (ms)", "Failure"};
+            csvWriter.writeNext(headerRecord);
+            new ProjectScheduler(threads, maxInFlight).run(ProjectScheduler.listProjects(folder), project -> checkCoverage(project, policies), result -> {
+                System.out.println(result.getProject() + " (" + result.getMillis() + " ms)");
+                printMetrics(result.getProject());
+                String[] record = Arrays.copyOf(result.getFailure() == null ?
+                        result.getValue() : new String[]{result.getProject().getName()}, headerRecord.length);
+                Arrays.setAll(record, i -> record[i] == null ? "" : record[i]);
+                record[headerRecord.length - 2] = String.valueOf(result.getMillis());
+                record[headerRecord.length - 1] = result.getFailure() == null ? "" : result.getFailure().toString();
+                csvWriter.writeNext(record);
+                csvWriter.flush();
+            });
+        }
+        writeMetrics(file);
+    }
+
+    /**
+     * @param analyzer a analyzer after the analysis
+     * @return the sample it analyzed (a complete sample if it analyzed all the files)
+     */
+    private static SourceSample getSample(Analyzer analyzer) {
+        if (analyzer.getSample() != null) return analyzer.getSample();
+        SourceSample sample = SourceSample.stratify(analyzer.getScan().getSourceFilePaths(), 0);
+        sample.grow(1);
+        return sample;
+    }
 
     /**
      * Creates a CSV report for diferents libraries:
-     * For each library, statistics of the relation between classes with direct dependencies of that library and classes with dedicated test
+     * For each library, statistics of the relation between classes with direct dependencies of that library and classes with dedicated test.
+     * The odds ratio, chi-square and Fisher tests of each library are written to <file>.summary.csv (see CorrelationSummary)
      * @param file  the name of the file to write the CSV report
      * @param libraries string array with the libraries names
      * @throws IOException
@@ -113,42 +567,54 @@ public class TestChecker {
         Writer writer = new FileWriter(file);
         CSVWriter csvWriter = new CSVWriter(writer);
         //write header
-        String[] headerRecord = {"Library name",
-                "library_dep WITH test",
-                "library_dep NO test",
-                "NO library_dep WITH test",
-                "NO Library_dep NO test"};
-        csvWriter.writeNext(headerRecord);
+        csvWriter.writeNext(LIBRARIES_COLUMNS);
         //create libraryInfos
-        List<LibraryInfo> libraryInfos = new ArrayList<>();
-        for(String library: libraries){
-            libraryInfos.add(new LibraryInfo(library));
-        }
-        //colect statistics
-        if (this.folder.exists()) {
-            for (final File project : this.folder.listFiles()) {
-                if (project.isDirectory()) {
-                    //for each project
-                    System.out.println(project);
-                    List<ClassInfo> classInfos = new Analyzer(project).analyze();
-                    Set<String> tests = findAllJavaTest(project);
-
-                    for (ClassInfo cr : classInfos){
-                        boolean hasTest = tests.contains(cr.getName() + "Test.java");
-                        for (LibraryInfo libraryInfo:libraryInfos){
-                            libraryInfo.countClass(cr,hasTest);
-                        }
-                    }
+        List<LibraryInfo> libraryInfos = createLibraryInfos(libraries);
+        LibraryMatcher matcher = new LibraryMatcher(libraries, libraryMatching);
+        //colect statistics of each project, in order
+        new ProjectScheduler(threads, maxInFlight).run(ProjectScheduler.listProjects(folder),
+                project -> checkProject(project, testConventions, TestDetection.NAME, matcher, policies), result -> {
+            System.out.println(result.getProject() + " (" + result.getMillis() + " ms)");
+            printMetrics(result.getProject());
+            if (result.getFailure() != null) {
+                System.err.println(result.getProject() + " failed: " + result.getFailure());
+            } else {
+                for (int i = 0; i < libraryInfos.size(); i++) {
+                    libraryInfos.get(i).add(result.getValue()[1 + i]);
                 }
             }
-        }
+        });
         //write record for each library
+        CorrelationSummary summary = new CorrelationSummary();
         for(LibraryInfo libraryInfo:libraryInfos){
             csvWriter.writeNext(libraryInfo.getRecord());
+            summary.get(libraryInfo.libraryName).merge(libraryInfo.counts);
         }
         //close
         csvWriter.close();
+        summary.write(file + ".summary.csv", "Library name", null);
+        writeMetrics(file);
+    }
 
+    private List<LibraryInfo> createLibraryInfos(String[] libraries) {
+        List<LibraryInfo> libraryInfos = new ArrayList<>();
+        for(String library: libraries){
+            libraryInfos.add(new LibraryInfo(library));
+        }
+        return libraryInfos;
+    }
+
+    /**
+     * Classes and dedicated tests of a analyzed project
+     */
+    private static class AnalyzedProject {
+        private List<ClassInfo> classes;
+        private TestIndex tests;
+
+        private AnalyzedProject(List<ClassInfo> classes, TestIndex tests) {
+            this.classes = classes;
+            this.tests = tests;
+        }
     }
 
     /**
@@ -156,7 +622,7 @@ public class TestChecker {
      */
     private class LibraryInfo{
 
-        private int libraryWithTest=0, libraryNoTest=0, noLibraryWithTest=0, noLibraryNoTest=0; //statistics
+        private ContingencyTable counts = new ContingencyTable(); //statistics
         private String libraryName; //library name
 
         public LibraryInfo(String libraryName){
@@ -164,18 +630,11 @@ public class TestChecker {
         }
 
         /**
-         * Update the statistics with a given class
-         * @param clazz class to check
-         * @param hasTest if clazz has a dedicated test
+         * Update the statistics with the ones of the same library in other projects
+         * @param other statistics of the same library
          */
-        public void countClass(ClassInfo clazz, boolean hasTest){
-            if (clazz.hasDependency(libraryName)){
-                if (hasTest) libraryWithTest++;
-                else libraryNoTest++;
-            }else{
-                if (hasTest) noLibraryWithTest++;
-                else noLibraryNoTest++;
-            }
+        public void add(ContingencyTable other){
+            counts.merge(other);
         }
 
         /**
@@ -190,37 +649,33 @@ public class TestChecker {
         public String[] getRecord(){
             return new String[]{
                     libraryName,
-                    String.valueOf(libraryWithTest),
-                    String.valueOf(libraryNoTest),
-                    String.valueOf(noLibraryWithTest),
-                    String.valueOf(noLibraryNoTest)};
+                    String.valueOf(counts.getA()),
+                    String.valueOf(counts.getB()),
+                    String.valueOf(counts.getC()),
+                    String.valueOf(counts.getD())};
         }
     }
 
     /**
-     * Find all java files names that ends with "Test" or "Tests"
-     * @param folder folder to search
-     * @return list of java files names
+     * Write the external report of the projects in apache_projects
+     * @param args options: --policies FILE (repeatable) to decide which dependencies are "external" with rules
+     *             files (see AnalysisPolicy; the first one is reported) instead of the legacy rule
+     * @throws IOException
      */
-    private static Set<String> findAllJavaTest(File folder) {
-        Set<String> tests = new HashSet<>();
-        if (folder.exists()) {
-            for (final File fileEntry : folder.listFiles()) {
-                if (fileEntry.isDirectory()) {
-                    tests.addAll(findAllJavaTest(fileEntry));
-                } else {
-                    if (Analyzer.isTest(fileEntry.getName())){
-                        tests.add(fileEntry.getName());
-                    }
-                }
+    public static void main(String[] args) throws IOException {
+        TestChecker testChecker = new TestChecker("apache_projects");
+        List<AnalysisPolicy> policies = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--policies") && i + 1 < args.length) {
+                policies.add(AnalysisPolicy.read(new File(args[++i])));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
             }
         }
-        return tests;
-    }
-
-
-    public static void main(String[] args) throws IOException {
-        new TestChecker("apache_projects").externalReport("external_report.csv");
+        if (!policies.isEmpty()) testChecker.setPolicies(policies);
+        int threads = Runtime.getRuntime().availableProcessors();
+        testChecker.setParallelism(threads, 2 * threads);
+        testChecker.externalReport("external_report.csv");
         //new TestChecker("apache_projects").librariesReport("libraries_report.csv", new String[]{"java.io", "java.sql.", "java.net.", "javax"});
 
 
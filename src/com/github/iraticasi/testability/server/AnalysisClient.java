@@ -0,0 +1,211 @@
+package com.github.iraticasi.testability.server;
+
+import com.github.iraticasi.testability.report.ProjectScheduler;
+import com.opencsv.CSVWriter;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Command line client of the analysis server, which starts the server if it is not running
+ * <p>
+ * NOTES:
+ * The reports are the same as the ones of Analyzer.main and TestChecker.main, but the projects are analyzed
+ * by the server, so running them again on unchanged projects only takes the time of writing the report.
+ * The rules files of the policies (see AnalysisPolicy) are sent with each request and read by the server.
+ * */
+
+public class AnalysisClient implements Closeable {
+
+    private Socket socket;
+    private BufferedReader reader;
+    private Writer writer;
+    private List<File> policyFiles = Collections.emptyList(); //rules files of the policies (empty for the legacy rule)
+
+    /**
+     * Connects to a server
+     * @param port port of the server
+     * @throws IOException if there is no server on the port
+     */
+    public AnalysisClient(int port) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Connects to a server, starting it in a new process if it is not running
+     * @param port port of the server
+     * @return the client
+     * @throws IOException if the server does not start
+     * @throws InterruptedException if interrupted while waiting for the server
+     */
+    public static AnalysisClient connectOrStart(int port) throws IOException, InterruptedException {
+        try {
+            return new AnalysisClient(port);
+        } catch (ConnectException e) {
+            File log = new File(System.getProperty("user.home"), ".testability/server.log");
+            log.getParentFile().mkdirs();
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    AnalysisServer.class.getName(), "--port", String.valueOf(port))
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+                    .start();
+            for (int i = 0; i < 100; i++) { //wait up to 10 seconds
+                Thread.sleep(100);
+                try {
+                    return new AnalysisClient(port);
+                } catch (ConnectException retry) {
+                    //not listening yet
+                }
+            }
+            throw new IOException("The analysis server did not start, see " + log);
+        }
+    }
+
+    /**
+     * Set the policies that decide which dependencies are directly "external" in the requests of the client
+     * @param policyFiles rules files of the policies, the first one decides "external" (empty for the legacy rule)
+     */
+    public void setPolicyFiles(List<File> policyFiles) {
+        this.policyFiles = policyFiles;
+    }
+
+    /**
+     * Send a request on a project, with the rules files of the policies of the client
+     * @param args command and arguments
+     * @return lines of the response
+     * @throws IOException if the request fails
+     */
+    public List<String> requestProject(String... args) throws IOException {
+        List<String> all = new ArrayList<>(Arrays.asList(args));
+        for (File policyFile : policyFiles) all.add(policyFile.getAbsolutePath());
+        return request(all.toArray(new String[0]));
+    }
+
+    /**
+     * Send a request to the server
+     * @param args command and arguments
+     * @return lines of the response
+     * @throws IOException if the request fails
+     */
+    public List<String> request(String... args) throws IOException {
+        writer.write(String.join("\t", args) + "\n");
+        writer.flush();
+        String status = reader.readLine();
+        if (status == null) throw new EOFException("Connection closed by the server");
+        if (status.startsWith("ERROR")) throw new IOException(status.substring("ERROR".length()).trim());
+        int numLines = Integer.parseInt(status.substring("OK ".length()));
+        List<String> lines = new ArrayList<>(numLines);
+        for (int i = 0; i < numLines; i++) lines.add(reader.readLine());
+        return lines;
+    }
+
+    /**
+     * Writes list with all project classes and whether they have "external dependencies" or not
+     * (same as Analyzer.makeReport)
+     * @param project base folder of the project
+     * @param file file to write report to, inside the project folder
+     * @throws IOException
+     */
+    public void makeReport(File project, String file) throws IOException {
+        List<String> lines = requestProject("REPORT", project.getAbsolutePath());
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(project.getAbsolutePath() + File.separator + file))) {
+            csvWriter.writeNext(new String[]{"Package", "Class", "External dependencies"});
+            for (String line : lines) csvWriter.writeNext(line.split("\t"));
+        }
+    }
+
+    /**
+     * Creates a CSV report for external dependencies of all projects of a folder (same as TestChecker.externalReport)
+     * @param folder folder with the projects
+     * @param file the name of the file to write the CSV report
+     * @throws IOException
+     */
+    public void externalReport(File folder, String file) throws IOException {
+        try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
+            csvWriter.writeNext(new String[]{"Project name", "# external classes with tests", "# of external classes without test", "# internal classes with tests", "# of internal classes without test", "Time (ms)", "Failure"});
+            for (File project : ProjectScheduler.listProjects(folder)) {
+                System.out.println(project);
+                long start = System.currentTimeMillis();
+                String[] record = new String[7];
+                record[0] = project.getName();
+                try {
+                    String[] counts = requestProject("CHECK", project.getAbsolutePath()).get(0).split("\t");
+                    System.arraycopy(counts, 0, record, 1, 4);
+                    record[6] = "";
+                } catch (IOException e) {
+                    if (e instanceof EOFException) throw e;
+                    Arrays.fill(record, 1, 5, "");
+                    record[6] = e.getMessage();
+                }
+                record[5] = String.valueOf(System.currentTimeMillis() - start);
+                csvWriter.writeNext(record);
+                csvWriter.flush();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Runs a command on the analysis server
+     * @param args [--port port] [--policies file]... command, one of:
+     *             report project [file], external-report folder [file], external project class, stats, stop
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = AnalysisServer.DEFAULT_PORT;
+        List<File> policyFiles = new ArrayList<>();
+        int first = 0;
+        for (; first + 1 < args.length && args[first].startsWith("--"); first += 2) {
+            if (args[first].equals("--port")) port = Integer.parseInt(args[first + 1]);
+            else if (args[first].equals("--policies")) policyFiles.add(new File(args[first + 1]));
+            else throw new IllegalArgumentException("Unknown option " + args[first]);
+        }
+        String command = args.length > first ? args[first] : "report";
+        String arg1 = args.length > first + 1 ? args[first + 1] : null;
+        String arg2 = args.length > first + 2 ? args[first + 2] : null;
+        if (command.equals("stop")) {
+            try (AnalysisClient client = new AnalysisClient(port)) {
+                client.request("STOP");
+            } catch (ConnectException e) {
+                System.out.println("The analysis server is not running");
+            }
+            return;
+        }
+        try (AnalysisClient client = connectOrStart(port)) {
+            client.setPolicyFiles(policyFiles);
+            switch (command) {
+                case "report":
+                    client.makeReport(new File(arg1 == null ? "apache_projects/zeppelin" : arg1), arg2 == null ? "testability_report.csv" : arg2);
+                    break;
+                case "external-report":
+                    client.externalReport(new File(arg1 == null ? "apache_projects" : arg1), arg2 == null ? "external_report.csv" : arg2);
+                    break;
+                case "external":
+                    if (arg2 == null) throw new IllegalArgumentException("external expects a project and a class");
+                    List<String> lines = client.requestProject("EXTERNAL", new File(arg1).getAbsolutePath(), arg2);
+                    System.out.println(arg2 + (lines.get(0).equals("Y") ? " is external" : " is not external"));
+                    for (String line : lines.subList(1, lines.size())) System.out.println("  " + line);
+                    break;
+                case "stats":
+                    for (String line : client.request("STATS")) System.out.println(line);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown command " + command);
+            }
+        }
+    }
+}
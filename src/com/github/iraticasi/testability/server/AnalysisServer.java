@@ -0,0 +1,271 @@
+package com.github.iraticasi.testability.server;
+
+import com.github.iraticasi.testability.analyzer.AnalysisCache;
+import com.github.iraticasi.testability.analyzer.AnalysisPolicy;
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import com.github.iraticasi.testability.analyzer.DependencyGraph;
+import com.github.iraticasi.testability.analyzer.TestIndex;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Local analysis server, which keeps the analysis of each project between requests
+ * <p>
+ * NOTES:
+ * The server listens on the loopback address only. Each request is a line with a command and its arguments
+ * separated by tabs, and each response is "OK <n>" followed by n lines, or "ERROR <message>".
+ * Commands:
+ * - EXTERNAL project class [policies...]: "Y" or "N" and, if Y, the classes through which the class is external
+ *   (the last one has external dependencies itself)
+ * - REPORT project [policies...]: a line (package, class, Y/N) per class, in the order of Analyzer.makeReport
+ * - CHECK project [policies...]: external classes with test, external without test, internal with test, internal without test
+ * - STATS: a line per project and policies (path, policy names, classes, analyses, last analysis ms, cache hits,
+ *   cache misses, dirty)
+ * - STOP: stops the server
+ * The optional policies are paths of rules files (see AnalysisPolicy), the first one decides "external"; without
+ * them the legacy rule is used.
+ * A project is analyzed in the first request on it and watched from then on, so later requests
+ * only analyze it again if its java files changed (and then only the changed files are parsed, see AnalysisCache).
+ * Each set of policies has its own state (and cache) of the project; a rules file is read when the project is
+ * first analyzed with it, and a changed file (by its modification time) makes a new state.
+ * */
+
+public class AnalysisServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 7771;
+
+    private int port; //port to listen on (0 for any free port)
+    private File cacheDir; //folder of the analyzer caches
+    private Map<String, ProjectState> projects = new ConcurrentHashMap<>(); //canonical project folder and policies -> state
+    private ProjectWatcher watcher;
+    private ServerSocket serverSocket;
+    private ExecutorService executor; //handles the connections
+    private volatile boolean stopped = false;
+
+    /**
+     * Creates a server
+     * @param port port to listen on (0 for any free port)
+     * @param cacheDir folder of the analyzer caches
+     */
+    public AnalysisServer(int port, File cacheDir) {
+        this.port = port;
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Start listening
+     * @throws IOException if the port can not be bound
+     */
+    public void start() throws IOException {
+        cacheDir.mkdirs();
+        watcher = new ProjectWatcher();
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "analysis-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.submit(this::accept);
+    }
+
+    /**
+     *
+     * @return port the server listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        while (!stopped) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.submit(() -> serve(socket));
+            } catch (IOException e) {
+                if (!stopped) System.err.println("Error accepting connection: " + e);
+            }
+        }
+    }
+
+    /**
+     * Answer the requests of a connection until it is closed
+     * @param socket the connection
+     */
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String response;
+                try {
+                    List<String> lines = handle(line);
+                    StringBuilder builder = new StringBuilder("OK ").append(lines.size()).append('\n');
+                    for (String responseLine : lines) builder.append(responseLine).append('\n');
+                    response = builder.toString();
+                } catch (RuntimeException | IOException e) {
+                    response = "ERROR " + String.valueOf(e.getMessage()).replace('\n', ' ') + "\n";
+                }
+                writer.write(response);
+                writer.flush();
+                if (stopped) break;
+            }
+        } catch (SocketException e) {
+            //client went away
+        } catch (IOException e) {
+            System.err.println("Error serving connection: " + e);
+        }
+    }
+
+    /**
+     * Answer a request
+     * @param request command and arguments, separated by tabs
+     * @return lines of the response
+     * @throws IOException if a project can not be watched or the server can not be stopped
+     */
+    public List<String> handle(String request) throws IOException {
+        String[] args = request.split("\t");
+        List<String> lines = new ArrayList<>();
+        switch (args[0].toUpperCase()) {
+            case "EXTERNAL": {
+                checkArgs(args, 3);
+                ProjectState state = getProject(args[1], policyPaths(args, 3));
+                //getProject waits for a running analysis of the project (refresh is synchronized), and so does getGraph,
+                //so this is the graph of the last finished analysis
+                DependencyGraph graph = state.getGraph();
+                int id = graph.getId(args[2]);
+                if (id < 0) throw new IllegalArgumentException("Class " + args[2] + " not found in " + args[1]);
+                lines.add(graph.isExternal(id) ? "Y" : "N");
+                for (ClassInfo classInfo : graph.getPropagationPath(args[2])) lines.add(classInfo.getFullName());
+                break;
+            }
+            case "REPORT": {
+                checkArgs(args, 2);
+                for (ClassInfo classInfo : getProject(args[1], policyPaths(args, 2)).getClasses()) {
+                    lines.add(classInfo.getPkg() + "\t" + classInfo.getName() + "\t" + (classInfo.hasExternalDependencies() ? "Y" : "N"));
+                }
+                break;
+            }
+            case "CHECK": {
+                checkArgs(args, 2);
+                ProjectState state = getProject(args[1], policyPaths(args, 2));
+                List<ClassInfo> classes;
+                TestIndex tests;
+                synchronized (state) { //of the same analysis
+                    classes = state.getClasses();
+                    tests = state.getTests();
+                }
+                int[] counts = new int[4]; //same statistics as TestChecker.checkExternal
+                for (ClassInfo classInfo : classes) {
+                    boolean hasTest = tests.hasTest(classInfo);
+                    counts[(classInfo.hasExternalDependencies() ? 0 : 2) + (hasTest ? 0 : 1)]++;
+                }
+                lines.add(counts[0] + "\t" + counts[1] + "\t" + counts[2] + "\t" + counts[3]);
+                break;
+            }
+            case "STATS": {
+                for (ProjectState state : new TreeMap<>(projects).values()) {
+                    AnalysisCache cache = state.getAnalyzer().getCache();
+                    List<String> policyNames = new ArrayList<>();
+                    for (AnalysisPolicy policy : state.getPolicies()) policyNames.add(policy.getName());
+                    lines.add(state.getProject() + "\t" + String.join(",", policyNames) + "\t" + state.getClasses().size() + "\t" + state.getAnalyses() + "\t"
+                            + state.getLastMillis() + "\t" + cache.getHits() + "\t" + cache.getMisses() + "\t" + state.isDirty());
+                }
+                break;
+            }
+            case "STOP": {
+                close();
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown command " + args[0]);
+        }
+        return lines;
+    }
+
+    private static void checkArgs(String[] args, int length) {
+        if (args.length < length) {
+            throw new IllegalArgumentException(args[0] + " expects " + (length - 1) + " arguments");
+        }
+    }
+
+    private static List<String> policyPaths(String[] args, int from) {
+        return Arrays.asList(args).subList(from, args.length);
+    }
+
+    /**
+     * Get the state of a project, up to date
+     * @param path folder of the project
+     * @param policyPaths rules files of the policies (empty for the legacy rule)
+     * @return state of the project with those policies
+     * @throws IOException if the project can not be watched or a rules file can not be read
+     */
+    private ProjectState getProject(String path, List<String> policyPaths) throws IOException {
+        File project = new File(path).getCanonicalFile();
+        if (!project.isDirectory()) throw new IllegalArgumentException("Project " + path + " not found");
+        List<File> policyFiles = new ArrayList<>();
+        StringBuilder key = new StringBuilder(project.getPath());
+        for (String policyPath : policyPaths) {
+            File policyFile = new File(policyPath).getCanonicalFile();
+            if (!policyFile.isFile()) throw new IllegalArgumentException("Rules file " + policyPath + " not found");
+            policyFiles.add(policyFile);
+            key.append('\t').append(policyFile.getPath()).append('@').append(policyFile.lastModified());
+        }
+        ProjectState state = projects.get(key.toString());
+        if (state == null) {
+            synchronized (projects) {
+                state = projects.get(key.toString());
+                if (state == null) {
+                    List<AnalysisPolicy> policies = new ArrayList<>();
+                    for (File policyFile : policyFiles) policies.add(AnalysisPolicy.read(policyFile));
+                    if (policies.isEmpty()) policies.add(AnalysisPolicy.legacy());
+                    String cacheName = project.getName() + "-" + Integer.toHexString(key.toString().hashCode()) + ".cache";
+                    state = new ProjectState(project, new File(cacheDir, cacheName), policies);
+                    watcher.watch(state); //before the analysis, so no change is missed
+                    projects.put(key.toString(), state);
+                }
+            }
+        }
+        state.refresh();
+        return state;
+    }
+
+    /**
+     * Stop the server
+     * @throws IOException if the socket or the watcher can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        stopped = true;
+        if (serverSocket != null) serverSocket.close();
+        if (watcher != null) watcher.close();
+        if (executor != null) executor.shutdown();
+    }
+
+    /**
+     * Runs a server until it is stopped
+     * @param args [--port port] [--cache folder]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = DEFAULT_PORT;
+        File cacheDir = new File(System.getProperty("user.home"), ".testability/cache");
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port")) port = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--cache")) cacheDir = new File(args[++i]);
+        }
+        AnalysisServer server = new AnalysisServer(port, cacheDir);
+        server.start();
+        System.out.println("Analysis server listening on localhost:" + server.getPort());
+        while (!server.stopped) Thread.sleep(500);
+    }
+}
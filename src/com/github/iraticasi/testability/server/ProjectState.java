@@ -0,0 +1,138 @@
+package com.github.iraticasi.testability.server;
+
+import com.github.iraticasi.testability.analyzer.AnalysisPolicy;
+import com.github.iraticasi.testability.analyzer.Analyzer;
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import com.github.iraticasi.testability.analyzer.DependencyGraph;
+import com.github.iraticasi.testability.analyzer.TestIndex;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Analysis of a project kept by the server
+ * <p>
+ * NOTES:
+ * The project is analyzed again only when the watcher marks it as dirty, and the analyzer cache
+ * makes that analysis parse only the new and changed files.
+ * A project is marked as clean before it is analyzed, so a change during the analysis triggers another one.
+ * The classes, graph and tests of the last analysis are published together under the lock of the state; each analysis
+ * builds new ones, so they can be read after the lock is released while another analysis runs.
+ * */
+
+public class ProjectState {
+
+    private File project; //base folder of the project
+    private List<AnalysisPolicy> policies; //policies the project is analyzed with (the first one decides "external")
+    private Analyzer analyzer; //analyzer of the project, with its cache
+    private List<ClassInfo> classes = Collections.emptyList(); //classes of the last analysis
+    private DependencyGraph graph; //dependency graph of the last analysis (null if not analyzed yet)
+    private TestIndex tests; //dedicated tests of the last analysis (null if not analyzed yet)
+    private volatile boolean dirty = true; //whether the project changed since the last analysis
+    private int analyses = 0; //number of analyses
+    private long lastMillis = 0; //time of the last analysis
+
+    /**
+     * Creates the state of a project
+     * @param project base folder of the project
+     * @param cacheFile file of the analyzer cache
+     */
+    public ProjectState(File project, File cacheFile) {
+        this(project, cacheFile, Collections.singletonList(AnalysisPolicy.legacy()));
+    }
+
+    /**
+     * Creates the state of a project analyzed with some policies
+     * @param project base folder of the project
+     * @param cacheFile file of the analyzer cache (one per set of policies)
+     * @param policies policies that decide which dependencies are directly "external"
+     */
+    public ProjectState(File project, File cacheFile, List<AnalysisPolicy> policies) {
+        this.project = project;
+        this.policies = policies;
+        this.analyzer = new Analyzer(project);
+        analyzer.setCache(cacheFile);
+        analyzer.setPolicies(policies);
+    }
+
+    /**
+     * Analyze the project if it changed since the last analysis
+     * @return true if it was analyzed
+     */
+    public synchronized boolean refresh() {
+        if (!dirty) return false;
+        dirty = false;
+        long start = System.nanoTime();
+        try {
+            List<ClassInfo> analyzed = new ArrayList<>(analyzer.analyze());
+            Collections.sort(analyzed); //same order as the report
+            classes = analyzed;
+            graph = analyzer.getDependencyGraph();
+            tests = analyzer.getScan().getTestIndex();
+        } catch (RuntimeException e) {
+            dirty = true; //try again in the next request
+            throw e;
+        }
+        lastMillis = (System.nanoTime() - start) / 1_000_000;
+        analyses++;
+        return true;
+    }
+
+    /**
+     * Mark the project as changed
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public File getProject() {
+        return project;
+    }
+
+    public List<AnalysisPolicy> getPolicies() {
+        return policies;
+    }
+
+    public synchronized Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /**
+     *
+     * @return classes of the last analysis, sorted as in the report
+     */
+    public synchronized List<ClassInfo> getClasses() {
+        return classes;
+    }
+
+    /**
+     *
+     * @return dependency graph of the last analysis (null if not analyzed yet)
+     */
+    public synchronized DependencyGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     *
+     * @return dedicated tests of the last analysis (null if not analyzed yet)
+     */
+    public synchronized TestIndex getTests() {
+        return tests;
+    }
+
+    public synchronized int getAnalyses() {
+        return analyses;
+    }
+
+    public synchronized long getLastMillis() {
+        return lastMillis;
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.iraticasi.testability.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+
+/**
+ * Watches the directories of the projects and marks a project as dirty when its java files change
+ * <p>
+ * NOTES:
+ * Every directory of a project is registered (except hidden ones, e.g. .git), and directories created later
+ * are registered when their creation is seen. The events are taken by a daemon thread.
+ * If events are lost (OVERFLOW) the project is marked as dirty anyway.
+ * A folder can be watched for several states (the same project analyzed with other policies), and all of them
+ * are marked.
+ * */
+
+public class ProjectWatcher implements Closeable {
+
+    private WatchService watchService;
+    private Map<WatchKey, Set<ProjectState>> projects = new ConcurrentHashMap<>(); //registered directory -> its projects
+    private Thread thread;
+
+    /**
+     * Creates a watcher and starts taking its events
+     * @throws IOException if the watch service can not be created
+     */
+    public ProjectWatcher() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::run, "project-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Watch all the directories of a project
+     * @param project the project
+     * @throws IOException if a directory can not be registered
+     */
+    public void watch(ProjectState project) throws IOException {
+        register(project.getProject().toPath(), project);
+    }
+
+    private void register(Path root, ProjectState project) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root) && dir.getFileName().toString().startsWith(".")) return FileVisitResult.SKIP_SUBTREE;
+                WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                projects.computeIfAbsent(key, k -> new CopyOnWriteArraySet<>()).add(project);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<ProjectState> states = projects.get(key);
+                if (states != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        for (ProjectState project : states) handle(key, event, project);
+                    }
+                }
+                if (!key.reset()) projects.remove(key);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //closed
+        }
+    }
+
+    private void handle(WatchKey key, WatchEvent<?> event, ProjectState project) {
+        if (event.kind() == OVERFLOW) {
+            project.markDirty();
+            return;
+        }
+        Path path = ((Path) key.watchable()).resolve((Path) event.context());
+        if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+            try {
+                register(path, project); //files created before the registration are not seen
+            } catch (IOException e) {
+                System.err.println("Can not watch " + path + ": " + e);
+            }
+            project.markDirty();
+        } else if (path.toString().endsWith(".java") || event.kind() == ENTRY_DELETE) {
+            project.markDirty();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+}
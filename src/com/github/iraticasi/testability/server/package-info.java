@@ -0,0 +1,4 @@
+/**
+ * Provides a local analysis server that keeps the analysis of projects between requests, and its client.
+ */
+package com.github.iraticasi.testability.server;
@@ -0,0 +1,91 @@
+package com.github.iraticasi.testability;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Java projects written to a folder for the tests
+ * <p>
+ * NOTES:
+ * A generated project has classes pkg.sN.CN (a few subpackages) that create instances of other classes of the
+ * project (by simple name in the same package, imported or qualified), of java.util (internal), of java.net,
+ * java.io and java.sql (external) and of types that do not exist, plus interfaces and a dedicated test
+ * (CNTest) for some classes, so the analysis has every kind of dependency to propagate.
+ * */
+
+public class SampleProject {
+
+    private static final Pattern PACKAGE = Pattern.compile("package\\s+([\\w.]+)\\s*;");
+    private static final Pattern TYPE = Pattern.compile("(?:class|interface|enum)\\s+(\\w+)");
+    private static final String[] EXTERNAL = {"java.net.Socket()", "java.io.File(\"f\")", "java.sql.Timestamp(0)", "java.net.URI(\"u\")"};
+
+    /**
+     * Write java sources to their package folders
+     * @param root base folder of the project
+     * @param folder folder of the sources in the project (e.g. src/main/java)
+     * @param sources contents of the files
+     * @throws IOException if a file can not be written
+     */
+    public static void write(Path root, String folder, String... sources) throws IOException {
+        for (String source : sources) {
+            Matcher pkg = PACKAGE.matcher(source), type = TYPE.matcher(source);
+            if (!type.find()) throw new IllegalArgumentException("No type in " + source);
+            Path dir = root.resolve(folder);
+            if (pkg.find()) dir = dir.resolve(pkg.group(1).replace('.', '/'));
+            Files.createDirectories(dir);
+            Files.write(dir.resolve(type.group(1) + ".java"), source.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Generate a project
+     * @param root base folder of the project
+     * @param pkg base package of its classes
+     * @param numClasses number of classes
+     * @param seed seed of the generator
+     * @throws IOException if a file can not be written
+     */
+    public static void generate(Path root, String pkg, int numClasses, long seed) throws IOException {
+        Random random = new Random(seed);
+        int numPackages = 1 + numClasses / 20;
+        for (int i = 0; i < numClasses; i++) {
+            String classPkg = pkg + ".s" + (i % numPackages);
+            StringBuilder imports = new StringBuilder();
+            StringBuilder body = new StringBuilder();
+            int numCreations = random.nextInt(4);
+            for (int j = 0; j < numCreations; j++) {
+                double kind = random.nextDouble();
+                if (kind < 0.55) {
+                    int target = random.nextInt(numClasses);
+                    String targetPkg = pkg + ".s" + (target % numPackages);
+                    String type = "C" + target;
+                    if (!targetPkg.equals(classPkg)) {
+                        if (random.nextBoolean()) imports.append("import ").append(targetPkg).append(".C").append(target).append(";\n");
+                        else type = targetPkg + "." + type;
+                    }
+                    body.append("    Object f").append(j).append("() { return new ").append(type).append("(); }\n");
+                } else if (kind < 0.75) {
+                    body.append("    Object f").append(j).append("() { return new java.util.ArrayList<String>(); }\n");
+                } else if (kind < 0.93) {
+                    body.append("    Object f").append(j).append("() throws Exception { return new ")
+                            .append(EXTERNAL[random.nextInt(EXTERNAL.length)]).append("; }\n");
+                } else {
+                    body.append("    Object f").append(j).append("() { return new Missing").append(random.nextInt(5)).append("(); }\n");
+                }
+            }
+            write(root, "src/main/java", "package " + classPkg + ";\n" + imports + "\npublic class C" + i + " {\n" + body + "}\n");
+            if (random.nextDouble() < 0.4) {
+                write(root, "src/test/java", "package " + classPkg + ";\n\npublic class C" + i + "Test {\n}\n");
+            }
+            if (random.nextDouble() < 0.05) {
+                write(root, "src/main/java", "package " + classPkg + ";\n\npublic interface I" + i + " {\n}\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.iraticasi.testability.analyzer;
+
+import com.github.iraticasi.testability.SampleProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of AnalysisCache: a cached analysis gives the classes of a analysis without cache, parsing only
+ * the new and changed files and the ones whose dependencies may resolve now
+ */
+public class AnalysisCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private static Map<String, String> describe(List<ClassInfo> classes) {
+        Map<String, String> described = new TreeMap<>();
+        for (ClassInfo classInfo : classes) {
+            StringBuilder description = new StringBuilder(classInfo.hasExternalDependencies() ? "Y" : "N");
+            SymbolTable symbols = classInfo.getSymbols();
+            for (int id : classInfo.getDependencyIds()) {
+                int pkg = symbols.getPackage(id);
+                description.append(' ').append(pkg < 0 ? null : symbols.getName(pkg)).append(':').append(symbols.getName(id));
+            }
+            described.put(classInfo.getFullName(), description.toString());
+        }
+        return described;
+    }
+
+    /**
+     * Analyze the project with the cache, checking the classes against a analysis without cache
+     * @return hits and misses of the cache
+     */
+    private int[] analyze(Path project, File cacheFile) {
+        Analyzer analyzer = new Analyzer(project.toFile());
+        analyzer.setCache(cacheFile);
+        Map<String, String> cached = describe(analyzer.analyze());
+        assertEquals(describe(new Analyzer(project.toFile()).analyze()), cached);
+        return new int[]{analyzer.getCache().getHits(), analyzer.getCache().getMisses()};
+    }
+
+    @Test
+    public void onlyTheAffectedFilesAreParsed() throws IOException {
+        Path project = dir.resolve("project");
+        File cacheFile = dir.resolve("analysis.cache").toFile();
+        SampleProject.write(project, "src/main/java",
+                "package org.x;\nimport org.y.*;\n\npublic class A {\n    Object a() { return new B(); }\n}\n",
+                "package org.x;\n\npublic class C {\n    Object a() { return new java.net.Socket(); }\n}\n",
+                "package org.x;\n\npublic class D {\n    Object a() { return new C(); }\n}\n");
+        assertArrayEquals(new int[]{0, 3}, analyze(project, cacheFile));
+        assertArrayEquals(new int[]{3, 0}, analyze(project, cacheFile));
+        //B is declared now, so A is parsed again to resolve it
+        SampleProject.write(project, "src/main/java", "package org.y;\n\npublic class B {\n}\n");
+        assertArrayEquals(new int[]{2, 2}, analyze(project, cacheFile));
+        //a changed file
+        SampleProject.write(project, "src/main/java", "package org.x;\n\npublic class D {\n    Object a() { return this; }\n}\n");
+        assertArrayEquals(new int[]{3, 1}, analyze(project, cacheFile));
+        //other source roots
+        SampleProject.write(project, "generated", "package org.z;\n\npublic class E {\n}\n");
+        assertArrayEquals(new int[]{0, 5}, analyze(project, cacheFile));
+        //a truncated cache is discarded
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        assertArrayEquals(new int[]{0, 5}, analyze(project, cacheFile));
+        assertArrayEquals(new int[]{5, 0}, analyze(project, cacheFile));
+    }
+
+    @Test
+    public void removedTypeUncoversAnotherOne() throws IOException {
+        Path project = dir.resolve("project");
+        File cacheFile = dir.resolve("analysis.cache").toFile();
+        SampleProject.write(project, "src/main/java",
+                "package org.x;\nimport org.y.*;\n\npublic class A {\n    Object a() { return new B(); }\n}\n",
+                "package org.x;\n\npublic class B {\n    Object a() { return new java.net.Socket(); }\n}\n",
+                "package org.x;\n\npublic class C {\n    Object a() { return new java.util.ArrayList<String>(); }\n}\n",
+                "package org.y;\n\npublic class B {\n}\n");
+        assertArrayEquals(new int[]{0, 4}, analyze(project, cacheFile));
+        //the B of the same package shadows the imported one until it is deleted, so A is parsed again to resolve
+        //org.y.B (C does not depend on a B)
+        Files.delete(project.resolve("src/main/java/org/x/B.java"));
+        assertArrayEquals(new int[]{2, 1}, analyze(project, cacheFile));
+        assertArrayEquals(new int[]{3, 0}, analyze(project, cacheFile));
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.iraticasi.testability.analyzer;
+
+import com.github.iraticasi.testability.SampleProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * The dependencies of a class stored as interned ids with counts answer as the original list of names, with a
+ * name per object creation in the order of the source
+ * <p>
+ * NOTES:
+ * The original list of each class is rebuilt from its edges (recorded in the order they are visited), and the
+ * "external" dependencies with the original rule (see PolicySetTest).
+ * */
+
+public class ClassInfoTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void dependenciesAnswerAsTheList() throws IOException {
+        SampleProject.generate(dir, "org.sample", 80, 3);
+        SampleProject.write(dir, "src/main/java",
+                "package org.sample.s0;\n\npublic class Repeated {\n"
+                        + "    Object a() { return new java.net.Socket(); }\n"
+                        + "    Object b() { return new java.util.ArrayList<String>(); }\n"
+                        + "    Object c() { return new java.net.Socket(); }\n}\n");
+        Map<String, List<String>> lists = new HashMap<>(); //class -> names of its object creations, in order
+        Analyzer analyzer = new Analyzer(dir.toFile());
+        analyzer.setEdgeSink((sourceFilePath, classInfo) -> {
+            List<String> list = new ArrayList<>();
+            for (int i = 0; i < classInfo.getNumEdges(); i++) list.add(classInfo.getSymbols().getName(classInfo.getEdgeDependencyId(i)));
+            synchronized (lists) {
+                lists.put(classInfo.getFullName(), list);
+            }
+        });
+        List<ClassInfo> classes = analyzer.analyze();
+        Set<String> allNames = new TreeSet<>();
+        for (List<String> list : lists.values()) allNames.addAll(list);
+        allNames.addAll(Arrays.asList("java.net", "org.sample.Missing", ""));
+        String[] fragments = {"java.util", "java.net.Socket", "Missing", "s0.C", "<not resolve>", "nothing"};
+        boolean repeated = false;
+        for (ClassInfo classInfo : classes) {
+            List<String> list = lists.get(classInfo.getFullName());
+            List<String> dependencies = classInfo.getDependencies();
+            //the same names as many times, in the order of their ids instead of the order of the source
+            assertEquals(list.size(), dependencies.size(), classInfo.getFullName());
+            List<String> sorted = new ArrayList<>(list), sortedDependencies = new ArrayList<>(dependencies);
+            Collections.sort(sorted);
+            Collections.sort(sortedDependencies);
+            assertEquals(sorted, sortedDependencies, classInfo.getFullName());
+            SymbolTable symbols = classInfo.getSymbols();
+            for (int i = 1; i < dependencies.size(); i++) {
+                assertTrue(symbols.getId(dependencies.get(i - 1)) <= symbols.getId(dependencies.get(i)), dependencies.toString());
+            }
+            int[] ids = classInfo.getDependencyIds(), counts = classInfo.getDependencyCounts();
+            for (int i = 0; i < ids.length; i++) {
+                assertEquals(Collections.frequency(list, symbols.getName(ids[i])), counts[i]);
+                repeated |= counts[i] > 1;
+            }
+            for (String name : allNames) assertEquals(list.contains(name), dependencies.contains(name), name);
+            assertFalse(dependencies.contains(null));
+            for (String fragment : fragments) {
+                assertEquals(list.stream().anyMatch(d -> d.contains(fragment)), classInfo.hasDependency(fragment), fragment);
+            }
+            boolean directExternal = false;
+            for (String name : list) directExternal |= !name.contains("org.apache." + dir) && !name.startsWith("java.util");
+            assertEquals(directExternal, classInfo.hasDirectExternalDependencies(), classInfo.getFullName());
+            assertEquals("{ " + classInfo.getFullName() + ", external dependencies: " + (classInfo.hasExternalDependencies() ? "Y" : "N")
+                    + ", dependencies: " + dependencies + "}\n", classInfo.toString());
+        }
+        assertTrue(repeated);
+    }
+}
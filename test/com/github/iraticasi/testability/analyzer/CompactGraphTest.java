@@ -0,0 +1,121 @@
+package com.github.iraticasi.testability.analyzer;
+
+import com.github.iraticasi.testability.SampleProject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Handing over the classes (Analyzer.analyze(ClassInfoHandler)) gives the same analysis as listing them
+ * <p>
+ * NOTES:
+ * The first policy keeps the classes of the project internal, so the "external" flag is spread through them
+ * (with the legacy policy every dependency on a class of the project is directly external).
+ * */
+
+public class CompactGraphTest {
+
+    @TempDir
+    Path dir;
+    private List<AnalysisPolicy> policies;
+
+    @BeforeEach
+    public void generateProject() throws IOException {
+        SampleProject.generate(dir, "org.sample", 150, 11);
+        policies = Arrays.asList(AnalysisPolicy.read("rooted", new StringReader("root auto\nallow java.util\n")), AnalysisPolicy.legacy());
+    }
+
+    private Analyzer newAnalyzer(int shards) {
+        Analyzer analyzer = new Analyzer(dir.toFile());
+        analyzer.setShards(shards);
+        analyzer.setPolicies(policies);
+        return analyzer;
+    }
+
+    @Test
+    public void handedOverClassesAreTheListedClasses() {
+        Analyzer listing = newAnalyzer(1);
+        Map<String, ClassInfo> expected = new HashMap<>();
+        for (ClassInfo classInfo : listing.analyze()) expected.put(classInfo.getFullName(), classInfo);
+        assertTrue(expected.values().stream().anyMatch(c -> c.hasExternalDependencies() && !c.hasDirectExternalDependencies()));
+        DependencyGraph dependencyGraph = listing.getDependencyGraph();
+        BitSet legacy = listing.getExternal(1);
+        for (int shards : new int[]{1, 4}) {
+            Analyzer streaming = newAnalyzer(shards);
+            Map<Integer, String> parsed = new HashMap<>();
+            CompactGraph[] handedOver = new CompactGraph[1];
+            streaming.analyze(new ClassInfoHandler() {
+                @Override
+                public synchronized void parsed(int id, ClassInfo classInfo, String sourceFilePath) {
+                    assertNull(parsed.put(id, classInfo.getFullName()));
+                }
+
+                @Override
+                public void analyzed(CompactGraph graph) {
+                    handedOver[0] = graph;
+                }
+            });
+            assertNull(streaming.getDependencyGraph());
+            CompactGraph graph = handedOver[0];
+            assertSame(streaming.getCompactGraph(), graph);
+            assertEquals(expected.size(), graph.size());
+            assertEquals(dependencyGraph.numEdges(), graph.numEdges());
+            BitSet streamingLegacy = streaming.getExternal(1);
+            for (int id = 0; id < graph.size(); id++) {
+                ClassInfo classInfo = expected.get(graph.getFullName(id));
+                assertEquals(parsed.get(id), graph.getFullName(id));
+                assertEquals(classInfo.getPkg(), graph.getPkg(id));
+                assertEquals(classInfo.getName(), graph.getName(id));
+                assertEquals(classInfo.hasDirectExternalDependencies(), graph.hasDirectExternalDependencies(id), classInfo.getFullName());
+                assertEquals(classInfo.hasExternalDependencies(), graph.isExternal(id), classInfo.getFullName());
+                assertEquals(legacy.get(dependencyGraph.getId(classInfo.getFullName())), streamingLegacy.get(id), classInfo.getFullName());
+            }
+            assertEquals(listing.getSyntacticResolved(), streaming.getSyntacticResolved());
+            assertEquals(listing.getBindingResolved(), streaming.getBindingResolved());
+            assertEquals(listing.getUnresolved(), streaming.getUnresolved());
+        }
+    }
+
+    @Test
+    public void sortedOnDiskReportIsTheReport() throws IOException {
+        Analyzer listing = newAnalyzer(1);
+        listing.analyze();
+        listing.makeReport("report.csv");
+        List<String> expected = Files.readAllLines(dir.resolve("report.csv"));
+        for (int maxInMemory : new int[]{1, 7, 1000}) {
+            newAnalyzer(4).makeReport("sorted.csv", maxInMemory);
+            assertEquals(expected, Files.readAllLines(dir.resolve("sorted.csv")), maxInMemory + " records in memory");
+        }
+        //the report of the classes handed over is the same
+        Analyzer streaming = newAnalyzer(1);
+        streaming.analyze(graph -> { });
+        streaming.makeReport("streamed.csv");
+        assertEquals(expected, Files.readAllLines(dir.resolve("streamed.csv")));
+    }
+
+    @Test
+    public void sorterSpillsRuns() throws IOException {
+        List<String[]> records = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 100; i++) records.add(new String[]{"p" + random.nextInt(5), "C" + random.nextInt(1000)});
+        Comparator<String[]> order = Comparator.comparing((String[] r) -> r[0]).thenComparing(r -> r[1]);
+        List<String[]> sorted = new ArrayList<>();
+        try (ExternalSorter sorter = new ExternalSorter(order, 8)) {
+            for (String[] record : records) sorter.add(record);
+            assertEquals(12, sorter.getNumRuns());
+            sorter.sorted(sorted::add);
+        }
+        records.sort(order);
+        assertEquals(records.size(), sorted.size());
+        for (int i = 0; i < records.size(); i++) assertArrayEquals(records.get(i), sorted.get(i));
+    }
+}
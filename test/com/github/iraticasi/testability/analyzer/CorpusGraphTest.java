@@ -0,0 +1,191 @@
+package com.github.iraticasi.testability.analyzer;
+
+import com.github.iraticasi.testability.SampleProject;
+import com.github.iraticasi.testability.report.CorpusReport;
+import com.github.iraticasi.testability.report.ProjectScheduler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of CorpusGraph on a generated corpus, against a in-memory graph of the analyzed classes
+ * <p>
+ * NOTES:
+ * Besides the generated classes, each project has a class that creates classes of the next project (imported and
+ * qualified) and a class org.shared.Util, directly external in the even projects only, so the dependencies between
+ * projects are resolved both to a class of the same project and to classes of other projects.
+ * */
+
+public class CorpusGraphTest {
+
+    private static final int PROJECTS = 5;
+
+    @TempDir
+    Path dir;
+    private File corpus;
+
+    @BeforeEach
+    public void generateCorpus() throws IOException {
+        corpus = dir.resolve("corpus").toFile();
+        for (int p = 0; p < PROJECTS; p++) {
+            Path project = corpus.toPath().resolve("project" + p);
+            SampleProject.generate(project, "org.p" + p, 20 + 10 * p, p);
+            int next = (p + 1) % PROJECTS;
+            SampleProject.write(project, "src/main/java",
+                    "package org.p" + p + ".s0;\nimport org.p" + next + ".s0.C1;\n\npublic class Bridge {\n"
+                            + "    Object a() { return new C1(); }\n    Object b() { return new org.p" + next + ".s0.C0(); }\n"
+                            + "    Object c() { return new org.shared.Util(); }\n}\n",
+                    "package org.shared;\n\npublic class Util {\n    Object a() { return "
+                            + (p % 2 == 0 ? "new java.net.Socket()" : "this") + "; }\n}\n",
+                    "package org.shared;\n\npublic class UsesUtil {\n    Object a() { return new Util(); }\n}\n");
+        }
+    }
+
+    /**
+     * In-memory graph of the classes of the corpus, resolved as CorpusGraph does
+     */
+    private static class Expected {
+        private List<String> names = new ArrayList<>();
+        private List<Boolean> projectExternal = new ArrayList<>();
+        private List<List<String>> dependencies = new ArrayList<>();
+        private List<List<Integer>> dependents = new ArrayList<>();
+        private BitSet external;
+        private long crossProject = 0;
+
+        private Expected(File corpus) {
+            List<Integer> projectOf = new ArrayList<>();
+            List<List<Boolean>> direct = new ArrayList<>();
+            List<File> projects = ProjectScheduler.listProjects(corpus);
+            for (int p = 0; p < projects.size(); p++) {
+                for (ClassInfo classInfo : new Analyzer(projects.get(p)).analyze()) {
+                    names.add(classInfo.getFullName());
+                    projectOf.add(p);
+                    projectExternal.add(classInfo.hasExternalDependencies());
+                    List<String> classDependencies = new ArrayList<>();
+                    List<Boolean> classDirect = new ArrayList<>();
+                    SymbolTable symbols = classInfo.getSymbols();
+                    for (int id : classInfo.getDependencyIds()) {
+                        int pkg = symbols.getPackage(id);
+                        classDependencies.add(CorpusGraph.canonicalName(symbols.getName(id), pkg < 0 ? null : symbols.getName(pkg)));
+                        classDirect.add(classInfo.isDirectExternalDependency(id));
+                    }
+                    dependencies.add(classDependencies);
+                    direct.add(classDirect);
+                }
+            }
+            int n = names.size();
+            Map<String, List<Integer>> byName = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                byName.computeIfAbsent(names.get(i), k -> new ArrayList<>()).add(i);
+                dependents.add(new ArrayList<>());
+            }
+            BitSet seeds = new BitSet();
+            for (int i = 0; i < n; i++) {
+                for (int d = 0; d < dependencies.get(i).size(); d++) {
+                    Integer sameProject = null;
+                    List<Integer> otherProjects = new ArrayList<>();
+                    for (int target : byName.getOrDefault(dependencies.get(i).get(d), Collections.emptyList())) {
+                        if (!projectOf.get(target).equals(projectOf.get(i))) otherProjects.add(target);
+                        else if (sameProject == null) sameProject = target;
+                    }
+                    if (sameProject != null) {
+                        dependents.get(sameProject).add(i);
+                    } else {
+                        for (int target : otherProjects) dependents.get(target).add(i);
+                        crossProject += otherProjects.size();
+                    }
+                    if (direct.get(i).get(d) && (sameProject != null || otherProjects.isEmpty())) seeds.set(i);
+                }
+            }
+            external = spread(seeds);
+        }
+
+        private BitSet spread(BitSet seeds) {
+            BitSet reached = (BitSet) seeds.clone();
+            Deque<Integer> queue = new ArrayDeque<>();
+            for (int i = seeds.nextSetBit(0); i >= 0; i = seeds.nextSetBit(i + 1)) queue.add(i);
+            while (!queue.isEmpty()) {
+                for (int dependent : dependents.get(queue.poll())) {
+                    if (!reached.get(dependent)) {
+                        reached.set(dependent);
+                        queue.add(dependent);
+                    }
+                }
+            }
+            return reached;
+        }
+
+        private BitSet reach(String prefix) {
+            BitSet seeds = new BitSet();
+            for (int i = 0; i < names.size(); i++) {
+                for (String dependency : dependencies.get(i)) {
+                    if (dependency.equals(prefix) || dependency.startsWith(prefix + ".")) seeds.set(i);
+                }
+            }
+            return spread(seeds);
+        }
+    }
+
+    @Test
+    public void sealedGraphIsTheGraphOfTheCorpus() throws IOException {
+        Expected expected = new Expected(corpus);
+        assertTrue(expected.crossProject > 0);
+        try (CorpusGraph graph = new CorpusReport(corpus, dir.resolve("graph").toFile()).build()) {
+            assertTrue(graph.isSealed());
+            assertEquals(expected.names.size(), graph.getNumNodes());
+            assertEquals(expected.crossProject, graph.getNumCrossProject());
+            for (int node = 0; node < graph.getNumNodes(); node++) {
+                assertEquals(expected.names.get(node), graph.getName(node));
+                assertEquals(expected.projectExternal.get(node), (graph.getFlags(node) & CorpusGraph.PROJECT_EXTERNAL) != 0, graph.getName(node));
+                assertEquals(expected.external.get(node), graph.isExternal(node), graph.getName(node));
+            }
+            for (String query : new String[]{"java.net", "java.io.File", "org.p1", "org.shared.Util", "java.util"}) {
+                assertEquals(expected.reach(query), graph.reach(query), query);
+            }
+            //the same name is resolved to the Util of each project, external in project0 but not in project1
+            int util = expected.names.indexOf("org.shared.Util");
+            assertTrue(graph.isExternal(util));
+            assertFalse(graph.isExternal(util + 1 + expected.names.subList(util + 1, expected.names.size()).indexOf("org.shared.Util")));
+        }
+    }
+
+    @Test
+    public void incrementalBuildIsTheFullBuild() throws IOException {
+        File full = dir.resolve("full").toFile();
+        new CorpusReport(corpus, full).build().close();
+        //build with the first projects, interrupt a append and build again with all of them
+        File partialCorpus = dir.resolve("partial").toFile();
+        List<File> projects = ProjectScheduler.listProjects(corpus);
+        partialCorpus.mkdirs();
+        for (File project : projects.subList(0, 2)) {
+            Files.move(project.toPath(), partialCorpus.toPath().resolve(project.getName()), java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+        }
+        File incremental = dir.resolve("incremental").toFile();
+        new CorpusReport(partialCorpus, incremental).build().close();
+        for (String column : new String[]{"node-hash.bin", "node-flags.bin", "node-edges.bin", "node-name.bin", "edges.bin", "strings.bin"}) {
+            try (RandomAccessFile file = new RandomAccessFile(new File(incremental, column), "rw")) {
+                file.seek(file.length());
+                file.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9}); //not committed in projects.tsv
+            }
+        }
+        for (File project : projects.subList(0, 2)) {
+            Files.move(partialCorpus.toPath().resolve(project.getName()), project.toPath(), java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+        }
+        try (CorpusGraph graph = new CorpusReport(corpus, incremental).build()) {
+            assertEquals(PROJECTS, graph.getProjects().size());
+        }
+        for (File file : Objects.requireNonNull(full.listFiles())) {
+            assertArrayEquals(Files.readAllBytes(file.toPath()), Files.readAllBytes(new File(incremental, file.getName()).toPath()), file.getName());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.iraticasi.testability.analyzer;
+
+import com.github.iraticasi.testability.SampleProject;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.ISourceFileCoverage;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.LoggerRuntime;
+import org.jacoco.core.runtime.RuntimeData;
+import org.jacoco.core.tools.ExecFileLoader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of CoverageIndex against the coverage computed by JaCoCo itself
+ * <p>
+ * NOTES:
+ * A small project is compiled, its classes instrumented and run in two sessions that execute different branches,
+ * and both sessions are written to a execution data file of the project, as a build with the JaCoCo agent would.
+ * */
+
+public class CoverageIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private static class InstrumentedLoader extends ClassLoader {
+        private Map<String, byte[]> classes = new HashMap<>();
+
+        private InstrumentedLoader() {
+            super(CoverageIndexTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) throw new ClassNotFoundException(name);
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    @Test
+    public void countersAreTheOnesOfJaCoCo() throws Exception {
+        SampleProject.write(dir, "src/main/java",
+                "package org.sample;\n\npublic class A {\n    public static int f(boolean b) {\n        if (b) {\n"
+                        + "            return new Inner().g();\n        }\n        return new java.io.File(\"f\").getName().length();\n    }\n\n"
+                        + "    static class Inner {\n        int g() {\n            return 1;\n        }\n    }\n}\n",
+                "package org.sample;\n\npublic class B {\n    public static int f() {\n        return 2;\n    }\n}\n",
+                "package org.sample.other;\n\npublic class C {\n    public static int f(int x) {\n        return x > 0 ? x : -x;\n    }\n}\n");
+        File classes = dir.resolve("target/classes").toFile();
+        List<String> arguments = new ArrayList<>(Arrays.asList("-g", "--release", "10", "-d", classes.getPath()));
+        try (java.util.stream.Stream<Path> files = Files.walk(dir.resolve("src"))) {
+            files.filter(file -> file.toString().endsWith(".java")).forEach(file -> arguments.add(file.toString()));
+        }
+        assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, arguments.toArray(new String[0])));
+
+        //run the instrumented classes in two sessions
+        LoggerRuntime runtime = new LoggerRuntime();
+        RuntimeData data = new RuntimeData();
+        runtime.startup(data);
+        InstrumentedLoader loader = new InstrumentedLoader();
+        Instrumenter instrumenter = new Instrumenter(runtime);
+        try (java.util.stream.Stream<Path> files = Files.walk(classes.toPath())) {
+            for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".class"))::iterator) {
+                String name = classes.toPath().relativize(file).toString().replace(File.separatorChar, '.').replace(".class", "");
+                loader.classes.put(name, instrumenter.instrument(Files.readAllBytes(file), name));
+            }
+        }
+        File execFile = dir.resolve("target/jacoco.exec").toFile();
+        try (OutputStream out = new FileOutputStream(execFile)) {
+            ExecutionDataWriter writer = new ExecutionDataWriter(out);
+            loader.loadClass("org.sample.A").getMethod("f", boolean.class).invoke(null, true);
+            loader.loadClass("org.sample.other.C").getMethod("f", int.class).invoke(null, 3);
+            data.collect(writer, writer, true);
+            loader.loadClass("org.sample.A").getMethod("f", boolean.class).invoke(null, false);
+            data.collect(writer, writer, true);
+        } finally {
+            runtime.shutdown();
+        }
+
+        //coverage of the source files, by JaCoCo
+        ExecFileLoader execFileLoader = new ExecFileLoader();
+        execFileLoader.load(execFile);
+        assertEquals(2, execFileLoader.getSessionInfoStore().getInfos().size());
+        CoverageBuilder builder = new CoverageBuilder();
+        new org.jacoco.core.analysis.Analyzer(execFileLoader.getExecutionDataStore(), builder).analyzeAll(classes);
+        Map<String, ISourceFileCoverage> expected = new HashMap<>();
+        for (ISourceFileCoverage sourceFile : builder.getSourceFiles()) {
+            expected.put(sourceFile.getPackageName().replace('/', '.') + "." + sourceFile.getName().replace(".java", ""), sourceFile);
+        }
+
+        Analyzer analyzer = new Analyzer(dir.toFile());
+        List<ClassInfo> classInfos = analyzer.analyze();
+        assertEquals(3, classInfos.size());
+        CoverageIndex index = CoverageIndex.build(dir.toFile(), analyzer.getScan().getBuildFilePaths());
+        assertEquals(1, index.getNumExecFiles());
+        assertTrue(index.isResolved());
+        for (ClassInfo classInfo : classInfos) {
+            ISourceFileCoverage sourceFile = expected.get(classInfo.getFullName());
+            String name = classInfo.getFullName();
+            assertEquals(sourceFile.getLineCounter().getCoveredCount(), index.get(classInfo, CoverageIndex.COVERED_LINES), name);
+            assertEquals(sourceFile.getLineCounter().getTotalCount(), index.get(classInfo, CoverageIndex.LINES), name);
+            assertEquals(sourceFile.getBranchCounter().getCoveredCount(), index.get(classInfo, CoverageIndex.COVERED_BRANCHES), name);
+            assertEquals(sourceFile.getBranchCounter().getTotalCount(), index.get(classInfo, CoverageIndex.BRANCHES), name);
+            assertEquals(!name.equals("org.sample.B"), index.isCovered(classInfo), name);
+        }
+        ClassInfo a = classInfos.stream().filter(c -> c.getName().equals("A")).findFirst().get();
+        assertEquals(2, index.get(a, CoverageIndex.COVERED_BRANCHES)); //one branch in each session, so both are covered
+
+        //without the class files only the probes are known
+        CoverageIndex probes = new CoverageIndex();
+        probes.load(execFile);
+        assertFalse(probes.isResolved());
+        for (ClassInfo classInfo : classInfos) {
+            assertEquals(index.isCovered(classInfo), probes.isCovered(classInfo), classInfo.getFullName());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.github.iraticasi.testability.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of DependencyGraph.propagate on generated graphs
+ * <p>
+ * NOTES:
+ * The propagation is compared with a naive fixpoint of the definition of "external" (a class is external if it is
+ * directly external or depends on a external class) and with the loop of the Analyzer before the graph, which
+ * split the classes the other way round (so it never spread anything) and, with the split fixed, only marked
+ * the first dependent of each external class.
+ * */
+
+public class DependencyGraphTest {
+
+    private static final int NUM_GRAPHS = 300;
+
+    /**
+     * Generated graph: classes p.C0 .. p.C(n-1), the dependencies of each one (ids, some of them of classes
+     * out of the project) and whether it is directly external
+     */
+    private static class Graph {
+        private int n;
+        private int[][] dependencies;
+        private boolean[] direct;
+
+        private Graph(Random random) {
+            n = 1 + random.nextInt(60);
+            dependencies = new int[n][];
+            direct = new boolean[n];
+            double density = random.nextDouble() * 3;
+            for (int i = 0; i < n; i++) {
+                direct[i] = random.nextDouble() < 0.1;
+                int numDependencies = (int) (random.nextDouble() * 2 * density);
+                dependencies[i] = new int[numDependencies];
+                for (int d = 0; d < numDependencies; d++) dependencies[i][d] = random.nextInt(n + 5); //n.. are not classes of the project
+            }
+        }
+
+        private List<ClassInfo> toClasses() {
+            SymbolTable symbols = new SymbolTable();
+            List<ClassInfo> classes = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                String[] names = new String[dependencies[i].length];
+                String[] pkgs = new String[names.length];
+                int[] counts = new int[names.length];
+                for (int d = 0; d < names.length; d++) {
+                    names[d] = "p.C" + dependencies[i][d];
+                    pkgs[d] = "p";
+                    counts[d] = 1;
+                }
+                classes.add(new ClassInfo("C" + i, "p", "project", symbols, names, pkgs, counts, direct[i]));
+            }
+            return classes;
+        }
+    }
+
+    private static boolean[] propagate(Graph graph) {
+        List<ClassInfo> classes = graph.toClasses();
+        new DependencyGraph(classes).propagate();
+        boolean[] external = new boolean[graph.n];
+        for (int i = 0; i < graph.n; i++) external[i] = classes.get(i).hasExternalDependencies();
+        return external;
+    }
+
+    /**
+     * Naive fixpoint of the definition of "external"
+     */
+    private static boolean[] fixpoint(Graph graph) {
+        boolean[] external = graph.direct.clone();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < graph.n; i++) {
+                if (external[i]) continue;
+                for (int dependency : graph.dependencies[i]) {
+                    if (dependency < graph.n && external[dependency]) {
+                        external[i] = true;
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return external;
+    }
+
+    /**
+     * Loop of the Analyzer before DependencyGraph, on ClassInfo lists as it was
+     * @param fixedSplit whether the classes with external dependencies are the ones spread
+     *                   (the original code put them in the list of classes without them)
+     */
+    private static boolean[] previousLoop(Graph graph, boolean fixedSplit) {
+        List<ClassInfo> classes = graph.toClasses();
+        List<ClassInfo> withExternal = new ArrayList<>();
+        List<ClassInfo> noExternal = new ArrayList<>();
+        for (ClassInfo classInfo : classes) {
+            if (classInfo.hasExternalDependencies() == fixedSplit) {
+                withExternal.add(classInfo);
+            } else {
+                noExternal.add(classInfo);
+            }
+        }
+        int i = 0;
+        while (i < withExternal.size()) {
+            ClassInfo badClassInfo = withExternal.get(i);
+            boolean dependencyMatch = false;
+            int j = 0;
+            while (j < noExternal.size() & !dependencyMatch) {
+                ClassInfo goodClassInfo = noExternal.get(j);
+                if (goodClassInfo.getDependencies().contains(badClassInfo.getFullName())) {
+                    dependencyMatch = true;
+                    goodClassInfo.setExternalDependencies(true);
+                    noExternal.remove(j);
+                    withExternal.add(goodClassInfo);
+                }
+                j++;
+            }
+            i++;
+        }
+        boolean[] external = new boolean[graph.n];
+        for (int c = 0; c < graph.n; c++) external[c] = classes.get(c).hasExternalDependencies();
+        return external;
+    }
+
+    @Test
+    public void propagationIsTheFixpoint() {
+        Random random = new Random(1);
+        for (int g = 0; g < NUM_GRAPHS; g++) {
+            Graph graph = new Graph(random);
+            assertArrayEquals(fixpoint(graph), propagate(graph), "graph " + g);
+        }
+    }
+
+    @Test
+    public void previousLoopNeverSpread() {
+        Random random = new Random(2);
+        for (int g = 0; g < NUM_GRAPHS; g++) {
+            Graph graph = new Graph(random);
+            assertArrayEquals(graph.direct, previousLoop(graph, false), "graph " + g);
+        }
+    }
+
+    @Test
+    public void fixedPreviousLoopIsContained() {
+        Random random = new Random(3);
+        int missed = 0;
+        for (int g = 0; g < NUM_GRAPHS; g++) {
+            Graph graph = new Graph(random);
+            boolean[] external = propagate(graph);
+            boolean[] previous = previousLoop(graph, true);
+            for (int i = 0; i < graph.n; i++) {
+                assertTrue(!previous[i] || external[i], "graph " + g + ", class " + i);
+                if (external[i] && !previous[i]) missed++;
+            }
+        }
+        assertTrue(missed > 0, "the previous loop only marks the first dependent of each class");
+    }
+
+    @Test
+    public void propagationPathEndsInADirectlyExternalClass() {
+        Random random = new Random(4);
+        for (int g = 0; g < NUM_GRAPHS; g++) {
+            Graph graph = new Graph(random);
+            List<ClassInfo> classes = graph.toClasses();
+            DependencyGraph dependencyGraph = new DependencyGraph(classes);
+            dependencyGraph.propagate();
+            for (int i = 0; i < graph.n; i++) {
+                List<ClassInfo> path = dependencyGraph.getPropagationPath("p.C" + i);
+                if (!classes.get(i).hasExternalDependencies()) {
+                    assertTrue(path.isEmpty());
+                    continue;
+                }
+                assertEquals("p.C" + i, path.get(0).getFullName());
+                assertTrue(path.get(path.size() - 1).hasDirectExternalDependencies());
+                for (int step = 1; step < path.size(); step++) {
+                    assertTrue(path.get(step - 1).getDependencies().contains(path.get(step).getFullName()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void assumedExternalClassesAreSpread() {
+        Random random = new Random(5);
+        for (int g = 0; g < NUM_GRAPHS; g++) {
+            Graph graph = new Graph(random);
+            int assumed = random.nextInt(graph.n);
+            BitSet assumedExternal = new BitSet();
+            assumedExternal.set(assumed);
+            List<ClassInfo> classes = graph.toClasses();
+            new DependencyGraph(classes).propagate(assumedExternal);
+            graph.direct[assumed] = true;
+            boolean[] expected = fixpoint(graph);
+            for (int i = 0; i < graph.n; i++) assertEquals(expected[i], classes.get(i).hasExternalDependencies(), "graph " + g);
+        }
+    }
+}
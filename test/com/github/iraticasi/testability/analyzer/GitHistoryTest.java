@@ -0,0 +1,77 @@
+package com.github.iraticasi.testability.analyzer;
+
+import com.github.iraticasi.testability.SampleProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of GitHistory on a local repository: each commit gives the classes of a analysis of its checkout,
+ * parsing only the changed files
+ */
+public class GitHistoryTest {
+
+    @TempDir
+    Path dir;
+
+    private void commit(File repository, String message) throws IOException {
+        GitHistory.git(repository, "add", "-A");
+        GitHistory.git(repository, "-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", message);
+    }
+
+    private static Map<String, Boolean> external(Collection<ClassInfo> classes) {
+        Map<String, Boolean> external = new TreeMap<>();
+        for (ClassInfo classInfo : classes) external.put(classInfo.getFullName(), classInfo.hasExternalDependencies());
+        return external;
+    }
+
+    @Test
+    public void commitsAreTheirCheckouts() throws IOException {
+        File repository = dir.resolve("repository").toFile();
+        Path root = repository.toPath();
+        SampleProject.generate(root, "org.sample", 60, 9);
+        SampleProject.write(root, "src/main/java",
+                "package org.sample.s0;\n\npublic class A {\n    Object a() { return new java.net.Socket(); }\n}\n",
+                "package org.sample.s1;\nimport org.sample.s0.A;\n\npublic class B {\n    Object a() { return new A(); }\n}\n");
+        GitHistory.git(repository, "init", "-q");
+        commit(repository, "first");
+        SampleProject.write(root, "src/main/java", "package org.sample.s0;\n\npublic class A {\n    Object a() { return this; }\n}\n");
+        commit(repository, "A is not external");
+        Files.copy(root.resolve("src/main/java/org/sample/s1/B.java"), root.resolve("src/main/java/org/sample/s1/B2.java"));
+        Files.delete(root.resolve("src/main/java/org/sample/s0/C0.java"));
+        commit(repository, "B copied and C0 removed");
+
+        List<String> commits = new ArrayList<>();
+        List<Map<String, Boolean>> revisions = new ArrayList<>();
+        List<Integer> parsed = new ArrayList<>(), numSourceFiles = new ArrayList<>();
+        GitHistory history = new GitHistory(repository);
+        history.analyze("HEAD", revision -> {
+            commits.add(revision.getCommit());
+            DependencyGraph graph = revision.getDependencyGraph();
+            Map<String, Boolean> external = new TreeMap<>();
+            for (int id = 0; id < graph.size(); id++) external.put(graph.getClassInfo(id).getFullName(), graph.isExternal(id));
+            revisions.add(external);
+            parsed.add(revision.getNumParsed());
+            numSourceFiles.add(revision.getNumSourceFiles());
+        });
+        assertEquals(3, commits.size());
+        assertEquals(Arrays.asList(numSourceFiles.get(0), 1, 0), parsed); //all, A, nothing (B2 is the blob of B)
+        assertEquals(numSourceFiles.get(0), numSourceFiles.get(2));
+        assertEquals(Boolean.TRUE, revisions.get(0).get("org.sample.s0.A"));
+        assertEquals(Boolean.FALSE, revisions.get(1).get("org.sample.s0.A"));
+        assertFalse(revisions.get(2).containsKey("org.sample.s0.C0"));
+        for (int i = 0; i < commits.size(); i++) {
+            File checkout = dir.resolve("checkout" + i).toFile();
+            GitHistory.git(repository, "worktree", "add", "-q", "--detach", checkout.getPath(), commits.get(i));
+            assertEquals(external(new Analyzer(checkout).analyze()), revisions.get(i), "commit " + i);
+        }
+    }
+}
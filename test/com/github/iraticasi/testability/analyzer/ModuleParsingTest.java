@@ -0,0 +1,65 @@
+package com.github.iraticasi.testability.analyzer;
+
+import com.github.iraticasi.testability.SampleProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Parsing per module resolves the files that fall back to bindings with the source roots and classpath of their module
+ * <p>
+ * NOTES:
+ * Module b depends on module a, whose compiled classes have a type without source (org.a.gen.Generated) that b
+ * imports on demand, so it can not be resolved syntactically and is only found in the classpath of b.
+ * */
+
+public class ModuleParsingTest {
+
+    @TempDir
+    Path dir;
+
+    private Map<String, String> analyze(boolean syntactic) {
+        Analyzer analyzer = new Analyzer(dir.resolve("project").toFile());
+        analyzer.setModules(true);
+        analyzer.setSyntactic(syntactic);
+        Map<String, String> packages = new TreeMap<>(); //class -> dependency -> its package
+        for (ClassInfo classInfo : analyzer.analyze()) {
+            SymbolTable symbols = classInfo.getSymbols();
+            for (int id : classInfo.getDependencyIds()) {
+                int pkg = symbols.getPackage(id);
+                packages.put(classInfo.getFullName() + " -> " + symbols.getName(id), pkg < 0 ? null : symbols.getName(pkg));
+            }
+        }
+        return packages;
+    }
+
+    @Test
+    public void fallbackFilesUseTheirModule() throws IOException {
+        Path project = dir.resolve("project");
+        Path generated = dir.resolve("generated/org/a/gen/Generated.java");
+        Files.createDirectories(generated.getParent());
+        Files.write(generated, "package org.a.gen;\n\npublic class Generated {\n}\n".getBytes(StandardCharsets.UTF_8));
+        Path classes = Files.createDirectories(project.resolve("a/build/classes/java/main"));
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, "-d", classes.toString(), generated.toString()));
+        SampleProject.write(project.resolve("a"), "src/main/java",
+                "package org.a;\n\npublic class A {\n    Object f() { return new java.util.ArrayList<String>(); }\n}\n");
+        SampleProject.write(project.resolve("b"), "src/main/java",
+                "package org.b;\nimport org.a.gen.*;\n\npublic class B {\n    Object f() { return new Generated(); }\n}\n");
+        Files.write(project.resolve("a/build.gradle"), "apply plugin: 'java'\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(project.resolve("b/build.gradle"), "dependencies {\n    implementation project(':a')\n}\n".getBytes(StandardCharsets.UTF_8));
+        Map<String, String> bound = analyze(false);
+        assertEquals("org.a.gen", bound.get("org.b.B -> org.a.gen.Generated"), bound.toString());
+        assertEquals(bound, analyze(true));
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.iraticasi.testability.analyzer;
+
+import com.github.iraticasi.testability.SampleProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of the rules of the policies compiled for a project (PolicySet)
+ * <p>
+ * NOTES:
+ * The legacy policy is checked against the original rule of the tool (ClassInfo.isExternalDependency before the
+ * policies): a dependency is external unless it contains org.apache.PROJECT or starts with java.util.
+ * */
+
+public class PolicySetTest {
+
+    @TempDir
+    Path dir;
+
+    private static AnalysisPolicy policy(String rules) throws IOException {
+        return AnalysisPolicy.read("test", new StringReader(rules));
+    }
+
+    private static PolicySet compile(String rules, List<String> sourceFilePaths, Map<String, String> packages) throws IOException {
+        return PolicySet.compile(Collections.singletonList(policy(rules)), "project", sourceFilePaths, packages::get);
+    }
+
+    private static boolean oldIsExternalDependency(String dependency, String project) {
+        return !dependency.contains("org.apache." + project) && !dependency.startsWith("java.util");
+    }
+
+    @Test
+    public void rootIsTheDominantPackage() throws IOException {
+        Map<String, String> packages = new LinkedHashMap<>();
+        packages.put("src/org/x/core/A.java", "org.x.core");
+        packages.put("src/org/x/core/B.java", "org.x.core");
+        packages.put("src/org/x/core/C.java", "org.x.core");
+        packages.put("src/org/x/util/D.java", "org.x.util");
+        packages.put("src/org/x/util/E.java", "org.x.util");
+        packages.put("src/com/other/F.java", "com.other");
+        packages.put("src/Main.java", null);
+        List<String> paths = new ArrayList<>(packages.keySet());
+        //org.x.core has half of the files with a package, not more; org has more but a single segment
+        assertEquals("org.x", AnalysisPolicy.detectRootPackage(paths, packages::get));
+        PolicySet policies = compile("root auto\ndeny org.x.core.spi\n", paths, packages);
+        assertEquals("org.x", policies.getRoot(0));
+        assertEquals(0, policies.evaluate("org.x.util.D"));
+        assertEquals(0, policies.evaluate("org.x"));
+        assertEquals(1, policies.evaluate("org.xy.A"));
+        assertEquals(1, policies.evaluate("com.other.F"));
+        assertEquals(1, policies.evaluate("org.x.core.spi.Provider")); //an explicit rule overrides the root
+        //a explicit root is taken as is, and no root is detected without a dominant package
+        assertEquals("com.other", compile("root com.other\n", paths, packages).getRoot(0));
+        packages.put("src/com/other/G.java", "com.other");
+        packages.put("src/com/other/H.java", "com.other");
+        packages.put("src/com/other/I.java", "com.other");
+        packages.put("src/com/other/J.java", "com.other");
+        assertNull(AnalysisPolicy.detectRootPackage(new ArrayList<>(packages.keySet()), packages::get));
+        assertNull(compile("root auto\n", new ArrayList<>(packages.keySet()), packages).getRoot(0));
+        assertEquals(1, compile("root auto\n", new ArrayList<>(packages.keySet()), packages).evaluate("org.x.util.D"));
+    }
+
+    @Test
+    public void samePackageRuleAppliesToTheClass() throws IOException {
+        SampleProject.write(dir, "src/main/java",
+                "package org.x;\n\npublic class A {\n    Object a() { return new B(); }\n}\n",
+                "package org.x;\n\npublic class B {\n    Object a() { return new org.y.C(); }\n}\n",
+                "package org.y;\n\npublic class C {\n    Object a() { return new org.x.B(); }\n}\n");
+        Analyzer analyzer = new Analyzer(dir.toFile());
+        analyzer.setPolicies(Arrays.asList(policy("same-package internal\n"), policy("same-package external\n")));
+        Map<String, Integer> masks = new TreeMap<>();
+        for (ClassInfo classInfo : analyzer.analyze()) masks.put(classInfo.getFullName(), classInfo.getDirectExternalMask());
+        Map<String, Integer> expected = new TreeMap<>();
+        expected.put("org.x.A", 2); //org.x.B is in its package
+        expected.put("org.x.B", 3);
+        expected.put("org.y.C", 3); //org.x.B is not
+        assertEquals(expected, masks);
+        assertEquals(1, PolicySet.compile(Arrays.asList(policy("same-package internal\n"), policy("\n")), "project",
+                Collections.emptyList()).getSamePackageMask());
+    }
+
+    @Test
+    public void valueTypesAreNotExternal() throws IOException {
+        PolicySet policies = compile("value java.time\nvalue java.lang.String\nvalue java.math.Big*\ndeny java.time.chrono\n",
+                Collections.emptyList(), Collections.emptyMap());
+        for (String value : new String[]{"java.time.LocalDate", "java.time.format.DateTimeFormatter", "java.lang.String",
+                "java.math.BigDecimal", "java.math.BigInteger"}) {
+            assertEquals(0, policies.evaluate(value), value);
+        }
+        for (String external : new String[]{"java.lang.StringBuilder", "java.timex.Clock", "java.math.MathContext",
+                "java.time.chrono.HijrahDate", "java.io.File"}) {
+            assertEquals(1, policies.evaluate(external), external);
+        }
+    }
+
+    @Test
+    public void legacyPolicyIsTheOldRule() throws IOException {
+        SampleProject.generate(dir, "org.apache.sample", 120, 5);
+        SampleProject.write(dir, "src/main/java",
+                "package org.apache.sample.s0;\n\npublic class Utils {\n"
+                        + "    Object a() { return new java.util.concurrent.ConcurrentHashMap<String, String>(); }\n}\n");
+        Analyzer analyzer = new Analyzer(dir.toFile());
+        Set<String> names = new TreeSet<>();
+        int directExternal = 0;
+        for (ClassInfo classInfo : analyzer.analyze()) {
+            SymbolTable symbols = classInfo.getSymbols();
+            boolean any = false;
+            for (int id : classInfo.getDependencyIds()) {
+                String name = symbols.getName(id);
+                names.add(name);
+                boolean old = oldIsExternalDependency(name, dir.toString()); //the analyzer gives the path as project
+                assertEquals(old, classInfo.isDirectExternalDependency(id), classInfo.getFullName() + " -> " + name);
+                any |= old;
+            }
+            assertEquals(any, classInfo.hasDirectExternalDependencies(), classInfo.getFullName());
+            if (any) directExternal++;
+        }
+        assertTrue(directExternal > 0);
+        //with a project name, the allowed infix matters too (and names out of package boundaries)
+        names.addAll(Arrays.asList("java.utilx.Thing", "java.util", "org.apache.samplex.A", "org.apache.A"));
+        PolicySet legacy = PolicySet.legacy("sample");
+        for (String name : names) {
+            for (String variant : new String[]{name, "org.apache." + name, "x.org.apache.sample" + name}) {
+                assertEquals(oldIsExternalDependency(variant, "sample"), legacy.evaluate(variant) == 1, variant);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.iraticasi.testability.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of PrefixMatcher, alone and as the prefix rules of a policy
+ * */
+
+public class PrefixMatcherTest {
+
+    @Test
+    public void longestPrefixWins() {
+        PrefixMatcher matcher = new PrefixMatcher();
+        matcher.add("java", false, 1);
+        matcher.add("java.util", false, 2);
+        matcher.add("java.util.concurrent", false, 3);
+        assertEquals(1, matcher.match("java.io.File"));
+        assertEquals(2, matcher.match("java.util.List"));
+        assertEquals(3, matcher.match("java.util.concurrent.atomic.AtomicLong"));
+        assertEquals(3, matcher.match("java.util.concurrent"));
+        assertEquals(-1, matcher.match("javax.sql.DataSource"));
+        assertEquals(-1, matcher.match("org.x.A"));
+        //adding the same prefix again replaces its value
+        matcher.add("java.util", false, 4);
+        assertEquals(4, matcher.match("java.util.List"));
+    }
+
+    @Test
+    public void prefixesMatchAtPackageBoundaries() {
+        PrefixMatcher matcher = new PrefixMatcher();
+        matcher.add("java.util", false, 1);
+        assertEquals(1, matcher.match("java.util"));
+        assertEquals(1, matcher.match("java.util.Map"));
+        assertEquals(-1, matcher.match("java.utilx.Map"));
+        assertEquals(-1, matcher.match("java.utilx"));
+        assertEquals(-1, matcher.match("java.uti"));
+        assertEquals(-1, matcher.match(""));
+        //a shorter prefix still matches at its own boundary
+        matcher.add("java", false, 2);
+        assertEquals(2, matcher.match("java.utilx.Map"));
+    }
+
+    @Test
+    public void rawPrefixesMatchAnyName() {
+        PrefixMatcher matcher = new PrefixMatcher();
+        matcher.add("java.util", true, 1);
+        assertEquals(1, matcher.match("java.util.Map"));
+        assertEquals(1, matcher.match("java.utilx.Map"));
+        assertEquals(1, matcher.match("java.util"));
+        assertEquals(-1, matcher.match("java.uti"));
+        //a longer non raw prefix wins only at its boundaries
+        matcher.add("java.util.concurrent", false, 2);
+        assertEquals(2, matcher.match("java.util.concurrent.Future"));
+        assertEquals(1, matcher.match("java.util.concurrentx.Future"));
+    }
+
+    @Test
+    public void denyOverridesAllowInPolicies() throws IOException {
+        PolicySet policies = PolicySet.compile(Arrays.asList(
+                AnalysisPolicy.read("deny", new StringReader("default internal\nallow java\ndeny java.net\nallow java.net.URI\n")),
+                AnalysisPolicy.read("star", new StringReader("allow java.util*\ndeny java.util.concurrent*\n"))),
+                "project", Collections.emptyList());
+        assertEquals(0, policies.evaluate("java.io.File") & 1);
+        assertEquals(1, policies.evaluate("java.net.Socket") & 1); //the longer deny overrides the allow
+        assertEquals(0, policies.evaluate("java.net.URI") & 1); //and a longer allow overrides the deny
+        assertEquals(0, policies.evaluate("java.utilx.List") & 2);
+        assertEquals(2, policies.evaluate("java.util.concurrentx.Future") & 2);
+        assertEquals(2, policies.evaluate("org.x.A") & 2);
+        assertEquals(0, policies.evaluate("org.x.A") & 1);
+        //of equal prefixes, the last rule decides
+        PolicySet last = PolicySet.compile(Collections.singletonList(
+                AnalysisPolicy.read("last", new StringReader("allow java.io\ndeny java.io\n"))),
+                "project", Collections.emptyList());
+        assertEquals(1, last.evaluate("java.io.File"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.iraticasi.testability.analyzer;
+
+import com.github.iraticasi.testability.SampleProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Parsing the source files in several batches gives the same classes as parsing them in a single one
+ */
+public class ShardedParsingTest {
+
+    @TempDir
+    Path dir;
+
+    private List<ClassInfo> analyze(int shards, String report) throws IOException {
+        Analyzer analyzer = new Analyzer(dir.toFile());
+        analyzer.setShards(shards);
+        List<ClassInfo> classes = new ArrayList<>(analyzer.analyze());
+        analyzer.makeReport(report);
+        Collections.sort(classes);
+        return classes;
+    }
+
+    /**
+     * @return number of violations of each dependency, by name (the ids depend on the order the files are parsed)
+     */
+    private static Map<String, Integer> dependencies(ClassInfo classInfo) {
+        Map<String, Integer> dependencies = new TreeMap<>();
+        int[] ids = classInfo.getDependencyIds(), counts = classInfo.getDependencyCounts();
+        for (int i = 0; i < ids.length; i++) dependencies.put(classInfo.getSymbols().getName(ids[i]), counts[i]);
+        return dependencies;
+    }
+
+    @Test
+    public void shardsGiveTheSingleBatchClasses() throws IOException {
+        SampleProject.generate(dir, "org.sample", 150, 7); //8 packages, importing each other
+        List<ClassInfo> expected = analyze(1, "single.csv");
+        assertTrue(expected.stream().anyMatch(ClassInfo::hasExternalDependencies) && !expected.stream().allMatch(ClassInfo::hasExternalDependencies));
+        for (int shards : new int[]{2, 4, 16}) {
+            List<ClassInfo> classes = analyze(shards, "sharded.csv");
+            assertEquals(expected.size(), classes.size());
+            for (int i = 0; i < expected.size(); i++) {
+                ClassInfo single = expected.get(i), sharded = classes.get(i);
+                assertEquals(single.getFullName(), sharded.getFullName());
+                assertEquals(dependencies(single), dependencies(sharded), single.getFullName());
+                assertEquals(single.hasExternalDependencies(), sharded.hasExternalDependencies(), single.getFullName());
+            }
+            assertEquals(Files.readAllLines(dir.resolve("single.csv")), Files.readAllLines(dir.resolve("sharded.csv")), shards + " shards");
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.iraticasi.testability.analyzer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of SourceScanner: the sequential walk, the parallel walk and the scan of a listing find the same files,
+ * and skip the same directories
+ * <p>
+ * NOTES:
+ * The generated tree has modules with and without a build file, each with build output directories (target, build)
+ * and version control or dependencies directories (.git, node_modules) that have java files too.
+ * */
+
+public class SourceScannerTest {
+
+    @TempDir
+    Path dir;
+    private Path project;
+
+    private void write(String relativePath) throws IOException {
+        Path file = project.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.write(file, "class X {\n}\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @BeforeEach
+    public void generateTree() throws IOException {
+        project = dir.resolve("project");
+        Random random = new Random(7);
+        for (int m = 0; m < 6; m++) {
+            String module = "module" + m + "/";
+            if (m % 2 == 0) write(module + (m % 4 == 0 ? "pom.xml" : "build.gradle"));
+            for (int p = 0; p < 4; p++) {
+                String pkg = module + "src/main/java/org/m" + m + "/p" + p + "/";
+                for (int c = 0; c < 1 + random.nextInt(6); c++) {
+                    write(pkg + "C" + c + ".java");
+                    if (random.nextBoolean()) write(module + "src/test/java/org/m" + m + "/p" + p + "/C" + c + "Test.java");
+                }
+                write(pkg + "package-info.java");
+                write(pkg + "notes.txt");
+            }
+            write(module + "target/generated-sources/org/m" + m + "/Generated.java");
+            write(module + "build/org/m" + m + "/Built.java");
+            write(module + ".git/hooks/Hook.java");
+            write(module + "node_modules/lib/Lib.java");
+            write(module + "src/main/java/org/m" + m + "/target/Kept.java"); //no build file next to it
+        }
+        write("Root.java");
+        write("node_modules/Skipped.java");
+        write(".git/Skipped.java");
+        write("target/KeptToo.java"); //no build file in the base folder
+    }
+
+    private SourceScanner.Scan scan(int parallelism) {
+        SourceScanner scanner = new SourceScanner();
+        scanner.setParallelism(parallelism);
+        return scanner.scan(project);
+    }
+
+    private static List<String> relative(Path project, List<String> paths) {
+        return paths.stream().map(p -> project.relativize(Paths.get(p)).toString().replace('\\', '/')).collect(Collectors.toList());
+    }
+
+    @Test
+    public void parallelWalkIsTheSequentialWalk() {
+        SourceScanner.Scan sequential = scan(1);
+        for (int parallelism : new int[]{2, 8}) {
+            SourceScanner.Scan parallel = scan(parallelism);
+            assertEquals(sequential.getSourceFilePaths(), parallel.getSourceFilePaths(), parallelism + " threads");
+            assertEquals(sequential.getTestFilePaths(), parallel.getTestFilePaths(), parallelism + " threads");
+            assertEquals(sequential.getSourceDirPaths(), parallel.getSourceDirPaths(), parallelism + " threads");
+            assertEquals(sequential.getBuildFilePaths(), parallel.getBuildFilePaths(), parallelism + " threads");
+            assertEquals(sequential.getTestFileNames(), parallel.getTestFileNames(), parallelism + " threads");
+        }
+    }
+
+    @Test
+    public void buildOutputsAreSkippedOnlyNextToABuildFile() {
+        Set<String> sources = new TreeSet<>(relative(project, scan(1).getSourceFilePaths()));
+        for (int m = 0; m < 6; m++) {
+            boolean buildFile = m % 2 == 0;
+            assertEquals(!buildFile, sources.contains("module" + m + "/target/generated-sources/org/m" + m + "/Generated.java"), sources.toString());
+            assertEquals(!buildFile, sources.contains("module" + m + "/build/org/m" + m + "/Built.java"));
+            assertFalse(sources.contains("module" + m + "/.git/hooks/Hook.java"));
+            assertFalse(sources.contains("module" + m + "/node_modules/lib/Lib.java"));
+            assertTrue(sources.contains("module" + m + "/src/main/java/org/m" + m + "/target/Kept.java"));
+            assertTrue(sources.contains("module" + m + "/src/main/java/org/m" + m + "/p0/C0.java"));
+        }
+        assertTrue(sources.contains("Root.java") && sources.contains("target/KeptToo.java"));
+        assertFalse(sources.contains("node_modules/Skipped.java") || sources.contains(".git/Skipped.java"));
+        assertTrue(sources.stream().noneMatch(s -> s.endsWith("Test.java") || s.endsWith("package-info.java")));
+    }
+
+    @Test
+    public void listingIsTheWalk() throws IOException {
+        List<String> listing;
+        try (Stream<Path> files = Files.walk(project)) {
+            listing = files.filter(Files::isRegularFile).map(p -> project.relativize(p).toString().replace('\\', '/'))
+                    .collect(Collectors.toList());
+        }
+        Collections.shuffle(listing, new Random(3)); //the order of a listing does not matter but for the order of the scan
+        SourceScanner.Scan walked = scan(1), listed = new SourceScanner().scan(project, listing);
+        assertEquals(new TreeSet<>(walked.getSourceFilePaths()), new TreeSet<>(listed.getSourceFilePaths()));
+        assertEquals(walked.getSourceFilePaths().size(), listed.getSourceFilePaths().size());
+        assertEquals(new TreeSet<>(walked.getTestFilePaths()), new TreeSet<>(listed.getTestFilePaths()));
+        assertEquals(new TreeSet<>(walked.getSourceDirPaths()), new TreeSet<>(listed.getSourceDirPaths()));
+        assertEquals(walked.getSourceDirPaths().size(), listed.getSourceDirPaths().size());
+        assertEquals(walked.getTestFileNames(), listed.getTestFileNames());
+    }
+}
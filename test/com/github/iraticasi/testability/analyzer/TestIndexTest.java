@@ -0,0 +1,56 @@
+package com.github.iraticasi.testability.analyzer;
+
+import com.github.iraticasi.testability.SampleProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of the naming conventions of the dedicated tests
+ */
+public class TestIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void defaultConventionsAreAnalyzerIsTest() {
+        String[] names = {"Test.java", "Tests.java", "FooTest.java", "FooTests.java", "TestFoo.java", "FooIT.java",
+                "Testing.java", "Foo.java", "Test.txt", "Contest.java", "FooTestUtils.java", "FooTest.java.orig"};
+        for (String name : names) {
+            assertEquals(Analyzer.isTest(name), TestIndex.isTest(name, TestIndex.DEFAULT_CONVENTIONS), name);
+        }
+    }
+
+    @Test
+    public void conventionsOfTheTests() {
+        EnumSet<TestIndex.Convention> all = EnumSet.allOf(TestIndex.Convention.class);
+        assertTrue(TestIndex.isTest("TestFoo.java", all) && TestIndex.isTest("FooIT.java", all));
+        assertFalse(TestIndex.isTest("Testing.java", all)); //not a test of Ing
+        assertFalse(TestIndex.isTest("TestFoo.java", EnumSet.of(TestIndex.Convention.TESTS_SUFFIX)));
+        assertNull(TestIndex.Convention.TEST_SUFFIX.testedClass("Test"));
+        assertEquals("Foo", TestIndex.Convention.TEST_PREFIX.testedClass("TestFoo"));
+    }
+
+    @Test
+    public void testNamedTestIsNotASourceClass() throws IOException {
+        SampleProject.write(dir, "src/main/java", "package org.sample;\n\npublic class Foo {\n}\n",
+                "package org.sample;\n\npublic class Test {\n    Object a() { return new Foo(); }\n}\n");
+        SampleProject.write(dir, "src/test/java", "package org.sample;\n\npublic class FooTest {\n}\n",
+                "package org.sample;\n\npublic class Tests {\n}\n");
+        Analyzer analyzer = new Analyzer(dir.toFile());
+        List<ClassInfo> classes = analyzer.analyze();
+        assertEquals(1, classes.size());
+        assertEquals("org.sample.Foo", classes.get(0).getFullName());
+        TestIndex tests = analyzer.getScan().getTestIndex();
+        assertTrue(tests.hasTest(classes.get(0)));
+        assertEquals(1, tests.size()); //Test and Tests test no class
+    }
+}
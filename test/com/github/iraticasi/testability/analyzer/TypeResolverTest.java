@@ -0,0 +1,70 @@
+package com.github.iraticasi.testability.analyzer;
+
+import com.github.iraticasi.testability.SampleProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Resolving the dependencies syntactically (see TypeResolver) gives the packages of the bindings
+ * <p>
+ * NOTES:
+ * The fixture has the cases where the scoping rules matter: a nested type with the name of a single import,
+ * a single import that shadows a type of the same package, imports of a library (not in the project nor the JDK)
+ * and of nested JDK types, and on demand imports of the project.
+ * */
+
+public class TypeResolverTest {
+
+    @TempDir
+    Path dir;
+
+    private Map<String, String> analyze(boolean syntactic, int[] syntacticResolved) {
+        Analyzer analyzer = new Analyzer(dir.toFile());
+        analyzer.setSyntactic(syntactic);
+        Map<String, String> packages = new TreeMap<>(); //class -> dependency -> its package
+        for (ClassInfo classInfo : analyzer.analyze()) {
+            SymbolTable symbols = classInfo.getSymbols();
+            int[] ids = classInfo.getDependencyIds(), counts = classInfo.getDependencyCounts();
+            for (int i = 0; i < ids.length; i++) {
+                int pkg = symbols.getPackage(ids[i]);
+                packages.put(classInfo.getFullName() + " -> " + symbols.getName(ids[i]), (pkg < 0 ? null : symbols.getName(pkg)) + " x" + counts[i]);
+            }
+        }
+        syntacticResolved[0] = analyzer.getSyntacticResolved();
+        return packages;
+    }
+
+    @Test
+    public void syntacticPackagesAreTheBoundPackages() throws IOException {
+        SampleProject.write(dir, "src/main/java",
+                "package org.x;\nimport org.y.Helper;\nimport org.y.B;\nimport org.lib.Thing;\n"
+                        + "import java.util.AbstractMap.SimpleEntry;\nimport java.util.concurrent.ConcurrentHashMap;\n\n"
+                        + "public class A {\n"
+                        + "    static class Helper {\n    }\n"
+                        + "    Object a() { return new Helper(); }\n"
+                        + "    Object b() { return new B(); }\n"
+                        + "    Object c() { return new Thing(); }\n"
+                        + "    Object d() { return new SimpleEntry<String, String>(\"k\", \"v\"); }\n"
+                        + "    Object e() { return new ConcurrentHashMap<String, String>(); }\n"
+                        + "    Object f() { return new StringBuilder(); }\n"
+                        + "}\n",
+                "package org.x;\n\npublic class B {\n    Object a() { return new C(); }\n}\n",
+                "package org.x;\nimport org.y.*;\n\npublic class C {\n    Object a() { return new D(); }\n    Object b() { return new B(); }\n}\n",
+                "package org.y;\n\npublic class B {\n}\n",
+                "package org.y;\n\npublic class D {\n}\n",
+                "package org.y;\n\npublic class Helper {\n}\n");
+        int[] syntacticResolved = new int[1];
+        Map<String, String> bound = analyze(false, syntacticResolved);
+        assertEquals("org.x x1", bound.get("org.x.A -> org.x.Helper"), bound.toString());
+        assertEquals("org.y x1", bound.get("org.x.A -> org.y.B"), bound.toString());
+        assertEquals(bound, analyze(true, syntacticResolved));
+        assertTrue(syntacticResolved[0] > 0);
+    }
+}
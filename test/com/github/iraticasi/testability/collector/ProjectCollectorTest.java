@@ -0,0 +1,97 @@
+package com.github.iraticasi.testability.collector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of ProjectCollector and its manifest with local repositories (file:// URLs, so the clones are shallow)
+ */
+public class ProjectCollectorTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Commit a file in a repository, creating it if needed
+     * @return the new commit
+     */
+    private String commit(String repository, String content) throws IOException, InterruptedException {
+        File origin = dir.resolve("origin").resolve(repository).toFile();
+        if (!origin.exists()) {
+            origin.mkdirs();
+            ProjectCollector.git(origin, "init", "-q");
+        }
+        Files.write(new File(origin, "A.java").toPath(), content.getBytes(StandardCharsets.UTF_8));
+        ProjectCollector.git(origin, "add", "A.java");
+        ProjectCollector.git(origin, "-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", content);
+        return ProjectCollector.git(origin, "rev-parse", "HEAD").trim();
+    }
+
+    private RemoteProject remote(String repository) {
+        return new RemoteProject(repository, dir.resolve("origin").resolve(repository).toUri().toString(), null);
+    }
+
+    private String checkedOut(File destination, String repository) throws IOException, InterruptedException {
+        return ProjectCollector.git(new File(destination, repository), "rev-parse", "HEAD").trim();
+    }
+
+    @Test
+    public void collectResumeAndUpdate() throws IOException, InterruptedException {
+        String a1 = commit("a", "class A {}"), b1 = commit("b", "class B {}");
+        List<RemoteProject> projects = Arrays.asList(remote("a"), remote("b"), remote("missing"));
+        File destination = dir.resolve("checkouts").toFile();
+        ProjectCollector collector = new ProjectCollector(destination, false);
+        assertEquals(1, collector.collect(projects));
+        CollectionManifest manifest = collector.getManifest();
+        assertEquals(CollectionManifest.State.CLONED, manifest.getState("a"));
+        assertEquals(CollectionManifest.State.CLONED, manifest.getState("b"));
+        assertEquals(CollectionManifest.State.FAILED, manifest.getState("missing"));
+        assertEquals(a1, checkedOut(destination, "a"));
+        assertEquals(b1, checkedOut(destination, "b"));
+        assertFalse(new File(destination, "missing").exists());
+        assertFalse(new File(destination, "missing.partial").exists());
+
+        //resuming skips the repositories done in the run, even if they changed, and retries the failed one
+        String a2 = commit("a", "class A { int x; }");
+        collector = new ProjectCollector(destination, true);
+        assertTrue(collector.getManifest().isDone("a") && !collector.getManifest().isDone("missing"));
+        assertEquals(1, collector.collect(projects));
+        assertEquals(a1, checkedOut(destination, "a"));
+
+        //a new run updates them all
+        collector = new ProjectCollector(destination, false);
+        assertFalse(collector.getManifest().isDone("a"));
+        assertEquals(1, collector.collect(projects));
+        assertEquals(CollectionManifest.State.UPDATED, collector.getManifest().getState("a"));
+        assertEquals(a2, checkedOut(destination, "a"));
+        assertEquals(b1, checkedOut(destination, "b"));
+    }
+
+    @Test
+    public void manifestSurvivesATruncatedLine() throws IOException {
+        File file = dir.resolve("collection.tsv").toFile();
+        CollectionManifest manifest = new CollectionManifest(file, false);
+        manifest.update("a", CollectionManifest.State.CLONED, "c1", "");
+        manifest.update("b", CollectionManifest.State.FAILED, "", "git clone failed:\n\tnot found");
+        List<String> lines = Files.readAllLines(file.toPath());
+        assertEquals(3, lines.size()); //header and a line per repository, with the message in a single line
+        assertTrue(lines.get(2).endsWith("\tgit clone failed: not found"));
+        Files.write(file.toPath(), (String.join("\n", lines) + "\nc\tCLO").getBytes(StandardCharsets.UTF_8)); //a truncated line
+        CollectionManifest resumed = new CollectionManifest(file, true);
+        assertTrue(resumed.isDone("a"));
+        assertFalse(resumed.isDone("b"));
+        assertNull(resumed.getState("c"));
+        assertEquals(CollectionManifest.State.FAILED, resumed.getState("b"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.SampleProject;
+import com.github.iraticasi.testability.analyzer.Analyzer;
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import com.github.iraticasi.testability.analyzer.SymbolTable;
+import com.github.iraticasi.testability.analyzer.TestIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Round trip of analyzed projects through ColumnarWriter and ColumnarReader
+ */
+public class ColumnarTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void roundTrip() throws IOException {
+        SampleProject.generate(dir.resolve("alpha"), "org.alpha", 60, 1);
+        SampleProject.generate(dir.resolve("beta"), "org.beta", 45, 2);
+        SampleProject.write(dir.resolve("gamma"), "src", "package org.gamma;\npublic class A { Object o = new java.net.Socket(); }\n",
+                "package org.gamma;\npublic class B { Object o = new A(); }\n", "public class NoPackage { }\n");
+        ColumnarWriter writer = new ColumnarWriter();
+        List<ClassInfo> expected = new ArrayList<>();
+        List<String> expectedProjects = new ArrayList<>();
+        List<Boolean> expectedTests = new ArrayList<>();
+        Map<String, List<String>> reports = new HashMap<>();
+        for (String folder : new String[]{"alpha", "beta", "gamma"}) {
+            String project = folder.equals("gamma") ? "gamma-\u00f1and\u00fa" : folder; //not ASCII
+            Analyzer analyzer = new Analyzer(dir.resolve(folder).toFile());
+            List<ClassInfo> classes = new ArrayList<>(analyzer.analyze());
+            TestIndex tests = analyzer.getScan().getTestIndex();
+            writer.addProject(project, classes, tests);
+            Collections.sort(classes);
+            for (ClassInfo classInfo : classes) {
+                expected.add(classInfo);
+                expectedProjects.add(project);
+                expectedTests.add(tests.hasTest(classInfo));
+            }
+            analyzer.makeReport("report.csv");
+            reports.put(project, Files.readAllLines(dir.resolve(folder).resolve("report.csv")));
+        }
+        assertEquals(expected.size(), writer.size());
+        assertTrue(expectedTests.contains(true) && expectedTests.contains(false));
+        assertTrue(expected.stream().anyMatch(ClassInfo::hasExternalDependencies) && !expected.stream().allMatch(ClassInfo::hasExternalDependencies));
+        File file = dir.resolve("classes.bin").toFile();
+        writer.write(file);
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            assertEquals(expected.size(), reader.size());
+            int numEdges = 0;
+            for (int row = 0; row < reader.size(); row++) {
+                ClassInfo classInfo = expected.get(row);
+                assertEquals(expectedProjects.get(row), reader.getProject(row));
+                assertEquals(classInfo.getPkg(), reader.getPkg(row));
+                assertEquals(classInfo.getName(), reader.getName(row));
+                assertEquals(classInfo.hasExternalDependencies(), reader.isExternal(row));
+                assertEquals(expectedTests.get(row), reader.hasTest(row));
+                SymbolTable symbols = classInfo.getSymbols();
+                int[] ids = classInfo.getDependencyIds();
+                int[] dependencies = reader.getDependencies(row);
+                assertEquals(ids.length, dependencies.length);
+                for (int i = 0; i < ids.length; i++) {
+                    assertEquals(symbols.getName(ids[i]), reader.getDependencyName(dependencies[i]));
+                    int pkg = symbols.getPackage(ids[i]);
+                    assertEquals(pkg < 0 ? null : symbols.getName(pkg), reader.getDependencyPkg(dependencies[i]));
+                }
+                numEdges += ids.length;
+            }
+            assertEquals(numEdges, reader.numEdges());
+            for (String project : reports.keySet()) {
+                File csv = dir.resolve(project.substring(0, 4) + ".csv").toFile();
+                reader.writeClassesCSV(project, csv);
+                assertEquals(reports.get(project), Files.readAllLines(csv.toPath()));
+            }
+        }
+    }
+
+    @Test
+    public void emptyFile() throws IOException {
+        File file = dir.resolve("empty.bin").toFile();
+        new ColumnarWriter().write(file);
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            assertEquals(0, reader.size());
+            assertEquals(0, reader.numEdges());
+            assertEquals(0, reader.numDependencies());
+        }
+    }
+
+    @Test
+    public void otherFilesAreRejected() throws IOException {
+        Path file = dir.resolve("other.bin");
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> new ColumnarReader(file.toFile()));
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.iraticasi.testability.report;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of ContingencyTable with textbook values (checked with R's fisher.test and chisq.test) and merges
+ */
+public class ContingencyTableTest {
+
+    @Test
+    public void fisherLadyTastingTea() {
+        ContingencyTable table = new ContingencyTable(3, 1, 1, 3);
+        assertEquals(0.485714, table.getFisherPValue(), 1e-6);
+        assertEquals(9, table.getOddsRatio(), 1e-12);
+    }
+
+    @Test
+    public void fisherSmallTable() {
+        ContingencyTable table = new ContingencyTable(1, 9, 11, 3);
+        assertEquals(0.00275946, table.getFisherPValue(), 1e-8);
+    }
+
+    @Test
+    public void aspirinMyocardialInfarction() {
+        //placebo (exposed) and aspirin, with and without myocardial infarction (Physicians' Health Study)
+        ContingencyTable table = new ContingencyTable(189, 10845, 104, 10933);
+        assertEquals(1.83205, table.getOddsRatio(), 1e-5);
+        double[] interval = table.getOddsRatioInterval();
+        assertEquals(1.44004, interval[0], 1e-5);
+        assertEquals(2.33078, interval[1], 1e-5);
+        assertEquals(25.0139, table.getChiSquare(), 1e-4);
+        assertEquals(5.69185e-7, table.getChiSquarePValue(), 1e-10);
+    }
+
+    @Test
+    public void zeroCellUsesHaldaneCorrection() {
+        ContingencyTable table = new ContingencyTable(0, 5, 5, 5);
+        assertEquals(0.5 * 5.5 / (5.5 * 5.5), table.getOddsRatio(), 1e-12);
+        assertTrue(table.getOddsRatioInterval()[1] > table.getOddsRatio());
+    }
+
+    @Test
+    public void emptyMarginsHaveNoStatistics() {
+        assertTrue(Double.isNaN(new ContingencyTable().getOddsRatio()));
+        assertTrue(Double.isNaN(new ContingencyTable().getFisherPValue()));
+        assertTrue(Double.isNaN(new ContingencyTable(3, 4, 0, 0).getChiSquare()));
+        assertEquals("", new ContingencyTable(3, 4, 0, 0).getRecord()[7]);
+    }
+
+    @Test
+    public void fisherOfIndependentTableIsOne() {
+        assertEquals(1, new ContingencyTable(5, 5, 5, 5).getFisherPValue(), 1e-12);
+    }
+
+    @Test
+    public void mergedTablesGiveTheSameStatistics() {
+        Random random = new Random(1);
+        ContingencyTable whole = new ContingencyTable();
+        ContingencyTable[] parts = new ContingencyTable[7];
+        for (int i = 0; i < parts.length; i++) parts[i] = new ContingencyTable();
+        for (int i = 0; i < 5000; i++) {
+            boolean exposed = random.nextDouble() < 0.3;
+            boolean outcome = random.nextDouble() < (exposed ? 0.2 : 0.4);
+            whole.add(exposed, outcome);
+            parts[random.nextInt(parts.length)].add(exposed, outcome);
+        }
+        ContingencyTable merged = new ContingencyTable();
+        for (ContingencyTable part : parts) merged.merge(part);
+        assertEquals(whole.toString(), merged.toString());
+        assertArrayEquals(whole.getRecord(), merged.getRecord());
+        assertEquals(5000, merged.getTotal());
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.SampleProject;
+import com.opencsv.CSVReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Cross-check of the two engines of Analyzer (see EngineComparison) on a generated project compiled with javac
+ * <p>
+ * NOTES:
+ * The generated project creates some types that do not exist, so a class MissingN is added to each package
+ * for the project to compile.
+ * */
+
+public class EngineComparisonTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void bytecodeGivesTheSourceClasses() throws IOException {
+        SampleProject.generate(dir, "org.sample", 120, 11);
+        for (int p = 0; p < 7; p++) { //the packages of 120 classes
+            for (int m = 0; m < 5; m++) {
+                SampleProject.write(dir, "src/main/java", "package org.sample.s" + p + ";\n\npublic class Missing" + m + " {\n}\n");
+            }
+        }
+        //nested and anonymous classes are folded into the class of their file
+        SampleProject.write(dir, "src/main/java", "package org.sample.s0;\n\npublic class Nested {\n"
+                + "    static class Inner { Object a() { return new java.io.File(\"f\"); } }\n"
+                + "    Object a() { return new Runnable() { public void run() { } }; }\n"
+                + "    Object b() { return new Inner(); }\n}\n");
+        List<String> sources;
+        try (Stream<Path> files = Files.walk(dir.resolve("src/main/java"))) {
+            sources = files.filter(file -> file.toString().endsWith(".java")).map(Path::toString).collect(Collectors.toList());
+        }
+        File classes = dir.resolve("target/classes").toFile();
+        classes.mkdirs();
+        List<String> arguments = new ArrayList<>(Arrays.asList("-d", classes.getPath()));
+        arguments.addAll(sources);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+
+        EngineComparison comparison = new EngineComparison(dir.toFile());
+        File report = dir.resolve("engine_comparison.csv").toFile();
+        comparison.write(report.getPath());
+        List<String[]> records;
+        try (CSVReader csvReader = new CSVReader(new FileReader(report))) {
+            records = csvReader.readAll();
+        }
+        assertEquals(120 + 7 * 5 + 1 + 1, records.size()); //header, generated classes, MissingN and Nested
+        Set<String> flags = new HashSet<>();
+        for (String[] record : records.subList(1, records.size())) {
+            assertArrayEquals(new String[]{record[0], record[1], record[1], "", ""}, record);
+            flags.add(record[1]);
+        }
+        assertEquals(new HashSet<>(Arrays.asList("Y", "N")), flags);
+        assertTrue(comparison.getSummary().endsWith("156/156 with the same external flag, 156/156 with the same dependencies"), comparison.getSummary());
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.SampleProject;
+import com.github.iraticasi.testability.analyzer.Analyzer;
+import com.github.iraticasi.testability.analyzer.ClassInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of the two ways LibraryMatcher matches library names
+ */
+public class LibraryMatcherTest {
+
+    private static final String[] LIBRARIES = {"java.io", "java.sql.", "java.net.", "javax", "java", "io", "a.i", "sql"};
+
+    @TempDir
+    Path dir;
+
+    private static BitSet substring(LibraryMatcher matcher, String text) {
+        BitSet matches = new BitSet();
+        matcher.matchSubstring(text, matches);
+        return matches;
+    }
+
+    private static BitSet packagePrefix(LibraryMatcher matcher, String pkg) {
+        BitSet matches = new BitSet();
+        matcher.matchPackage(pkg, matches);
+        return matches;
+    }
+
+    /**
+     * Whether a package is a library or one of its subpackages, comparing their segments one by one
+     */
+    private static boolean isInLibrary(String pkg, String library) {
+        String[] librarySegments = (library.endsWith(".") ? library.substring(0, library.length() - 1) : library).split("\\.");
+        String[] packageSegments = pkg.split("\\.");
+        if (librarySegments.length > packageSegments.length) return false;
+        for (int i = 0; i < librarySegments.length; i++) {
+            if (!librarySegments[i].equals(packageSegments[i])) return false;
+        }
+        return true;
+    }
+
+    @Test
+    public void substringIsStringContains() {
+        LibraryMatcher matcher = new LibraryMatcher(LIBRARIES, LibraryMatcher.Mode.SUBSTRING);
+        String alphabet = "javioxnetsql.ñ";
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(20);
+            for (int j = 0; j < length; j++) text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            BitSet expected = new BitSet();
+            for (int l = 0; l < LIBRARIES.length; l++) {
+                if (text.toString().contains(LIBRARIES[l])) expected.set(l);
+            }
+            assertEquals(expected, substring(matcher, text.toString()), text.toString());
+        }
+    }
+
+    @Test
+    public void packagePrefixMatchesWholeSegments() {
+        LibraryMatcher matcher = new LibraryMatcher(new String[]{"java.sql", "javax", "java.net.", "org.apache.commons"},
+                LibraryMatcher.Mode.PACKAGE_PREFIX);
+        assertEquals(BitSet.valueOf(new long[]{1}), packagePrefix(matcher, "java.sql"));
+        assertEquals(BitSet.valueOf(new long[]{1}), packagePrefix(matcher, "java.sql.rowset"));
+        assertTrue(packagePrefix(matcher, "java.sqlx").isEmpty());
+        assertTrue(packagePrefix(matcher, "java").isEmpty());
+        assertTrue(packagePrefix(matcher, "javax2.swing").isEmpty());
+        assertEquals(BitSet.valueOf(new long[]{2}), packagePrefix(matcher, "javax.sql"));
+        assertEquals(BitSet.valueOf(new long[]{4}), packagePrefix(matcher, "java.net")); //a trailing dot is ignored
+        assertTrue(packagePrefix(matcher, "org.apache").isEmpty());
+        assertEquals(BitSet.valueOf(new long[]{8}), packagePrefix(matcher, "org.apache.commons.lang3"));
+        assertTrue(packagePrefix(matcher, "").isEmpty());
+    }
+
+    @Test
+    public void librariesMustBeAscii() {
+        assertThrows(IllegalArgumentException.class, () -> new LibraryMatcher(new String[]{"java.ñ"}, LibraryMatcher.Mode.SUBSTRING));
+    }
+
+    @Test
+    public void sessionMatchesTheDependenciesOfTheClasses() throws IOException {
+        SampleProject.generate(dir, "org.sample", 80, 3);
+        Analyzer analyzer = new Analyzer(dir.toFile());
+        List<ClassInfo> classes = analyzer.analyze();
+        LibraryMatcher substring = new LibraryMatcher(LIBRARIES, LibraryMatcher.Mode.SUBSTRING);
+        LibraryMatcher packagePrefix = new LibraryMatcher(LIBRARIES, LibraryMatcher.Mode.PACKAGE_PREFIX);
+        LibraryMatcher.Session substringSession = substring.newSession(analyzer.getSymbols());
+        LibraryMatcher.Session packageSession = packagePrefix.newSession(analyzer.getSymbols());
+        BitSet matched = new BitSet(); //libraries matched by package by some class
+        for (ClassInfo classInfo : classes) {
+            BitSet expectedSubstring = new BitSet(), expectedPackage = new BitSet();
+            for (int l = 0; l < LIBRARIES.length; l++) {
+                if (classInfo.hasDependency(LIBRARIES[l])) expectedSubstring.set(l); //as TestChecker did
+            }
+            for (int id : classInfo.getDependencyIds()) {
+                int pkg = analyzer.getSymbols().getPackage(id);
+                if (pkg < 0) continue;
+                for (int l = 0; l < LIBRARIES.length; l++) {
+                    if (isInLibrary(analyzer.getSymbols().getName(pkg), LIBRARIES[l])) expectedPackage.set(l);
+                }
+            }
+            assertEquals(expectedSubstring, substringSession.classify(classInfo), classInfo.getFullName());
+            assertEquals(expectedPackage, packageSession.classify(classInfo), classInfo.getFullName());
+            matched.or(expectedPackage);
+        }
+        assertEquals(4, matched.cardinality()); //java.io, java.sql., java.net. and java
+        assertTrue(isInLibrary("java.sql.rowset", "java.sql.") && !isInLibrary("java.sqlx", "java.sql") && !isInLibrary("java", "java.io"));
+    }
+}
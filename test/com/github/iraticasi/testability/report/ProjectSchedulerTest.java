@@ -0,0 +1,109 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.SampleProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of ProjectScheduler: the results are handed over in order with a bounded number of projects in flight,
+ * failures of a project are recorded, and a concurrent run gives the reports of a sequential one
+ */
+public class ProjectSchedulerTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<File> projects(int n) {
+        List<File> projects = new ArrayList<>();
+        for (int i = 0; i < n; i++) projects.add(new File("project" + i));
+        return projects;
+    }
+
+    private static int index(File project) {
+        return Integer.parseInt(project.getName().substring("project".length()));
+    }
+
+    @Test
+    public void resultsInOrderWithBoundedProjectsInFlight() throws IOException {
+        AtomicInteger inFlight = new AtomicInteger(), maxInFlight = new AtomicInteger();
+        List<ProjectScheduler.ProjectResult<Integer>> results = new ArrayList<>();
+        new ProjectScheduler(4, 6).run(projects(40), project -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep((index(project) * 7) % 11); //the later projects may finish first
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return index(project);
+        }, result -> {
+            inFlight.decrementAndGet();
+            results.add(result);
+        });
+        assertEquals(40, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("project" + i, results.get(i).getProject().getName());
+            assertEquals(i, (int) results.get(i).getValue());
+            assertNull(results.get(i).getFailure());
+        }
+        assertTrue(maxInFlight.get() <= 6, "in flight: " + maxInFlight.get());
+    }
+
+    @Test
+    public void failuresAreRecorded() throws IOException {
+        List<ProjectScheduler.ProjectResult<Integer>> results = new ArrayList<>();
+        new ProjectScheduler(3, 3).run(projects(9), project -> {
+            int i = index(project);
+            if (i % 3 == 1) throw new IllegalArgumentException("project " + i);
+            if (i % 3 == 2) throw new StackOverflowError();
+            return i;
+        }, results::add);
+        assertEquals(9, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Throwable failure = results.get(i).getFailure();
+            if (i % 3 == 0) assertEquals(i, (int) results.get(i).getValue());
+            else assertNull(results.get(i).getValue());
+            assertEquals(i % 3 == 0 ? null : i % 3 == 1 ? IllegalArgumentException.class : StackOverflowError.class,
+                    failure == null ? null : failure.getClass());
+        }
+    }
+
+    @Test
+    public void otherErrorsPropagate() {
+        AssertionError error = new AssertionError("not a failure of the project");
+        assertSame(error, assertThrows(AssertionError.class, () -> new ProjectScheduler(2, 2).run(projects(5), project -> {
+            if (index(project) == 3) throw error;
+            return index(project);
+        }, result -> { })));
+    }
+
+    @Test
+    public void concurrentRunIsTheSequentialRun() throws IOException {
+        File corpus = dir.resolve("corpus").toFile();
+        for (int p = 0; p < 6; p++) {
+            SampleProject.generate(corpus.toPath().resolve("project" + p), "org.p" + p, 15 + 9 * p, p);
+        }
+        String[] libraries = {"java.io", "java.net", "java.sql"};
+        List<List<String>> reports = new ArrayList<>();
+        for (int threads : new int[]{1, 4}) {
+            TestChecker checker = new TestChecker(corpus.getPath());
+            checker.setParallelism(threads, 2 * threads);
+            File report = dir.resolve("libraries" + threads + ".csv").toFile();
+            checker.librariesReport(report.getPath(), libraries);
+            List<String> lines = new ArrayList<>(Files.readAllLines(report.toPath()));
+            lines.addAll(Files.readAllLines(new File(report + ".summary.csv").toPath()));
+            reports.add(lines);
+        }
+        assertEquals(reports.get(0), reports.get(1));
+    }
+}
@@ -0,0 +1,175 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.SampleProject;
+import com.github.iraticasi.testability.analyzer.AnalysisPolicy;
+import com.github.iraticasi.testability.analyzer.TestIndex;
+import com.opencsv.CSVReader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of ShardRunner: the shards split the projects, and merging the partial files of the workers gives the
+ * reports of a single run (but for the times), or fails if a partial file is missing or inconsistent
+ */
+public class ShardRunnerTest {
+
+    private static final String[] LIBRARIES = {"java.io", "java.net.", "java.util"};
+    private static final int SHARDS = 3;
+
+    @TempDir
+    Path dir;
+    private File corpus;
+
+    @BeforeEach
+    public void generateCorpus() throws IOException {
+        corpus = dir.resolve("corpus").toFile();
+        for (int p = 0; p < 7; p++) {
+            SampleProject.generate(corpus.toPath().resolve("project" + p), "org.p" + p, 10 + 7 * p, p);
+        }
+    }
+
+    private static List<String[]> read(File file) throws IOException {
+        try (CSVReader csvReader = new CSVReader(new FileReader(file))) {
+            return csvReader.readAll();
+        }
+    }
+
+    private List<File> runWorkers(ShardRunner runner, String prefix) throws IOException {
+        List<File> partials = new ArrayList<>();
+        for (int shard = SHARDS - 1; shard >= 0; shard--) { //the order of the partial files does not matter
+            File partial = dir.resolve(prefix + shard + ".csv").toFile();
+            runner.runWorker(shard, partial);
+            partials.add(partial);
+        }
+        return partials;
+    }
+
+    /**
+     * Check the merged reports against the reports of a single run
+     */
+    private void checkReports(File external, File libraries, Set<TestIndex.Convention> conventions,
+                              List<AnalysisPolicy> policies) throws IOException {
+        List<String[]> externalRecords = read(external);
+        List<File> projects = ProjectScheduler.listProjects(corpus);
+        assertEquals(projects.size() + 1, externalRecords.size());
+        for (int i = 0; i < projects.size(); i++) {
+            String[] record = externalRecords.get(i + 1);
+            String[] expected = TestChecker.checkExternal(projects.get(i), conventions, TestChecker.TestDetection.NAME, policies);
+            assertArrayEquals(expected, Arrays.copyOf(record, expected.length));
+            assertEquals("", record[record.length - 1]); //no failure
+        }
+        TestChecker checker = new TestChecker(corpus.getPath());
+        checker.setTestConventions(conventions);
+        File expectedLibraries = dir.resolve("single_libraries.csv").toFile();
+        checker.librariesReport(expectedLibraries.getPath(), LIBRARIES);
+        assertEquals(Files.readAllLines(expectedLibraries.toPath()), Files.readAllLines(libraries.toPath()));
+        assertEquals(Files.readAllLines(new File(expectedLibraries + ".summary.csv").toPath()),
+                Files.readAllLines(new File(libraries + ".summary.csv").toPath()));
+    }
+
+    @Test
+    public void shardsSplitTheProjects() throws IOException {
+        for (ShardRunner.Assignment assignment : ShardRunner.Assignment.values()) {
+            ShardRunner runner = new ShardRunner(corpus, SHARDS);
+            runner.setAssignment(assignment);
+            List<File> all = new ArrayList<>();
+            for (int shard = 0; shard < SHARDS; shard++) all.addAll(runner.assign(shard));
+            all.sort(Comparator.comparing(File::getName));
+            assertEquals(ProjectScheduler.listProjects(corpus), all, assignment.name());
+        }
+    }
+
+    @Test
+    public void mergeIsTheSingleRun() throws IOException {
+        for (ShardRunner.Assignment assignment : ShardRunner.Assignment.values()) {
+            ShardRunner runner = new ShardRunner(corpus, SHARDS);
+            runner.setAssignment(assignment);
+            runner.setLibraries(LIBRARIES, LibraryMatcher.Mode.SUBSTRING);
+            List<File> partials = runWorkers(runner, assignment.name());
+            File external = dir.resolve(assignment + "_external.csv").toFile(), libraries = dir.resolve(assignment + "_libraries.csv").toFile();
+            ShardRunner.merge(partials, external.getPath(), libraries.getPath());
+            checkReports(external, libraries, TestIndex.DEFAULT_CONVENTIONS, Collections.singletonList(AnalysisPolicy.legacy()));
+        }
+    }
+
+    @Test
+    public void launchRunsTheWorkersWithTheSameOptions() throws IOException, InterruptedException {
+        Set<TestIndex.Convention> conventions = EnumSet.of(TestIndex.Convention.TESTS_SUFFIX); //no test of the corpus
+        ShardRunner runner = new ShardRunner(corpus, SHARDS);
+        runner.setAssignment(ShardRunner.Assignment.SIZE);
+        runner.setLibraries(LIBRARIES, LibraryMatcher.Mode.SUBSTRING);
+        runner.setTestConventions(conventions);
+        Path rules = dir.resolve("rooted.rules");
+        Files.write(rules, Arrays.asList("root auto", "allow java.util"));
+        runner.setPolicyFiles(Collections.singletonList(rules.toFile()));
+        File workDir = dir.resolve("work").toFile();
+        runner.launch(workDir);
+        List<AnalysisPolicy> policies = Collections.singletonList(AnalysisPolicy.read(rules.toFile()));
+        checkReports(new File(workDir, "external_report.csv"), new File(workDir, "libraries_report.csv"), conventions, policies);
+        //the rules change the report
+        File project = ProjectScheduler.listProjects(corpus).get(6);
+        assertFalse(Arrays.equals(TestChecker.checkExternal(project, conventions, TestChecker.TestDetection.NAME),
+                TestChecker.checkExternal(project, conventions, TestChecker.TestDetection.NAME, policies)));
+    }
+
+    @Test
+    public void inconsistentPartialsAreRejected() throws IOException {
+        ShardRunner runner = new ShardRunner(corpus, SHARDS);
+        runner.setLibraries(LIBRARIES, LibraryMatcher.Mode.SUBSTRING);
+        List<File> partials = runWorkers(runner, "hash");
+        String external = dir.resolve("external.csv").toString(), libraries = dir.resolve("libraries.csv").toString();
+        //missing shard
+        assertThrows(IOException.class, () -> ShardRunner.merge(partials.subList(1, SHARDS), external, libraries));
+        //repeated shard
+        List<File> repeated = new ArrayList<>(partials);
+        repeated.set(0, partials.get(1));
+        assertThrows(IOException.class, () -> ShardRunner.merge(repeated, external, libraries));
+        //truncated (a killed worker)
+        assertThrows(IOException.class, () -> ShardRunner.merge(edit(partials, 0, lines -> lines.remove(lines.size() - 1)), external, libraries));
+        //other assignment
+        assertThrows(IOException.class, () -> ShardRunner.merge(edit(partials, 1, lines -> lines.set(0, lines.get(0).replace("HASH", "SIZE"))), external, libraries));
+        //shard out of range
+        assertThrows(IOException.class, () -> ShardRunner.merge(edit(partials, 2, lines -> lines.set(0, lines.get(0).replaceFirst("\"#shard\",\"\\d+\"", "\"#shard\",\"" + SHARDS + "\""))), external, libraries));
+        //other libraries
+        assertThrows(IOException.class, () -> ShardRunner.merge(edit(partials, 0, lines -> lines.set(1, lines.get(1) + ",\"javax\"")), external, libraries));
+        //the original partials are fine
+        ShardRunner.merge(partials, external, libraries);
+    }
+
+    private interface Edit {
+        void apply(List<String> lines);
+    }
+
+    /**
+     * Copy the partial files changing one of them
+     */
+    private List<File> edit(List<File> partials, int index, Edit edit) throws IOException {
+        List<File> copies = new ArrayList<>();
+        Path copyDir = Files.createTempDirectory(dir, "edit");
+        for (int i = 0; i < partials.size(); i++) {
+            Path copy = copyDir.resolve(partials.get(i).getName());
+            Files.copy(partials.get(i).toPath(), copy, StandardCopyOption.REPLACE_EXISTING);
+            if (i == index) {
+                List<String> lines = new ArrayList<>(Files.readAllLines(copy));
+                String before = String.join("\n", lines);
+                edit.apply(lines);
+                assertNotEquals(before, String.join("\n", lines), "the edit must change the file");
+                Files.write(copy, lines);
+            }
+            copies.add(copy.toFile());
+        }
+        return copies;
+    }
+}
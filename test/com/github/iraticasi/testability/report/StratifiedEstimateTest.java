@@ -0,0 +1,107 @@
+package com.github.iraticasi.testability.report;
+
+import com.github.iraticasi.testability.analyzer.SourceSample;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of StratifiedEstimate on a synthetic population of source files (the files are not read)
+ * <p>
+ * NOTES:
+ * The population has strata of very different sizes and proportions, and some files without classes,
+ * so the estimates are checked to be exact for a complete sample, unbiased, with intervals that cover the
+ * true counts about 95% of the times, and closer to the true counts as the sample grows.
+ * */
+
+public class StratifiedEstimateTest {
+
+    private static final int CATEGORIES = 2;
+
+    private List<String> paths = new ArrayList<>();
+    private Map<String, Integer> categories = new HashMap<>(); //file -> category of its class (none if it has no class)
+    private long[] truth = new long[CATEGORIES];
+
+    public StratifiedEstimateTest() {
+        Random random = new Random(42);
+        int[] sizes = {5, 12, 40, 200, 1, 75, 18, 120, 3, 60};
+        for (int s = 0; s < sizes.length; s++) {
+            double proportion = (s + 1) / (double) (sizes.length + 1);
+            for (int f = 0; f < sizes[s]; f++) {
+                String path = "project/src/p" + s + "/C" + f + ".java";
+                paths.add(path);
+                if (random.nextDouble() < 0.1) continue; //e.g. a interface
+                int category = random.nextDouble() < proportion ? 0 : 1;
+                categories.put(path, category);
+                truth[category]++;
+            }
+        }
+    }
+
+    private StratifiedEstimate estimate(SourceSample sample, List<String> sampledFiles) {
+        StratifiedEstimate estimate = new StratifiedEstimate(sample, CATEGORIES);
+        for (String path : sampledFiles) {
+            Integer category = categories.get(path);
+            if (category != null) estimate.add(path, category);
+        }
+        return estimate;
+    }
+
+    @Test
+    public void completeSampleIsExact() {
+        SourceSample sample = SourceSample.stratify(paths, 1);
+        StratifiedEstimate estimate = estimate(sample, sample.grow(1));
+        for (int category = 0; category < CATEGORIES; category++) {
+            assertEquals(truth[category], estimate.getEstimate(category), 1e-9);
+            assertEquals(0, estimate.getHalfWidth(category), 1e-9);
+            assertEquals(truth[category], estimate.getSampled(category));
+        }
+    }
+
+    @Test
+    public void unbiasedWithNominalCoverage() {
+        int runs = 400;
+        double[] sums = new double[CATEGORIES];
+        int[] covered = new int[CATEGORIES];
+        for (int seed = 0; seed < runs; seed++) {
+            SourceSample sample = SourceSample.stratify(paths, seed);
+            StratifiedEstimate estimate = estimate(sample, sample.grow(0.2));
+            for (int category = 0; category < CATEGORIES; category++) {
+                sums[category] += estimate.getEstimate(category);
+                double[] interval = estimate.getInterval(category);
+                assertTrue(interval[0] >= estimate.getSampled(category));
+                if (interval[0] <= truth[category] && truth[category] <= interval[1]) covered[category]++;
+            }
+        }
+        for (int category = 0; category < CATEGORIES; category++) {
+            assertEquals(truth[category], sums[category] / runs, 0.01 * truth[category], "mean estimate of " + category);
+            assertTrue(covered[category] >= 0.9 * runs, "coverage of " + category + ": " + covered[category] + " of " + runs);
+        }
+    }
+
+    @Test
+    public void convergesAsTheSampleGrows() {
+        double[] fractions = {0.05, 0.2, 0.5, 0.8, 1};
+        double[] errors = new double[fractions.length], halfWidths = new double[fractions.length];
+        int runs = 100;
+        for (int seed = 0; seed < runs; seed++) {
+            SourceSample sample = SourceSample.stratify(paths, seed);
+            List<String> sampled = new ArrayList<>();
+            for (int f = 0; f < fractions.length; f++) {
+                sampled.addAll(sample.grow(fractions[f])); //a bigger sample contains the smaller one
+                StratifiedEstimate estimate = estimate(sample, sampled);
+                errors[f] += Math.abs(estimate.getEstimate(0) - truth[0]) / runs;
+                halfWidths[f] += estimate.getHalfWidth(0) / runs;
+            }
+            assertTrue(sample.isComplete());
+        }
+        for (int f = 1; f < fractions.length; f++) {
+            assertTrue(errors[f] < errors[f - 1], "mean error at " + fractions[f] + ": " + Arrays.toString(errors));
+            assertTrue(halfWidths[f] < halfWidths[f - 1], "mean half width at " + fractions[f] + ": " + Arrays.toString(halfWidths));
+        }
+        assertEquals(0, errors[fractions.length - 1], 1e-9);
+    }
+}
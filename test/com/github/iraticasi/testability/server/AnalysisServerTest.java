@@ -0,0 +1,114 @@
+package com.github.iraticasi.testability.server;
+
+import com.github.iraticasi.testability.SampleProject;
+import com.github.iraticasi.testability.analyzer.AnalysisPolicy;
+import com.github.iraticasi.testability.analyzer.TestIndex;
+import com.github.iraticasi.testability.report.TestChecker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests of AnalysisServer: the answers match a fresh analysis of the project, also after a file changes
+ */
+public class AnalysisServerTest {
+
+    @TempDir
+    Path dir;
+    private Path project;
+    private AnalysisServer server;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        project = dir.resolve("project");
+        SampleProject.generate(project, "org.sample", 40, 5);
+        SampleProject.write(project, "src/main/java", "package org.sample;\n\npublic class A {\n    Object a() { return new java.net.Socket(); }\n}\n");
+        server = new AnalysisServer(0, dir.resolve("cache").toFile());
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    private String expectedCheck() {
+        String[] record = TestChecker.checkExternal(project.toFile());
+        return String.join("\t", Arrays.copyOfRange(record, 1, 5)); //after the name of the project
+    }
+
+    @Test
+    public void answersFollowTheChanges() throws IOException, InterruptedException {
+        String path = project.toString();
+        assertEquals(Arrays.asList("Y", "org.sample.A"), server.handle("EXTERNAL\t" + path + "\torg.sample.A"));
+        assertEquals(Arrays.asList(expectedCheck()), server.handle("CHECK\t" + path));
+        assertTrue(server.handle("REPORT\t" + path).contains("org.sample\tA\tY"));
+        assertThrows(IllegalArgumentException.class, () -> server.handle("EXTERNAL\t" + path + "\torg.sample.Missing"));
+        assertThrows(IllegalArgumentException.class, () -> server.handle("UNKNOWN"));
+
+        //replaced with a single move, so the watcher sees a single event (writing the file may give several)
+        SampleProject.write(dir.resolve("staging"), "src/main/java", "package org.sample;\n\npublic class A {\n    Object a() { return this; }\n}\n");
+        Files.move(dir.resolve("staging/src/main/java/org/sample/A.java"), project.resolve("src/main/java/org/sample/A.java"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long deadline = System.currentTimeMillis() + 20000;
+        while (!server.handle("STATS").get(0).endsWith("\ttrue")) { //marked dirty by the watcher
+            assertTrue(System.currentTimeMillis() < deadline, "change not seen by the watcher");
+            Thread.sleep(50);
+        }
+        assertEquals(Arrays.asList("N"), server.handle("EXTERNAL\t" + path + "\torg.sample.A"));
+        assertEquals(Arrays.asList(expectedCheck()), server.handle("CHECK\t" + path));
+        String[] stats = server.handle("STATS").get(0).split("\t");
+        assertEquals("legacy", stats[1]);
+        assertEquals("2", stats[3]); //analyses
+        assertTrue(Integer.parseInt(stats[5]) > 0, "cache hits: " + stats[5]); //the unchanged files
+    }
+
+    @Test
+    public void requestsUseTheRulesFiles() throws IOException {
+        Path rules = dir.resolve("rooted.rules");
+        Files.write(rules, Arrays.asList("root auto", "allow java.util"));
+        List<AnalysisPolicy> policies = Collections.singletonList(AnalysisPolicy.read(rules.toFile()));
+        String[] record = TestChecker.checkExternal(project.toFile(), TestIndex.DEFAULT_CONVENTIONS, TestChecker.TestDetection.NAME, policies);
+        String expected = String.join("\t", Arrays.copyOfRange(record, 1, 5));
+        assertNotEquals(expectedCheck(), expected);
+        try (AnalysisClient client = new AnalysisClient(server.getPort())) {
+            assertEquals(Arrays.asList(expectedCheck()), client.requestProject("CHECK", project.toString()));
+            client.setPolicyFiles(Collections.singletonList(rules.toFile()));
+            assertEquals(Arrays.asList(expected), client.requestProject("CHECK", project.toString()));
+            assertEquals(Arrays.asList("Y", "org.sample.A"), client.requestProject("EXTERNAL", project.toString(), "org.sample.A"));
+            client.setPolicyFiles(Collections.singletonList(dir.resolve("missing.rules").toFile()));
+            assertThrows(IOException.class, () -> client.requestProject("CHECK", project.toString()));
+        }
+        List<String> stats = server.handle("STATS");
+        assertEquals(2, stats.size()); //a state per set of policies
+        assertTrue(stats.get(1).split("\t")[1].equals("rooted") || stats.get(0).split("\t")[1].equals("rooted"), stats.toString());
+    }
+
+    @Test
+    public void answersOverTheSocket() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            writer.write("CHECK\t" + project + "\nEXTERNAL\t" + project + "\torg.sample.Missing\n");
+            writer.flush();
+            assertEquals("OK 1", reader.readLine());
+            assertEquals(expectedCheck(), reader.readLine());
+            assertTrue(reader.readLine().startsWith("ERROR Class org.sample.Missing not found"));
+        }
+    }
+}